@@ -17,12 +17,11 @@
 package com.deltadna.android.sdk;
 
 import androidx.annotation.Nullable;
-import android.util.Log;
+import com.deltadna.android.sdk.util.Log;
 
 import org.json.JSONObject;
 
 import java.util.Date;
-import java.util.Locale;
 
 class ActionStore {
     
@@ -42,11 +41,7 @@ class ActionStore {
     }
     
     void put(EventTrigger trigger, JSONObject action) {
-        Log.v(TAG, String.format(
-                Locale.ENGLISH,
-                "Adding %s for %s",
-                trigger,
-                action));
+        if (Log.PAYLOADS) Log.v(TAG, "Adding %s for %s", trigger, action);
         database.insertActionRow(
                 trigger.getEventName(),
                 trigger.getCampaignId(),
@@ -55,7 +50,7 @@ class ActionStore {
     }
     
     void remove(EventTrigger trigger) {
-        Log.v(TAG, "Removing action for " + trigger);
+        Log.v(TAG, "Removing action for %s", trigger);
         database.removeActionRow(trigger.getCampaignId());
     }
     
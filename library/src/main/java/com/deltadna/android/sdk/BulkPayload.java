@@ -0,0 +1,134 @@
+/*
+ * Copyright (c) 2016 deltaDNA Ltd. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.deltadna.android.sdk;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Arrays;
+
+/**
+ * Growable byte buffer which stored events are read into when building the
+ * body of a bulk upload, so that they never have to be turned into strings.
+ */
+final class BulkPayload {
+
+    private ByteBuffer buffer;
+
+    BulkPayload(int capacity) {
+        buffer = ByteBuffer.allocate(capacity);
+    }
+
+    int position() {
+        return buffer.position();
+    }
+
+    /**
+     * Discards everything written after {@code position}.
+     */
+    void reset(int position) {
+        buffer.position(position);
+    }
+
+    byte get(int index) {
+        return buffer.get(index);
+    }
+
+    /**
+     * @return the backing array, valid up to {@link #position()}
+     */
+    byte[] array() {
+        return buffer.array();
+    }
+
+    BulkPayload put(byte value) {
+        reserve(1);
+        buffer.put(value);
+        return this;
+    }
+
+    BulkPayload put(byte[] values) {
+        reserve(values.length);
+        buffer.put(values);
+        return this;
+    }
+
+    BulkPayload put(byte[] values, int offset, int length) {
+        reserve(length);
+        buffer.put(values, offset, length);
+        return this;
+    }
+
+    /**
+     * Removes {@code length} bytes at {@code index}, moving everything after
+     * it back.
+     */
+    void remove(int index, int length) {
+        final byte[] array = buffer.array();
+        final int position = buffer.position();
+        System.arraycopy(array, index + length, array, index, position - index - length);
+        buffer.position(position - length);
+    }
+
+    /**
+     * Inserts {@code values} at {@code index}, moving everything after it
+     * along.
+     */
+    void insert(int index, byte[] values) {
+        reserve(values.length);
+
+        final byte[] array = buffer.array();
+        final int position = buffer.position();
+        System.arraycopy(array, index, array, index + values.length, position - index);
+        System.arraycopy(values, 0, array, index, values.length);
+        buffer.position(position + values.length);
+    }
+
+    /**
+     * Reads exactly {@code length} bytes from the current position of
+     * {@code channel}.
+     */
+    void read(FileChannel channel, int length) throws IOException {
+        reserve(length);
+
+        final int limit = buffer.limit();
+        buffer.limit(buffer.position() + length);
+        try {
+            while (buffer.hasRemaining()) {
+                if (channel.read(buffer) == -1) throw new EOFException();
+            }
+        } finally {
+            buffer.limit(limit);
+        }
+    }
+
+    byte[] toByteArray() {
+        return Arrays.copyOf(buffer.array(), buffer.position());
+    }
+
+    private void reserve(int bytes) {
+        if (buffer.remaining() < bytes) {
+            final ByteBuffer grown = ByteBuffer.allocate(Math.max(
+                    buffer.capacity() * 2,
+                    buffer.position() + bytes));
+            buffer.flip();
+            grown.put(buffer);
+            buffer = grown;
+        }
+    }
+}
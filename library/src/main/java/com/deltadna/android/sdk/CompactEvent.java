@@ -0,0 +1,355 @@
+/*
+ * Copyright (c) 2016 deltaDNA Ltd. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.deltadna.android.sdk;
+
+import androidx.annotation.Nullable;
+import com.deltadna.android.sdk.util.Log;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.util.Iterator;
+import java.util.Locale;
+
+/**
+ * Collect event split into the fields which are the same for every event
+ * of a session, the header, and everything else, the body.
+ * <p>
+ * Only the body gets stored for each event, with the header being stored
+ * once and spliced back in when the event is read for uploading. This
+ * relies on the body having {@code eventParams} as its last field, so that
+ * the result is the same event apart from the order of the fields.
+ * <p>
+ * The body is either JSON text, or encoded with {@link EventEncoding}.
+ */
+final class CompactEvent {
+
+    private static final String TAG = BuildConfig.LOG_TAG
+            + ' '
+            + CompactEvent.class.getSimpleName();
+
+    private static final Charset UTF8 = Charset.forName("UTF-8");
+
+    private static final String NAME = "eventName";
+    private static final String UUID = "eventUUID";
+    private static final String USER_ID = "userID";
+    private static final String SESSION_ID = "sessionID";
+    private static final String PARAMS = "eventParams";
+    private static final String PLATFORM = "platform";
+    private static final String SDK_VERSION = "sdkVersion";
+
+    /**
+     * {@code null} if the body is the complete event.
+     */
+    @Nullable
+    final String header;
+    /**
+     * The {@code eventUUID} of the event, for tracing.
+     */
+    @Nullable
+    final String uuid;
+    /**
+     * The {@code eventName} of the event, for logging without the payload.
+     */
+    @Nullable
+    final String name;
+    /**
+     * When the event was recorded, in milliseconds since the epoch.
+     */
+    final long time;
+    @Nullable
+    private final String body;
+    @Nullable
+    private final byte[] encoded;
+
+    private CompactEvent(
+            @Nullable String header,
+            @Nullable String uuid,
+            @Nullable String name,
+            @Nullable String body,
+            @Nullable byte[] encoded) {
+
+        this.header = header;
+        this.uuid = uuid;
+        this.name = name;
+        this.body = body;
+        this.encoded = encoded;
+        this.time = System.currentTimeMillis();
+    }
+
+    /**
+     * Wraps an already serialised event, which will be stored as it is.
+     */
+    static CompactEvent of(String content) {
+        return new CompactEvent(null, null, null, content, null);
+    }
+
+    /**
+     * @return the body as it should be stored
+     */
+    byte[] bytes() {
+        return (encoded != null) ? encoded : body.getBytes(UTF8);
+    }
+
+    /**
+     * @return the length of {@link #bytes()}, without encoding the body
+     */
+    int size() {
+        if (encoded != null) return encoded.length;
+
+        int size = 0;
+        for (int i = 0; i < body.length(); i++) {
+            final char c = body.charAt(i);
+            if (c < 0x80) {
+                size++;
+            } else if (c < 0x800) {
+                size += 2;
+            } else if (Character.isHighSurrogate(c)
+                    && i + 1 < body.length()
+                    && Character.isLowSurrogate(body.charAt(i + 1))) {
+                size += 4;
+                i++;
+            } else if (c >= Character.MIN_SURROGATE && c <= Character.MAX_SURROGATE) {
+                // unpaired, replaced by '?' when encoded
+                size++;
+            } else {
+                size += 3;
+            }
+        }
+        return size;
+    }
+
+    /**
+     * @return the body as JSON text
+     *
+     * @throws IOException if the encoded body is malformed
+     */
+    String json() throws IOException {
+        return (encoded != null) ? EventEncoding.decode(encoded) : body;
+    }
+
+    @Override
+    public String toString() {
+        return (encoded != null)
+                ? String.format(Locale.US, "<%d encoded bytes>", encoded.length)
+                : body;
+    }
+
+    /**
+     * Splits an event into its header and body, or keeps it as it is if
+     * it does not have all of the header fields.
+     */
+    static CompactEvent from(JSONObject event) {
+        return from(event, false);
+    }
+
+    /**
+     * Splits an event into its header and body, or keeps it as it is if
+     * it does not have all of the header fields.
+     *
+     * @param encode whether the body should be encoded with
+     *               {@link EventEncoding} instead of JSON text
+     */
+    static CompactEvent from(JSONObject event, boolean encode) {
+        final String uuid = event.optString(UUID, null);
+        final String name = event.optString(NAME, null);
+        final Object userId = event.opt(USER_ID);
+        final Object sessionId = event.opt(SESSION_ID);
+        final JSONObject params = event.optJSONObject(PARAMS);
+        final Object platform = (params != null) ? params.opt(PLATFORM) : null;
+        final Object sdkVersion = (params != null) ? params.opt(SDK_VERSION) : null;
+
+        if (    !(userId instanceof String)
+                || !(sessionId instanceof String)
+                || !(platform instanceof String)
+                || !(sdkVersion instanceof String)) {
+            return whole(event, uuid, name, encode);
+        }
+
+        try {
+            final JSONObject body = new JSONObject();
+            final Iterator<String> keys = event.keys();
+            while (keys.hasNext()) {
+                final String key = keys.next();
+                if (!key.equals(USER_ID) && !key.equals(SESSION_ID) && !key.equals(PARAMS)) {
+                    body.put(key, event.get(key));
+                }
+            }
+
+            final JSONObject bodyParams = new JSONObject();
+            final Iterator<String> paramKeys = params.keys();
+            while (paramKeys.hasNext()) {
+                final String key = paramKeys.next();
+                if (!key.equals(PLATFORM) && !key.equals(SDK_VERSION)) {
+                    bodyParams.put(key, params.get(key));
+                }
+            }
+            final String header = new JSONObject()
+                    .put(USER_ID, userId)
+                    .put(SESSION_ID, sessionId)
+                    .put(PLATFORM, platform)
+                    .put(SDK_VERSION, sdkVersion)
+                    .toString();
+
+            if (encode) {
+                return new CompactEvent(
+                        header,
+                        uuid,
+                        name,
+                        null,
+                        EventEncoding.encode(body, PARAMS, bodyParams));
+            }
+
+            // appended by hand as it has to be last for splicing
+            final String rest = body.toString();
+            final StringBuilder builder = new StringBuilder(rest.length() + 64)
+                    .append(rest, 0, rest.length() - 1);
+            if (body.length() > 0) builder.append(',');
+            builder.append(JSONObject.quote(PARAMS))
+                    .append(':')
+                    .append(bodyParams.toString())
+                    .append('}');
+
+            return new CompactEvent(header, uuid, name, builder.toString(), null);
+        } catch (JSONException | IllegalArgumentException e) {
+            Log.w(TAG, "Failed to compact event, storing as is", e);
+            return new CompactEvent(null, uuid, name, event.toString(), null);
+        }
+    }
+
+    private static CompactEvent whole(
+            JSONObject event,
+            @Nullable String uuid,
+            @Nullable String name,
+            boolean encode) {
+
+        if (encode) {
+            try {
+                return new CompactEvent(null, uuid, name, null, EventEncoding.encode(event));
+            } catch (IllegalArgumentException e) {
+                Log.w(TAG, "Failed to encode event, storing as JSON", e);
+            }
+        }
+
+        return new CompactEvent(null, uuid, name, event.toString(), null);
+    }
+
+    /**
+     * Header fields pre-rendered for splicing into event bodies.
+     */
+    static final class Header {
+
+        private final String envelope;
+        private final String params;
+
+        /**
+         * Envelope followed by its separating comma.
+         */
+        private final byte[] envelopeBytes;
+        /**
+         * Params with and without their separating comma, for bodies which
+         * have their own params and those which do not.
+         */
+        private final byte[] paramsBytes;
+        private final byte[] onlyParamsBytes;
+
+        private Header(String envelope, String params) {
+            this.envelope = envelope;
+            this.params = params;
+
+            envelopeBytes = (envelope + ',').getBytes(UTF8);
+            paramsBytes = (',' + params).getBytes(UTF8);
+            onlyParamsBytes = params.getBytes(UTF8);
+        }
+
+        /**
+         * @return the number of bytes the header adds to each event
+         */
+        int size() {
+            // including the separating commas
+            return envelopeBytes.length + paramsBytes.length;
+        }
+
+        /**
+         * @return the complete event
+         */
+        String expand(String body) {
+            final int length = body.length();
+            if (length < 4 || body.charAt(0) != '{' || !body.endsWith("}}")) {
+                Log.w(TAG, "Unexpected body, not expanding %s", body);
+                return body;
+            }
+
+            final boolean emptyParams = body.charAt(length - 3) == '{';
+            return new StringBuilder(length + envelope.length() + params.length() + 2)
+                    .append('{')
+                    .append(envelope)
+                    .append(',')
+                    .append(body, 1, length - 2)
+                    .append(emptyParams ? "" : ",")
+                    .append(params)
+                    .append("}}")
+                    .toString();
+        }
+
+        /**
+         * Expands the body which has been written to {@code payload} from
+         * {@code start} onwards, in place.
+         *
+         * @return {@code false} if the body was not as expected
+         */
+        boolean expand(BulkPayload payload, int start) {
+            final int end = payload.position();
+            if (    end - start < 4
+                    || payload.get(start) != '{'
+                    || payload.get(end - 2) != '}'
+                    || payload.get(end - 1) != '}') {
+                return false;
+            }
+
+            final boolean emptyParams = payload.get(end - 3) == '{';
+            payload.insert(start + 1, envelopeBytes);
+            payload.insert(
+                    payload.position() - 2,
+                    emptyParams ? onlyParamsBytes : paramsBytes);
+            return true;
+        }
+
+        @Nullable
+        static Header parse(String header) {
+            try {
+                final JSONObject json = new JSONObject(header);
+                return new Header(
+                        field(USER_ID, json.getString(USER_ID))
+                                + ','
+                                + field(SESSION_ID, json.getString(SESSION_ID)),
+                        field(PLATFORM, json.getString(PLATFORM))
+                                + ','
+                                + field(SDK_VERSION, json.getString(SDK_VERSION)));
+            } catch (JSONException e) {
+                Log.w(TAG, "Failed to parse header " + header, e);
+                return null;
+            }
+        }
+
+        private static String field(String key, String value) {
+            return JSONObject.quote(key) + ':' + JSONObject.quote(value);
+        }
+    }
+}
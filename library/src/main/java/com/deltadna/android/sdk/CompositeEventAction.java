@@ -0,0 +1,157 @@
+/*
+ * Copyright (c) 2018 deltaDNA Ltd. All rights reserved.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.deltadna.android.sdk;
+
+import android.os.AsyncTask;
+import androidx.annotation.Nullable;
+
+import com.deltadna.android.sdk.helpers.Settings;
+
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.SortedSet;
+
+/**
+ * {@link EventAction} for a batch of events recorded together, which
+ * evaluates the registered handlers against each of the events in the
+ * order they were recorded in.
+ * <p>
+ * The actions for the individual events only get built once the composite
+ * is run, and they are all evaluated in a single background task, unless
+ * none of the events have triggers.
+ */
+final class CompositeEventAction extends EventAction {
+
+    private final List<Event> events;
+    /**
+     * The {@code eventUUID} of each recorded event, only kept while tracing.
+     */
+    @Nullable
+    private final List<String> uuids;
+    private final Map<String, SortedSet<EventTrigger>> triggers;
+    private final ActionStore store;
+    private final Settings settings;
+
+    private final Set<EventActionHandler> handlers = new LinkedHashSet<>();
+    @Nullable
+    private EventActionEvaluateCompleteHandler evaluateCompleteHandler;
+
+    /**
+     * @param uuids     the {@code eventUUID} of each event, or {@code null}
+     *                  for events which were not stored, for tracing
+     * @param triggers  the triggers of the session, by event name
+     */
+    CompositeEventAction(
+            List<Event> events,
+            @Nullable List<String> uuids,
+            Map<String, SortedSet<EventTrigger>> triggers,
+            ActionStore store,
+            Settings settings) {
+
+        super(new Event("recordEvents"), NO_TRIGGERS, store, settings);
+
+        this.events = events;
+        this.uuids = uuids;
+        this.triggers = triggers;
+        this.store = store;
+        this.settings = settings;
+    }
+
+    @Override
+    public EventAction add(EventActionHandler<?> handler) {
+        handlers.add(handler);
+        return this;
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p>
+     * The handler will be called for each of the events.
+     */
+    @Override
+    public EventAction addEvaluateCompleteHandler(
+            EventActionEvaluateCompleteHandler evaluateCompleteHandler) {
+
+        this.evaluateCompleteHandler = evaluateCompleteHandler;
+        return this;
+    }
+
+    @Override
+    public void run() {
+        boolean anyTriggers = false;
+        for (final Event event : events) {
+            if (triggers.containsKey(event.name)) {
+                anyTriggers = true;
+                break;
+            }
+        }
+
+        if (!anyTriggers) {
+            // no handlers can be run, so only the completions are needed
+            final EventActionEvaluateCompleteHandler handler = evaluateCompleteHandler;
+            if (handler != null) {
+                AsyncTask.SERIAL_EXECUTOR.execute(() -> {
+                    for (final Event event : events) {
+                        handler.onComplete(event);
+                    }
+                });
+            }
+            return;
+        }
+
+        final List<EventAction> actions = new ArrayList<>(events.size());
+        for (int i = 0; i < events.size(); i++) {
+            final Event event = events.get(i);
+            final SortedSet<EventTrigger> eventTriggers = triggers.get(event.name);
+
+            final EventAction action = new EventAction(
+                    event,
+                    (eventTriggers != null) ? eventTriggers : NO_TRIGGERS,
+                    store,
+                    settings,
+                    (uuids != null) ? uuids.get(i) : null);
+            for (final EventActionHandler<?> handler : handlers) {
+                action.add(handler);
+            }
+            action.addEvaluateCompleteHandler(evaluateCompleteHandler);
+            actions.add(action);
+        }
+
+        new EvaluateAllAsyncTask(actions).execute();
+    }
+
+    private static final class EvaluateAllAsyncTask
+            extends AsyncTask<Void, Void, Void> {
+
+        private final List<EventAction> actions;
+
+        EvaluateAllAsyncTask(List<EventAction> actions) {
+            this.actions = actions;
+        }
+
+        @Override
+        protected Void doInBackground(Void... voids) {
+            for (final EventAction action : actions) {
+                action.evaluate();
+            }
+            return null;
+        }
+    }
+}
@@ -21,7 +21,7 @@ import android.content.Context;
 import android.os.Bundle;
 import androidx.annotation.Nullable;
 import android.text.TextUtils;
-import android.util.Log;
+import com.deltadna.android.sdk.util.Log;
 
 import com.deltadna.android.sdk.consent.ConsentTracker;
 import com.deltadna.android.sdk.consent.GeoIpNetworkClient;
@@ -33,8 +33,15 @@ import com.deltadna.android.sdk.helpers.Preconditions;
 import com.deltadna.android.sdk.helpers.Settings;
 import com.deltadna.android.sdk.listeners.EngageListener;
 import com.deltadna.android.sdk.listeners.EventListener;
+import com.deltadna.android.sdk.listeners.MetricsListener;
+import com.deltadna.android.sdk.listeners.TraceListener;
 import com.deltadna.android.sdk.listeners.internal.IEventListener;
+import com.deltadna.android.sdk.metrics.EventProfile;
+import com.deltadna.android.sdk.metrics.EventProfiler;
+import com.deltadna.android.sdk.metrics.Metrics;
 import com.deltadna.android.sdk.net.NetworkManager;
+import com.deltadna.android.sdk.tracing.SystraceListener;
+import com.deltadna.android.sdk.tracing.Tracing;
 
 import java.text.SimpleDateFormat;
 import java.util.*;
@@ -165,6 +172,9 @@ public abstract class DDNA {
             Set<IEventListener> iEventListeners) {
         
         this.settings = settings;
+        Log.setLevel(settings.debugMode() ? Log.VERBOSE : Log.systemLevel());
+        if (settings.isSystraceEnabled()) Tracing.register(SystraceListener.INSTANCE);
+        EventProfiler.setEnabled(settings.isEventProfilingEnabled());
         this.platform = (platform == null) ? ClientInfo.platform() : platform;
         this.eventListeners = eventListeners;
         this.iEventListeners = iEventListeners;
@@ -245,6 +255,34 @@ public abstract class DDNA {
      */
     public abstract EventAction recordEvent(Event event);
     
+    /**
+     * Records a number of events with Collect, such as the events for the
+     * end of a level, which are written to storage together and so are
+     * cheaper than recording each of them with {@link #recordEvent(Event)}.
+     *
+     * @param events the events
+     *
+     * @return the {@link EventAction} for all of the events, which
+     *         evaluates the handlers against each of them in order
+     *
+     * @throws IllegalArgumentException if the {@code events} or any of
+     *                                  them are null
+     */
+    public abstract EventAction recordEvents(Iterable<? extends Event> events);
+    
+    /**
+     * Gets an aggregator for events with a name, which are counted in
+     * memory and recorded with Collect as one summary event for each set
+     * of dimensions at the end of every aggregation window.
+     *
+     * @param name the name of the event
+     *
+     * @return the {@link EventAggregator} for this name
+     *
+     * @throws IllegalArgumentException if the {@code name} is null or empty
+     */
+    public abstract EventAggregator aggregate(String name);
+    
     /**
      * Record when a push notification has been opened.
      *
@@ -538,6 +576,75 @@ public abstract class DDNA {
         return this;
     }
     
+    /**
+     * Registers a {@link MetricsListener} for receiving the metrics which
+     * the SDK keeps about itself. Metrics are only recorded while a
+     * listener is registered.
+     *
+     * @param listener the listener to register
+     *
+     * @return this {@link DDNA} instance
+     */
+    public final DDNA register(MetricsListener listener) {
+        Metrics.register(listener);
+        return this;
+    }
+    
+    /**
+     * Unregisters a {@link MetricsListener} so that it will no longer
+     * receive metrics.
+     *
+     * @param listener the listener to unregister
+     *
+     * @return this {@link DDNA} instance
+     */
+    public final DDNA unregister(MetricsListener listener) {
+        Metrics.unregister(listener);
+        return this;
+    }
+    
+    /**
+     * Registers a {@link TraceListener} for receiving spans around the work
+     * done by the SDK, such as a
+     * {@link com.deltadna.android.sdk.tracing.TraceEventExporter}. Spans
+     * are only created while a listener is registered.
+     *
+     * @param listener the listener to register
+     *
+     * @return this {@link DDNA} instance
+     */
+    public final DDNA register(TraceListener listener) {
+        Tracing.register(listener);
+        return this;
+    }
+    
+    /**
+     * Unregisters a {@link TraceListener} so that it will no longer
+     * receive spans.
+     *
+     * @param listener the listener to unregister
+     *
+     * @return this {@link DDNA} instance
+     */
+    public final DDNA unregister(TraceListener listener) {
+        Tracing.unregister(listener);
+        return this;
+    }
+    
+    /**
+     * Gets the statistics kept about the events recorded under each event
+     * name, if enabled with
+     * {@link Settings#setEventProfilingEnabled(boolean)}.
+     *
+     * @param count how many of the event names to return
+     *
+     * @return the statistics of the event names which took up the most
+     *         bytes, in descending order
+     */
+    public final List<EventProfile> getEventProfiles(int count) {
+        return EventProfiler.top(count);
+    }
+    
     public final DDNA register(IEventListener listener) {
         iEventListeners.add(listener);
         return this;
@@ -92,6 +92,16 @@ class DDNADelegate extends DDNA {
         return getDelegate().recordEvent(event);
     }
     
+    @Override
+    public EventAction recordEvents(Iterable<? extends Event> events) {
+        return getDelegate().recordEvents(events);
+    }
+    
+    @Override
+    public EventAggregator aggregate(String name) {
+        return getDelegate().aggregate(name);
+    }
+    
     @Override
     public EventAction recordNotificationOpened(boolean launch, Bundle payload) {
         return getDelegate().recordNotificationOpened(launch, payload);
@@ -19,11 +19,11 @@ package com.deltadna.android.sdk;
 import android.app.Application;
 import android.content.Context;
 import android.content.SharedPreferences;
-import android.content.res.Resources;
+import android.database.sqlite.SQLiteException;
 import android.os.Bundle;
 import androidx.annotation.Nullable;
 import android.text.TextUtils;
-import android.util.Log;
+import com.deltadna.android.sdk.util.Log;
 
 import com.deltadna.android.sdk.exceptions.NotStartedException;
 import com.deltadna.android.sdk.exceptions.SessionConfigurationException;
@@ -34,21 +34,22 @@ import com.deltadna.android.sdk.helpers.Settings;
 import com.deltadna.android.sdk.listeners.EngageListener;
 import com.deltadna.android.sdk.listeners.EventListener;
 import com.deltadna.android.sdk.listeners.internal.IEventListener;
+import com.deltadna.android.sdk.metrics.Metrics;
 import com.deltadna.android.sdk.net.Response;
-import org.json.JSONArray;
+import com.deltadna.android.sdk.tracing.Span;
+import com.deltadna.android.sdk.tracing.Tracing;
 import org.json.JSONException;
 import org.json.JSONObject;
-import org.xmlpull.v1.XmlPullParser;
-import org.xmlpull.v1.XmlPullParserException;
-import org.xmlpull.v1.XmlPullParserFactory;
 
 import java.io.File;
-import java.io.IOException;
-import java.io.InputStreamReader;
 import java.util.*;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
 /**
  * {@inheritDoc}
@@ -70,22 +71,38 @@ final class DDNAImpl extends DDNA {
     private final EngageStore engageStore;
     private final ActionStore actionStore;
     private final ImageMessageStore imageMessageStore;
+    private final SessionConfigurationStore sessionConfigurationStore;
+    private final EventPolicies eventPolicies;
+    private final EventAggregations aggregations;
+    private final MetricsReporter metricsReporter;
+    private final SdkHealthEvents healthEvents;
     
     private final SessionRefreshHandler sessionHandler;
     private final EventHandler eventHandler;
     
-    private final Map<String, Integer> iso4217;
     private final EventTriggeredCampaignMetricStore etcMetricStore;
 
-    private boolean started;
+    private volatile boolean started;
     private boolean sentDefaultEvents = false;
     
-    private Set<String> whitelistDps = Collections.emptySet();
-    private Set<String> whitelistEvents = Collections.emptySet();
-    private Set<String> cacheImages = Collections.emptySet();
-    private Map<String, SortedSet<EventTrigger>> eventTriggers = Collections.emptyMap();
+    /**
+     * Replaced as a whole while holding the lock, and read without it.
+     */
+    private volatile SessionConfiguration sessionConfiguration =
+            SessionConfiguration.EMPTY;
+    /**
+     * Bumped while holding the lock whenever the session configuration
+     * gets cleared, so that a restore which started before can tell it is
+     * for a previous user.
+     */
+    private int sessionConfigurationGeneration;
+    
+    /**
+     * Completes once the storage has been prepared in the background.
+     */
+    private final Future<?> initialisation;
     private static final ScheduledExecutorService futureWorker = Executors.newSingleThreadScheduledExecutor();
-    private int failedSessionConfigurations = 0;
+    private final AtomicInteger failedSessionConfigurations = new AtomicInteger();
     
     @Override
     public DDNA startSdk() {
@@ -93,7 +110,7 @@ final class DDNAImpl extends DDNA {
     }
     
     @Override
-    public DDNA startSdk(@Nullable String userId) {
+    public synchronized DDNA startSdk(@Nullable String userId) {
         Log.d(TAG, "Starting SDK");
 
         if (!consentTracker.hasCheckedForConsent()) {
@@ -110,6 +127,11 @@ final class DDNAImpl extends DDNA {
                 Log.d(TAG, "Clearing engage and action store on user change");
                 engageStore.clear();
                 actionStore.clear();
+                clearSessionConfiguration();
+            }
+            if (    settings.isPrewarmEngageConnection()
+                    && consentTracker.allConsentsAreMet()) {
+                network.prewarmEngage();
             }
             newSession(true);
             
@@ -122,7 +144,10 @@ final class DDNAImpl extends DDNA {
                         settings.backgroundEventUploadStartDelaySeconds(),
                         settings.backgroundEventUploadRepeatRateSeconds());
             }
-            failedSessionConfigurations = 0;
+            aggregations.start(futureWorker);
+            metricsReporter.start(futureWorker);
+            if (settings.isSdkHealthEventsEnabled()) Metrics.register(healthEvents);
+            failedSessionConfigurations.set(0);
             Log.d(TAG, "SDK started");
             performOn(iEventListeners, IEventListener::onStarted);
         }
@@ -131,12 +156,15 @@ final class DDNAImpl extends DDNA {
     }
     
     @Override
-    public DDNA stopSdk() {
+    public synchronized DDNA stopSdk() {
         Log.d(TAG, "Stopping SDK");
         
         if (!started) {
             Log.w(TAG, "SDK has not been started");
         } else {
+            aggregations.stop();
+            metricsReporter.stop();
+            Metrics.unregister(healthEvents);
             recordEvent("gameEnded").run();
             
             sessionHandler.unregister();
@@ -167,26 +195,143 @@ final class DDNAImpl extends DDNA {
     @Override
     public EventAction recordEvent(Event event) {
         Preconditions.checkArg(event != null, "event cannot be null");
-        if (!whitelistEvents.isEmpty() && !whitelistEvents.contains(event.name)) {
-            Log.d(TAG, "Event " + event.name + " is not whitelisted, ignoring");
+        final SessionConfiguration configuration = sessionConfiguration;
+        if (!configuration.isWhitelisted(event)) {
+            Log.d(TAG, "Event %s is not whitelisted, ignoring", event.name);
             return EventAction.EMPTY;
         }
         
-        Log.v(TAG, "Recording event " + event.name);
+        Log.v(TAG, "Recording event %s", event.name);
+        if (!started) {
+            Log.w(TAG, "SDK has not been started");
+        }
+        
+        final Span span = Tracing.begin("recordEvent").arg("eventName", event.name);
+        try {
+            final EventPolicy policy = eventPolicies.get(event.name);
+            if (!eventPolicies.admit(
+                    event.name,
+                    policy,
+                    eventStore.getPressure())) {
+                return EventAction.EMPTY;
+            }
+            
+            final String uuid = handleEvent(
+                    event,
+                    policy.getPriority() == EventPolicy.Priority.CRITICAL);
+            span.correlate(uuid);
+            
+            return new EventAction(
+                    event,
+                    configuration.triggers(event.name),
+                    actionStore,
+                    settings,
+                    Tracing.isEnabled() ? uuid : null);
+        } finally {
+            span.close();
+        }
+    }
+    
+    @Override
+    public EventAggregator aggregate(String name) {
+        Preconditions.checkString(name, "name cannot be null or empty");
+        
+        return aggregations.get(name);
+    }
+    
+    @Override
+    public EventAction recordEvents(Iterable<? extends Event> events) {
+        Preconditions.checkArg(events != null, "events cannot be null");
         if (!started) {
             Log.w(TAG, "SDK has not been started");
         }
         
+        final Span span = Tracing.begin("recordEvents");
+        try {
+            final SessionConfiguration configuration = sessionConfiguration;
+            final float pressure = eventStore.getPressure();
+            final String timestamp = getCurrentTimestamp();
+            final String userId = getUserId();
+            
+            final List<Event> recorded = new ArrayList<>();
+            final List<String> uuids = Tracing.isEnabled() ? new ArrayList<>() : null;
+            final List<JSONObject> batch = new ArrayList<>();
+            final List<JSONObject> criticalBatch = new ArrayList<>();
+            for (final Event event : events) {
+                Preconditions.checkArg(event != null, "event cannot be null");
+                if (!configuration.isWhitelisted(event)) {
+                    Log.d(TAG, "Event %s is not whitelisted, ignoring", event.name);
+                    continue;
+                }
+                
+                final EventPolicy policy = eventPolicies.get(event.name);
+                if (!eventPolicies.admit(event.name, policy, pressure)) {
+                    continue;
+                }
+                
+                final String uuid = UUID.randomUUID().toString();
+                final JSONObject json = toJson(event, uuid, timestamp, userId);
+                if (policy.getPriority() == EventPolicy.Priority.CRITICAL) {
+                    criticalBatch.add(json);
+                } else {
+                    batch.add(json);
+                }
+                span.correlate(uuid);
+                
+                recorded.add(event);
+                if (uuids != null) uuids.add(uuid);
+            }
+            
+            Log.v(TAG, "Recording %d events", recorded.size());
+            span.arg("events", recorded.size());
+            if (!criticalBatch.isEmpty()) eventHandler.handleEvents(criticalBatch, true);
+            if (!batch.isEmpty()) eventHandler.handleEvents(batch, false);
+            if (recorded.isEmpty()) return EventAction.EMPTY;
+            
+            return new CompositeEventAction(
+                    recorded,
+                    uuids,
+                    configuration.eventTriggers,
+                    actionStore,
+                    settings);
+        } finally {
+            span.close();
+        }
+    }
+    
+    /**
+     * @return the {@code eventUUID} of the event
+     */
+    private String handleEvent(Event event, boolean critical) {
+        final String uuid = UUID.randomUUID().toString();
+        eventHandler.handleEvent(
+                toJson(event, uuid, getCurrentTimestamp(), getUserId()),
+                critical);
+        return uuid;
+    }
+    
+    private JSONObject toJson(
+            Event event,
+            String uuid,
+            String timestamp,
+            String userId) {
+        
         final JSONObject jsonEvent = new JSONObject();
         try {
             jsonEvent.put("eventName", event.name);
-            jsonEvent.put("eventTimestamp", getCurrentTimestamp());
-            jsonEvent.put("eventUUID", UUID.randomUUID().toString());
+            jsonEvent.put("eventTimestamp", timestamp);
+            jsonEvent.put("eventUUID", uuid);
             jsonEvent.put("sessionID", sessionId);
-            jsonEvent.put("userID", getUserId());
+            jsonEvent.put("userID", userId);
             
-            JSONObject params =
-                    new JSONObject(event.params.toJson().toString());
+            // shallow copy, as the event gets serialised before returning
+            final JSONObject source = event.params.toJson();
+            final JSONObject params = new JSONObject();
+            final Iterator<String> keys = source.keys();
+            while (keys.hasNext()) {
+                final String key = keys.next();
+                params.put(key, source.get(key));
+            }
             params.put("platform", platform);
             params.put("sdkVersion", SDK_VERSION);
             
@@ -196,15 +341,7 @@ final class DDNAImpl extends DDNA {
             throw new IllegalArgumentException(e);
         }
         
-        eventHandler.handleEvent(jsonEvent);
-        
-        return new EventAction(
-                event,
-                eventTriggers.containsKey(event.name)
-                        ? eventTriggers.get(event.name)
-                        : Collections.unmodifiableSortedSet(new TreeSet<>()),
-                actionStore,
-                settings);
+        return jsonEvent;
     }
     
     @Override
@@ -265,8 +402,7 @@ final class DDNAImpl extends DDNA {
             Log.w(TAG, "SDK has not been started, aborting engagement " + engagement);
             listener.onError(new NotStartedException());
             return this;
-        } else if (!whitelistDps.isEmpty()
-                && !whitelistDps.contains(engagement.getDecisionPointAndFlavour())) {
+        } else if (!sessionConfiguration.isWhitelisted(engagement)) {
             Log.d(TAG, String.format(
                     Locale.ENGLISH,
                     "Decision point %s is not whitelisted",
@@ -276,7 +412,7 @@ final class DDNAImpl extends DDNA {
             return this;
         }
         
-        Log.v(TAG, "Requesting engagement " + engagement);
+        if (Log.PAYLOADS) Log.v(TAG, "Requesting engagement %s", engagement);
         eventHandler.handleEngagement(
                 engagement,
                 listener,
@@ -333,7 +469,7 @@ final class DDNAImpl extends DDNA {
                                 l -> l.onImageCachingFailed(reason));
                     }
                 },
-                cacheImages.toArray(new String[0]));
+                sessionConfiguration.imageCache.toArray(new String[0]));
         return this;
     }
 
@@ -393,6 +529,7 @@ final class DDNAImpl extends DDNA {
         actionStore.clear();
         imageMessageStore.clear();
         etcMetricStore.clear();
+        clearSessionConfiguration();
         
         return this;
     }
@@ -414,7 +551,7 @@ final class DDNAImpl extends DDNA {
     
     @Override
     Map<String, Integer> getIso4217() {
-        return iso4217;
+        return Iso4217Map.INSTANCE;
     }
     
     /**
@@ -469,18 +606,39 @@ final class DDNAImpl extends DDNA {
         this.sentDefaultEvents = true;
     }
 
-    private void handleEnvironmentChanges(Application application, String environment) {
+    /**
+     * Forgets the session configuration of the previous user, so that it
+     * does not get applied to a different one.
+     */
+    private synchronized void clearSessionConfiguration() {
+        sessionConfigurationStore.clear();
+        
+        sessionConfiguration = SessionConfiguration.EMPTY;
+        sessionConfigurationGeneration++;
+        eventPolicies.setRemote(null);
+    }
+    
+    synchronized int getSessionConfigurationGeneration() {
+        return sessionConfigurationGeneration;
+    }
+    
+    /**
+     * @return whether the environment has changed since the previous run
+     */
+    private boolean handleEnvironmentChanges(Application application, String environment) {
+        boolean changed = false;
         SharedPreferences preferences = application.getSharedPreferences(DDNA_SHARED_PREFERENCES_KEY, Context.MODE_PRIVATE);
         if (preferences.contains(PREVIOUS_ENVIRONMENT_PREFERENCES_KEY)) {
             String previousEnv = preferences.getString(PREVIOUS_ENVIRONMENT_PREFERENCES_KEY, "");
             if (previousEnv != null && !previousEnv.equals(environment)) {
                 Log.d(TAG, "Detected an environment configuration change from " + previousEnv + " to " + environment + ", clearing out cached events from previous environment.");
-                eventStore.clear();
+                changed = true;
             }
         }
         preferences.edit()
                 .putString(PREVIOUS_ENVIRONMENT_PREFERENCES_KEY, environment)
                 .commit();
+        return changed;
     }
     
     DDNAImpl(
@@ -540,6 +698,13 @@ final class DDNAImpl extends DDNA {
                 settings);
 
         etcMetricStore = new EventTriggeredCampaignMetricStore(database);
+        eventPolicies = new EventPolicies(settings);
+        aggregations = new EventAggregations(settings, this::recordEvent);
+        metricsReporter = new MetricsReporter(settings);
+        healthEvents = new SdkHealthEvents(this::recordEvent);
+        sessionConfigurationStore = new SessionConfigurationStore(
+                Location.INTERNAL.storage(application, "session" + File.separator),
+                settings);
         
         sessionHandler = new SessionRefreshHandler(
                 application,
@@ -550,83 +715,127 @@ final class DDNAImpl extends DDNA {
                 });
         eventHandler = new EventHandler(eventStore, engageStore, network);
 
-        handleEnvironmentChanges(application, environmentKey);
+        final boolean userChanged = setUserId(userId);
         
-        final Map<String, Integer> temp = new HashMap<>();
-        try {
-            final XmlPullParserFactory factory = XmlPullParserFactory.newInstance();
-            final XmlPullParser xpp = factory.newPullParser();
-            xpp.setInput(new InputStreamReader(
-                    application.getResources().openRawResource(R.raw.iso_4217)));
+        // only what is needed for recording events happens on the calling thread
+        final ExecutorService initialiser = Executors.newSingleThreadExecutor(
+                r -> new Thread(r, DDNAImpl.class.getSimpleName() + " initialiser"));
+        initialisation = initialiser.submit(() -> {
+            Log.v(TAG, "Preparing storage");
+            
+            try {
+                database.getWritableDatabase();
+            } catch (SQLiteException e) {
+                Log.w(TAG, "Failed opening database", e);
+            }
             
-            boolean expectingCode = false;
-            boolean expectingValue = false;
-            String pulledCode = null;
-            String pulledValue = null;
+            // cleared before any of the events recorded meanwhile get written
+            eventStore.prepare(handleEnvironmentChanges(application, environmentKey));
+            engageStore.prepare();
+            imageMessageStore.prepare();
             
-            int eventType;
-            while ((eventType = xpp.next()) != XmlPullParser.END_DOCUMENT) {
-                switch (eventType) {
-                    case XmlPullParser.START_TAG:
-                        switch (xpp.getName()) {
-                            case "Ccy":
-                                expectingCode = true;
-                                break;
-                            
-                            case "CcyMnrUnts":
-                                expectingValue = true;
-                                break;
-                        }
-                        break;
-                    
-                    case XmlPullParser.TEXT:
-                        if (expectingCode) {
-                            pulledCode = xpp.getText();
-                        } else if (expectingValue) {
-                            pulledValue = xpp.getText();
-                        }
-                        break;
-                    
-                    case XmlPullParser.END_TAG:
-                        switch (xpp.getName()) {
-                            case "Ccy":
-                                expectingCode = false;
-                                break;
-                            
-                            case "CcyMnrUnts":
-                                expectingValue = false;
-                                break;
-                            
-                            case "CcyNtry":
-                                if (    !TextUtils.isEmpty(pulledCode)
-                                        && !TextUtils.isEmpty(pulledValue)) {
-                                    int value;
-                                    try {
-                                        value = Integer.parseInt(pulledValue);
-                                    } catch (NumberFormatException ignored) {
-                                        value = 0;
-                                    }
-                                    
-                                    temp.put(pulledCode, value);
-                                }
-                                
-                                expectingCode = false;
-                                expectingValue = false;
-                                pulledCode = null;
-                                pulledValue = null;
-                                break;
-                        }
+            // captured before reading, as the user may change meanwhile
+            final int generation = getSessionConfigurationGeneration();
+            if (userChanged) {
+                clearStoredSessionConfiguration(generation);
+            } else {
+                final SessionConfigurationStore.Snapshot snapshot =
+                        sessionConfigurationStore.get();
+                if (snapshot != null) {
+                    restoreSessionConfiguration(snapshot, generation);
                 }
             }
-        } catch (Resources.NotFoundException e) {
-            Log.w(TAG, "Failed to find ISO 4217 resource", e);
-        } catch (XmlPullParserException | IOException e) {
-            Log.w(TAG, "Failed parsing ISO 4217 resource", e);
-        } finally {
-            iso4217 = Collections.unmodifiableMap(temp);
+            
+            Log.v(TAG, "Prepared storage");
+        });
+        initialiser.shutdown();
+    }
+    
+    /**
+     * Blocks until the storage has been prepared in the background.
+     */
+    void awaitInitialisation() throws InterruptedException {
+        try {
+            initialisation.get();
+        } catch (ExecutionException e) {
+            Log.w(TAG, "Failed preparing storage", e.getCause());
+        }
+    }
+    
+    /**
+     * Applies the compiled state of a session configuration, either freshly
+     * retrieved or restored from the {@link SessionConfigurationStore}.
+     * A restored configuration is ignored if a newer one has already been
+     * applied.
+     */
+    synchronized void applySessionConfiguration(
+            SessionConfigurationStore.Snapshot snapshot,
+            boolean restored) {
+        
+        final SessionConfiguration current = sessionConfiguration;
+        if (restored && current.retrieved) return;
+        
+        Map<String, SortedSet<EventTrigger>> buckets = null;
+        if (snapshot.triggers != null) {
+            // triggers are already bucketed based on event names
+            buckets = new HashMap<>(snapshot.triggers.size());
+            for (final Map.Entry<String, List<EventTrigger.Definition>> entry
+                    : snapshot.triggers.entrySet()) {
+                final SortedSet<EventTrigger> set = new TreeSet<>();
+                for (final EventTrigger.Definition definition : entry.getValue()) {
+                    set.add(new EventTrigger(this, definition, etcMetricStore));
+                }
+                
+                // make the collections read-only
+                buckets.put(entry.getKey(), Collections.unmodifiableSortedSet(set));
+            }
+            buckets = Collections.unmodifiableMap(buckets);
+        }
+        
+        sessionConfiguration = current.with(
+                !restored,
+                snapshot.dpWhitelist,
+                snapshot.eventsWhitelist,
+                snapshot.imageCache,
+                buckets);
+        
+        if (snapshot.eventPolicies != null) {
+            try {
+                eventPolicies.setRemote(new JSONObject(snapshot.eventPolicies));
+            } catch (JSONException e) {
+                Log.w(TAG, "Failed deserialising event policies", e);
+            }
+        }
+    }
+    
+    /**
+     * Clears the stored session configuration of the previous user, unless
+     * one has been retrieved for the current user in the meantime.
+     */
+    private synchronized void clearStoredSessionConfiguration(int generation) {
+        // a retrieved configuration gets stored after being applied
+        if (    generation == sessionConfigurationGeneration
+                && !sessionConfiguration.retrieved) {
+            sessionConfigurationStore.clear();
         }
+    }
+    
+    /**
+     * Restores a session configuration read from the
+     * {@link SessionConfigurationStore}, unless it has been cleared since
+     * {@code generation} was read due to a change of user.
+     */
+    synchronized void restoreSessionConfiguration(
+            SessionConfigurationStore.Snapshot snapshot,
+            int generation) {
         
-        setUserId(userId);
+        if (generation != sessionConfigurationGeneration) {
+            Log.d(TAG, "Not restoring session configuration of previous user");
+            return;
+        }
+        
+        Log.d(TAG, "Restoring previous session configuration");
+        applySessionConfiguration(snapshot, true);
     }
     
     private final class SessionConfigCallback implements EngageListener<Engagement> {
@@ -638,77 +847,14 @@ final class DDNAImpl extends DDNA {
             if (engagement.isSuccessful()) {
                 Log.v(TAG, "Retrieved session configuration");
                 
-                final JSONArray dpWhitelist = Objects.extractArray(
-                        engagement.getJson(),
-                        "parameters",
-                        "dpWhitelist");
-                if (dpWhitelist != null) {
-                    final Set<String> toBeWhitelisted =
-                            new HashSet<>(dpWhitelist.length());
-                    for (int i = 0; i < dpWhitelist.length(); i++) {
-                        try {
-                            toBeWhitelisted.add(dpWhitelist.getString(i));
-                        } catch (JSONException e) {
-                            Log.w(  TAG,
-                                    "Failed deserialising decision point whitelist",
-                                    e);
-                        }
-                    }
-                    
-                    whitelistDps = Collections.unmodifiableSet(toBeWhitelisted);
-                }
-                
-                final JSONArray eventsWhitelist = Objects.extractArray(
-                        engagement.getJson(),
-                        "parameters",
-                        "eventsWhitelist");
-                if (eventsWhitelist != null) {
-                    final Set<String> toBeWhitelisted =
-                            new HashSet<>(eventsWhitelist.length());
-                    for (int i = 0; i < eventsWhitelist.length(); i++) {
-                        try {
-                            toBeWhitelisted.add(eventsWhitelist.getString(i));
-                        } catch (JSONException e) {
-                            Log.w(  TAG,
-                                    "Failed deserialising event whitelist",
-                                    e);
-                        }
-                    }
-                    
-                    whitelistEvents = Collections.unmodifiableSet(toBeWhitelisted);
-                }
+                final SessionConfigurationStore.Snapshot snapshot =
+                        SessionConfigurationStore.Snapshot.from(engagement.getJson());
+                applySessionConfiguration(snapshot, false);
                 
-                final JSONArray triggers = Objects.extractArray(
-                        engagement.getJson(),
-                        "parameters",
-                        "triggers");
-                if (triggers != null) {
-                    final List<EventTrigger> toBeSaved = new ArrayList<>(triggers.length());
-                    for (int i = 0; i < triggers.length(); i++) {
-                        try {
-                            toBeSaved.add(new EventTrigger(
-                                    DDNAImpl.this,
-                                    i,
-                                    triggers.getJSONObject(i) , etcMetricStore));
-
-                        } catch (JSONException e) {
-                            Log.w(TAG, "Failed deserialising event trigger", e);
-                        }
-                    }
-                    
-                    // put the triggers into buckets based on event names
-                    eventTriggers = new HashMap<>();
-                    for (final EventTrigger trigger : toBeSaved) {
-                        if (eventTriggers.containsKey(trigger.getEventName())) {
-                            eventTriggers.get(trigger.getEventName()).add(trigger);
-                        } else {
-                            final SortedSet<EventTrigger> set = new TreeSet<>();
-                            set.add(trigger);
-                            
-                            eventTriggers.put(trigger.getEventName(), set);
-                        }
-
-                        // save persistent actions
+                // save persistent actions
+                for (final SortedSet<EventTrigger> triggers
+                        : sessionConfiguration.eventTriggers.values()) {
+                    for (final EventTrigger trigger : triggers) {
                         final JSONObject parameters = Objects.extract(
                                 trigger.getResponse(), "parameters");
                         if (    parameters != null
@@ -717,32 +863,13 @@ final class DDNAImpl extends DDNA {
                             actionStore.put(trigger, parameters);
                         }
                     }
-                    // make the collections read-only
-                    for (final String key : eventTriggers.keySet()) {
-                        eventTriggers.put(
-                                key,
-                                Collections.unmodifiableSortedSet(eventTriggers.get(key)));
-                    }
-                    DDNAImpl.this.eventTriggers =
-                            Collections.unmodifiableMap(eventTriggers);
                 }
                 
-                final JSONArray imageCache = Objects.extractArray(
-                        engagement.getJson(),
-                        "parameters",
-                        "imageCache");
-                if (imageCache != null) {
-                    final Set<String> toBeCached =
-                            new HashSet<>(imageCache.length());
-                    for (int i = 0; i < imageCache.length(); i++) {
-                        try {
-                            toBeCached.add(imageCache.getString(i));
-                        } catch (JSONException e) {
-                            Log.w(TAG, "Failed deserialising session configuration", e);
-                        }
-                    }
-                    
-                    cacheImages = Collections.unmodifiableSet(toBeCached);
+                if (!engagement.isCached()) {
+                    futureWorker.execute(() -> sessionConfigurationStore.put(snapshot));
+                }
+                
+                if (snapshot.imageCache != null) {
                     downloadImageAssets();
                 }
                 
@@ -772,13 +899,13 @@ final class DDNAImpl extends DDNA {
         public void onError(Throwable t) {
             Log.w(TAG, "Failed to retrieve session configuration", t);
             performOn(eventListeners, it -> it.onSessionConfigurationFailed(t));
-            if ( failedSessionConfigurations < settings.getHttpRequestConfigMaxRetries()){
-                int attempts = failedSessionConfigurations + 1;
+            final int failed = failedSessionConfigurations.getAndIncrement();
+            if ( failed < settings.getHttpRequestConfigMaxRetries()){
+                int attempts = failed + 1;
                 Log.w(TAG, "Session Failed : Retry Attempt " + attempts +  " of " + settings.getHttpRequestConfigMaxRetries());
-                int backoffTime =  (int) Math.pow(2, failedSessionConfigurations) * settings.getHttpRequestConfigRetryDelayFactor();
+                int backoffTime =  (int) Math.pow(2, failed) * settings.getHttpRequestConfigRetryDelayFactor();
                 Log.w(TAG, "Retrying session configuration request in " + backoffTime + " seconds");
                 Runnable task = DDNAImpl.this::requestSessionConfiguration;
-                failedSessionConfigurations++;
                 futureWorker.schedule(task, backoffTime, TimeUnit.SECONDS);
             }
             triggerDefaultEvents();
@@ -22,7 +22,7 @@ import android.os.Handler;
 import android.os.Looper;
 import androidx.annotation.Nullable;
 import android.text.TextUtils;
-import android.util.Log;
+import com.deltadna.android.sdk.util.Log;
 
 import com.deltadna.android.sdk.consent.ConsentTracker;
 import com.deltadna.android.sdk.helpers.Settings;
@@ -115,6 +115,16 @@ final class DDNANonTracking extends DDNA {
         return EventAction.EMPTY;
     }
     
+    @Override
+    public EventAction recordEvents(Iterable<? extends Event> events) {
+        return EventAction.EMPTY;
+    }
+    
+    @Override
+    public EventAggregator aggregate(String name) {
+        return new EventAggregator(name, null);
+    }
+    
     @Override
     public EventAction recordNotificationOpened(boolean launch, Bundle payload) {
         return EventAction.EMPTY;
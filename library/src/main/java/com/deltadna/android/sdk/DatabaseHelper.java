@@ -27,18 +27,19 @@ import android.database.sqlite.SQLiteOpenHelper;
 import android.os.AsyncTask;
 import android.provider.BaseColumns;
 import androidx.annotation.Nullable;
-import android.util.Log;
+import com.deltadna.android.sdk.util.Log;
 import org.json.JSONException;
 import org.json.JSONObject;
 
 import java.io.UnsupportedEncodingException;
 import java.util.Date;
+import java.util.List;
 import java.util.Locale;
 
 final class DatabaseHelper extends SQLiteOpenHelper {
 
     private static final String TAG = BuildConfig.LOG_TAG + ' ' + "DatabaseHelper";
-    private static final short VERSION = 5;
+    private static final short VERSION = 6;
 
     DatabaseHelper(Context context) {
         super(context, "com.deltadna.android.sdk", null, VERSION);
@@ -46,13 +47,19 @@ final class DatabaseHelper extends SQLiteOpenHelper {
 
     @Override
     public void onCreate(SQLiteDatabase db) throws SQLException {
+        db.execSQL("CREATE TABLE " + EventHeaders.TABLE + "("
+                + EventHeaders.Column.ID + " INTEGER PRIMARY KEY AUTOINCREMENT, "
+                + EventHeaders.Column.CONTENT + " TEXT NOT NULL UNIQUE, "
+                + EventHeaders.Column.SIZE + " INTEGER NOT NULL)");
         db.execSQL("CREATE TABLE " + Events.TABLE + "("
                 + Events.Column.ID + " INTEGER PRIMARY KEY AUTOINCREMENT, "
                 + Events.Column.TIME + " INTEGER NOT NULL, "
                 + Events.Column.LOCATION + " TEXT NOT NULL, "
                 + Events.Column.NAME + " TEXT NOT NULL UNIQUE, "
                 + Events.Column.HASH + " TEXT, "
-                + Events.Column.SIZE + " INTEGER NOT NULL)");
+                + Events.Column.SIZE + " INTEGER NOT NULL, "
+                + Events.Column.HEADER + " INTEGER REFERENCES "
+                + EventHeaders.TABLE + '(' + EventHeaders.Column.ID + "))");
         db.execSQL("CREATE TABLE " + Engagements.TABLE + "("
                 + Engagements.Column.ID + " INTEGER PRIMARY KEY AUTOINCREMENT, "
                 + Engagements.Column.DECISION_POINT + " TEXT NOT NULL, "
@@ -138,7 +145,17 @@ final class DatabaseHelper extends SQLiteOpenHelper {
                             + ETCExecutions.Column.EXECUTION_COUNT + " INTEGER NOT NULL )");
                     db.execSQL("CREATE INDEX " + ETCExecutions.TABLE + '_' + ETCExecutions.Column.VARIANT_ID + "_idx "
                             + "ON " + ETCExecutions.TABLE + '(' + ETCExecutions.Column.VARIANT_ID + ')');
+                    break;
 
+                case 6:
+                    db.execSQL("CREATE TABLE " + EventHeaders.TABLE + "("
+                            + EventHeaders.Column.ID + " INTEGER PRIMARY KEY AUTOINCREMENT, "
+                            + EventHeaders.Column.CONTENT + " TEXT NOT NULL UNIQUE, "
+                            + EventHeaders.Column.SIZE + " INTEGER NOT NULL)");
+                    db.execSQL("ALTER TABLE " + Events.TABLE + " ADD COLUMN "
+                            + Events.Column.HEADER + " INTEGER REFERENCES "
+                            + EventHeaders.TABLE + '(' + EventHeaders.Column.ID + ')');
+                    break;
             }
         }
     }
@@ -157,21 +174,30 @@ final class DatabaseHelper extends SQLiteOpenHelper {
         }
     }
 
+    /**
+     * Gets the event rows which fit into a bulk upload, together with the
+     * content of their header, with the size of the header counting towards
+     * the limit.
+     */
     Cursor getEventRows() throws SQLiteException {
         return getReadableDatabase().rawQuery(
                 String.format(
                         Locale.US,
-                        "SELECT e.%s, e.%s, e.%s, e.%s, e.%s, SUM(e1.%s) AS Total "
+                        "SELECT e.%s, e.%s, e.%s, e.%s, e.%s, e.%s, h.%s, SUM(e1.%s + IFNULL(h1.%s, 0)) AS Total "
                                 + "FROM %s e "
+                                + "LEFT JOIN %s h ON h.%s = e.%s "
                                 + "JOIN %s e1 ON e1.%s <= e.%s "
+                                + "LEFT JOIN %s h1 ON h1.%s = e1.%s "
                                 + "GROUP BY e.%s "
-                                + "HAVING SUM(e1.%s) <= %d "
+                                + "HAVING SUM(e1.%s + IFNULL(h1.%s, 0)) <= %d "
                                 + "ORDER BY e.%s ASC;",
-                        Events.Column.ID, Events.Column.TIME, Events.Column.LOCATION, Events.Column.NAME, Events.Column.SIZE, Events.Column.SIZE,
+                        Events.Column.ID, Events.Column.TIME, Events.Column.LOCATION, Events.Column.NAME, Events.Column.HASH, Events.Column.SIZE, EventHeaders.Column.CONTENT, Events.Column.SIZE, EventHeaders.Column.SIZE,
                         Events.TABLE,
+                        EventHeaders.TABLE, EventHeaders.Column.ID, Events.Column.HEADER,
                         Events.TABLE, Events.Column.ID, Events.Column.ID,
+                        EventHeaders.TABLE, EventHeaders.Column.ID, Events.Column.HEADER,
                         Events.Column.ID,
-                        Events.Column.SIZE, EventStore.EVENTS_LIMIT,
+                        Events.Column.SIZE, EventHeaders.Column.SIZE, EventStore.EVENTS_LIMIT,
                         Events.Column.TIME),
                 new String[]{});
     }
@@ -182,15 +208,117 @@ final class DatabaseHelper extends SQLiteOpenHelper {
             String name,
             @Nullable String hash,
             long size) throws SQLiteException {
-        final ContentValues values = new ContentValues(5);
+
+        return (getWritableDatabase().insert(
+                Events.TABLE,
+                null,
+                eventRow(time, location, name, hash, size))
+                != -1);
+    }
+
+    /**
+     * Inserts multiple event rows, created with
+     * {@link #eventRow(long, Location, String, String, long)}, in a single
+     * transaction.
+     *
+     * @return whether each of the rows has been inserted
+     */
+    boolean[] insertEventRows(List<ContentValues> rows) throws SQLiteException {
+        final boolean[] inserted = new boolean[rows.size()];
+        final SQLiteDatabase db = getWritableDatabase();
+
+        db.beginTransaction();
+        try {
+            for (int i = 0; i < rows.size(); i++) {
+                inserted[i] = (db.insert(Events.TABLE, null, rows.get(i)) != -1);
+            }
+            db.setTransactionSuccessful();
+        } finally {
+            db.endTransaction();
+        }
+
+        return inserted;
+    }
+
+    static ContentValues eventRow(
+            long time,
+            Location location,
+            String name,
+            @Nullable String hash,
+            long size) {
+
+        return eventRow(time, location, name, hash, size, null);
+    }
+
+    /**
+     * @param header the id of the header row, or {@code null} if the stored
+     *               event is complete
+     */
+    static ContentValues eventRow(
+            long time,
+            Location location,
+            String name,
+            @Nullable String hash,
+            long size,
+            @Nullable Long header) {
+
+        final ContentValues values = new ContentValues(6);
         values.put(Events.Column.TIME.toString(), time);
         values.put(Events.Column.LOCATION.toString(), location.name());
         values.put(Events.Column.NAME.toString(), name);
         values.put(Events.Column.HASH.toString(), hash);
         values.put(Events.Column.SIZE.toString(), size);
+        values.put(Events.Column.HEADER.toString(), header);
+        return values;
+    }
 
-        return (getWritableDatabase().insert(Events.TABLE, null, values)
-                != -1);
+    /**
+     * Gets the id of the header row for {@code content}, inserting the row
+     * if it does not exist yet.
+     *
+     * @param size the number of bytes the header adds to each event
+     *
+     * @return the id, or {@code -1} if the row could not be inserted
+     */
+    long getOrInsertEventHeader(String content, long size) throws SQLiteException {
+        final SQLiteDatabase db = getWritableDatabase();
+
+        try (Cursor cursor = db.query(
+                EventHeaders.TABLE,
+                new String[] {EventHeaders.Column.ID.toString()},
+                EventHeaders.Column.CONTENT + " = ?",
+                new String[] {content},
+                null,
+                null,
+                null)) {
+            if (cursor.moveToFirst()) {
+                return cursor.getLong(0);
+            }
+        }
+
+        final ContentValues values = new ContentValues(2);
+        values.put(EventHeaders.Column.CONTENT.toString(), content);
+        values.put(EventHeaders.Column.SIZE.toString(), size);
+        return db.insert(EventHeaders.TABLE, null, values);
+    }
+
+    /**
+     * Removes the header rows which are no longer used by any event rows.
+     *
+     * @param keep the id of a header row to keep regardless
+     */
+    void removeUnusedEventHeaders(long keep) throws SQLiteException {
+        getWritableDatabase().delete(
+                EventHeaders.TABLE,
+                String.format(
+                        Locale.US,
+                        "%s != ? AND %s NOT IN (SELECT %s FROM %s WHERE %s IS NOT NULL)",
+                        EventHeaders.Column.ID,
+                        EventHeaders.Column.ID,
+                        Events.Column.HEADER,
+                        Events.TABLE,
+                        Events.Column.HEADER),
+                new String[] {Long.toString(keep)});
     }
 
     boolean removeEventRow(long id) throws SQLiteException {
@@ -203,6 +331,58 @@ final class DatabaseHelper extends SQLiteOpenHelper {
 
     void removeEventRows() throws SQLiteException {
         getWritableDatabase().delete(Events.TABLE, null, null);
+        getWritableDatabase().delete(EventHeaders.TABLE, null, null);
+    }
+
+    /**
+     * Removes multiple event rows in a single transaction.
+     *
+     * @return the number of rows removed
+     */
+    int removeEventRows(List<Long> ids) throws SQLiteException {
+        final SQLiteDatabase db = getWritableDatabase();
+        int removed = 0;
+
+        db.beginTransaction();
+        try {
+            for (final long id : ids) {
+                removed += db.delete(
+                        Events.TABLE,
+                        Events.Column.ID + " = ?",
+                        new String[] {Long.toString(id)});
+            }
+            db.setTransactionSuccessful();
+        } finally {
+            db.endTransaction();
+        }
+
+        return removed;
+    }
+
+    /**
+     * Gets every event row, regardless of the bulk upload limit, with
+     * the rows after {@code afterId} coming first.
+     */
+    Cursor getAllEventRows(long afterId) throws SQLiteException {
+        return getReadableDatabase().query(
+                Events.TABLE,
+                new String[] {
+                        Events.Column.ID.toString(),
+                        Events.Column.LOCATION.toString(),
+                        Events.Column.NAME.toString(),
+                        Events.Column.HASH.toString(),
+                        Events.Column.SIZE.toString(),
+                        Events.Column.HEADER.toString()},
+                null,
+                null,
+                null,
+                null,
+                String.format(
+                        Locale.US,
+                        "%s <= %d, %s ASC",
+                        Events.Column.ID,
+                        afterId,
+                        Events.Column.ID));
     }
 
     Cursor getEngagement(String decisionPoint, String flavour) throws SQLiteException {
@@ -446,7 +626,8 @@ final class DatabaseHelper extends SQLiteOpenHelper {
             NAME,
             LOCATION,
             HASH,
-            SIZE;
+            SIZE,
+            HEADER;
 
             private final String value;
 
@@ -465,6 +646,41 @@ final class DatabaseHelper extends SQLiteOpenHelper {
         }
     }
 
+    /**
+     * Fields which are shared between stored events, such as the user and
+     * session.
+     */
+    static final class EventHeaders {
+
+        static final String TABLE = "EventHeaders";
+
+        enum Column {
+            ID {
+                @Override
+                public String toString() {
+                    return BaseColumns._ID;
+                }
+            },
+            CONTENT,
+            SIZE;
+
+            private final String value;
+
+            Column() {
+                value = name().substring(0, 1).toUpperCase(Locale.ENGLISH)
+                        + name().substring(1).toLowerCase(Locale.ENGLISH);
+            }
+
+            @Override
+            public String toString() {
+                return value;
+            }
+        }
+
+        private EventHeaders() {
+        }
+    }
+
     static final class Engagements {
 
         static final String TABLE = "engagements";
@@ -17,7 +17,7 @@
 package com.deltadna.android.sdk;
 
 import androidx.annotation.Nullable;
-import android.util.Log;
+import com.deltadna.android.sdk.util.Log;
 
 import com.deltadna.android.sdk.listeners.EngageListener;
 
@@ -18,10 +18,13 @@ package com.deltadna.android.sdk;
 
 import android.database.Cursor;
 import androidx.annotation.Nullable;
+import androidx.annotation.WorkerThread;
 import android.util.Base64;
-import android.util.Log;
+import com.deltadna.android.sdk.util.Log;
 
 import com.deltadna.android.sdk.helpers.Settings;
+import com.deltadna.android.sdk.metrics.Counter;
+import com.deltadna.android.sdk.metrics.Metrics;
 
 import org.json.JSONException;
 import org.json.JSONObject;
@@ -41,19 +44,31 @@ final class EngageStore {
             + ' '
             + EngageStore.class.getSimpleName();
     
+    private static final Counter CACHE_HITS = Metrics.counter("engage.cacheHits");
+    private static final Counter CACHE_MISSES = Metrics.counter("engage.cacheMisses");
+    
     private final DatabaseHelper database;
+    private final File path;
     private final Settings settings;
     
     EngageStore(DatabaseHelper database, File path, Settings settings) {
         this.database = database;
+        this.path = path;
         this.settings = settings;
-        
+    }
+    
+    /**
+     * Cleans up after previous versions of the SDK. Expected to be called
+     * once during initialisation.
+     */
+    @WorkerThread
+    void prepare() {
         new CleanUp(path).run();
     }
     
     void put(Engagement engagement) {
         if (engagement.isSuccessful()) {
-            Log.v(TAG, "Inserting " + engagement);
+            if (Log.PAYLOADS) Log.v(TAG, "Inserting %s", engagement);
             
             try {
                 //noinspection ConstantConditions
@@ -88,12 +103,14 @@ final class EngageStore {
                             cursor.getColumnIndex(ID.toString())));
                 } else {
                     try {
-                        return new JSONObject(new String(
+                        final JSONObject response = new JSONObject(new String(
                                 Base64.decode(
                                         cursor.getBlob(
                                                 cursor.getColumnIndex(RESPONSE.toString())),
                                         Base64.DEFAULT),
                                 "UTF-8"));
+                        CACHE_HITS.increment();
+                        return response;
                     } catch (UnsupportedEncodingException | JSONException e) {
                         Log.w(  TAG,
                                 "Failed deserialising engagement response from cache",
@@ -103,6 +120,7 @@ final class EngageStore {
             }
         }
         
+        CACHE_MISSES.increment();
         return null;
     }
     
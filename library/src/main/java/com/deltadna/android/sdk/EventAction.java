@@ -17,10 +17,18 @@
 package com.deltadna.android.sdk;
 
 import android.os.AsyncTask;
+import androidx.annotation.Nullable;
+import androidx.annotation.WorkerThread;
 
 import com.deltadna.android.sdk.helpers.Settings;
+import com.deltadna.android.sdk.metrics.Counter;
+import com.deltadna.android.sdk.metrics.Histogram;
+import com.deltadna.android.sdk.metrics.Metrics;
+import com.deltadna.android.sdk.tracing.Span;
+import com.deltadna.android.sdk.tracing.Tracing;
 
 import java.util.*;
+import java.util.concurrent.TimeUnit;
 
 /**
  * An action associated with an event on which {@link EventActionHandler}s can
@@ -33,9 +41,16 @@ import java.util.*;
  */
 public class EventAction {
 
+    private static final Counter EVALUATED = Metrics.counter("triggers.evaluated");
+    private static final Counter FIRED = Metrics.counter("triggers.fired");
+    private static final Histogram EVALUATION_MICROS = Metrics.histogram("triggers.micros");
+
+    static final SortedSet<EventTrigger> NO_TRIGGERS =
+            Collections.unmodifiableSortedSet(new TreeSet<>());
+
     static final EventAction EMPTY = new EventAction(
             new Event("noop"),
-            Collections.unmodifiableSortedSet(new TreeSet<>()),
+            NO_TRIGGERS,
             null, null) { // null is fine here as it'll never be referenced
 
         @Override
@@ -43,6 +58,13 @@ public class EventAction {
             return this;
         }
 
+        @Override
+        public EventAction addEvaluateCompleteHandler(
+                EventActionEvaluateCompleteHandler evaluateCompleteHandler) {
+            // shared, so it cannot hold on to the handler
+            return this;
+        }
+
         @Override
         public void run() {
         }
@@ -52,16 +74,37 @@ public class EventAction {
     private final SortedSet<EventTrigger> triggers;
     private final ActionStore store;
 
-    private final Set<EventActionHandler> handlers = new LinkedHashSet<>();
+    /**
+     * Only created once a handler gets added, as most actions never have
+     * any.
+     */
+    @Nullable
+    private Set<EventActionHandler> handlers;
     private final Settings settings;
+    /**
+     * The {@code eventUUID} of the recorded event, for tracing.
+     */
+    @Nullable
+    private final String uuid;
 
     private EventActionEvaluateCompleteHandler evaluateCompleteHandler = null;
 
     EventAction(Event event, SortedSet<EventTrigger> triggers, ActionStore store, Settings settings) {
+        this(event, triggers, store, settings, null);
+    }
+
+    EventAction(
+            Event event,
+            SortedSet<EventTrigger> triggers,
+            ActionStore store,
+            Settings settings,
+            @Nullable String uuid) {
+
         this.event = event;
         this.triggers = triggers;
         this.store = store;
         this.settings = settings;
+        this.uuid = uuid;
     }
 
     /**
@@ -71,6 +114,7 @@ public class EventAction {
      * @return this {@link EventAction} instance
      */
     public EventAction add(EventActionHandler<?> handler) {
+        if (handlers == null) handlers = new LinkedHashSet<>();
         handlers.add(handler);
         return this;
     }
@@ -89,28 +133,42 @@ public class EventAction {
     /**
      * Evaluates the registered handlers against the event and triggers
      * associated for the event.
+     * <p>
+     * If there are no triggers for the event then the evaluate complete
+     * handler is the only thing which gets called, still in the background.
      */
     public void run() {
-        new EvaluateTriggersAsyncTask().execute();
+        if (triggers.isEmpty()) {
+            // no handlers can be run, so only the completion is needed
+            final EventActionEvaluateCompleteHandler handler = evaluateCompleteHandler;
+            if (handler != null) {
+                AsyncTask.SERIAL_EXECUTOR.execute(() -> handler.onComplete(event));
+            }
+        } else {
+            new EvaluateTriggersAsyncTask().execute();
+        }
     }
 
-    private class EvaluateTriggersAsyncTask extends AsyncTask<Void, Void, Void> {
-
-        @Override
-        protected Void doInBackground(Void... voids) {
-            Set<EventActionHandler> modifiedHandlerSet = new LinkedHashSet<>(handlers);
-
-            if (settings != null) {
-                if (settings.getDefaultGameParametersHandler() != null) {
-                    modifiedHandlerSet.add(settings.getDefaultGameParametersHandler());
-                }
-                if (settings.getDefaultImageMessageHandler() != null) {
-                    modifiedHandlerSet.add(settings.getDefaultImageMessageHandler());
-                }
-            }
+    /**
+     * Evaluates the registered handlers on the calling thread.
+     */
+    @WorkerThread
+    void evaluate() {
+        final long start = Metrics.start();
+        final Span span = Tracing.begin("EventAction.run")
+                .arg("eventName", event.name)
+                .correlate(uuid);
+        try {
+            // only built once a trigger fires
+            Set<EventActionHandler> modifiedHandlerSet = null;
             boolean handledImageMessage = false;
             for (final EventTrigger trigger : triggers) {
+                EVALUATED.increment();
                 if (trigger.evaluate(event)) {
+                    FIRED.increment();
+                    if (modifiedHandlerSet == null) {
+                        modifiedHandlerSet = handlers();
+                    }
                     for (final EventActionHandler handler : modifiedHandlerSet) {
                         if (handledImageMessage && "imageMessage".equals(trigger.getAction()))
                             break;
@@ -128,9 +186,39 @@ public class EventAction {
                     }
                 }
             }
-            if (evaluateCompleteHandler != null) {
-                evaluateCompleteHandler.onComplete(event);
+        } finally {
+            span.close();
+        }
+        EVALUATION_MICROS.recordSince(start, TimeUnit.MICROSECONDS);
+        if (evaluateCompleteHandler != null) {
+            evaluateCompleteHandler.onComplete(event);
+        }
+    }
+
+    /**
+     * @return the registered handlers followed by the default handlers
+     */
+    private Set<EventActionHandler> handlers() {
+        final Set<EventActionHandler> all = (handlers != null)
+                ? new LinkedHashSet<>(handlers)
+                : new LinkedHashSet<>();
+
+        if (settings != null) {
+            if (settings.getDefaultGameParametersHandler() != null) {
+                all.add(settings.getDefaultGameParametersHandler());
+            }
+            if (settings.getDefaultImageMessageHandler() != null) {
+                all.add(settings.getDefaultImageMessageHandler());
             }
+        }
+        return all;
+    }
+
+    private class EvaluateTriggersAsyncTask extends AsyncTask<Void, Void, Void> {
+
+        @Override
+        protected Void doInBackground(Void... voids) {
+            evaluate();
             return null;
         }
     }
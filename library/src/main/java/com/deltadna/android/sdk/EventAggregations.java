@@ -0,0 +1,242 @@
+/*
+ * Copyright (c) 2016 deltaDNA Ltd. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.deltadna.android.sdk;
+
+import androidx.annotation.Nullable;
+import com.deltadna.android.sdk.util.Log;
+
+import com.deltadna.android.sdk.helpers.Settings;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Holds the in-memory state behind {@link EventAggregator}s, and records
+ * one summary event for each name and set of dimensions at the end of every
+ * window, or sooner once too many combinations are being held.
+ */
+final class EventAggregations {
+
+    private static final String TAG = BuildConfig.LOG_TAG
+            + ' '
+            + EventAggregations.class.getSimpleName();
+
+    interface Recorder {
+        void record(Event event);
+    }
+
+    private final Settings settings;
+    private final Recorder recorder;
+
+    private final ConcurrentMap<String, Cell> cells = new ConcurrentHashMap<>();
+    private final AtomicBoolean flushPending = new AtomicBoolean();
+
+    @Nullable
+    private ScheduledExecutorService executor;
+    @Nullable
+    private ScheduledFuture<?> window;
+
+    EventAggregations(Settings settings, Recorder recorder) {
+        this.settings = settings;
+        this.recorder = recorder;
+    }
+
+    EventAggregator get(String name) {
+        return new EventAggregator(name, this);
+    }
+
+    synchronized void start(ScheduledExecutorService executor) {
+        if (window != null) return;
+
+        final int seconds = settings.getAggregationWindowSeconds();
+        this.executor = executor;
+        window = executor.scheduleAtFixedRate(
+                this::flush,
+                seconds,
+                seconds,
+                TimeUnit.SECONDS);
+    }
+
+    /**
+     * Stops the window and records whatever has been aggregated so far.
+     */
+    synchronized void stop() {
+        if (window != null) {
+            window.cancel(false);
+            window = null;
+        }
+        executor = null;
+
+        flush();
+    }
+
+    void add(
+            String name,
+            @Nullable Params dimensions,
+            long count,
+            double value,
+            boolean valued) {
+
+        final JSONObject json = (dimensions != null)
+                ? dimensions.toJson()
+                : new JSONObject();
+        final String key = name + '\u0000' + canonical(json);
+
+        while (true) {
+            Cell cell = cells.get(key);
+            if (cell == null) {
+                final Cell created = new Cell(name, json);
+                cell = cells.putIfAbsent(key, created);
+                if (cell == null) {
+                    cell = created;
+                    if (cells.size() >= settings.getAggregationFlushSize()) {
+                        requestFlush();
+                    }
+                }
+            }
+
+            if (cell.add(count, value, valued)) {
+                return;
+            }
+
+            // flushed while we were holding on to it
+            cells.remove(key, cell);
+        }
+    }
+
+    /**
+     * Records the summary events for everything aggregated so far.
+     */
+    void flush() {
+        flushPending.set(false);
+
+        final Iterator<String> keys = cells.keySet().iterator();
+        while (keys.hasNext()) {
+            final Cell cell = cells.remove(keys.next());
+            if (cell == null) continue;
+
+            final Event event = cell.close();
+            if (event != null) {
+                recorder.record(event);
+            }
+        }
+    }
+
+    private void requestFlush() {
+        if (!flushPending.compareAndSet(false, true)) return;
+
+        final ScheduledExecutorService target;
+        synchronized (this) {
+            target = executor;
+        }
+
+        if (target != null) {
+            Log.v(TAG, "Flushing early due to flush size");
+            target.execute(this::flush);
+        } else {
+            flush();
+        }
+    }
+
+    /**
+     * @return the dimensions in a form which does not depend on the order
+     *         they were put in
+     */
+    private static String canonical(JSONObject json) {
+        if (json.length() == 0) return "";
+
+        final List<String> keys = new ArrayList<>(json.length());
+        final Iterator<String> iterator = json.keys();
+        while (iterator.hasNext()) {
+            keys.add(iterator.next());
+        }
+        Collections.sort(keys);
+
+        final StringBuilder builder = new StringBuilder();
+        for (final String key : keys) {
+            builder.append(key)
+                    .append('\u0000')
+                    .append(json.opt(key))
+                    .append('\u0000');
+        }
+        return builder.toString();
+    }
+
+    private static final class Cell {
+
+        private final String name;
+        private final String dimensions;
+
+        private long count;
+        private double sum;
+        private double min = Double.POSITIVE_INFINITY;
+        private double max = Double.NEGATIVE_INFINITY;
+        private boolean valued;
+        private boolean closed;
+
+        Cell(String name, JSONObject dimensions) {
+            this.name = name;
+            // copied so later changes to the params are not picked up
+            this.dimensions = dimensions.toString();
+        }
+
+        synchronized boolean add(long count, double value, boolean valued) {
+            if (closed) return false;
+
+            this.count += count;
+            if (valued) {
+                this.valued = true;
+                sum += value;
+                min = Math.min(min, value);
+                max = Math.max(max, value);
+            }
+            return true;
+        }
+
+        @Nullable
+        synchronized Event close() {
+            closed = true;
+
+            final Params params;
+            try {
+                params = new Params(new JSONObject(dimensions));
+            } catch (JSONException e) {
+                Log.w(TAG, "Failed to restore dimensions for " + name, e);
+                return null;
+            }
+
+            params.put("aggregateCount", count);
+            if (valued) {
+                params.put("aggregateSum", sum);
+                params.put("aggregateMin", min);
+                params.put("aggregateMax", max);
+            }
+            return new Event(name, params);
+        }
+    }
+}
@@ -0,0 +1,126 @@
+/*
+ * Copyright (c) 2016 deltaDNA Ltd. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.deltadna.android.sdk;
+
+import androidx.annotation.Nullable;
+
+import com.deltadna.android.sdk.helpers.Preconditions;
+
+/**
+ * Aggregates occurrences of an event in memory, to be recorded as a single
+ * summary event for each set of dimensions once the aggregation window ends.
+ * <p>
+ * The summary event has the name of the aggregator and carries the
+ * dimensions as parameters, together with
+ * <ul>
+ *     <li>{@code aggregateCount}, the sum of the counts</li>
+ *     <li>{@code aggregateSum}, {@code aggregateMin} and
+ *     {@code aggregateMax}, when values have been recorded</li>
+ * </ul>
+ * which need to be part of the event schema.
+ *
+ * @see DDNA#aggregate(String)
+ * @see com.deltadna.android.sdk.helpers.Settings#setAggregationWindowSeconds(int)
+ */
+public final class EventAggregator {
+
+    private final String name;
+    @Nullable
+    private final EventAggregations aggregations;
+
+    EventAggregator(String name, @Nullable EventAggregations aggregations) {
+        this.name = name;
+        this.aggregations = aggregations;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * Increments the count by one, without any dimensions.
+     *
+     * @return this {@link EventAggregator} instance
+     */
+    public EventAggregator increment() {
+        return increment(1, null);
+    }
+
+    /**
+     * Increments the count for a set of dimensions by one.
+     *
+     * @param dimensions the dimensions, may be {@code null}
+     *
+     * @return this {@link EventAggregator} instance
+     */
+    public EventAggregator increment(@Nullable Params dimensions) {
+        return increment(1, dimensions);
+    }
+
+    /**
+     * Increments the count for a set of dimensions.
+     *
+     * @param amount        the amount to increment by
+     * @param dimensions    the dimensions, may be {@code null}
+     *
+     * @return this {@link EventAggregator} instance
+     *
+     * @throws IllegalArgumentException if {@code amount} is not positive
+     */
+    public EventAggregator increment(long amount, @Nullable Params dimensions) {
+        Preconditions.checkArg(amount > 0, "amount must be positive");
+
+        if (aggregations != null) {
+            aggregations.add(name, dimensions, amount, 0, false);
+        }
+        return this;
+    }
+
+    /**
+     * Records a value, without any dimensions.
+     *
+     * @param value the value
+     *
+     * @return this {@link EventAggregator} instance
+     */
+    public EventAggregator record(double value) {
+        return record(value, null);
+    }
+
+    /**
+     * Records a value for a set of dimensions, which increments the count
+     * by one and is summarised by the sum, minimum, and maximum of the
+     * values.
+     *
+     * @param value         the value
+     * @param dimensions    the dimensions, may be {@code null}
+     *
+     * @return this {@link EventAggregator} instance
+     *
+     * @throws IllegalArgumentException if {@code value} is not finite
+     */
+    public EventAggregator record(double value, @Nullable Params dimensions) {
+        Preconditions.checkArg(
+                !Double.isNaN(value) && !Double.isInfinite(value),
+                "value must be finite");
+
+        if (aggregations != null) {
+            aggregations.add(name, dimensions, 1, value, true);
+        }
+        return this;
+    }
+}
@@ -0,0 +1,191 @@
+/*
+ * Copyright (c) 2016 deltaDNA Ltd. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.deltadna.android.sdk;
+
+import androidx.annotation.Nullable;
+
+import com.deltadna.android.sdk.helpers.Settings.EventOverflowPolicy;
+import com.deltadna.android.sdk.metrics.Counter;
+import com.deltadna.android.sdk.metrics.Metrics;
+
+import java.util.Collection;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Fixed-capacity ring buffer for events, which can be offered to
+ * from any number of threads without locking.
+ * <p>
+ * Each slot carries a sequence number telling producers and consumers
+ * whether it is free to be written to or ready to be read from, so that
+ * claiming a position is a single compare-and-set on the respective counter.
+ */
+final class EventBuffer<E> {
+
+    enum Result {
+        BUFFERED,
+        DROPPED,
+        /**
+         * The buffer is full and the event needs to be written by the caller.
+         */
+        SPILL
+    }
+
+    private static final Counter DROPPED = Metrics.counter("events.dropped");
+
+    private final AtomicReferenceArray<E> slots;
+    private final AtomicLongArray sequences;
+    private final int mask;
+    private final EventOverflowPolicy policy;
+
+    private final AtomicLong head = new AtomicLong();
+    private final AtomicLong tail = new AtomicLong();
+
+    private final AtomicLong dropped = new AtomicLong();
+    private final AtomicLong spilled = new AtomicLong();
+
+    EventBuffer(int capacity, EventOverflowPolicy policy) {
+        final int size = Integer.highestOneBit(Math.max(capacity, 2) - 1) << 1;
+
+        slots = new AtomicReferenceArray<>(size);
+        sequences = new AtomicLongArray(size);
+        for (int i = 0; i < size; i++) {
+            sequences.set(i, i);
+        }
+        mask = size - 1;
+        this.policy = policy;
+    }
+
+    Result offer(E event) {
+        while (!tryOffer(event)) {
+            switch (policy) {
+                case DROP_OLDEST:
+                    if (poll() != null) {
+                        dropped.incrementAndGet();
+                        DROPPED.increment();
+                    }
+                    break;
+
+                case DROP_NEWEST:
+                    dropped.incrementAndGet();
+                    DROPPED.increment();
+                    return Result.DROPPED;
+
+                case SPILL_TO_DISK:
+                    spilled.incrementAndGet();
+                    return Result.SPILL;
+            }
+        }
+
+        return Result.BUFFERED;
+    }
+
+    @Nullable
+    E poll() {
+        long position = head.get();
+        while (true) {
+            final int index = (int) position & mask;
+            final long difference = sequences.get(index) - (position + 1);
+
+            if (difference == 0) {
+                if (head.compareAndSet(position, position + 1)) {
+                    final E event = slots.get(index);
+                    slots.lazySet(index, null);
+                    sequences.lazySet(index, position + mask + 1);
+                    return event;
+                }
+                position = head.get();
+            } else if (difference < 0) {
+                return null;
+            } else {
+                position = head.get();
+            }
+        }
+    }
+
+    /**
+     * Moves up to {@code max} events into {@code into}.
+     *
+     * @return the number of events moved
+     */
+    int drainTo(Collection<? super E> into, int max) {
+        int drained = 0;
+        E event;
+        while (drained < max && (event = poll()) != null) {
+            into.add(event);
+            drained++;
+        }
+        return drained;
+    }
+
+    /**
+     * Drops all buffered events, without counting them as dropped.
+     */
+    void clear() {
+        //noinspection StatementWithEmptyBody
+        while (poll() != null) {}
+    }
+
+    boolean isEmpty() {
+        return size() == 0;
+    }
+
+    int size() {
+        return (int) Math.max(0, tail.get() - head.get());
+    }
+
+    int capacity() {
+        return mask + 1;
+    }
+
+    /**
+     * @return the number of events dropped due to overflow
+     */
+    long getDropped() {
+        return dropped.get();
+    }
+
+    /**
+     * @return the number of events which had to be spilled due to overflow
+     */
+    long getSpilled() {
+        return spilled.get();
+    }
+
+    private boolean tryOffer(E event) {
+        long position = tail.get();
+        while (true) {
+            final int index = (int) position & mask;
+            final long difference = sequences.get(index) - position;
+
+            if (difference == 0) {
+                if (tail.compareAndSet(position, position + 1)) {
+                    slots.lazySet(index, event);
+                    // publishes the slot, and the event with it
+                    sequences.set(index, position + 1);
+                    return true;
+                }
+                position = tail.get();
+            } else if (difference < 0) {
+                return false;
+            } else {
+                position = tail.get();
+            }
+        }
+    }
+}
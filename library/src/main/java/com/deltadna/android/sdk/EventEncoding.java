@@ -0,0 +1,548 @@
+/*
+ * Copyright (c) 2016 deltaDNA Ltd. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.deltadna.android.sdk;
+
+import androidx.annotation.Nullable;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.nio.charset.Charset;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+
+/**
+ * Compact binary encoding for stored events, along the lines of
+ * MessagePack, which is turned back into JSON text when events are read for
+ * uploading.
+ * <p>
+ * Encoded events start with {@link #MAGIC}, which can never start JSON
+ * text, followed by a single tagged value. Object keys found in
+ * {@link #KEYS} are written as their index, so the table may only ever be
+ * appended to.
+ */
+final class EventEncoding {
+
+    static final byte MAGIC = (byte) 0xd1;
+
+    private static final Charset UTF8 = Charset.forName("UTF-8");
+
+    private static final int NULL = 0;
+    private static final int FALSE = 1;
+    private static final int TRUE = 2;
+    private static final int INTEGER = 3;
+    private static final int FLOAT = 4;
+    private static final int DOUBLE = 5;
+    private static final int STRING = 6;
+    private static final int OBJECT = 7;
+    private static final int ARRAY = 8;
+    /**
+     * Number kept as its JSON text, for values which do not fit the other
+     * number types.
+     */
+    private static final int NUMBER = 9;
+
+    private static final int MAX_DEPTH = 64;
+
+    private static final String[] KEYS = {
+            "eventName",
+            "eventTimestamp",
+            "eventUUID",
+            "sessionID",
+            "userID",
+            "eventParams",
+            "platform",
+            "sdkVersion",
+            "clientVersion",
+            "transactionName",
+            "transactionType",
+            "transactionID",
+            "transactionServer",
+            "transactionReceipt",
+            "transactorID",
+            "productID",
+            "productsReceived",
+            "productsSpent",
+            "realCurrency",
+            "realCurrencyType",
+            "realCurrencyAmount",
+            "virtualCurrencies",
+            "virtualCurrency",
+            "virtualCurrencyName",
+            "virtualCurrencyType",
+            "virtualCurrencyAmount",
+            "items",
+            "item",
+            "itemName",
+            "itemType",
+            "itemAmount",
+            "userLanguage",
+            "userLocale",
+            "timezoneOffset",
+            "deviceName",
+            "deviceType",
+            "hardwareVersion",
+            "manufacturer",
+            "operatingSystem",
+            "operatingSystemVersion",
+            "androidRegistrationID",
+            "ddnaCrossGameUserID",
+            "notificationId",
+            "notificationName",
+            "notificationLaunch",
+            "communicationSender",
+            "communicationState",
+            "ddnaEventTriggeredActionType",
+            "ddnaEventTriggeredCampaignID",
+            "ddnaEventTriggeredCampaignName",
+            "ddnaEventTriggeredCampaignPriority",
+            "ddnaEventTriggeredSessionCount",
+            "ddnaEventTriggeredVariantID",
+            "ddnaEventTriggeredVariantName",
+            "imActionValue",
+            "aggregateCount",
+            "aggregateSum",
+            "aggregateMin",
+            "aggregateMax"};
+
+    private static final Map<String, Integer> KEY_INDICES;
+    /**
+     * {@link #KEYS} as quoted JSON text.
+     */
+    private static final byte[][] KEY_TEXTS;
+
+    static {
+        final Map<String, Integer> indices = new HashMap<>(KEYS.length * 2);
+        final byte[][] texts = new byte[KEYS.length][];
+        for (int i = 0; i < KEYS.length; i++) {
+            indices.put(KEYS[i], i);
+            texts[i] = JSONObject.quote(KEYS[i]).getBytes(UTF8);
+        }
+        KEY_INDICES = indices;
+        KEY_TEXTS = texts;
+    }
+
+    private static final byte[] NULL_TEXT = "null".getBytes(UTF8);
+    private static final byte[] FALSE_TEXT = "false".getBytes(UTF8);
+    private static final byte[] TRUE_TEXT = "true".getBytes(UTF8);
+    private static final byte[] HEX = "0123456789abcdef".getBytes(UTF8);
+
+    private EventEncoding() {}
+
+    static boolean isEncoded(byte[] bytes, int offset, int length) {
+        return length > 0 && bytes[offset] == MAGIC;
+    }
+
+    /**
+     * Encodes an object, optionally followed by one more field, which
+     * will be the last field once decoded.
+     */
+    static byte[] encode(
+            JSONObject object,
+            @Nullable String lastKey,
+            @Nullable Object lastValue) {
+
+        final Output out = new Output(256);
+        out.write(MAGIC);
+        out.write(OBJECT);
+        out.varint(object.length() + (lastKey != null ? 1 : 0));
+
+        final Iterator<String> keys = object.keys();
+        while (keys.hasNext()) {
+            final String key = keys.next();
+            key(out, key);
+            value(out, object.opt(key), 1);
+        }
+        if (lastKey != null) {
+            key(out, lastKey);
+            value(out, lastValue, 1);
+        }
+
+        return out.toByteArray();
+    }
+
+    static byte[] encode(JSONObject object) {
+        return encode(object, null, null);
+    }
+
+    /**
+     * Appends the UTF-8 JSON text of an encoded event. The encoded event
+     * may be part of {@code into} itself, as long as it is before the
+     * current position.
+     *
+     * @throws IOException if the encoded event is malformed
+     */
+    static void decode(byte[] bytes, int offset, int length, BulkPayload into)
+            throws IOException {
+
+        final Input in = new Input(bytes, offset, length);
+        if (in.read() != (MAGIC & 0xff)) {
+            throw new IOException("Missing magic byte");
+        }
+
+        decodeValue(in, into, 0);
+        if (in.position != in.end) {
+            throw new IOException("Trailing bytes after event");
+        }
+    }
+
+    static String decode(byte[] bytes) throws IOException {
+        final BulkPayload payload = new BulkPayload(bytes.length * 2);
+        decode(bytes, 0, bytes.length, payload);
+        return new String(payload.array(), 0, payload.position(), UTF8);
+    }
+
+    private static void key(Output out, String key) {
+        final Integer index = KEY_INDICES.get(key);
+        if (index != null) {
+            out.varint(index + 1);
+        } else {
+            out.varint(0);
+            out.string(key);
+        }
+    }
+
+    private static void value(Output out, @Nullable Object value, int depth) {
+        if (depth > MAX_DEPTH) {
+            throw new IllegalArgumentException("Event nested too deeply");
+        }
+
+        if (value == null || value == JSONObject.NULL) {
+            out.write(NULL);
+        } else if (value instanceof Boolean) {
+            out.write((Boolean) value ? TRUE : FALSE);
+        } else if (     value instanceof Integer
+                        || value instanceof Long
+                        || value instanceof Short
+                        || value instanceof Byte) {
+            out.write(INTEGER);
+            final long number = ((Number) value).longValue();
+            out.varint((number << 1) ^ (number >> 63));
+        } else if (value instanceof Float) {
+            out.write(FLOAT);
+            out.int32(Float.floatToIntBits((Float) value));
+        } else if (value instanceof Double) {
+            out.write(DOUBLE);
+            final long bits = Double.doubleToLongBits((Double) value);
+            out.int32((int) (bits >>> 32));
+            out.int32((int) bits);
+        } else if (value instanceof BigDecimal || value instanceof BigInteger) {
+            out.write(NUMBER);
+            try {
+                out.string(JSONObject.numberToString((Number) value));
+            } catch (JSONException e) {
+                throw new IllegalArgumentException(e);
+            }
+        } else if (value instanceof JSONObject) {
+            final JSONObject object = (JSONObject) value;
+            out.write(OBJECT);
+            out.varint(object.length());
+
+            final Iterator<String> keys = object.keys();
+            while (keys.hasNext()) {
+                final String key = keys.next();
+                key(out, key);
+                value(out, object.opt(key), depth + 1);
+            }
+        } else if (value instanceof JSONArray) {
+            final JSONArray array = (JSONArray) value;
+            out.write(ARRAY);
+            out.varint(array.length());
+
+            for (int i = 0; i < array.length(); i++) {
+                value(out, array.opt(i), depth + 1);
+            }
+        } else {
+            // same as what JSONObject does with any other type
+            out.write(STRING);
+            out.string(value.toString());
+        }
+    }
+
+    private static void decodeValue(Input in, BulkPayload into, int depth)
+            throws IOException {
+
+        if (depth > MAX_DEPTH) throw new IOException("Event nested too deeply");
+
+        final int tag = in.read();
+        switch (tag) {
+            case NULL:
+                into.put(NULL_TEXT);
+                break;
+
+            case FALSE:
+                into.put(FALSE_TEXT);
+                break;
+
+            case TRUE:
+                into.put(TRUE_TEXT);
+                break;
+
+            case INTEGER: {
+                final long zigzag = in.varint();
+                integer(into, (zigzag >>> 1) ^ -(zigzag & 1));
+                break;
+            }
+
+            case FLOAT:
+                number(into, Float.intBitsToFloat(in.int32()));
+                break;
+
+            case DOUBLE: {
+                final long high = in.int32() & 0xffffffffL;
+                final long low = in.int32() & 0xffffffffL;
+                number(into, Double.longBitsToDouble(high << 32 | low));
+                break;
+            }
+
+            case NUMBER: {
+                final int length = in.stringLength();
+                into.put(in.bytes, in.position, length);
+                in.position += length;
+                break;
+            }
+
+            case STRING:
+                quote(in, into);
+                break;
+
+            case OBJECT: {
+                final long count = in.varint();
+                into.put((byte) '{');
+                for (long i = 0; i < count; i++) {
+                    if (i > 0) into.put((byte) ',');
+
+                    final long key = in.varint();
+                    if (key == 0) {
+                        quote(in, into);
+                    } else if (key <= KEYS.length) {
+                        into.put(KEY_TEXTS[(int) key - 1]);
+                    } else {
+                        throw new IOException("Unknown key " + key);
+                    }
+                    into.put((byte) ':');
+
+                    decodeValue(in, into, depth + 1);
+                }
+                into.put((byte) '}');
+                break;
+            }
+
+            case ARRAY: {
+                final long count = in.varint();
+                into.put((byte) '[');
+                for (long i = 0; i < count; i++) {
+                    if (i > 0) into.put((byte) ',');
+
+                    decodeValue(in, into, depth + 1);
+                }
+                into.put((byte) ']');
+                break;
+            }
+
+            default:
+                throw new IOException("Unknown tag " + tag);
+        }
+    }
+
+    private static void integer(BulkPayload into, long value) {
+        if (value == Long.MIN_VALUE) {
+            ascii(into, Long.toString(value));
+            return;
+        } else if (value < 0) {
+            into.put((byte) '-');
+            value = -value;
+        }
+
+        long divisor = 1;
+        while (value / divisor >= 10) divisor *= 10;
+        for (; divisor > 0; divisor /= 10) {
+            into.put((byte) ('0' + value / divisor % 10));
+        }
+    }
+
+    private static void number(BulkPayload into, Number number)
+            throws IOException {
+
+        try {
+            ascii(into, JSONObject.numberToString(number));
+        } catch (JSONException e) {
+            throw new IOException(e);
+        }
+    }
+
+    private static void ascii(BulkPayload into, String value) {
+        for (int i = 0; i < value.length(); i++) {
+            into.put((byte) value.charAt(i));
+        }
+    }
+
+    /**
+     * Appends a string as quoted by {@link JSONObject#quote(String)},
+     * escaping its UTF-8 bytes directly as only ASCII characters need
+     * escaping.
+     */
+    private static void quote(Input in, BulkPayload into) throws IOException {
+        final int length = in.stringLength();
+        final int end = in.position + length;
+
+        into.put((byte) '"');
+        for (int i = in.position; i < end; i++) {
+            final byte b = in.bytes[i];
+            switch (b) {
+                case '"':
+                case '\\':
+                case '/':
+                    into.put((byte) '\\').put(b);
+                    break;
+
+                case '\t':
+                    into.put((byte) '\\').put((byte) 't');
+                    break;
+
+                case '\b':
+                    into.put((byte) '\\').put((byte) 'b');
+                    break;
+
+                case '\n':
+                    into.put((byte) '\\').put((byte) 'n');
+                    break;
+
+                case '\r':
+                    into.put((byte) '\\').put((byte) 'r');
+                    break;
+
+                case '\f':
+                    into.put((byte) '\\').put((byte) 'f');
+                    break;
+
+                default:
+                    if (b >= 0 && b <= 0x1f) {
+                        into.put((byte) '\\').put((byte) 'u')
+                                .put((byte) '0').put((byte) '0')
+                                .put(HEX[b >> 4]).put(HEX[b & 0xf]);
+                    } else {
+                        into.put(b);
+                    }
+            }
+        }
+        into.put((byte) '"');
+
+        in.position = end;
+    }
+
+    private static final class Output {
+
+        private byte[] buffer;
+        private int size;
+
+        Output(int capacity) {
+            buffer = new byte[capacity];
+        }
+
+        void write(int value) {
+            ensure(1);
+            buffer[size++] = (byte) value;
+        }
+
+        void varint(long value) {
+            ensure(10);
+            while ((value & ~0x7fL) != 0) {
+                buffer[size++] = (byte) ((value & 0x7f) | 0x80);
+                value >>>= 7;
+            }
+            buffer[size++] = (byte) value;
+        }
+
+        void int32(int value) {
+            ensure(4);
+            buffer[size++] = (byte) (value >>> 24);
+            buffer[size++] = (byte) (value >>> 16);
+            buffer[size++] = (byte) (value >>> 8);
+            buffer[size++] = (byte) value;
+        }
+
+        void string(String value) {
+            final byte[] bytes = value.getBytes(UTF8);
+            varint(bytes.length);
+            ensure(bytes.length);
+            System.arraycopy(bytes, 0, buffer, size, bytes.length);
+            size += bytes.length;
+        }
+
+        byte[] toByteArray() {
+            return Arrays.copyOf(buffer, size);
+        }
+
+        private void ensure(int additional) {
+            if (size + additional > buffer.length) {
+                buffer = Arrays.copyOf(
+                        buffer,
+                        Math.max(buffer.length * 2, size + additional));
+            }
+        }
+    }
+
+    private static final class Input {
+
+        private final byte[] bytes;
+        private final int end;
+        private int position;
+
+        Input(byte[] bytes, int offset, int length) {
+            this.bytes = bytes;
+            this.end = offset + length;
+            this.position = offset;
+        }
+
+        int read() throws EOFException {
+            if (position >= end) throw new EOFException();
+            return bytes[position++] & 0xff;
+        }
+
+        long varint() throws IOException {
+            long value = 0;
+            for (int shift = 0; shift < 64; shift += 7) {
+                final int b = read();
+                value |= (long) (b & 0x7f) << shift;
+                if ((b & 0x80) == 0) return value;
+            }
+            throw new IOException("Malformed varint");
+        }
+
+        int int32() throws EOFException {
+            return read() << 24 | read() << 16 | read() << 8 | read();
+        }
+
+        /**
+         * @return the length of the string bytes which follow
+         */
+        int stringLength() throws IOException {
+            final long length = varint();
+            if (length < 0 || length > end - position) throw new EOFException();
+
+            return (int) length;
+        }
+    }
+}
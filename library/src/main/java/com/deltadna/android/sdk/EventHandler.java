@@ -21,17 +21,27 @@ import androidx.annotation.Nullable;
 
 import android.os.Handler;
 import android.os.Looper;
-import android.util.Log;
+import com.deltadna.android.sdk.util.Log;
 import com.deltadna.android.sdk.helpers.ClientInfo;
 import com.deltadna.android.sdk.listeners.EngageListener;
 import com.deltadna.android.sdk.listeners.RequestListener;
+import com.deltadna.android.sdk.metrics.Counter;
+import com.deltadna.android.sdk.metrics.EventProfiler;
+import com.deltadna.android.sdk.metrics.Histogram;
+import com.deltadna.android.sdk.metrics.Metrics;
 import com.deltadna.android.sdk.net.CancelableRequest;
 import com.deltadna.android.sdk.net.NetworkManager;
 import com.deltadna.android.sdk.net.Response;
+import com.deltadna.android.sdk.tracing.Span;
+import com.deltadna.android.sdk.tracing.Tracing;
 import com.deltadna.android.sdk.util.CloseableIterator;
 import org.json.JSONException;
 import org.json.JSONObject;
 
+import java.nio.charset.Charset;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
 import java.util.Locale;
 import java.util.concurrent.*;
 import java.util.concurrent.atomic.AtomicReference;
@@ -47,6 +57,21 @@ final class EventHandler {
             + ' '
             + EventHandler.class.getSimpleName();
     
+    private static final int PAYLOAD_CAPACITY = 64 * 1024;
+    private static final Charset UTF8 = Charset.forName("UTF-8");
+    private static final byte[] PAYLOAD_START = "{\"eventList\":[".getBytes(Charset.forName("UTF-8"));
+    private static final byte[] PAYLOAD_END = "]}".getBytes(Charset.forName("UTF-8"));
+    private static final byte[] UUID_KEY = "\"eventUUID\":\"".getBytes(UTF8);
+    
+    private static final Counter UPLOADS = Metrics.counter("uploads");
+    private static final Counter UPLOADS_FAILED = Metrics.counter("uploads.failed");
+    private static final Counter UPLOADED_EVENTS = Metrics.counter("uploads.events");
+    private static final Histogram UPLOAD_MILLIS = Metrics.histogram("uploads.millis");
+    private static final Histogram LATENCY_MILLIS = Metrics.histogram("events.latencyMillis");
+    private static final Counter ENGAGE_REQUESTS = Metrics.counter("engage.requests");
+    private static final Counter ENGAGE_FAILED = Metrics.counter("engage.failed");
+    private static final Histogram ENGAGE_MILLIS = Metrics.histogram("engage.millis");
+    
     private final ScheduledExecutorService executor =
             new ScheduledThreadPoolExecutor(1, r -> new Thread(
                     r,
@@ -62,6 +87,12 @@ final class EventHandler {
     private ScheduledFuture<?> uploadTask;
     @Nullable
     private Future<?> upload;
+    /**
+     * Header of the last profiled event and how much it adds once uploaded,
+     * as it only changes with the session.
+     */
+    @Nullable
+    private volatile ProfiledHeader profiledHeader;
     
     EventHandler(
             EventStore events,
@@ -125,7 +156,60 @@ final class EventHandler {
      * to be sent at a later time.
      */
     void handleEvent(JSONObject event) {
-        events.add(event.toString());
+        handleEvent(event, false);
+    }
+    
+    /**
+     * Handles a collect {@code event} by placing into the queue,
+     * to be sent at a later time.
+     * 
+     * @param critical  whether the event should never be dropped
+     */
+    void handleEvent(JSONObject event, boolean critical) {
+        final CompactEvent compact = events.add(event, critical);
+        
+        if (EventProfiler.isEnabled() && compact != null) {
+            profile(event, compact);
+        }
+    }
+    
+    /**
+     * Handles collect {@code events} by placing them into the queue
+     * together, to be written out in one go and sent at a later time.
+     * 
+     * @param critical  whether the events should never be dropped
+     */
+    void handleEvents(List<JSONObject> events, boolean critical) {
+        final List<CompactEvent> compacts = this.events.addAll(events, critical);
+        
+        if (EventProfiler.isEnabled() && compacts != null) {
+            for (int i = 0; i < compacts.size(); i++) {
+                profile(events.get(i), compacts.get(i));
+            }
+        }
+    }
+    
+    private void profile(JSONObject event, CompactEvent compact) {
+        final JSONObject params = event.optJSONObject("eventParams");
+        // as uploaded, with the header spliced back in
+        final int size = compact.size() + headerSize(compact.header);
+        EventProfiler.record(
+                event.optString("eventName"),
+                size,
+                (params != null) ? params.length() : 0,
+                size > EventStore.EVENTS_LIMIT);
+    }
+    
+    private int headerSize(@Nullable String header) {
+        if (header == null) return 0;
+        
+        ProfiledHeader profiled = profiledHeader;
+        if (profiled == null || !profiled.header.equals(header)) {
+            final CompactEvent.Header parsed = CompactEvent.Header.parse(header);
+            profiled = new ProfiledHeader(header, (parsed != null) ? parsed.size() : 0);
+            profiledHeader = profiled;
+        }
+        return profiled.size;
     }
     
     /**
@@ -185,10 +269,18 @@ final class EventHandler {
                 throw new IllegalArgumentException(e);
             }
 
+            ENGAGE_REQUESTS.increment();
+            final long start = Metrics.start();
+            final Span span = Tracing.beginAsync("engage")
+                    .arg("decisionPoint", engagement.getDecisionPointAndFlavour());
             network.engage(event, new RequestListener<JSONObject>() {
                 @Override
                 public void onCompleted(Response<JSONObject> result) {
+                    ENGAGE_MILLIS.recordSince(start, TimeUnit.MILLISECONDS);
+                    span.arg("code", result.code).close();
                     engagement.setResponse(result);
+                    if (!engagement.isSuccessful()) ENGAGE_FAILED.increment();
+                    
                     if (engagement.isSuccessful()) {
                         engagements.put(engagement);
                     } else if (engagement.isCacheCandidate() ){
@@ -207,8 +299,9 @@ final class EventHandler {
                                         cached.put("isCachedResponse", true),
                                         engagement.getError()));
 
-                                Log.d(  TAG,
-                                        "Using cached response " + engagement.getJson());
+                                if (Log.PAYLOADS) {
+                                    Log.d(TAG, "Using cached response %s", engagement.getJson());
+                                }
                             } catch (JSONException ignored) {}
                         }
                     } else {
@@ -223,6 +316,10 @@ final class EventHandler {
 
                 @Override
                 public void onError(Throwable t) {
+                    ENGAGE_MILLIS.recordSince(start, TimeUnit.MILLISECONDS);
+                    ENGAGE_FAILED.increment();
+                    span.arg("error", t.toString()).close();
+                    
                     // This needs to be run off the main thread, as it involves blocking database
                     // operations that can cause ANRs.
                     executor.execute(() -> {
@@ -236,7 +333,9 @@ final class EventHandler {
                                         cached.put("isCachedResponse", true),
                                         null));
 
-                                Log.d(TAG, "Using cached response " + engagement.getJson());
+                                if (Log.PAYLOADS) {
+                                    Log.d(TAG, "Using cached response %s", engagement.getJson());
+                                }
 
                                 mainThreadTaskHandler.post(() -> listener.onCompleted(engagement));
                             } catch (JSONException e) {
@@ -276,6 +375,91 @@ final class EventHandler {
         }
     }
     
+    /**
+     * Reads stored events straight into the body of a bulk upload, stopping
+     * at the first event which is not available.
+     *
+     * @param clearEvents set to {@link CloseableIterator.Mode#UP_TO_CURRENT}
+     *                    if not all of the events could be read
+     *
+     * @return the number of events written
+     */
+    static int writePayload(
+            Iterator<EventStoreItem> items,
+            BulkPayload payload,
+            AtomicReference<CloseableIterator.Mode> clearEvents) {
+        
+        return writePayload(items, payload, clearEvents, null);
+    }
+    
+    /**
+     * @param times if not {@code null} gets the times the events written
+     *              were recorded at
+     */
+    static int writePayload(
+            Iterator<EventStoreItem> items,
+            BulkPayload payload,
+            AtomicReference<CloseableIterator.Mode> clearEvents,
+            @Nullable RecordTimes times) {
+        
+        payload.put(PAYLOAD_START);
+        int count = 0;
+        while (items.hasNext()) {
+            final EventStoreItem event = items.next();
+            
+            if (event.available()) {
+                final int mark = payload.position();
+                if (count > 0) payload.put((byte) ',');
+                
+                if (event.writeTo(payload)) {
+                    count++;
+                    if (times != null) times.add(event.time());
+                } else {
+                    Log.w(TAG, "Failed retrieving event, skipping");
+                    payload.reset(mark);
+                }
+            } else {
+                Log.w(TAG, "Stored event not available, pausing");
+                clearEvents.set(CloseableIterator.Mode.UP_TO_CURRENT);
+                break;
+            }
+        }
+        payload.put(PAYLOAD_END);
+        
+        return count;
+    }
+    
+    /**
+     * Adds the {@code eventUUID} of each event in the payload to the
+     * {@code span} of its upload, by scanning the bytes for them.
+     */
+    static void correlate(Span span, BulkPayload payload) {
+        final byte[] bytes = payload.array();
+        final int end = payload.position();
+        
+        int i = 0;
+        while ((i = indexOf(bytes, UUID_KEY, i, end)) != -1) {
+            final int start = i + UUID_KEY.length;
+            int close = start;
+            while (close < end && bytes[close] != '"') close++;
+            if (close == end) break;
+            
+            span.correlate(new String(bytes, start, close - start, UTF8));
+            i = close;
+        }
+    }
+    
+    private static int indexOf(byte[] bytes, byte[] target, int from, int end) {
+        outer:
+        for (int i = from; i <= end - target.length; i++) {
+            for (int j = 0; j < target.length; j++) {
+                if (bytes[i + j] != target[j]) continue outer;
+            }
+            return i;
+        }
+        return -1;
+    }
+    
     private final class Upload implements Runnable {
         
         @Override
@@ -287,6 +471,7 @@ final class EventHandler {
                 return;
             }
 
+            final Span span = Tracing.begin("upload");
             final CloseableIterator<EventStoreItem> items = events.items();
             final AtomicReference<CloseableIterator.Mode> clearEvents =
                     new AtomicReference<>(CloseableIterator.Mode.ALL);
@@ -298,52 +483,34 @@ final class EventHandler {
                     clearEvents.set(CloseableIterator.Mode.NONE);
                 }
 
-                final StringBuilder builder = new StringBuilder("{\"eventList\":[");
-                int count = 0;
-                while (items.hasNext()) {
-                    final EventStoreItem event = items.next();
+                final BulkPayload payload = new BulkPayload(PAYLOAD_CAPACITY);
+                final RecordTimes times = Metrics.isEnabled() ? new RecordTimes() : null;
+                final int count = writePayload(items, payload, clearEvents, times);
 
-                    if (event.available()) {
-                        final String content = event.get();
-                        if (content != null) {
-                            builder.append(content);
-                            builder.append(',');
-
-                            count++;
-                        } else {
-                            Log.w(TAG, "Failed retrieving event, skipping");
-                        }
-                    } else {
-                        Log.w(TAG, "Stored event not available, pausing");
-                        clearEvents.set(CloseableIterator.Mode.UP_TO_CURRENT);
-                        break;
-                    }
-                }
-                if (builder.charAt(builder.length() - 1) == ',') {
-                    builder.deleteCharAt(builder.length() - 1);
-                }
-                builder.append("]}");
-
-                JSONObject payload = null;
-                try {
-                    payload = new JSONObject(builder.toString());
-                } catch (JSONException e) {
-                    Log.w(TAG, e);
-
-                    clearEvents.set(CloseableIterator.Mode.NONE);
-                }
-
-                Log.d(TAG, "Uploading " + count + " events");
+                Log.d(TAG, "Uploading %d events", count);
+                final long start = Metrics.start();
+                span.arg("events", count);
+                if (span != Span.NONE) correlate(span, payload);
                 final CountDownLatch latch = new CountDownLatch(1);
                 final CancelableRequest request = network.collect(
-                        payload,
+                        payload.toByteArray(),
                         new RequestListener<Void>() {
                             @Override
                             public void onCompleted(Response<Void> result) {
+                                UPLOAD_MILLIS.recordSince(start, TimeUnit.MILLISECONDS);
+                                span.arg("code", result.code);
                                 if (result.isSuccessful()) {
                                     Log.d(TAG, "Successfully uploaded events");
+                                    UPLOADS.increment();
+                                    UPLOADED_EVENTS.add(count);
+                                    if (times != null) {
+                                        times.recordLatencies(
+                                                LATENCY_MILLIS,
+                                                System.currentTimeMillis());
+                                    }
                                 } else {
                                     Log.w(TAG, "Failed to upload events due to " + result);
+                                    UPLOADS_FAILED.increment();
                                     if (result.code == 400) {
                                         Log.w(TAG, "Wiping event store due to unrecoverable data");
                                         clearEvents.set(CloseableIterator.Mode.ALL);
@@ -358,6 +525,9 @@ final class EventHandler {
                                 Log.w(TAG,
                                         "Failed to upload events, will retry later",
                                         t);
+                                UPLOAD_MILLIS.recordSince(start, TimeUnit.MILLISECONDS);
+                                UPLOADS_FAILED.increment();
+                                span.arg("error", t.toString());
 
                                 clearEvents.set(CloseableIterator.Mode.NONE);
                                 latch.countDown();
@@ -375,8 +545,46 @@ final class EventHandler {
             } finally {
                 Log.v(TAG, "Finished event upload");
                 items.close(clearEvents.get());
+                span.close();
             }
         }
     }
-
+    
+    /**
+     * Times at which the events of an upload were recorded, for recording
+     * how long they took to be acknowledged once the upload succeeds.
+     */
+    static final class RecordTimes {
+        
+        private long[] values = new long[64];
+        private int size;
+        
+        void add(long time) {
+            if (size == values.length) {
+                values = Arrays.copyOf(values, size * 2);
+            }
+            values[size++] = time;
+        }
+        
+        int size() {
+            return size;
+        }
+        
+        void recordLatencies(Histogram histogram, long now) {
+            for (int i = 0; i < size; i++) {
+                histogram.record(Math.max(0, now - values[i]));
+            }
+        }
+    }
+    
+    private static final class ProfiledHeader {
+        
+        final String header;
+        final int size;
+        
+        ProfiledHeader(String header, int size) {
+            this.header = header;
+            this.size = size;
+        }
+    }
 }
@@ -0,0 +1,191 @@
+/*
+ * Copyright (c) 2016 deltaDNA Ltd. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.deltadna.android.sdk;
+
+import androidx.annotation.Nullable;
+import android.os.SystemClock;
+import com.deltadna.android.sdk.util.Log;
+
+import com.deltadna.android.sdk.helpers.Settings;
+
+import org.json.JSONObject;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Decides whether recorded events are kept, based on the {@link EventPolicy}
+ * for their name and on how full the event buffer and store are.
+ * <p>
+ * Policies from the session configuration take precedence over the ones set
+ * in {@link Settings}, apart from for {@code transaction} events which are
+ * always kept.
+ */
+final class EventPolicies {
+
+    private static final String TAG = BuildConfig.LOG_TAG
+            + ' '
+            + EventPolicies.class.getSimpleName();
+
+    /**
+     * Pressure above which {@link EventPolicy.Priority#LOW} events start to
+     * be sampled down.
+     */
+    static final float PRESSURE_THRESHOLD = 0.5f;
+    /**
+     * Name of the events which cannot be shed by a remote policy, as they
+     * carry revenue.
+     */
+    private static final String TRANSACTION = "transaction";
+
+    private final Settings settings;
+    private final Random random;
+
+    private volatile Map<String, EventPolicy> remote = Collections.emptyMap();
+    private final Map<String, TokenBucket> buckets = new ConcurrentHashMap<>();
+
+    EventPolicies(Settings settings) {
+        this(settings, new Random());
+    }
+
+    EventPolicies(Settings settings, Random random) {
+        this.settings = settings;
+        this.random = random;
+    }
+
+    EventPolicy get(String eventName) {
+        EventPolicy policy = remote.get(eventName);
+        if (policy == null) policy = settings.getEventPolicy(eventName);
+        return (policy != null) ? policy : EventPolicy.DEFAULT;
+    }
+
+    /**
+     * @param pressure  how full the event buffer or store is, between 0 and 1
+     *
+     * @return whether the event should be kept
+     */
+    boolean admit(String eventName, EventPolicy policy, float pressure) {
+        switch (policy.getPriority()) {
+            case CRITICAL:
+                return true;
+
+            case LOW:
+                if (    pressure > PRESSURE_THRESHOLD
+                        && random.nextFloat() >= (1 - pressure) / (1 - PRESSURE_THRESHOLD)) {
+                    Log.v(TAG, "Shedding %s due to pressure", eventName);
+                    return false;
+                }
+                break;
+        }
+
+        if (policy.getSampleRate() < 1 && random.nextFloat() >= policy.getSampleRate()) {
+            Log.v(TAG, "Sampling out %s", eventName);
+            return false;
+        }
+
+        if (policy.getRateLimit() > 0 && !bucket(eventName, policy).tryAcquire()) {
+            Log.v(TAG, "Rate limiting %s", eventName);
+            return false;
+        }
+
+        return true;
+    }
+
+    /**
+     * Sets the policies from the {@code eventPolicies} object of a session
+     * configuration, or clears them if {@code configuration} is
+     * {@code null}.
+     */
+    void setRemote(@Nullable JSONObject configuration) {
+        final Map<String, EventPolicy> policies;
+        if (configuration == null) {
+            policies = Collections.emptyMap();
+        } else {
+            policies = new HashMap<>(configuration.length());
+
+            final Iterator<String> names = configuration.keys();
+            while (names.hasNext()) {
+                final String name = names.next();
+                final JSONObject json = configuration.optJSONObject(name);
+                final EventPolicy policy = (json != null)
+                        ? EventPolicy.fromJson(json)
+                        : null;
+
+                if (policy == null) {
+                    Log.w(TAG, "Ignoring invalid policy for " + name);
+                } else if (     name.equals(TRANSACTION)
+                            &&  policy.getPriority() != EventPolicy.Priority.CRITICAL) {
+                    Log.w(TAG, "Ignoring non-critical policy for " + name);
+                } else {
+                    policies.put(name, policy);
+                }
+            }
+        }
+
+        remote = Collections.unmodifiableMap(policies);
+        buckets.clear();
+    }
+
+    private TokenBucket bucket(String eventName, EventPolicy policy) {
+        TokenBucket bucket = buckets.get(eventName);
+        if (bucket == null || !bucket.isFor(policy)) {
+            bucket = new TokenBucket(policy);
+            buckets.put(eventName, bucket);
+        }
+        return bucket;
+    }
+
+    private static final class TokenBucket {
+
+        private final EventPolicy policy;
+        private final double perMilli;
+
+        private double tokens;
+        private long updated;
+
+        TokenBucket(EventPolicy policy) {
+            this.policy = policy;
+            this.perMilli = policy.getRateLimit() / (double) policy.getRatePeriod();
+
+            tokens = policy.getRateLimit();
+            updated = SystemClock.elapsedRealtime();
+        }
+
+        boolean isFor(EventPolicy policy) {
+            return this.policy.equals(policy);
+        }
+
+        synchronized boolean tryAcquire() {
+            final long now = SystemClock.elapsedRealtime();
+            tokens = Math.min(
+                    policy.getRateLimit(),
+                    tokens + (now - updated) * perMilli);
+            updated = now;
+
+            if (tokens >= 1) {
+                tokens--;
+                return true;
+            } else {
+                return false;
+            }
+        }
+    }
+}
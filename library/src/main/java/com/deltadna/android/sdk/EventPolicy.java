@@ -0,0 +1,226 @@
+/*
+ * Copyright (c) 2016 deltaDNA Ltd. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.deltadna.android.sdk;
+
+import androidx.annotation.Nullable;
+
+import com.deltadna.android.sdk.helpers.Preconditions;
+
+import org.json.JSONObject;
+
+import java.util.Locale;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Controls how events with a given name are treated when events are
+ * recorded faster than they can be stored and uploaded.
+ * <p>
+ * Policies can be set for event names through
+ * {@link com.deltadna.android.sdk.helpers.Settings#setEventPolicy(String, EventPolicy)},
+ * and they can be overridden by the session configuration.
+ */
+public final class EventPolicy {
+
+    public enum Priority {
+        /**
+         * Events which are never sampled, rate limited, or dropped due to
+         * a full event buffer, and which may use space reserved for them
+         * once the event store is full.
+         */
+        CRITICAL,
+        /**
+         * Events which are only dropped once the event store is full.
+         */
+        NORMAL,
+        /**
+         * Events which get sampled down once the event buffer or store is
+         * more than half full, with none being kept when either is full.
+         */
+        LOW
+    }
+
+    static final EventPolicy DEFAULT = new EventPolicy(Priority.NORMAL, 1, 0, 0);
+
+    private final Priority priority;
+    private final float sampleRate;
+    private final int rateLimit;
+    private final long ratePeriod;
+
+    private EventPolicy(
+            Priority priority,
+            float sampleRate,
+            int rateLimit,
+            long ratePeriod) {
+
+        this.priority = priority;
+        this.sampleRate = sampleRate;
+        this.rateLimit = rateLimit;
+        this.ratePeriod = ratePeriod;
+    }
+
+    /**
+     * Creates a policy with a priority, without sampling or rate limiting.
+     *
+     * @param priority the priority
+     *
+     * @return the policy
+     *
+     * @throws IllegalArgumentException if {@code priority} is null
+     */
+    public static EventPolicy of(Priority priority) {
+        Preconditions.checkArg(priority != null, "priority cannot be null");
+
+        return new EventPolicy(priority, 1, 0, 0);
+    }
+
+    /**
+     * Creates a copy of this policy which only keeps a fraction of the
+     * events, chosen at random.
+     *
+     * @param rate the fraction of events to keep, between 0 and 1
+     *
+     * @return the new policy
+     *
+     * @throws IllegalArgumentException if {@code rate} is out of range
+     */
+    public EventPolicy withSampleRate(float rate) {
+        Preconditions.checkArg(
+                rate >= 0 && rate <= 1,
+                "rate must be between 0 and 1");
+
+        return new EventPolicy(priority, rate, rateLimit, ratePeriod);
+    }
+
+    /**
+     * Creates a copy of this policy which keeps at most {@code events}
+     * events in each {@code period}, allowing for bursts up to the same
+     * number.
+     *
+     * @param events    the number of events
+     * @param period    the period
+     * @param unit      the unit of {@code period}
+     *
+     * @return the new policy
+     *
+     * @throws IllegalArgumentException if {@code events} or {@code period}
+     *                                  is not positive
+     */
+    public EventPolicy withRateLimit(int events, long period, TimeUnit unit) {
+        Preconditions.checkArg(events > 0, "events must be positive");
+        Preconditions.checkArg(period > 0, "period must be positive");
+        Preconditions.checkArg(unit != null, "unit cannot be null");
+
+        return new EventPolicy(
+                priority,
+                sampleRate,
+                events,
+                unit.toMillis(period));
+    }
+
+    public Priority getPriority() {
+        return priority;
+    }
+
+    public float getSampleRate() {
+        return sampleRate;
+    }
+
+    /**
+     * @return the number of events allowed per period, or {@code 0} when
+     *         not rate limited
+     */
+    public int getRateLimit() {
+        return rateLimit;
+    }
+
+    /**
+     * @return the rate limiting period in milliseconds
+     */
+    public long getRatePeriod() {
+        return ratePeriod;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (o == null || getClass() != o.getClass()) return false;
+
+        final EventPolicy other = (EventPolicy) o;
+        return priority == other.priority
+                && Float.compare(sampleRate, other.sampleRate) == 0
+                && rateLimit == other.rateLimit
+                && ratePeriod == other.ratePeriod;
+    }
+
+    @Override
+    public int hashCode() {
+        int result = priority.hashCode();
+        result = 31 * result + Float.floatToIntBits(sampleRate);
+        result = 31 * result + rateLimit;
+        result = 31 * result + (int) (ratePeriod ^ (ratePeriod >>> 32));
+        return result;
+    }
+
+    @Override
+    public String toString() {
+        return String.format(
+                Locale.US,
+                "%s{priority: %s, sampleRate: %s, rateLimit: %d/%dms}",
+                getClass().getSimpleName(),
+                priority,
+                sampleRate,
+                rateLimit,
+                ratePeriod);
+    }
+
+    /**
+     * Parses a policy from the session configuration, in the form of
+     * <pre>
+     * {"priority": "LOW", "sampleRate": 0.1, "rateLimit": {"events": 10, "seconds": 1}}
+     * </pre>
+     * where each of the fields is optional.
+     *
+     * @return the policy, or {@code null} if it is invalid
+     */
+    @Nullable
+    static EventPolicy fromJson(JSONObject json) {
+        final Priority priority;
+        try {
+            priority = Priority.valueOf(json
+                    .optString("priority", Priority.NORMAL.name())
+                    .toUpperCase(Locale.ENGLISH));
+        } catch (IllegalArgumentException e) {
+            return null;
+        }
+
+        final double sampleRate = json.optDouble("sampleRate", 1);
+        if (!(sampleRate >= 0 && sampleRate <= 1)) return null;
+
+        EventPolicy policy = of(priority).withSampleRate((float) sampleRate);
+
+        final JSONObject rateLimit = json.optJSONObject("rateLimit");
+        if (rateLimit != null) {
+            final int events = rateLimit.optInt("events", 0);
+            final long seconds = rateLimit.optLong("seconds", 0);
+            if (events <= 0 || seconds <= 0) return null;
+
+            policy = policy.withRateLimit(events, seconds, TimeUnit.SECONDS);
+        }
+
+        return policy;
+    }
+}
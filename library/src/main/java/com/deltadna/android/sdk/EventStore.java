@@ -21,20 +21,40 @@ import android.database.Cursor;
 import android.database.sqlite.SQLiteException;
 import android.os.AsyncTask;
 import androidx.annotation.Nullable;
-import android.util.Log;
+import androidx.annotation.WorkerThread;
+import com.deltadna.android.sdk.util.Log;
 import com.deltadna.android.sdk.DatabaseHelper.Events;
 import com.deltadna.android.sdk.helpers.Settings;
+import com.deltadna.android.sdk.helpers.Settings.EventDurability;
+import com.deltadna.android.sdk.helpers.Settings.EventStorageFormat;
+import com.deltadna.android.sdk.metrics.Counter;
+import com.deltadna.android.sdk.metrics.Gauge;
+import com.deltadna.android.sdk.metrics.Histogram;
+import com.deltadna.android.sdk.metrics.Metrics;
+import com.deltadna.android.sdk.tracing.Span;
+import com.deltadna.android.sdk.tracing.Tracing;
 import com.deltadna.android.sdk.util.CloseableIterator;
 
+import org.json.JSONObject;
+
 import java.io.*;
+import java.nio.channels.FileChannel;
 import java.nio.charset.Charset;
-import java.security.MessageDigest;
-import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
 import java.util.Locale;
 import java.util.NoSuchElementException;
+import java.util.Queue;
 import java.util.UUID;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.locks.Lock;
 import java.util.concurrent.locks.ReentrantLock;
+import java.util.zip.CRC32;
 
 class EventStore extends BroadcastReceiver {
 
@@ -45,6 +65,22 @@ class EventStore extends BroadcastReceiver {
     private static final Charset UTF8 = Charset.forName("UTF-8");
     static final int EVENTS_LIMIT = 1024 * 1024;
     private static final int STORE_LIMIT = 5 * EVENTS_LIMIT;
+    /**
+     * Additional space for critical events once the store is full.
+     */
+    private static final int CRITICAL_RESERVE = EVENTS_LIMIT;
+    private static final int BATCH_SIZE = 100;
+    /**
+     * Length of the hex CRC32 stored for each event, as opposed to the
+     * SHA-1 stored by earlier versions which is not checked.
+     */
+    private static final int CHECKSUM_LENGTH = 8;
+    private static final long SWEEP_BUDGET = 250;
+
+    private static final Counter STORED = Metrics.counter("events.stored");
+    private static final Counter SKIPPED = Metrics.counter("events.skipped");
+    private static final Gauge STORE_BYTES = Metrics.gauge("events.storeBytes");
+    private static final Histogram WRITE_MILLIS = Metrics.histogram("events.writeMillis");
 
     private static final IntentFilter FILTER;
 
@@ -63,8 +99,29 @@ class EventStore extends BroadcastReceiver {
     private final Settings settings;
     private final Preferences prefs;
 
+    private final EventBuffer<CompactEvent> buffer;
+    /**
+     * Critical events bypass the buffer so that they cannot be dropped, and
+     * they get written out first.
+     */
+    private final Queue<CompactEvent> critical = new ConcurrentLinkedQueue<>();
+    /**
+     * Events added together, which get written out in one transaction.
+     */
+    private final Queue<List<CompactEvent>> batches = new ConcurrentLinkedQueue<>();
+    private final ExecutorService writer = Executors.newSingleThreadExecutor(
+            r -> new Thread(r, EventStore.class.getSimpleName()));
+    private final EventStoreSweeper sweeper;
+    private final AtomicBoolean draining = new AtomicBoolean();
+    private volatile boolean ready;
+    private volatile long storedSize;
+
+    /**
+     * Last header written, which is likely to be used by the next event.
+     */
     @Nullable
-    private final MessageDigest sha1;
+    private String header;
+    private long headerId = -1;
 
     EventStore(
             Context context,
@@ -77,18 +134,44 @@ class EventStore extends BroadcastReceiver {
         this.settings = settings;
         this.prefs = prefs;
 
-        MessageDigest digest = null;
-        try {
-            digest = MessageDigest.getInstance("SHA1");
-        } catch (NoSuchAlgorithmException e) {
-            Log.w(TAG, "Hashing will be disabled", e);
-        } finally {
-            sha1 = digest;
-        }
+        buffer = new EventBuffer<>(
+                settings.getEventBufferCapacity(),
+                settings.getEventOverflowPolicy());
+        sweeper = new EventStoreSweeper(db, context, DIRECTORY, SWEEP_BUDGET);
+    }
+
+    /**
+     * Prepares the storage and starts listening for storage changes, after
+     * which any events added in the meantime get written out. Expected to be
+     * called once during initialisation.
+     */
+    @WorkerThread
+    void prepare() {
+        prepare(false);
+    }
 
+    /**
+     * Prepares the storage and starts listening for storage changes, after
+     * which any events added in the meantime get written out. Expected to be
+     * called once during initialisation.
+     *
+     * @param clearStored   whether the events stored previously should be
+     *                      cleared, before any events added in the meantime
+     *                      get written out
+     */
+    @WorkerThread
+    void prepare(boolean clearStored) {
         context.registerReceiver(this, FILTER);
 
-        prepare();
+        if (clearStored) clearStored();
+        prepareStorage();
+
+        ready = true;
+        if (!buffer.isEmpty()) {
+            Log.d(TAG, "Writing %d buffered events", buffer.size());
+        }
+        drain();
+        sweep();
     }
 
     @Override
@@ -96,71 +179,177 @@ class EventStore extends BroadcastReceiver {
         final String action = intent.getAction();
         if (action != null && action.equals(Intent.ACTION_MEDIA_MOUNTED)) {
             Log.d(TAG, "Received media mounted broadcast");
-            prepare();
+            prepareStorage();
+            sweep();
         } else {
             Log.w(TAG, "Unexpected broadcast action: " + action);
         }
     }
 
     /**
-     * Adds content to the store in a non-blocking manner.
+     * Adds content to the store in a non-blocking manner, which may drop the
+     * content if the event buffer is full depending on the overflow policy.
      *
      * @param content the content to be saved
      */
-    synchronized void add(String content) {
-        Log.v(TAG, "Adding " + content);
+    void add(String content) {
+        add(content, false);
+    }
 
-        final byte[] bytes = content.getBytes(UTF8);
-        if (bytes.length > EVENTS_LIMIT) {
-            Log.w(TAG, "Skipping " + content + " due to bulk events limit");
-            return;
-        } else {
-            new CheckEventsLimitTask(db, bytes, STORE_LIMIT, content).execute();
-        }
+    /**
+     * Adds content to the store in a non-blocking manner, which may drop the
+     * content if the event buffer is full depending on the overflow policy.
+     *
+     * @param content   the content to be saved
+     * @param critical  whether the content should never be dropped
+     */
+    void add(String content, boolean critical) {
+        add(CompactEvent.of(content), critical);
+    }
 
+    /**
+     * Adds an event to the store in a non-blocking manner, which may drop the
+     * event if the event buffer is full depending on the overflow policy.
+     *
+     * @param event     the event to be saved
+     * @param critical  whether the event should never be dropped
+     *
+     * @return the event as it will be stored
+     */
+    CompactEvent add(JSONObject event, boolean critical) {
+        final CompactEvent compact = CompactEvent.from(
+                event,
+                settings.getEventStorageFormat() == EventStorageFormat.BINARY);
+        add(compact, critical);
+        return compact;
     }
 
-    private class CheckEventsLimitTask extends AsyncTask<Void, Void, Boolean> {
+    /**
+     * Adds an event to the store in a non-blocking manner, which may drop the
+     * event if the event buffer is full depending on the overflow policy.
+     *
+     * @param event     the event to be saved
+     * @param critical  whether the event should never be dropped
+     */
+    void add(CompactEvent event, boolean critical) {
+        if (Log.PAYLOADS) Log.v(TAG, "Adding %s", event);
 
-        private DatabaseHelper db;
-        private byte[] bytes;
-        private int storeLimit;
-        private String content;
+        if (critical) {
+            this.critical.add(event);
+        } else {
+            switch (buffer.offer(event)) {
+                case DROPPED:
+                    Log.w(TAG, "Skipping %s due to full event buffer", event.name);
+                    if (Log.PAYLOADS) Log.d(TAG, "Skipped %s", event);
+                    break;
+
+                case SPILL:
+                    // bypasses the buffer but is still written out by the writer
+                    if (Log.PAYLOADS) Log.d(TAG, "Spilling %s due to full event buffer", event);
+                    batches.add(Collections.singletonList(event));
+                    break;
+            }
+        }
 
-        public CheckEventsLimitTask(DatabaseHelper db, byte[] bytes, int storeLimit, String content) {
+        if (ready) drain();
+    }
 
-            this.db = db;
-            this.bytes = bytes;
-            this.storeLimit = storeLimit;
-            this.content = content;
+    /**
+     * Adds events to the store in a non-blocking manner, bypassing the
+     * event buffer so that they get written out together in a single
+     * transaction.
+     *
+     * @param events    the events to be saved
+     * @param critical  whether the events should never be dropped
+     *
+     * @return the events as they will be stored
+     */
+    List<CompactEvent> addAll(List<JSONObject> events, boolean critical) {
+        final boolean encode =
+                settings.getEventStorageFormat() == EventStorageFormat.BINARY;
+        final List<CompactEvent> compacts = new ArrayList<>(events.size());
+        for (final JSONObject event : events) {
+            compacts.add(CompactEvent.from(event, encode));
         }
+        if (compacts.isEmpty()) return compacts;
 
-        @Override
-        protected Boolean doInBackground(Void... voids) {
-            return db.getEventsSize() + bytes.length < storeLimit;
-        }
+        if (Log.PAYLOADS) Log.v(TAG, "Adding %s", compacts);
 
-        @Override
-        protected void onPostExecute(Boolean isEnoughSpace) {
-            if (!isEnoughSpace) {
-                Log.w(TAG, "Skipping " + content + " due to full event store");
-            } else {
-                new SaveTask(bytes).execute();
-            }
+        if (critical) {
+            this.critical.addAll(compacts);
+        } else {
+            batches.add(compacts);
         }
+
+        if (ready) drain();
+        return compacts;
+    }
+
+    /**
+     * @return how full the event buffer or the store is, whichever is more,
+     *         between 0 and 1
+     */
+    float getPressure() {
+        return Math.min(1, Math.max(
+                buffer.size() / (float) buffer.capacity(),
+                storedSize / (float) STORE_LIMIT));
     }
 
+    /**
+     * @return the number of events dropped due to a full event buffer
+     */
+    long getDroppedEvents() {
+        return buffer.getDropped();
+    }
+
+    /**
+     * @return the number of events which bypassed the buffer due to it
+     *         being full
+     */
+    long getSpilledEvents() {
+        return buffer.getSpilled();
+    }
+
+    /**
+     * Reconciles the stored events against the database and quarantines
+     * any corrupted events, in the background after any pending writes.
+     */
+    void sweep() {
+        writer.execute(() -> {
+            sweeper.run();
+            // rows may have been removed for missing or corrupted files
+            updateStoredSize();
+        });
+    }
 
     synchronized CloseableIterator<EventStoreItem> items() {
-        return new EventIterator(db, context);
+        return new EventIterator(db, context, this::onItemsClosed);
     }
 
     synchronized void clear() {
+        buffer.clear();
+        critical.clear();
+        batches.clear();
+
+        clearStored();
+    }
+
+    /**
+     * Clears the events which have been written out, leaving any buffered
+     * events in place.
+     */
+    synchronized void clearStored() {
         db.removeEventRows();
+        setStoredSize(0);
+        header = null;
+        headerId = -1;
         for (final Location location : Location.values()) {
             if (location.available()) {
                 final File dir = location.storage(context, DIRECTORY);
-                for (final File file : dir.listFiles()) {
+                final File[] files = dir.listFiles();
+                if (files == null) continue;
+
+                for (final File file : files) {
                     if (!file.delete()) {
                         Log.w(TAG, "Failed to clear " + file);
                     }
@@ -171,7 +360,7 @@ class EventStore extends BroadcastReceiver {
         }
     }
 
-    private void prepare() {
+    private void prepareStorage() {
         for (final Location location : Location.values()) {
             if (location.available()) {
                 final File dir = location.storage(context, DIRECTORY);
@@ -190,15 +379,28 @@ class EventStore extends BroadcastReceiver {
         new MigrateLegacyStore(prefs).execute();
     }
 
-    @Nullable
-    private String md5(byte[] content) {
-        if (sha1 == null) return null;
+    private static String checksum(byte[] content, int offset, int length) {
+        final CRC32 crc = new CRC32();
+        crc.update(content, offset, length);
+        return String.format(Locale.US, "%08x", crc.getValue());
+    }
 
-        final StringBuilder hex = new StringBuilder();
-        for (final byte aByte : sha1.digest(content)) {
-            hex.append(String.format("%02x", aByte));
-        }
-        return hex.toString();
+    /**
+     * @return whether stored content matches the size and checksum it was
+     *         stored with, so that truncated or corrupted events can be
+     *         skipped
+     */
+    static boolean intact(
+            byte[] content,
+            int offset,
+            int length,
+            long size,
+            @Nullable String hash) {
+
+        return length == size
+                && (    hash == null
+                        || hash.length() != CHECKSUM_LENGTH
+                        || hash.equals(checksum(content, offset, length)));
     }
 
     private final class MigrateLegacyStore extends AsyncTask<Void, Void, Void> {
@@ -264,49 +466,182 @@ class EventStore extends BroadcastReceiver {
         }
     }
 
-    private final class SaveTask extends AsyncTask<Void, Void, Void> {
+    private void drain() {
+        if (draining.compareAndSet(false, true)) {
+            writer.execute(new Drain());
+        }
+    }
 
-        private final byte[] content;
-        private final long time;
+    private Location location() {
+        if (settings.isUseInternalStorageForEvents()) {
+            return Location.INTERNAL;
+        } else if (Location.EXTERNAL.available()) {
+            return Location.EXTERNAL;
+        } else {
+            Log.w(TAG, String.format(
+                    Locale.US,
+                    "%s not available, falling back to %s",
+                    Location.EXTERNAL,
+                    Location.INTERNAL));
+            return Location.INTERNAL;
+        }
+    }
 
-        SaveTask(byte[] content) {
-            this.content = content;
-            time = System.currentTimeMillis();
+    /**
+     * Called once the items have been iterated over, during which uploaded
+     * rows may have been removed.
+     */
+    private synchronized void onItemsClosed() {
+        try {
+            db.removeUnusedEventHeaders(headerId);
+        } catch (SQLiteException e) {
+            Log.w(TAG, "Failed removing unused event headers", e);
         }
 
-        @Override
-        protected Void doInBackground(Void... params) {
-            final String name = UUID.randomUUID().toString();
-            final Location location;
-            if (settings.isUseInternalStorageForEvents()) {
-                location = Location.INTERNAL;
-            } else if (Location.EXTERNAL.available()) {
-                location = Location.EXTERNAL;
-            } else {
-                Log.w(TAG, String.format(
-                        Locale.US,
-                        "%s not available, falling back to %s",
-                        Location.EXTERNAL,
-                        Location.INTERNAL));
-                location = Location.INTERNAL;
+        updateStoredSize();
+    }
+
+    private synchronized void updateStoredSize() {
+        try {
+            setStoredSize(db.getEventsSize());
+        } catch (SQLiteException e) {
+            Log.w(TAG, "Failed querying size of event store", e);
+        }
+    }
+
+    private void setStoredSize(long size) {
+        storedSize = size;
+        STORE_BYTES.set(size);
+    }
+
+    /**
+     * @return the id of the header row, or {@code -1} if it could not be
+     *         stored
+     */
+    private long headerId(String header) {
+        if (header.equals(this.header)) return headerId;
+
+        final CompactEvent.Header parsed = CompactEvent.Header.parse(header);
+        if (parsed == null) return -1;
+
+        final long id;
+        try {
+            id = db.getOrInsertEventHeader(header, parsed.size());
+        } catch (SQLiteException e) {
+            Log.e(TAG, "Failed inserting event header", e);
+            return -1;
+        }
+
+        if (id != -1) {
+            this.header = header;
+            headerId = id;
+        }
+        return id;
+    }
+
+    /**
+     * Writes out the events, inserting the rows for all of them in a
+     * single transaction. Events are written without their header where
+     * possible, which is stored once in its own row instead.
+     *
+     * @param limit the size of the store up to which events are written
+     */
+    @WorkerThread
+    private synchronized void write(List<CompactEvent> events, int limit) {
+        final EventDurability durability = settings.getEventDurability();
+        if (durability == EventDurability.EVERY_EVENT && events.size() > 1) {
+            for (final CompactEvent event : events) {
+                write(Collections.singletonList(event), limit);
             }
-            final String hash = md5(content);
+            return;
+        }
 
-            final File file = new File(
-                    location.storage(context, DIRECTORY),
-                    name);
+        final Span span = Tracing.begin("EventStore.write").arg("events", events.size());
+        try {
+            write(events, limit, span);
+        } finally {
+            span.close();
+        }
+    }
+
+    /**
+     * Called with the lock held by {@link #write(List, int)}.
+     */
+    private void write(List<CompactEvent> events, int limit, Span span) {
+        final EventDurability durability = settings.getEventDurability();
+        final long start = Metrics.start();
+        final Location location = location();
+        final File directory = location.storage(context, DIRECTORY);
+        if (!directory.exists() && !directory.mkdirs()) {
+            Log.w(TAG, "Failed creating " + directory);
+        }
+
+        long size;
+        try {
+            size = db.getEventsSize();
+        } catch (SQLiteException e) {
+            Log.e(TAG, "Failed querying size of event store", e);
+            return;
+        }
+
+        final List<CompactEvent> written = new ArrayList<>(events.size());
+        final List<File> files = new ArrayList<>(events.size());
+        final List<ContentValues> rows = new ArrayList<>(events.size());
+        final List<FileOutputStream> unsynced = new ArrayList<>(events.size());
+        for (final CompactEvent event : events) {
+            Long header = null;
+            byte[] bytes = event.bytes();
+            if (event.header != null) {
+                final long id = headerId(event.header);
+                if (id != -1) {
+                    header = id;
+                } else {
+                    final CompactEvent.Header parsed =
+                            CompactEvent.Header.parse(event.header);
+                    if (parsed == null) continue;
+
+                    try {
+                        bytes = parsed.expand(event.json()).getBytes(UTF8);
+                    } catch (IOException e) {
+                        Log.w(TAG, "Failed expanding " + event.name, e);
+                        if (Log.PAYLOADS) Log.d(TAG, "Skipped %s", event);
+                        continue;
+                    }
+                }
+            }
+
+            if (bytes.length > EVENTS_LIMIT) {
+                Log.w(TAG, "Skipping %s due to bulk events limit", event.name);
+                if (Log.PAYLOADS) Log.d(TAG, "Skipped %s", event);
+                SKIPPED.increment();
+                continue;
+            } else if (size + bytes.length >= limit) {
+                Log.w(TAG, "Skipping %s due to full event store", event.name);
+                if (Log.PAYLOADS) Log.d(TAG, "Skipped %s", event);
+                SKIPPED.increment();
+                continue;
+            }
+
+            final String name = UUID.randomUUID().toString();
+            final File file = new File(directory, name);
             FileOutputStream out = null;
             try {
                 out = new FileOutputStream(file);
-                out.write(content);
+                out.write(bytes);
+
+                if (durability != EventDurability.NONE) {
+                    // synced together once the whole batch has been written
+                    unsynced.add(out);
+                    out = null;
+                }
             } catch (FileNotFoundException e) {
                 Log.e(TAG, "Failed opening stream for " + file, e);
-                return null;
+                continue;
             } catch (IOException e) {
                 Log.e(TAG, "Failed writing to stream for " + file, e);
                 //noinspection ResultOfMethodCallIgnored
                 file.delete();
-                return null;
+                continue;
             } finally {
                 if (out != null) {
                     try {
@@ -317,23 +652,86 @@ class EventStore extends BroadcastReceiver {
                 }
             }
 
-            boolean dbInsertSucceeded;
+            written.add(event);
+            files.add(file);
+            rows.add(DatabaseHelper.eventRow(
+                    event.time,
+                    location,
+                    name,
+                    checksum(bytes, 0, bytes.length),
+                    bytes.length,
+                    header));
+            size += bytes.length;
+        }
+
+        // rows only get inserted once the files are on the device
+        for (int i = 0; i < unsynced.size(); i++) {
+            final FileOutputStream out = unsynced.get(i);
             try {
-                dbInsertSucceeded = db.insertEventRow(time, location, name, hash, file.length());
-            } catch (SQLiteException e) {
-                Log.e(TAG, "An error occurred when trying to insert event row into the database", e);
-                dbInsertSucceeded = false;
+                out.getFD().sync();
+            } catch (IOException e) {
+                Log.w(TAG, "Failed syncing " + files.get(i), e);
+            } finally {
+                try {
+                    out.close();
+                } catch (IOException e) {
+                    Log.w(TAG, "Failed closing stream for " + files.get(i), e);
+                }
             }
+        }
+
+        setStoredSize(size);
+        if (rows.isEmpty()) return;
 
-            if (!dbInsertSucceeded) {
-                Log.w(TAG, "Failed inserting " + new String(content));
+        boolean[] inserted;
+        try {
+            inserted = db.insertEventRows(rows);
+        } catch (SQLiteException e) {
+            Log.e(TAG, "An error occurred when trying to insert event rows into the database", e);
+            inserted = new boolean[rows.size()];
+        }
+
+        for (int i = 0; i < inserted.length; i++) {
+            if (!inserted[i]) {
+                Log.w(TAG, "Failed inserting %s", written.get(i).name);
+                if (Log.PAYLOADS) Log.d(TAG, "Failed inserting %s", written.get(i));
                 //noinspection ResultOfMethodCallIgnored
-                file.delete();
+                files.get(i).delete();
             } else {
-                Log.v(TAG, "Inserted " + new String(content));
+                if (Log.PAYLOADS) Log.v(TAG, "Inserted %s", written.get(i));
+                STORED.increment();
+                span.correlate(written.get(i).uuid);
+            }
+        }
+        WRITE_MILLIS.recordSince(start, TimeUnit.MILLISECONDS);
+    }
+
+    private final class Drain implements Runnable {
+
+        @Override
+        public void run() {
+            // anything added after this point will schedule another drain
+            draining.set(false);
+
+            final List<CompactEvent> batch = new ArrayList<>(BATCH_SIZE);
+            CompactEvent event;
+            while ((event = critical.poll()) != null) {
+                batch.add(event);
+            }
+            if (!batch.isEmpty()) {
+                write(batch, STORE_LIMIT + CRITICAL_RESERVE);
+                batch.clear();
+            }
+
+            while (buffer.drainTo(batch, BATCH_SIZE) > 0) {
+                write(batch, STORE_LIMIT);
+                batch.clear();
             }
 
-            return null;
+            List<CompactEvent> added;
+            while ((added = batches.poll()) != null) {
+                write(added, STORE_LIMIT);
+            }
         }
     }
 
@@ -342,12 +740,19 @@ class EventStore extends BroadcastReceiver {
 
         private final DatabaseHelper db;
         private final Context context;
+        private final Runnable onClose;
 
         private final Cursor cursor;
 
-        EventIterator(DatabaseHelper db, Context context) {
+        @Nullable
+        private String header;
+        @Nullable
+        private CompactEvent.Header parsedHeader;
+
+        EventIterator(DatabaseHelper db, Context context, Runnable onClose) {
             this.db = db;
             this.context = context;
+            this.onClose = onClose;
 
             cursor = db.getEventRows();
         }
@@ -362,6 +767,15 @@ class EventStore extends BroadcastReceiver {
             if (!cursor.moveToNext()) throw new NoSuchElementException();
 
             final Location location = getCurrentLocation();
+            final long size = cursor.getLong(
+                    cursor.getColumnIndex(Events.Column.SIZE.toString()));
+            final String hash = cursor.getString(
+                    cursor.getColumnIndex(Events.Column.HASH.toString()));
+            final boolean compact = !cursor.isNull(cursor.getColumnIndex(
+                    DatabaseHelper.EventHeaders.Column.CONTENT.toString()));
+            final CompactEvent.Header header = compact ? getCurrentHeader() : null;
+            final long time = cursor.getLong(
+                    cursor.getColumnIndex(Events.Column.TIME.toString()));
 
             return new EventStoreItem() {
                 @Override
@@ -369,21 +783,97 @@ class EventStore extends BroadcastReceiver {
                     return location.available();
                 }
 
+                @Override
+                public long time() {
+                    return time;
+                }
+
+                @Override
+                public boolean writeTo(BulkPayload payload) {
+                    if (compact && header == null) {
+                        Log.w(TAG, "Missing header for stored event");
+                        return false;
+                    }
+
+                    final File file = new File(
+                            location.storage(context, DIRECTORY),
+                            getCurrentName());
+                    final int start = payload.position();
+                    RandomAccessFile in = null;
+                    try {
+                        in = new RandomAccessFile(file, "r");
+                        final FileChannel channel = in.getChannel();
+                        payload.read(channel, (int) channel.size());
+                    } catch (FileNotFoundException e) {
+                        Log.e(TAG, "Failed opening " + file, e);
+                        return false;
+                    } catch (IOException e) {
+                        Log.e(TAG, "Failed reading " + file, e);
+                        return false;
+                    } finally {
+                        if (in != null) {
+                            try {
+                                in.close();
+                            } catch (IOException e) {
+                                Log.w(TAG, "Failed closing " + file, e);
+                            }
+                        }
+                    }
+
+                    final int length = payload.position() - start;
+                    if (!intact(payload.array(), start, length, size, hash)) {
+                        Log.w(TAG, "Skipping corrupted " + file);
+                        return false;
+                    }
+
+                    if (EventEncoding.isEncoded(payload.array(), start, length)) {
+                        // decoded after the encoded bytes, which then get dropped
+                        try {
+                            EventEncoding.decode(payload.array(), start, length, payload);
+                        } catch (IOException e) {
+                            Log.w(TAG, "Failed decoding " + file, e);
+                            return false;
+                        }
+                        payload.remove(start, length);
+                    }
+
+                    if (header != null) {
+                        if (!header.expand(payload, start)) {
+                            Log.w(TAG, "Unexpected body in " + file);
+                            return false;
+                        }
+                    } else if ( payload.position() - start < 2
+                                || payload.get(start) != '{'
+                                || payload.get(payload.position() - 1) != '}') {
+                        Log.w(TAG, "Unexpected content in " + file);
+                        return false;
+                    }
+
+                    return true;
+                }
+
                 @Override
                 @Nullable
                 public String get() {
+                    if (compact && header == null) {
+                        Log.w(TAG, "Missing header for stored event");
+                        return null;
+                    }
+
                     final File file = new File(
                             location.storage(context, DIRECTORY),
                             getCurrentName());
-                    final StringBuilder builder = new StringBuilder();
-                    BufferedReader reader = null;
+                    // read as a whole, as lines would lose any line breaks
+                    final byte[] bytes = new byte[(int) file.length()];
+                    InputStream in = null;
                     try {
-                        reader = new BufferedReader(new InputStreamReader(
-                                new FileInputStream(file)));
+                        in = new FileInputStream(file);
 
-                        String line;
-                        while ((line = reader.readLine()) != null) {
-                            builder.append(line);
+                        int read = 0;
+                        while (read < bytes.length) {
+                            final int count = in.read(bytes, read, bytes.length - read);
+                            if (count == -1) throw new EOFException();
+                            read += count;
                         }
                     } catch (FileNotFoundException e) {
                         Log.e(TAG, "Failed opening stream for " + file, e);
@@ -392,16 +882,33 @@ class EventStore extends BroadcastReceiver {
                         Log.e(TAG, "Failed reading stream for " + file, e);
                         return null;
                     } finally {
-                        if (reader != null) {
+                        if (in != null) {
                             try {
-                                reader.close();
+                                in.close();
                             } catch (IOException e) {
                                 Log.w(TAG, "Failed closing stream for " + file, e);
                             }
                         }
                     }
 
-                    return builder.toString();
+                    if (!intact(bytes, 0, bytes.length, size, hash)) {
+                        Log.w(TAG, "Skipping corrupted " + file);
+                        return null;
+                    }
+
+                    final String content;
+                    if (EventEncoding.isEncoded(bytes, 0, bytes.length)) {
+                        try {
+                            content = EventEncoding.decode(bytes);
+                        } catch (IOException e) {
+                            Log.w(TAG, "Failed decoding " + file, e);
+                            return null;
+                        }
+                    } else {
+                        content = new String(bytes, UTF8);
+                    }
+
+                    return (header != null) ? header.expand(content) : content;
                 }
             };
         }
@@ -437,6 +944,10 @@ class EventStore extends BroadcastReceiver {
             } finally {
                 cursor.close();
             }
+
+            if (mode != Mode.NONE) {
+                onClose.run();
+            }
         }
 
         private long getCurrentId() {
@@ -454,6 +965,23 @@ class EventStore extends BroadcastReceiver {
                     cursor.getColumnIndex(Events.Column.NAME.toString()));
         }
 
+        /**
+         * @return the header of the current row, or {@code null} if it
+         *         could not be parsed
+         */
+        @Nullable
+        private CompactEvent.Header getCurrentHeader() {
+            final String content = cursor.getString(cursor.getColumnIndex(
+                    DatabaseHelper.EventHeaders.Column.CONTENT.toString()));
+
+            // consecutive events almost always share the header
+            if (!content.equals(header)) {
+                header = content;
+                parsedHeader = CompactEvent.Header.parse(content);
+            }
+            return parsedHeader;
+        }
+
         private void removeRow() {
             if (!db.removeEventRow(getCurrentId())) {
                 Log.w(TAG, "Failed to remove event row");
@@ -22,6 +22,20 @@ interface EventStoreItem {
     
     boolean available();
     
+    /**
+     * @return when the event was recorded, in milliseconds since the epoch
+     */
+    long time();
+    
     @Nullable
     String get();
+    
+    /**
+     * Appends the event as JSON text to {@code payload}, without going
+     * through a string.
+     * 
+     * @return {@code false} if the event could not be read, in which case
+     *         {@code payload} may have been partially written to
+     */
+    boolean writeTo(BulkPayload payload);
 }
@@ -0,0 +1,341 @@
+/*
+ * Copyright (c) 2016 deltaDNA Ltd. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.deltadna.android.sdk;
+
+import android.content.Context;
+import android.database.Cursor;
+import android.database.sqlite.SQLiteException;
+import androidx.annotation.Nullable;
+import androidx.annotation.WorkerThread;
+import com.deltadna.android.sdk.util.Log;
+import com.deltadna.android.sdk.DatabaseHelper.Events;
+import com.deltadna.android.sdk.metrics.Counter;
+import com.deltadna.android.sdk.metrics.Histogram;
+import com.deltadna.android.sdk.metrics.Metrics;
+
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.EnumMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Reconciles the stored event files against the rows in the database, and
+ * verifies stored events so that corrupted ones get quarantined before they
+ * reach an upload.
+ * <p>
+ * Files without a row are deleted once they are old enough not to be in
+ * the middle of being written, and rows without a file are removed unless
+ * their storage is currently unavailable. Verification stops once the time
+ * budget has been used up, and carries on from the same point on the next
+ * run.
+ */
+final class EventStoreSweeper implements Runnable {
+
+    private static final String TAG = BuildConfig.LOG_TAG
+            + ' '
+            + EventStoreSweeper.class.getSimpleName();
+
+    private static final String QUARANTINE = "events-quarantine" + File.separator;
+    private static final int QUARANTINE_LIMIT = 16;
+    /**
+     * How old a file without a row has to be before it gets deleted, as
+     * rows are inserted after the files have been written.
+     */
+    private static final long ORPHAN_AGE = TimeUnit.MINUTES.toMillis(1);
+
+    private static final Counter ORPHANED = Metrics.counter("events.orphanedFiles");
+    private static final Counter MISSING = Metrics.counter("events.missingFiles");
+    private static final Counter QUARANTINED = Metrics.counter("events.quarantined");
+    private static final Counter VERIFIED = Metrics.counter("events.verified");
+    /**
+     * Sweeps which ran out of budget before verifying all of the rows.
+     */
+    private static final Counter INCOMPLETE = Metrics.counter("events.sweepsIncomplete");
+    private static final Histogram SWEEP_MILLIS = Metrics.histogram("events.sweepMillis");
+
+    private final DatabaseHelper db;
+    private final Context context;
+    private final String directory;
+    private final long budgetNanos;
+
+    /**
+     * Id of the last row verified, so that the next run carries on after
+     * it.
+     */
+    private long lastVerified;
+
+    EventStoreSweeper(
+            DatabaseHelper db,
+            Context context,
+            String directory,
+            long budgetMillis) {
+
+        this.db = db;
+        this.context = context;
+        this.directory = directory;
+        this.budgetNanos = TimeUnit.MILLISECONDS.toNanos(budgetMillis);
+    }
+
+    @Override
+    @WorkerThread
+    public void run() {
+        final long start = System.nanoTime();
+
+        final List<Row> rows;
+        try {
+            rows = rows();
+        } catch (SQLiteException e) {
+            Log.w(TAG, "Failed querying event rows", e);
+            return;
+        }
+
+        final Map<Location, Set<String>> known = new EnumMap<>(Location.class);
+        for (final Location location : Location.values()) {
+            known.put(location, new HashSet<>());
+        }
+        for (final Row row : rows) {
+            known.get(row.location).add(row.name);
+        }
+
+        // files without rows
+        int orphaned = 0;
+        final Map<Location, Set<String>> existing = new EnumMap<>(Location.class);
+        final long now = System.currentTimeMillis();
+        for (final Location location : Location.values()) {
+            if (!location.available()) continue;
+
+            final File[] files = location.storage(context, directory).listFiles();
+            final Set<String> names = new HashSet<>();
+            existing.put(location, names);
+            if (files == null) continue;
+
+            for (final File file : files) {
+                if (known.get(location).contains(file.getName())) {
+                    names.add(file.getName());
+                } else if (now - file.lastModified() > ORPHAN_AGE) {
+                    if (file.delete()) {
+                        orphaned++;
+                    } else {
+                        Log.w(TAG, "Failed deleting orphaned " + file);
+                    }
+                }
+            }
+        }
+
+        // rows without files, and rows which fail verification
+        final List<Long> removals = new ArrayList<>();
+        int missing = 0;
+        int quarantined = 0;
+        int verified = 0;
+        boolean complete = true;
+        for (final Row row : rows) {
+            final Set<String> names = existing.get(row.location);
+            if (names == null) continue;
+
+            if (!names.contains(row.name)) {
+                removals.add(row.id);
+                missing++;
+            } else if (System.nanoTime() - start > budgetNanos) {
+                complete = false;
+            } else {
+                final File file = new File(
+                        row.location.storage(context, directory),
+                        row.name);
+                if (!verify(file, row)) {
+                    quarantine(row.location, file);
+                    removals.add(row.id);
+                    quarantined++;
+                }
+
+                verified++;
+                lastVerified = row.id;
+            }
+        }
+
+        if (!removals.isEmpty()) {
+            try {
+                db.removeEventRows(removals);
+            } catch (SQLiteException e) {
+                Log.w(TAG, "Failed removing event rows", e);
+            }
+        }
+
+        final long elapsed = System.nanoTime() - start;
+        Log.d(TAG,
+                "Swept event store: %d orphaned files, %d missing files, "
+                        + "%d quarantined, %d verified%s in %dms",
+                orphaned,
+                missing,
+                quarantined,
+                verified,
+                complete ? "" : " (incomplete)",
+                TimeUnit.NANOSECONDS.toMillis(elapsed));
+        ORPHANED.add(orphaned);
+        MISSING.add(missing);
+        QUARANTINED.add(quarantined);
+        VERIFIED.add(verified);
+        if (!complete) INCOMPLETE.increment();
+        SWEEP_MILLIS.record(TimeUnit.NANOSECONDS.toMillis(elapsed));
+    }
+
+    /**
+     * @return the rows in the order they should be verified in
+     */
+    private List<Row> rows() throws SQLiteException {
+        try (Cursor cursor = db.getAllEventRows(lastVerified)) {
+            final List<Row> rows = new ArrayList<>(cursor.getCount());
+
+            final int id = cursor.getColumnIndex(Events.Column.ID.toString());
+            final int location = cursor.getColumnIndex(Events.Column.LOCATION.toString());
+            final int name = cursor.getColumnIndex(Events.Column.NAME.toString());
+            final int hash = cursor.getColumnIndex(Events.Column.HASH.toString());
+            final int size = cursor.getColumnIndex(Events.Column.SIZE.toString());
+            final int header = cursor.getColumnIndex(Events.Column.HEADER.toString());
+            while (cursor.moveToNext()) {
+                final Location parsed;
+                try {
+                    parsed = Location.valueOf(cursor.getString(location));
+                } catch (IllegalArgumentException e) {
+                    Log.w(TAG, "Unknown location for event row", e);
+                    continue;
+                }
+
+                rows.add(new Row(
+                        cursor.getLong(id),
+                        parsed,
+                        cursor.getString(name),
+                        cursor.getString(hash),
+                        cursor.getLong(size),
+                        !cursor.isNull(header)));
+            }
+
+            return rows;
+        }
+    }
+
+    private static boolean verify(File file, Row row) {
+        final long length = file.length();
+        if (length != row.size) return false;
+
+        final byte[] bytes = new byte[(int) length];
+        InputStream in = null;
+        try {
+            in = new FileInputStream(file);
+
+            int read = 0;
+            while (read < bytes.length) {
+                final int count = in.read(bytes, read, bytes.length - read);
+                if (count == -1) throw new EOFException();
+                read += count;
+            }
+        } catch (IOException e) {
+            Log.w(TAG, "Failed reading " + file, e);
+            return false;
+        } finally {
+            if (in != null) {
+                try {
+                    in.close();
+                } catch (IOException e) {
+                    Log.w(TAG, "Failed closing stream for " + file, e);
+                }
+            }
+        }
+
+        if (!EventStore.intact(bytes, 0, bytes.length, row.size, row.hash)) {
+            return false;
+        }
+
+        if (EventEncoding.isEncoded(bytes, 0, bytes.length)) {
+            try {
+                EventEncoding.decode(
+                        bytes,
+                        0,
+                        bytes.length,
+                        new BulkPayload(bytes.length * 2));
+                return true;
+            } catch (IOException e) {
+                return false;
+            }
+        } else {
+            final int end = bytes.length - 1;
+            return bytes.length >= 2
+                    && bytes[0] == '{'
+                    && bytes[end] == '}'
+                    && (!row.compact || (end >= 3 && bytes[end - 1] == '}'));
+        }
+    }
+
+    private void quarantine(Location location, File file) {
+        final File dir = location.storage(context, QUARANTINE);
+        if (!dir.exists() && !dir.mkdirs()) {
+            Log.w(TAG, "Failed creating " + dir);
+        }
+
+        if (file.renameTo(new File(dir, file.getName()))) {
+            Log.w(TAG, "Quarantined " + file);
+        } else if (!file.delete()) {
+            Log.w(TAG, "Failed deleting " + file);
+        }
+
+        // only the most recent files are kept for diagnosing
+        final File[] files = dir.listFiles();
+        if (files != null && files.length > QUARANTINE_LIMIT) {
+            Arrays.sort(files, (a, b) -> Long.compare(a.lastModified(), b.lastModified()));
+            for (int i = 0; i < files.length - QUARANTINE_LIMIT; i++) {
+                if (!files[i].delete()) {
+                    Log.w(TAG, "Failed deleting quarantined " + files[i]);
+                }
+            }
+        }
+    }
+
+    private static final class Row {
+
+        final long id;
+        final Location location;
+        final String name;
+        @Nullable
+        final String hash;
+        final long size;
+        final boolean compact;
+
+        Row(
+                long id,
+                Location location,
+                String name,
+                @Nullable String hash,
+                long size,
+                boolean compact) {
+
+            this.id = id;
+            this.location = location;
+            this.name = name;
+            this.hash = hash;
+            this.size = size;
+            this.compact = compact;
+        }
+    }
+}
@@ -20,7 +20,7 @@ import androidx.annotation.NonNull;
 import androidx.annotation.Nullable;
 
 import android.database.sqlite.SQLiteException;
-import android.util.Log;
+import com.deltadna.android.sdk.util.Log;
 import com.deltadna.android.sdk.triggers.ExecutionCountTriggerCondition;
 import com.deltadna.android.sdk.triggers.ExecutionRepeatTriggerCondition;
 import com.deltadna.android.sdk.triggers.TriggerCondition;
@@ -28,6 +28,9 @@ import org.json.JSONArray;
 import org.json.JSONException;
 import org.json.JSONObject;
 
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
 import java.text.ParseException;
 import java.util.*;
 
@@ -38,12 +41,12 @@ public final class EventTrigger implements Comparable<EventTrigger> {
             + EventTrigger.class.getSimpleName();
     
     private final DDNA ddna;
+    private final Definition definition;
     private final int index;
     private final List<TriggerCondition> campaignTriggerConditions;
     
     private final String eventName;
     private final EventTriggeredCampaignMetricStore etcMetricStore;
-    private final JSONObject response;
     
     private final int priority;
     private final int limit;
@@ -60,40 +63,27 @@ public final class EventTrigger implements Comparable<EventTrigger> {
     private int runs;
     
     EventTrigger(DDNA ddna, int index, JSONObject json, EventTriggeredCampaignMetricStore etcMetricStore) {
+        this(ddna, Definition.from(index, json), etcMetricStore);
+    }
+    
+    EventTrigger(DDNA ddna, Definition definition, EventTriggeredCampaignMetricStore etcMetricStore) {
         this.ddna = ddna;
-        this.index = index;
+        this.definition = definition;
+        this.index = definition.index;
         
-        eventName = json.optString("eventName", "");
+        eventName = definition.eventName;
         this.etcMetricStore = etcMetricStore;
-        final JSONObject response = json.optJSONObject("response");
-        this.response = (response != null) ? response : new JSONObject();
 
-        priority = json.optInt("priority", 0);
-        limit = json.optInt("limit", -1);
-        final JSONArray condition = json.optJSONArray("condition");
-        if (condition != null) {
-            this.condition = new Object[condition.length()];
-            for (int i = 0; i < condition.length(); i++) {
-                final JSONObject value = condition.optJSONObject(i);
-                
-                if (value != null && value.has("o")) {
-                    this.condition[i] = Op.valueFromBackend(value.optString("o"));
-                } else if (value != null) {
-                    this.condition[i] = value.opt(value.keys().next());
-                }
-            }
-        } else {
-            this.condition = new Object[0];
-        }
+        priority = definition.priority;
+        limit = definition.limit;
+        condition = definition.condition;
 
-        campaignId = json.optInt("campaignID", -1);
-        variantId = json.optInt("variantID", -1);
-        campaignTriggerConditions = parseShowConditions(json.optJSONObject("campaignExecutionConfig"));
+        campaignId = definition.campaignId;
+        variantId = definition.variantId;
+        campaignTriggerConditions = showConditions(definition.showConditions);
 
-        final JSONObject nullableEventParams = this.response.optJSONObject("eventParams");
-        final JSONObject eventParams = nullableEventParams != null ? nullableEventParams : new JSONObject();
-        campaignName = eventParams.optString("responseEngagementName", null);
-        variantName = eventParams.optString("responseVariantName", null);
+        campaignName = definition.campaignName;
+        variantName = definition.variantName;
     }
     
     String getEventName() {
@@ -101,18 +91,11 @@ public final class EventTrigger implements Comparable<EventTrigger> {
     }
     
     String getAction() {
-        if (response.has("image")) {
-            final JSONObject image = response.optJSONObject("image");
-            if (image != null && image.length() > 0) {
-                return "imageMessage";
-            }
-        }
-        
-        return "gameParameters";
+        return definition.action;
     }
     
     JSONObject getResponse() {
-        return response;
+        return definition.response();
     }
 
     long getCampaignId() {
@@ -266,26 +249,15 @@ public final class EventTrigger implements Comparable<EventTrigger> {
         }
     }
 
-    private List<TriggerCondition> parseShowConditions(JSONObject campaignLimitsConfig) {
-        List<TriggerCondition> showConditions = new ArrayList<>();
-        if (campaignLimitsConfig == null) return showConditions;
-        if (campaignLimitsConfig.has("showConditions")) {
-            JSONArray showConditionsJson = campaignLimitsConfig.optJSONArray("showConditions");
-            for (int i = 0; i < showConditionsJson.length(); i++) {
-                try {
-                    JSONObject currentCondition = showConditionsJson.getJSONObject(i);
-                    if (currentCondition.has("executionsRequiredCount")) {
-                        long executionsRequiredCount = currentCondition.optLong("executionsRequiredCount", 0L);
-                        showConditions.add(new ExecutionCountTriggerCondition(executionsRequiredCount, etcMetricStore,
-                                variantId));
-                    }
-                    if (currentCondition.has("executionsRepeat")) {
-                        long repeatOn = currentCondition.optLong("executionsRepeat", 1L);
-                        long repeatTimesLimit = currentCondition.optLong("executionsRepeatLimit", -1L);
-                        showConditions.add(new ExecutionRepeatTriggerCondition(repeatOn, repeatTimesLimit, etcMetricStore, variantId));
-                    }
-                } catch (JSONException ignored) {
-                }
+    private List<TriggerCondition> showConditions(long[] definitions) {
+        final List<TriggerCondition> showConditions = new ArrayList<>(definitions.length / 3);
+        for (int i = 0; i < definitions.length; i += 3) {
+            if (definitions[i] == Definition.EXECUTIONS_REQUIRED) {
+                showConditions.add(new ExecutionCountTriggerCondition(
+                        definitions[i + 1], etcMetricStore, variantId));
+            } else if (definitions[i] == Definition.EXECUTIONS_REPEAT) {
+                showConditions.add(new ExecutionRepeatTriggerCondition(
+                        definitions[i + 1], definitions[i + 2], etcMetricStore, variantId));
             }
         }
         return showConditions;
@@ -304,6 +276,288 @@ public final class EventTrigger implements Comparable<EventTrigger> {
 
 
 
+    /**
+     * Parsed definition of a trigger, which can be persisted in a binary
+     * form and turned back into a trigger without going through JSON again.
+     * <p>
+     * Only the response is kept as JSON text, as it is handed over as-is to
+     * the action handlers, and it gets parsed once it is first needed.
+     */
+    static final class Definition {
+        
+        static final long EXECUTIONS_REQUIRED = 0;
+        static final long EXECUTIONS_REPEAT = 1;
+        
+        private static final byte TOKEN_NULL = 0;
+        private static final byte TOKEN_OP = 1;
+        private static final byte TOKEN_STRING = 2;
+        private static final byte TOKEN_BOOLEAN = 3;
+        private static final byte TOKEN_INTEGER = 4;
+        private static final byte TOKEN_LONG = 5;
+        private static final byte TOKEN_DOUBLE = 6;
+        
+        final int index;
+        final String eventName;
+        final int priority;
+        final int limit;
+        final Object[] condition;
+        final long campaignId;
+        final long variantId;
+        @Nullable
+        final String campaignName;
+        @Nullable
+        final String variantName;
+        final String action;
+        /**
+         * Show conditions as triples of kind and two arguments.
+         */
+        final long[] showConditions;
+        
+        @Nullable
+        private String responseJson;
+        @Nullable
+        private JSONObject response;
+        
+        Definition(
+                int index,
+                String eventName,
+                int priority,
+                int limit,
+                Object[] condition,
+                long campaignId,
+                long variantId,
+                @Nullable String campaignName,
+                @Nullable String variantName,
+                String action,
+                long[] showConditions,
+                @Nullable String responseJson,
+                @Nullable JSONObject response) {
+            
+            this.index = index;
+            this.eventName = eventName;
+            this.priority = priority;
+            this.limit = limit;
+            this.condition = condition;
+            this.campaignId = campaignId;
+            this.variantId = variantId;
+            this.campaignName = campaignName;
+            this.variantName = variantName;
+            this.action = action;
+            this.showConditions = showConditions;
+            this.responseJson = responseJson;
+            this.response = response;
+        }
+        
+        synchronized JSONObject response() {
+            if (response == null) {
+                try {
+                    response = new JSONObject(responseJson);
+                } catch (JSONException e) {
+                    Log.w(TAG, "Failed deserialising response of event trigger", e);
+                    response = new JSONObject();
+                }
+            }
+            
+            return response;
+        }
+        
+        synchronized String responseJson() {
+            if (responseJson == null) {
+                responseJson = response.toString();
+            }
+            
+            return responseJson;
+        }
+        
+        static Definition from(int index, JSONObject json) {
+            final JSONObject nullableResponse = json.optJSONObject("response");
+            final JSONObject response = (nullableResponse != null)
+                    ? nullableResponse
+                    : new JSONObject();
+            
+            final JSONArray array = json.optJSONArray("condition");
+            final Object[] condition;
+            if (array != null) {
+                condition = new Object[array.length()];
+                for (int i = 0; i < array.length(); i++) {
+                    final JSONObject value = array.optJSONObject(i);
+                    
+                    if (value != null && value.has("o")) {
+                        condition[i] = Op.valueFromBackend(value.optString("o"));
+                    } else if (value != null) {
+                        condition[i] = value.opt(value.keys().next());
+                    }
+                }
+            } else {
+                condition = new Object[0];
+            }
+            
+            String action = "gameParameters";
+            if (response.has("image")) {
+                final JSONObject image = response.optJSONObject("image");
+                if (image != null && image.length() > 0) {
+                    action = "imageMessage";
+                }
+            }
+            
+            final JSONObject nullableEventParams = response.optJSONObject("eventParams");
+            final JSONObject eventParams = nullableEventParams != null ? nullableEventParams : new JSONObject();
+            
+            return new Definition(
+                    index,
+                    json.optString("eventName", ""),
+                    json.optInt("priority", 0),
+                    json.optInt("limit", -1),
+                    condition,
+                    json.optInt("campaignID", -1),
+                    json.optInt("variantID", -1),
+                    eventParams.optString("responseEngagementName", null),
+                    eventParams.optString("responseVariantName", null),
+                    action,
+                    showConditions(json.optJSONObject("campaignExecutionConfig")),
+                    null,
+                    response);
+        }
+        
+        void write(DataOutputStream out) throws IOException {
+            out.writeInt(index);
+            SessionConfigurationStore.putString(out, eventName);
+            out.writeInt(priority);
+            out.writeInt(limit);
+            out.writeInt(condition.length);
+            for (final Object token : condition) {
+                if (token instanceof Op) {
+                    out.writeByte(TOKEN_OP);
+                    SessionConfigurationStore.putString(out, ((Op) token).value);
+                } else if (token instanceof String) {
+                    out.writeByte(TOKEN_STRING);
+                    SessionConfigurationStore.putString(out, (String) token);
+                } else if (token instanceof Boolean) {
+                    out.writeByte(TOKEN_BOOLEAN);
+                    out.writeBoolean((Boolean) token);
+                } else if (token instanceof Integer) {
+                    out.writeByte(TOKEN_INTEGER);
+                    out.writeInt((Integer) token);
+                } else if (token instanceof Long) {
+                    out.writeByte(TOKEN_LONG);
+                    out.writeLong((Long) token);
+                } else if (token instanceof Double) {
+                    out.writeByte(TOKEN_DOUBLE);
+                    out.writeDouble((Double) token);
+                } else {
+                    // anything else fails evaluation just like a null token
+                    out.writeByte(TOKEN_NULL);
+                }
+            }
+            out.writeLong(campaignId);
+            out.writeLong(variantId);
+            SessionConfigurationStore.putNullableString(out, campaignName);
+            SessionConfigurationStore.putNullableString(out, variantName);
+            SessionConfigurationStore.putString(out, action);
+            out.writeInt(showConditions.length);
+            for (final long value : showConditions) out.writeLong(value);
+            SessionConfigurationStore.putString(out, responseJson());
+        }
+        
+        static Definition read(ByteBuffer in) {
+            final int index = in.getInt();
+            final String eventName = SessionConfigurationStore.getString(in);
+            final int priority = in.getInt();
+            final int limit = in.getInt();
+            final Object[] condition = new Object[count(in, 1)];
+            for (int i = 0; i < condition.length; i++) {
+                final byte type = in.get();
+                switch (type) {
+                    case TOKEN_NULL:
+                        break;
+                    case TOKEN_OP:
+                        condition[i] = Op.valueFromBackend(
+                                SessionConfigurationStore.getString(in));
+                        break;
+                    case TOKEN_STRING:
+                        condition[i] = SessionConfigurationStore.getString(in);
+                        break;
+                    case TOKEN_BOOLEAN:
+                        condition[i] = in.get() != 0;
+                        break;
+                    case TOKEN_INTEGER:
+                        condition[i] = in.getInt();
+                        break;
+                    case TOKEN_LONG:
+                        condition[i] = in.getLong();
+                        break;
+                    case TOKEN_DOUBLE:
+                        condition[i] = in.getDouble();
+                        break;
+                    default:
+                        throw new IllegalStateException("Unexpected token type " + type);
+                }
+            }
+            final long campaignId = in.getLong();
+            final long variantId = in.getLong();
+            final String campaignName = SessionConfigurationStore.getNullableString(in);
+            final String variantName = SessionConfigurationStore.getNullableString(in);
+            final String action = SessionConfigurationStore.getString(in);
+            final long[] showConditions = new long[count(in, 8)];
+            for (int i = 0; i < showConditions.length; i++) {
+                showConditions[i] = in.getLong();
+            }
+            
+            return new Definition(
+                    index,
+                    eventName,
+                    priority,
+                    limit,
+                    condition,
+                    campaignId,
+                    variantId,
+                    campaignName,
+                    variantName,
+                    action,
+                    showConditions,
+                    SessionConfigurationStore.getString(in),
+                    null);
+        }
+        
+        private static int count(ByteBuffer in, int minimumSize) {
+            final int count = in.getInt();
+            if (count < 0 || (long) count * minimumSize > in.remaining()) {
+                throw new IllegalStateException("Invalid count " + count);
+            }
+            return count;
+        }
+        
+        private static long[] showConditions(@Nullable JSONObject campaignLimitsConfig) {
+            if (campaignLimitsConfig == null) return new long[0];
+            
+            final JSONArray showConditionsJson = campaignLimitsConfig.optJSONArray("showConditions");
+            if (showConditionsJson == null) return new long[0];
+            
+            final List<Long> values = new ArrayList<>();
+            for (int i = 0; i < showConditionsJson.length(); i++) {
+                final JSONObject currentCondition = showConditionsJson.optJSONObject(i);
+                if (currentCondition == null) continue;
+                
+                if (currentCondition.has("executionsRequiredCount")) {
+                    values.add(EXECUTIONS_REQUIRED);
+                    values.add(currentCondition.optLong("executionsRequiredCount", 0L));
+                    values.add(0L);
+                }
+                if (currentCondition.has("executionsRepeat")) {
+                    values.add(EXECUTIONS_REPEAT);
+                    values.add(currentCondition.optLong("executionsRepeat", 1L));
+                    values.add(currentCondition.optLong("executionsRepeatLimit", -1L));
+                }
+            }
+            
+            final long[] showConditions = new long[values.size()];
+            for (int i = 0; i < showConditions.length; i++) {
+                showConditions[i] = values.get(i);
+            }
+            return showConditions;
+        }
+    }
+    
     private enum Op {
         
         AND("and") {
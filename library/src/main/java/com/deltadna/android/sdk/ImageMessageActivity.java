@@ -26,7 +26,7 @@ import android.net.Uri;
 import android.os.Bundle;
 import androidx.annotation.Nullable;
 import android.util.AttributeSet;
-import android.util.Log;
+import com.deltadna.android.sdk.util.Log;
 import android.view.MotionEvent;
 import android.view.View;
 import android.widget.FrameLayout;
@@ -35,6 +35,8 @@ import android.widget.RelativeLayout;
 
 import com.deltadna.android.sdk.listeners.EngageListener;
 import com.deltadna.android.sdk.listeners.ImageMessageResultListener;
+import com.deltadna.android.sdk.tracing.Span;
+import com.deltadna.android.sdk.tracing.Tracing;
 
 import org.json.JSONException;
 import org.json.JSONObject;
@@ -247,9 +249,14 @@ public final class ImageMessageActivity extends Activity {
             if (bitmap == null) {
                 final BitmapFactory.Options options = new BitmapFactory.Options();
                 options.inPreferredConfig = Bitmap.Config.ARGB_8888;
-                bitmap = BitmapFactory.decodeFile(
-                        imageMessage.getImageFile().getPath(),
-                        options);
+                final Span span = Tracing.begin("ImageMessage.decode");
+                try {
+                    bitmap = BitmapFactory.decodeFile(
+                            imageMessage.getImageFile().getPath(),
+                            options);
+                } finally {
+                    span.close();
+                }
             }
             
             imageMessage.init(
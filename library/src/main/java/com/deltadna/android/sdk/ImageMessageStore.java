@@ -25,10 +25,13 @@ import android.os.Looper;
 import androidx.annotation.AnyThread;
 import androidx.annotation.Nullable;
 import androidx.annotation.WorkerThread;
-import android.util.Log;
+import com.deltadna.android.sdk.util.Log;
 
 import com.deltadna.android.sdk.helpers.Settings;
 import com.deltadna.android.sdk.listeners.RequestListener;
+import com.deltadna.android.sdk.metrics.Counter;
+import com.deltadna.android.sdk.metrics.Histogram;
+import com.deltadna.android.sdk.metrics.Metrics;
 import com.deltadna.android.sdk.net.NetworkManager;
 import com.deltadna.android.sdk.net.Response;
 
@@ -44,6 +47,7 @@ import java.util.concurrent.ExecutionException;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicReference;
 
 import static com.deltadna.android.sdk.DatabaseHelper.ImageMessages.Column.ID;
@@ -55,6 +59,11 @@ class ImageMessageStore {
     private static final String TAG = BuildConfig.LOG_TAG + ' ' + "IMStore";
     private static final String SUBDIRECTORY = "image_messages";
     
+    private static final Counter CACHE_HITS = Metrics.counter("images.cacheHits");
+    private static final Counter DOWNLOADED = Metrics.counter("images.downloaded");
+    private static final Counter FAILED = Metrics.counter("images.failed");
+    private static final Histogram DOWNLOAD_MILLIS = Metrics.histogram("images.downloadMillis");
+    
     private final ExecutorService executor = Executors.newFixedThreadPool(4);
     private final Handler handler = new Handler(Looper.getMainLooper());
     
@@ -73,7 +82,14 @@ class ImageMessageStore {
         this.database = database;
         this.network = network;
         this.settings = settings;
-        
+    }
+    
+    /**
+     * Creates the cache directories. Expected to be called once during
+     * initialisation.
+     */
+    @WorkerThread
+    void prepare() {
         for (final Location location : Location.values()) {
             if (location.available()) {
                 final File dir = location.cache(context, SUBDIRECTORY);
@@ -140,7 +156,9 @@ class ImageMessageStore {
     File get(String url) throws FetchingException {
         File file = getOnlyIfCached(url);
         
-        if (file == null) {
+        if (file != null) {
+            CACHE_HITS.increment();
+        } else {
             file = fetch(
                     url,
                     settings.isUseInternalStorageForImageMessages() || !Location.EXTERNAL.available()
@@ -261,6 +279,7 @@ class ImageMessageStore {
         };
         
         Log.v(TAG, String.format(Locale.ENGLISH, "Fetching %s to %s", url, file));
+        final long start = Metrics.start();
         network.fetch(url, file, listener);
         try {
             latch.await();
@@ -274,12 +293,16 @@ class ImageMessageStore {
                     e);
             error.set(new FetchingException(url, file, e));
         }
+        DOWNLOAD_MILLIS.recordSince(start, TimeUnit.MILLISECONDS);
         
         if (error.get() != null) {
+            FAILED.increment();
             throw error.get();
         } else if (file.exists()) {
+            DOWNLOADED.increment();
             return file;
         } else {
+            FAILED.increment();
             throw new FetchingException(url, file);
         }
     }
@@ -0,0 +1,130 @@
+/*
+ * Copyright (c) 2016 deltaDNA Ltd. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.deltadna.android.sdk;
+
+import androidx.annotation.Nullable;
+
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
+
+/**
+ * Read-only view of the ISO 4217 currency codes to their minor units, backed
+ * by the table which {@code gradle/iso4217.gradle} generates at build time.
+ * <p>
+ * Lookups are a binary search over the packed codes so no parsing or boxing
+ * happens before the first currency conversion.
+ */
+final class Iso4217Map extends AbstractMap<String, Integer> {
+
+    static final Iso4217Map INSTANCE = new Iso4217Map();
+
+    private final Set<Map.Entry<String, Integer>> entries = new Entries();
+
+    private Iso4217Map() {}
+
+    @Override
+    public boolean containsKey(Object key) {
+        return indexOf(key) >= 0;
+    }
+
+    @Override
+    @Nullable
+    public Integer get(Object key) {
+        final int index = indexOf(key);
+        return (index >= 0) ? valueAt(index) : null;
+    }
+
+    @Override
+    public int size() {
+        return Iso4217.CODES.length;
+    }
+
+    @Override
+    public Set<Map.Entry<String, Integer>> entrySet() {
+        return entries;
+    }
+
+    private static int indexOf(Object key) {
+        if (!(key instanceof String)) return -1;
+
+        final String code = (String) key;
+        if (code.length() != 3) return -1;
+
+        int packed = 0;
+        for (int i = 0; i < 3; i++) {
+            final char c = code.charAt(i);
+            if (c > 0x7f) return -1;
+
+            packed = packed << 8 | c;
+        }
+
+        return Arrays.binarySearch(Iso4217.CODES, packed);
+    }
+
+    private static String codeAt(int index) {
+        final int packed = Iso4217.CODES[index];
+        return new String(new char[] {
+                (char) (packed >> 16 & 0xff),
+                (char) (packed >> 8 & 0xff),
+                (char) (packed & 0xff)});
+    }
+
+    private static Integer valueAt(int index) {
+        return (int) Iso4217.MINOR_UNITS[index];
+    }
+
+    private static final class Entries extends AbstractSet<Map.Entry<String, Integer>> {
+
+        @Override
+        public Iterator<Map.Entry<String, Integer>> iterator() {
+            return new Iterator<Map.Entry<String, Integer>>() {
+
+                private int index;
+
+                @Override
+                public boolean hasNext() {
+                    return index < Iso4217.CODES.length;
+                }
+
+                @Override
+                public Map.Entry<String, Integer> next() {
+                    if (!hasNext()) throw new NoSuchElementException();
+
+                    final int current = index++;
+                    return new SimpleImmutableEntry<>(
+                            codeAt(current),
+                            valueAt(current));
+                }
+
+                @Override
+                public void remove() {
+                    throw new UnsupportedOperationException();
+                }
+            };
+        }
+
+        @Override
+        public int size() {
+            return Iso4217.CODES.length;
+        }
+    }
+}
@@ -19,6 +19,7 @@ package com.deltadna.android.sdk;
 import android.content.SharedPreferences;
 
 import com.deltadna.android.sdk.helpers.Utils;
+import com.deltadna.android.sdk.util.Log;
 
 import java.io.File;
 import java.io.FileInputStream;
@@ -254,7 +255,7 @@ class LegacyEventStore {
      */
     private void log(String message){
         if (mDebug){
-            android.util.Log.d(BuildConfig.LOG_TAG, "[DDSDK EventStore] " + message);
+            Log.d(BuildConfig.LOG_TAG, "[DDSDK EventStore] " + message);
         }
     }
 }
@@ -0,0 +1,76 @@
+/*
+ * Copyright (c) 2016 deltaDNA Ltd. All rights reserved.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.deltadna.android.sdk;
+
+import android.os.Handler;
+import android.os.Looper;
+import androidx.annotation.Nullable;
+
+import com.deltadna.android.sdk.helpers.Settings;
+import com.deltadna.android.sdk.listeners.MetricsListener;
+import com.deltadna.android.sdk.metrics.Metrics;
+import com.deltadna.android.sdk.metrics.MetricsSnapshot;
+
+import java.util.Set;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Notifies the registered {@link MetricsListener}s with the latest metrics
+ * on the main thread, at the interval from the {@link Settings}.
+ */
+final class MetricsReporter {
+    
+    private final Settings settings;
+    private final Handler handler = new Handler(Looper.getMainLooper());
+    
+    @Nullable
+    private ScheduledFuture<?> reporting;
+    
+    MetricsReporter(Settings settings) {
+        this.settings = settings;
+    }
+    
+    synchronized void start(ScheduledExecutorService executor) {
+        if (reporting != null) return;
+        
+        final int seconds = settings.getMetricsIntervalSeconds();
+        reporting = executor.scheduleAtFixedRate(
+                this::report,
+                seconds,
+                seconds,
+                TimeUnit.SECONDS);
+    }
+    
+    synchronized void stop() {
+        if (reporting != null) {
+            reporting.cancel(false);
+            reporting = null;
+        }
+    }
+    
+    void report() {
+        final Set<MetricsListener> listeners = Metrics.listeners();
+        if (listeners.isEmpty()) return;
+        
+        final MetricsSnapshot snapshot = Metrics.snapshot();
+        handler.post(() -> DDNA.performOn(
+                listeners,
+                it -> it.onMetrics(snapshot)));
+    }
+}
@@ -16,7 +16,7 @@
 
 package com.deltadna.android.sdk;
 
-import android.util.Log;
+import com.deltadna.android.sdk.util.Log;
 
 import com.deltadna.android.sdk.helpers.Preconditions;
 
@@ -17,7 +17,7 @@
 package com.deltadna.android.sdk;
 
 import android.text.TextUtils;
-import android.util.Log;
+import com.deltadna.android.sdk.util.Log;
 
 import com.deltadna.android.sdk.helpers.Preconditions;
 
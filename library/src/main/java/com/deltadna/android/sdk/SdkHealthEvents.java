@@ -0,0 +1,98 @@
+/*
+ * Copyright (c) 2016 deltaDNA Ltd. All rights reserved.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.deltadna.android.sdk;
+
+import androidx.annotation.Nullable;
+
+import com.deltadna.android.sdk.listeners.MetricsListener;
+import com.deltadna.android.sdk.metrics.MetricsSnapshot;
+import com.deltadna.android.sdk.metrics.MetricsSnapshot.Distribution;
+
+/**
+ * Records a {@code ddnaSdkHealth} event with how long events took to be
+ * acknowledged by the Collect service, and how uploads went, since the
+ * previous metrics were reported.
+ * <p>
+ * Registered as a {@link MetricsListener} while the SDK is started, so
+ * that the metrics are being recorded, and nothing gets recorded for an
+ * interval in which no other events were uploaded. Uploading a health
+ * event would otherwise be reason enough to record the next one, as would
+ * the failed uploads of a health event which is still waiting to go out.
+ */
+final class SdkHealthEvents implements MetricsListener {
+    
+    static final String EVENT_NAME = "ddnaSdkHealth";
+    
+    private static final String LATENCY = "events.latencyMillis";
+    private static final String UPLOADS = "uploads";
+    private static final String UPLOADS_FAILED = "uploads.failed";
+    private static final String UPLOADED_EVENTS = "uploads.events";
+    private static final String DROPPED = "events.dropped";
+    
+    private final EventAggregations.Recorder recorder;
+    
+    @Nullable
+    private MetricsSnapshot previous;
+    /**
+     * Health events recorded which have not been counted as uploaded yet.
+     */
+    private long pending;
+    
+    SdkHealthEvents(EventAggregations.Recorder recorder) {
+        this.recorder = recorder;
+    }
+    
+    @Override
+    public void onMetrics(MetricsSnapshot metrics) {
+        final MetricsSnapshot previous = this.previous;
+        this.previous = metrics;
+        
+        final Distribution latency = (previous == null)
+                ? metrics.getHistogram(LATENCY)
+                : metrics.getHistogram(LATENCY).since(previous.getHistogram(LATENCY));
+        final long uploads = since(metrics, previous, UPLOADS);
+        final long failed = since(metrics, previous, UPLOADS_FAILED);
+        
+        // health events go out in the same order as they were recorded
+        final long uploaded = since(metrics, previous, UPLOADED_EVENTS);
+        final long own = Math.min(pending, uploaded);
+        pending -= own;
+        if (uploaded - own == 0 && (failed == 0 || pending > 0)) return;
+        
+        pending++;
+        recorder.record(new Event(EVENT_NAME)
+                .putParam("ddnaLatencyEvents", latency.getCount())
+                .putParam("ddnaLatencyP50Millis", latency.getPercentile(0.5))
+                .putParam("ddnaLatencyP90Millis", latency.getPercentile(0.9))
+                .putParam("ddnaLatencyP99Millis", latency.getPercentile(0.99))
+                .putParam("ddnaLatencyMaxMillis", latency.getMax())
+                .putParam("ddnaUploads", uploads)
+                .putParam("ddnaUploadsFailed", failed)
+                .putParam("ddnaEventsDropped", since(metrics, previous, DROPPED)));
+    }
+    
+    private static long since(
+            MetricsSnapshot metrics,
+            @Nullable MetricsSnapshot previous,
+            String counter) {
+        
+        return Math.max(
+                0,
+                metrics.getCounter(counter)
+                        - ((previous != null) ? previous.getCounter(counter) : 0));
+    }
+}
@@ -0,0 +1,101 @@
+/*
+ * Copyright (c) 2016 deltaDNA Ltd. All rights reserved.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.deltadna.android.sdk;
+
+import androidx.annotation.Nullable;
+
+import java.util.Collections;
+import java.util.Map;
+import java.util.Set;
+import java.util.SortedSet;
+
+/**
+ * Session configuration as applied to the SDK, which is immutable and gets
+ * replaced as a whole when a configuration is applied, so that it can be
+ * read from any thread without locking.
+ * <p>
+ * Parts missing from a configuration carry over from the previous one.
+ */
+final class SessionConfiguration {
+    
+    static final SessionConfiguration EMPTY = new SessionConfiguration(
+            false,
+            Collections.emptySet(),
+            Collections.emptySet(),
+            Collections.emptySet(),
+            Collections.emptyMap());
+    
+    /**
+     * Whether a configuration has been retrieved for the session, as
+     * opposed to having been restored from a previous one.
+     */
+    final boolean retrieved;
+    final Set<String> dpWhitelist;
+    final Set<String> eventsWhitelist;
+    final Set<String> imageCache;
+    /**
+     * Read-only triggers, bucketed by event name.
+     */
+    final Map<String, SortedSet<EventTrigger>> eventTriggers;
+    
+    private SessionConfiguration(
+            boolean retrieved,
+            Set<String> dpWhitelist,
+            Set<String> eventsWhitelist,
+            Set<String> imageCache,
+            Map<String, SortedSet<EventTrigger>> eventTriggers) {
+        
+        this.retrieved = retrieved;
+        this.dpWhitelist = dpWhitelist;
+        this.eventsWhitelist = eventsWhitelist;
+        this.imageCache = imageCache;
+        this.eventTriggers = eventTriggers;
+    }
+    
+    /**
+     * @return a configuration with the parts which are not {@code null}
+     *         replaced
+     */
+    SessionConfiguration with(
+            boolean retrieved,
+            @Nullable Set<String> dpWhitelist,
+            @Nullable Set<String> eventsWhitelist,
+            @Nullable Set<String> imageCache,
+            @Nullable Map<String, SortedSet<EventTrigger>> eventTriggers) {
+        
+        return new SessionConfiguration(
+                retrieved,
+                (dpWhitelist != null) ? dpWhitelist : this.dpWhitelist,
+                (eventsWhitelist != null) ? eventsWhitelist : this.eventsWhitelist,
+                (imageCache != null) ? imageCache : this.imageCache,
+                (eventTriggers != null) ? eventTriggers : this.eventTriggers);
+    }
+    
+    boolean isWhitelisted(Event event) {
+        return eventsWhitelist.isEmpty() || eventsWhitelist.contains(event.name);
+    }
+    
+    boolean isWhitelisted(Engagement engagement) {
+        return dpWhitelist.isEmpty()
+                || dpWhitelist.contains(engagement.getDecisionPointAndFlavour());
+    }
+    
+    SortedSet<EventTrigger> triggers(String eventName) {
+        final SortedSet<EventTrigger> triggers = eventTriggers.get(eventName);
+        return (triggers != null) ? triggers : EventAction.NO_TRIGGERS;
+    }
+}
@@ -0,0 +1,435 @@
+/*
+ * Copyright (c) 2018 deltaDNA Ltd. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.deltadna.android.sdk;
+
+import androidx.annotation.Nullable;
+import androidx.annotation.WorkerThread;
+import com.deltadna.android.sdk.util.Log;
+
+import com.deltadna.android.sdk.helpers.Objects;
+import com.deltadna.android.sdk.helpers.Settings;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.CRC32;
+
+/**
+ * Persists the compiled state of the last successful session configuration
+ * as a compact binary snapshot, so that the whitelists, image list and event
+ * triggers can be restored in a single read when the SDK is next started
+ * instead of waiting on the session configuration request.
+ * <p>
+ * The snapshot holds the parsed trigger definitions already bucketed by
+ * event name in their original order, so that triggers can be rebuilt
+ * without parsing their JSON again, and is replaced atomically by writing to a
+ * temporary file and renaming it over the previous snapshot.
+ */
+final class SessionConfigurationStore {
+
+    private static final String TAG = BuildConfig.LOG_TAG
+            + ' '
+            + SessionConfigurationStore.class.getSimpleName();
+
+    private static final Charset UTF8 = Charset.forName("UTF-8");
+
+    private static final int MAGIC = 0x44444e41; // 'DDNA'
+    private static final byte VERSION = 3;
+    private static final int ABSENT = -1;
+
+    private static final String NAME = "session_configuration";
+    private static final String TEMP_SUFFIX = ".tmp";
+
+    private final File directory;
+    private final File file;
+    private final File temp;
+    private final Settings settings;
+
+    SessionConfigurationStore(File directory, Settings settings) {
+        this.directory = directory;
+        this.file = new File(directory, NAME);
+        this.temp = new File(directory, NAME + TEMP_SUFFIX);
+        this.settings = settings;
+    }
+
+    /**
+     * Reads the snapshot in one go.
+     *
+     * @return  the snapshot, or {@code null} if there is none, it has expired
+     *          according to the Engage cache expiry, or it failed validation
+     */
+    @WorkerThread
+    @Nullable
+    synchronized Snapshot get() {
+        if (!file.exists()) return null;
+
+        final byte[] bytes = new byte[(int) file.length()];
+        try (FileInputStream in = new FileInputStream(file)) {
+            int offset = 0;
+            int read;
+            while (     offset < bytes.length
+                    &&  (read = in.read(bytes, offset, bytes.length - offset)) != -1) {
+                offset += read;
+            }
+
+            if (offset != bytes.length) {
+                Log.w(TAG, "Snapshot truncated while reading " + file);
+                return null;
+            }
+        } catch (IOException e) {
+            Log.w(TAG, "Failed reading snapshot " + file, e);
+            return null;
+        }
+
+        final Snapshot snapshot;
+        try {
+            snapshot = decode(bytes);
+        } catch (BufferUnderflowException | IllegalStateException e) {
+            Log.w(TAG, "Discarding invalid snapshot " + file, e);
+            clear();
+            return null;
+        }
+
+        final long expiry = TimeUnit.SECONDS.toMillis(settings.getEngageCacheExpiry());
+        if (expiry == 0 || System.currentTimeMillis() - snapshot.created > expiry) {
+            Log.d(TAG, "Ignoring expired snapshot");
+            return null;
+        }
+
+        return snapshot;
+    }
+
+    @WorkerThread
+    synchronized void put(Snapshot snapshot) {
+        if (!directory.exists() && !directory.mkdirs()) {
+            Log.w(TAG, "Failed creating " + directory);
+            return;
+        }
+
+        final byte[] bytes = encode(snapshot);
+
+        try (FileOutputStream out = new FileOutputStream(temp)) {
+            out.write(bytes);
+            out.getFD().sync();
+        } catch (IOException e) {
+            Log.w(TAG, "Failed writing snapshot " + temp, e);
+            //noinspection ResultOfMethodCallIgnored
+            temp.delete();
+            return;
+        }
+
+        if (!temp.renameTo(file)) {
+            Log.w(TAG, "Failed replacing snapshot " + file);
+            //noinspection ResultOfMethodCallIgnored
+            temp.delete();
+        } else {
+            Log.v(TAG, String.format(
+                    Locale.ENGLISH,
+                    "Saved snapshot of %d bytes",
+                    bytes.length));
+        }
+    }
+
+    synchronized void clear() {
+        if (file.exists() && !file.delete()) {
+            Log.w(TAG, "Failed to clear " + file);
+        }
+        if (temp.exists() && !temp.delete()) {
+            Log.w(TAG, "Failed to clear " + temp);
+        }
+    }
+
+    static byte[] encode(Snapshot snapshot) {
+        final ByteArrayOutputStream bytes = new ByteArrayOutputStream(4096);
+        final DataOutputStream out = new DataOutputStream(bytes);
+        try {
+            out.writeInt(MAGIC);
+            out.writeByte(VERSION);
+            out.writeLong(snapshot.created);
+            putSet(out, snapshot.dpWhitelist);
+            putSet(out, snapshot.eventsWhitelist);
+            putSet(out, snapshot.imageCache);
+            putNullableString(out, snapshot.eventPolicies);
+            if (snapshot.triggers == null) {
+                out.writeInt(ABSENT);
+            } else {
+                out.writeInt(snapshot.triggers.size());
+                for (final Map.Entry<String, List<EventTrigger.Definition>> bucket
+                        : snapshot.triggers.entrySet()) {
+                    putString(out, bucket.getKey());
+                    out.writeInt(bucket.getValue().size());
+                    for (final EventTrigger.Definition trigger : bucket.getValue()) {
+                        trigger.write(out);
+                    }
+                }
+            }
+
+            final CRC32 crc = new CRC32();
+            crc.update(bytes.toByteArray());
+            out.writeLong(crc.getValue());
+            out.flush();
+        } catch (IOException e) {
+            // cannot happen when writing to memory
+            throw new IllegalStateException(e);
+        }
+
+        return bytes.toByteArray();
+    }
+
+    static Snapshot decode(byte[] bytes) {
+        final ByteBuffer buffer = ByteBuffer.wrap(bytes);
+
+        if (bytes.length < 8) throw new IllegalStateException("Too short");
+        final CRC32 crc = new CRC32();
+        crc.update(bytes, 0, bytes.length - 8);
+        if (crc.getValue() != buffer.getLong(bytes.length - 8)) {
+            throw new IllegalStateException("Checksum mismatch");
+        }
+
+        if (buffer.getInt() != MAGIC) {
+            throw new IllegalStateException("Unexpected header");
+        }
+        final byte version = buffer.get();
+        if (version != VERSION) {
+            throw new IllegalStateException("Unsupported version " + version);
+        }
+
+        final long created = buffer.getLong();
+        final Set<String> dpWhitelist = getSet(buffer);
+        final Set<String> eventsWhitelist = getSet(buffer);
+        final Set<String> imageCache = getSet(buffer);
+        final String eventPolicies = getNullableString(buffer);
+
+        final Map<String, List<EventTrigger.Definition>> triggers;
+        final int buckets = buffer.getInt();
+        if (buckets == ABSENT) {
+            triggers = null;
+        } else {
+            triggers = new LinkedHashMap<>(buckets);
+            for (int i = 0; i < buckets; i++) {
+                final String eventName = getString(buffer);
+                final int count = buffer.getInt();
+                if (count < 0 || count > buffer.remaining()) {
+                    throw new IllegalStateException("Invalid count " + count);
+                }
+                final List<EventTrigger.Definition> bucket = new ArrayList<>(count);
+                for (int j = 0; j < count; j++) {
+                    bucket.add(EventTrigger.Definition.read(buffer));
+                }
+                triggers.put(eventName, Collections.unmodifiableList(bucket));
+            }
+        }
+
+        return new Snapshot(
+                created,
+                dpWhitelist,
+                eventsWhitelist,
+                imageCache,
+                eventPolicies,
+                (triggers != null) ? Collections.unmodifiableMap(triggers) : null);
+    }
+
+    private static void putSet(DataOutputStream out, @Nullable Set<String> values)
+            throws IOException {
+
+        if (values == null) {
+            out.writeInt(ABSENT);
+        } else {
+            out.writeInt(values.size());
+            for (final String value : values) putString(out, value);
+        }
+    }
+
+    static void putNullableString(DataOutputStream out, @Nullable String value)
+            throws IOException {
+
+        if (value == null) {
+            out.writeInt(ABSENT);
+        } else {
+            putString(out, value);
+        }
+    }
+
+    static void putString(DataOutputStream out, String value) throws IOException {
+        final byte[] bytes = value.getBytes(UTF8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    @Nullable
+    private static Set<String> getSet(ByteBuffer buffer) {
+        final int count = buffer.getInt();
+        if (count == ABSENT) return null;
+
+        final Set<String> values = new HashSet<>(count);
+        for (int i = 0; i < count; i++) values.add(getString(buffer));
+        return Collections.unmodifiableSet(values);
+    }
+
+    @Nullable
+    static String getNullableString(ByteBuffer buffer) {
+        if (buffer.getInt(buffer.position()) == ABSENT) {
+            buffer.getInt();
+            return null;
+        }
+
+        return getString(buffer);
+    }
+
+    static String getString(ByteBuffer buffer) {
+        final int length = buffer.getInt();
+        if (length < 0 || length > buffer.remaining()) {
+            throw new IllegalStateException("Invalid length " + length);
+        }
+
+        final String value = new String(
+                buffer.array(),
+                buffer.arrayOffset() + buffer.position(),
+                length,
+                UTF8);
+        buffer.position(buffer.position() + length);
+        return value;
+    }
+
+    /**
+     * Compiled state of a session configuration. A {@code null} collection
+     * means that the configuration did not contain the respective key.
+     */
+    static final class Snapshot {
+
+        final long created;
+        @Nullable
+        final Set<String> dpWhitelist;
+        @Nullable
+        final Set<String> eventsWhitelist;
+        @Nullable
+        final Set<String> imageCache;
+        /**
+         * Event policies keyed by event name, as a JSON object.
+         */
+        @Nullable
+        final String eventPolicies;
+        /**
+         * Trigger definitions keyed by event name, in configuration order.
+         */
+        @Nullable
+        final Map<String, List<EventTrigger.Definition>> triggers;
+
+        Snapshot(
+                long created,
+                @Nullable Set<String> dpWhitelist,
+                @Nullable Set<String> eventsWhitelist,
+                @Nullable Set<String> imageCache,
+                @Nullable String eventPolicies,
+                @Nullable Map<String, List<EventTrigger.Definition>> triggers) {
+
+            this.created = created;
+            this.dpWhitelist = dpWhitelist;
+            this.eventsWhitelist = eventsWhitelist;
+            this.imageCache = imageCache;
+            this.eventPolicies = eventPolicies;
+            this.triggers = triggers;
+        }
+
+        /**
+         * Compiles a snapshot from the {@code parameters} of a session
+         * configuration response.
+         */
+        static Snapshot from(JSONObject configuration) {
+            return new Snapshot(
+                    System.currentTimeMillis(),
+                    strings(configuration, "dpWhitelist"),
+                    strings(configuration, "eventsWhitelist"),
+                    strings(configuration, "imageCache"),
+                    eventPolicies(configuration),
+                    triggers(configuration));
+        }
+
+        @Nullable
+        private static Set<String> strings(JSONObject configuration, String key) {
+            final JSONArray array = Objects.extractArray(
+                    configuration, "parameters", key);
+            if (array == null) return null;
+
+            final Set<String> values = new HashSet<>(array.length());
+            for (int i = 0; i < array.length(); i++) {
+                try {
+                    values.add(array.getString(i));
+                } catch (JSONException e) {
+                    Log.w(TAG, "Failed deserialising " + key, e);
+                }
+            }
+            return Collections.unmodifiableSet(values);
+        }
+
+        @Nullable
+        private static String eventPolicies(JSONObject configuration) {
+            final JSONObject policies = Objects.extract(
+                    configuration, "parameters", "eventPolicies");
+            return (policies != null) ? policies.toString() : null;
+        }
+
+        @Nullable
+        private static Map<String, List<EventTrigger.Definition>> triggers(
+                JSONObject configuration) {
+
+            final JSONArray array = Objects.extractArray(
+                    configuration, "parameters", "triggers");
+            if (array == null) return null;
+
+            final Map<String, List<EventTrigger.Definition>> buckets = new LinkedHashMap<>();
+            for (int i = 0; i < array.length(); i++) {
+                final JSONObject trigger;
+                try {
+                    trigger = array.getJSONObject(i);
+                } catch (JSONException e) {
+                    Log.w(TAG, "Failed deserialising event trigger", e);
+                    continue;
+                }
+
+                final EventTrigger.Definition definition =
+                        EventTrigger.Definition.from(i, trigger);
+                List<EventTrigger.Definition> bucket = buckets.get(definition.eventName);
+                if (bucket == null) {
+                    bucket = new ArrayList<>();
+                    buckets.put(definition.eventName, bucket);
+                }
+                bucket.add(definition);
+            }
+            return buckets;
+        }
+    }
+}
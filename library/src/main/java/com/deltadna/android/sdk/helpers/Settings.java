@@ -16,7 +16,14 @@
 
 package com.deltadna.android.sdk.helpers;
 
+import androidx.annotation.Nullable;
+
 import com.deltadna.android.sdk.EventActionHandler;
+import com.deltadna.android.sdk.EventPolicy;
+import com.deltadna.android.sdk.net.HttpTransport;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 
 /**
  * DeltaDNA runtime setting.
@@ -25,6 +32,61 @@ import com.deltadna.android.sdk.EventActionHandler;
  */
 public class Settings{
     
+    /**
+     * What happens to an event when the in-memory event buffer is full.
+     */
+    public enum EventOverflowPolicy {
+        /**
+         * The oldest buffered event is dropped to make space.
+         */
+        DROP_OLDEST,
+        /**
+         * The new event is dropped.
+         */
+        DROP_NEWEST,
+        /**
+         * The new event bypasses the buffer and is queued to be written to
+         * storage in the background along with the buffered events.
+         */
+        SPILL_TO_DISK
+    }
+    
+    /**
+     * How events are encoded when they are written to storage.
+     */
+    public enum EventStorageFormat {
+        /**
+         * Events are stored as JSON.
+         */
+        JSON,
+        /**
+         * Events are stored in a compact binary encoding, and converted to
+         * JSON when they are uploaded.
+         */
+        BINARY
+    }
+    
+    /**
+     * How far events are flushed to the storage device when they are
+     * written, trading write throughput against how many events may be
+     * lost if the device loses power.
+     */
+    public enum EventDurability {
+        /**
+         * Events are left to the operating system to flush.
+         */
+        NONE,
+        /**
+         * Each batch of events is flushed before it is recorded as stored.
+         */
+        BATCHED_FSYNC,
+        /**
+         * Each event is flushed and recorded as stored on its own, before
+         * the next one is written.
+         */
+        EVERY_EVENT
+    }
+    
 	/**
 	 * Controls whether a 'newPlayer' event is sent the first time the game is played.
 	 */
@@ -40,7 +102,7 @@ public class Settings{
 	/**
 	 * Controls if additional debug is output to the console.
 	 */
-	private boolean mDebugMode = true;
+	private boolean mDebugMode = false;
 	/**
 	 * Controls if events are uploaded automatically in the background.
 	 */
@@ -97,6 +159,33 @@ public class Settings{
 
 	private boolean mImageMessageAutoNavigateLinkEnabled = true;
 
+    private int eventBufferCapacity = 1024;
+    private EventOverflowPolicy eventOverflowPolicy = EventOverflowPolicy.SPILL_TO_DISK;
+    private EventStorageFormat eventStorageFormat = EventStorageFormat.JSON;
+    private EventDurability eventDurability = EventDurability.BATCHED_FSYNC;
+    private boolean prewarmEngageConnection;
+    @Nullable
+    private HttpTransport httpTransport;
+    
+    private final Map<String, EventPolicy> eventPolicies = new ConcurrentHashMap<>();
+    {
+        eventPolicies.put("transaction", EventPolicy.of(EventPolicy.Priority.CRITICAL));
+        eventPolicies.put("uiClick", EventPolicy.of(EventPolicy.Priority.LOW));
+    }
+    
+    /**
+     * In seconds.
+     */
+    private int aggregationWindow = 60;
+    private int aggregationFlushSize = 100;
+    /**
+     * In seconds.
+     */
+    private int metricsInterval = 60;
+    private boolean systraceEnabled;
+    private boolean sdkHealthEventsEnabled;
+    private boolean eventProfilingEnabled;
+
 	/**
 	 * TRUE to send new player event on first run of application.
 	 *
@@ -157,7 +246,12 @@ public class Settings{
 		return mDebugMode;
 	}
 	/**
-	 * Sets the SDK debug mode.
+	 * Sets the SDK debug mode, which is off by default. When not in debug
+	 * mode the verbose and debug logging of the SDK is dropped before the
+	 * messages are built, unless enabled for the {@code deltaDNA} tag with
+	 * {@code adb shell setprop log.tag.deltaDNA VERBOSE}.
+	 * <p>
+	 * Needs to be set before the SDK is initialised.
 	 *
 	 * @param b The new SDK debug mode.
 	 */
@@ -513,4 +607,389 @@ public class Settings{
 	public boolean getImageMessageAutoNavigateLinkEnabled() {
 		return mImageMessageAutoNavigateLinkEnabled;
 	}
+
+    /**
+     * Gets the capacity of the in-memory buffer which recorded events go
+     * through before being written to storage.
+     *
+     * @return the capacity, in events
+     */
+    public int getEventBufferCapacity() {
+        return eventBufferCapacity;
+    }
+    
+    /**
+     * Sets the capacity of the in-memory buffer which recorded events go
+     * through before being written to storage. The value will be rounded up
+     * to the next power of two.
+     * <p>
+     * Needs to be set before the SDK is initialised.
+     *
+     * @param capacity the capacity, in events
+     *
+     * @return this {@link Settings} instance
+     *
+     * @throws IllegalArgumentException if {@code capacity} is not positive
+     */
+    public Settings setEventBufferCapacity(int capacity) {
+        Preconditions.checkArg(capacity > 0, "capacity must be positive");
+        Preconditions.checkArg(capacity <= 1 << 16, "capacity cannot exceed 65536");
+        
+        eventBufferCapacity = capacity;
+        return this;
+    }
+    
+    /**
+     * Gets what happens to recorded events when the in-memory event buffer
+     * is full.
+     *
+     * @return the overflow policy
+     */
+    public EventOverflowPolicy getEventOverflowPolicy() {
+        return eventOverflowPolicy;
+    }
+    
+    /**
+     * Sets what happens to recorded events when the in-memory event buffer
+     * is full.
+     * <p>
+     * Needs to be set before the SDK is initialised.
+     *
+     * @param policy the overflow policy
+     *
+     * @return this {@link Settings} instance
+     *
+     * @throws IllegalArgumentException if {@code policy} is null
+     */
+    public Settings setEventOverflowPolicy(EventOverflowPolicy policy) {
+        Preconditions.checkArg(policy != null, "policy cannot be null");
+        
+        eventOverflowPolicy = policy;
+        return this;
+    }
+    
+    /**
+     * Gets how events are encoded when they are written to storage.
+     *
+     * @return the storage format
+     */
+    public EventStorageFormat getEventStorageFormat() {
+        return eventStorageFormat;
+    }
+    
+    /**
+     * Sets how events are encoded when they are written to storage. Events
+     * which have already been stored are uploaded regardless of the format
+     * they were stored in.
+     *
+     * @param format the storage format
+     *
+     * @return this {@link Settings} instance
+     *
+     * @throws IllegalArgumentException if {@code format} is null
+     */
+    public Settings setEventStorageFormat(EventStorageFormat format) {
+        Preconditions.checkArg(format != null, "format cannot be null");
+        
+        eventStorageFormat = format;
+        return this;
+    }
+    
+    /**
+     * Gets how far events are flushed to the storage device when they are
+     * written.
+     *
+     * @return the durability
+     */
+    public EventDurability getEventDurability() {
+        return eventDurability;
+    }
+    
+    /**
+     * Sets how far events are flushed to the storage device when they are
+     * written. Stored events are checksummed regardless, so that any which
+     * have been corrupted are skipped instead of being uploaded.
+     *
+     * @param durability the durability
+     *
+     * @return this {@link Settings} instance
+     *
+     * @throws IllegalArgumentException if {@code durability} is null
+     */
+    public Settings setEventDurability(EventDurability durability) {
+        Preconditions.checkArg(durability != null, "durability cannot be null");
+        
+        eventDurability = durability;
+        return this;
+    }
+    
+    /**
+     * Gets whether a connection to Engage is opened when the SDK is
+     * started.
+     *
+     * @return {@code true} if the connection is opened
+     */
+    public boolean isPrewarmEngageConnection() {
+        return prewarmEngageConnection;
+    }
+    
+    /**
+     * Sets whether a connection to Engage is opened when the SDK is
+     * started, so that the first Engage request does not have to wait for
+     * the connection to be set up. Off by default.
+     * <p>
+     * The connection is only opened if any required PIPL consents have
+     * been given by then.
+     *
+     * @param prewarm whether the connection should be opened
+     *
+     * @return this {@link Settings} instance
+     */
+    public Settings setPrewarmEngageConnection(boolean prewarm) {
+        prewarmEngageConnection = prewarm;
+        return this;
+    }
+    
+    /**
+     * Gets the transport which HTTP requests are made through.
+     *
+     * @return the transport, or {@code null} if the default one is used
+     */
+    @Nullable
+    public HttpTransport getHttpTransport() {
+        return httpTransport;
+    }
+    
+    /**
+     * Sets the transport which collect, Engage, and image requests are made
+     * through, such as one backed by the HTTP client already used by the
+     * application so that connections get shared. Requests go through
+     * {@link java.net.HttpURLConnection} by default.
+     * <p>
+     * Needs to be set before the SDK is started.
+     *
+     * @param transport the transport, or {@code null} for the default
+     *
+     * @return this {@link Settings} instance
+     */
+    public Settings setHttpTransport(@Nullable HttpTransport transport) {
+        httpTransport = transport;
+        return this;
+    }
+    
+    /**
+     * Gets the policy for events with a name. By default {@code transaction}
+     * events are {@link EventPolicy.Priority#CRITICAL} and {@code uiClick}
+     * events are {@link EventPolicy.Priority#LOW}.
+     *
+     * @param eventName the event name
+     *
+     * @return the policy, or {@code null} if none has been set
+     */
+    @Nullable
+    public EventPolicy getEventPolicy(String eventName) {
+        return eventPolicies.get(eventName);
+    }
+    
+    /**
+     * Sets the policy for events with a name, which controls how they are
+     * treated when events are recorded faster than they can be stored.
+     * <p>
+     * A policy received in the session configuration for the same name
+     * takes precedence, unless it would make {@code transaction} events
+     * non-critical.
+     *
+     * @param eventName the event name
+     * @param policy    the policy, or {@code null} to remove the policy
+     *
+     * @return this {@link Settings} instance
+     *
+     * @throws IllegalArgumentException if {@code eventName} is null or empty
+     */
+    public Settings setEventPolicy(String eventName, @Nullable EventPolicy policy) {
+        Preconditions.checkString(eventName, "eventName cannot be null or empty");
+        
+        if (policy == null) {
+            eventPolicies.remove(eventName);
+        } else {
+            eventPolicies.put(eventName, policy);
+        }
+        return this;
+    }
+    
+    /**
+     * Gets the window over which aggregated events are summarised before
+     * being recorded.
+     *
+     * @return the window, in seconds
+     */
+    public int getAggregationWindowSeconds() {
+        return aggregationWindow;
+    }
+    
+    /**
+     * Sets the window over which aggregated events are summarised before
+     * being recorded, when recorded through
+     * {@link com.deltadna.android.sdk.DDNA#aggregate(String)}.
+     * <p>
+     * Needs to be set before the SDK is started.
+     *
+     * @param seconds the window, in seconds
+     *
+     * @return this {@link Settings} instance
+     *
+     * @throws IllegalArgumentException if {@code seconds} is not positive
+     */
+    public Settings setAggregationWindowSeconds(int seconds) {
+        Preconditions.checkArg(seconds > 0, "seconds must be positive");
+        
+        aggregationWindow = seconds;
+        return this;
+    }
+    
+    /**
+     * Gets the number of distinct name and dimension combinations which
+     * can be aggregated before they are recorded ahead of the window ending.
+     *
+     * @return the flush size
+     */
+    public int getAggregationFlushSize() {
+        return aggregationFlushSize;
+    }
+    
+    /**
+     * Sets the number of distinct name and dimension combinations which
+     * can be aggregated before they are recorded ahead of the window ending,
+     * which bounds the memory used for aggregation.
+     *
+     * @param size the flush size
+     *
+     * @return this {@link Settings} instance
+     *
+     * @throws IllegalArgumentException if {@code size} is not positive
+     */
+    public Settings setAggregationFlushSize(int size) {
+        Preconditions.checkArg(size > 0, "size must be positive");
+        
+        aggregationFlushSize = size;
+        return this;
+    }
+    
+    /**
+     * Gets how often registered
+     * {@link com.deltadna.android.sdk.listeners.MetricsListener}s are
+     * notified with the latest metrics.
+     *
+     * @return the interval, in seconds
+     */
+    public int getMetricsIntervalSeconds() {
+        return metricsInterval;
+    }
+    
+    /**
+     * Sets how often registered
+     * {@link com.deltadna.android.sdk.listeners.MetricsListener}s are
+     * notified with the latest metrics.
+     * <p>
+     * Needs to be set before the SDK is started.
+     *
+     * @param seconds the interval, in seconds
+     *
+     * @return this {@link Settings} instance
+     *
+     * @throws IllegalArgumentException if {@code seconds} is not positive
+     */
+    public Settings setMetricsIntervalSeconds(int seconds) {
+        Preconditions.checkArg(seconds > 0, "seconds must be positive");
+        
+        metricsInterval = seconds;
+        return this;
+    }
+    
+    /**
+     * Gets whether the work done by the SDK shows up as sections in
+     * systrace and Perfetto captures.
+     *
+     * @return {@code true} if enabled
+     */
+    public boolean isSystraceEnabled() {
+        return systraceEnabled;
+    }
+    
+    /**
+     * Sets whether the work done by the SDK, such as recording events,
+     * storing and uploading them, and Engage requests, shows up as
+     * sections in systrace and Perfetto captures.
+     * <p>
+     * Needs to be set before the SDK is initialised.
+     *
+     * @param enabled {@code true} to enable
+     *
+     * @return this {@link Settings} instance
+     *
+     * @see com.deltadna.android.sdk.tracing.SystraceListener
+     */
+    public Settings setSystraceEnabled(boolean enabled) {
+        systraceEnabled = enabled;
+        return this;
+    }
+    
+    /**
+     * Gets whether a {@code ddnaSdkHealth} event is recorded with how long
+     * events took to be acknowledged, and how uploads went.
+     *
+     * @return {@code true} if enabled
+     */
+    public boolean isSdkHealthEventsEnabled() {
+        return sdkHealthEventsEnabled;
+    }
+    
+    /**
+     * Sets whether a {@code ddnaSdkHealth} event is recorded every
+     * {@link #getMetricsIntervalSeconds()}, with percentiles of how long
+     * events took from being recorded to being acknowledged by the Collect
+     * service, and how many uploads succeeded and failed. No event is
+     * recorded for an interval in which nothing was uploaded.
+     * <p>
+     * The event needs to have been added to the event schema of the game
+     * for it to be accepted by the Collect service.
+     * <p>
+     * Needs to be set before the SDK is started.
+     *
+     * @param enabled {@code true} to enable
+     *
+     * @return this {@link Settings} instance
+     */
+    public Settings setSdkHealthEventsEnabled(boolean enabled) {
+        sdkHealthEventsEnabled = enabled;
+        return this;
+    }
+    
+    /**
+     * Gets whether statistics are kept about the size and number of
+     * parameters of the events recorded under each event name.
+     *
+     * @return {@code true} if enabled
+     */
+    public boolean isEventProfilingEnabled() {
+        return eventProfilingEnabled;
+    }
+    
+    /**
+     * Sets whether statistics are kept about the size and number of
+     * parameters of the events recorded under each event name, which can
+     * be retrieved with
+     * {@link com.deltadna.android.sdk.DDNA#getEventProfiles(int)} to find
+     * the events which take up the most of the uploads.
+     * <p>
+     * Needs to be set before the SDK is initialised.
+     *
+     * @param enabled {@code true} to enable
+     *
+     * @return this {@link Settings} instance
+     */
+    public Settings setEventProfilingEnabled(boolean enabled) {
+        eventProfilingEnabled = enabled;
+        return this;
+    }
 }
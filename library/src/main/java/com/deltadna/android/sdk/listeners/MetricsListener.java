@@ -0,0 +1,38 @@
+/*
+ * Copyright (c) 2016 deltaDNA Ltd. All rights reserved.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.deltadna.android.sdk.listeners;
+
+import com.deltadna.android.sdk.metrics.MetricsSnapshot;
+
+/**
+ * Listener for the metrics which the SDK keeps about itself, such as how
+ * many events have been stored and uploaded, and how long requests took,
+ * for feeding into the monitoring of the game.
+ * <p>
+ * Metrics are only recorded while at least one listener is registered.
+ */
+public interface MetricsListener {
+    
+    /**
+     * Will be called on the main thread with the latest metrics, every
+     * {@link com.deltadna.android.sdk.helpers.Settings#getMetricsIntervalSeconds()}
+     * while the SDK is started.
+     *
+     * @param metrics the metrics
+     */
+    void onMetrics(MetricsSnapshot metrics);
+}
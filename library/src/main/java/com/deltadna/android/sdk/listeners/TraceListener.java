@@ -0,0 +1,47 @@
+/*
+ * Copyright (c) 2016 deltaDNA Ltd. All rights reserved.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.deltadna.android.sdk.listeners;
+
+import com.deltadna.android.sdk.tracing.Span;
+
+/**
+ * Listener for the spans around the work done by the SDK, for finding out
+ * what the SDK was doing at a point in time, such as when a frame was
+ * dropped.
+ * <p>
+ * Spans are only created while at least one listener is registered.
+ *
+ * @see com.deltadna.android.sdk.tracing.SystraceListener
+ * @see com.deltadna.android.sdk.tracing.TraceEventExporter
+ */
+public interface TraceListener {
+    
+    /**
+     * Will be called on the thread which began the span.
+     *
+     * @param span the span
+     */
+    void onSpanStarted(Span span);
+    
+    /**
+     * Will be called on the thread which finished the span, which may be
+     * a different thread for {@link Span#isAsync()} spans.
+     *
+     * @param span the span
+     */
+    void onSpanFinished(Span span);
+}
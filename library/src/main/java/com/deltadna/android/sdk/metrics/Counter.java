@@ -0,0 +1,45 @@
+/*
+ * Copyright (c) 2016 deltaDNA Ltd. All rights reserved.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.deltadna.android.sdk.metrics;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Count which only goes up, such as the number of events uploaded.
+ */
+public final class Counter {
+    
+    private final AtomicLong value = new AtomicLong();
+    
+    Counter() {}
+    
+    public void increment() {
+        if (Metrics.enabled) value.incrementAndGet();
+    }
+    
+    public void add(long delta) {
+        if (Metrics.enabled) value.addAndGet(delta);
+    }
+    
+    long get() {
+        return value.get();
+    }
+    
+    void reset() {
+        value.set(0);
+    }
+}
@@ -0,0 +1,117 @@
+/*
+ * Copyright (c) 2016 deltaDNA Ltd. All rights reserved.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.deltadna.android.sdk.metrics;
+
+import com.deltadna.android.sdk.helpers.Objects;
+
+import java.util.Arrays;
+
+/**
+ * Statistics about the events recorded under one event name, from the
+ * {@link EventProfiler}.
+ */
+public final class EventProfile {
+    
+    /**
+     * Number of buckets of the parameter counts, with the last one counting
+     * events with at least that many parameters.
+     */
+    static final int PARAM_BUCKETS = 33;
+    
+    private final String name;
+    private final long count;
+    private final long bytes;
+    private final long maxBytes;
+    private final long params;
+    private final long oversized;
+    private final long[] paramCounts;
+    
+    EventProfile(
+            String name,
+            long count,
+            long bytes,
+            long maxBytes,
+            long params,
+            long oversized,
+            long[] paramCounts) {
+        
+        this.name = name;
+        this.count = count;
+        this.bytes = bytes;
+        this.maxBytes = maxBytes;
+        this.params = params;
+        this.oversized = oversized;
+        this.paramCounts = paramCounts;
+    }
+    
+    public String getName() {
+        return name;
+    }
+    
+    public long getCount() {
+        return count;
+    }
+    
+    /**
+     * @return the bytes taken up in storage by all of the events, which
+     *         is close to what they add to uploads
+     */
+    public long getBytes() {
+        return bytes;
+    }
+    
+    public long getMaxBytes() {
+        return maxBytes;
+    }
+    
+    public double getMeanBytes() {
+        return (count > 0) ? bytes / (double) count : 0;
+    }
+    
+    public double getMeanParams() {
+        return (count > 0) ? params / (double) count : 0;
+    }
+    
+    /**
+     * @return how many events were too big to ever be uploaded, and so
+     *         were not stored
+     */
+    public long getOversized() {
+        return oversized;
+    }
+    
+    /**
+     * @return how many events had each number of parameters, with the last
+     *         element counting events with at least that many
+     */
+    public long[] getParamCounts() {
+        return paramCounts.clone();
+    }
+    
+    @Override
+    public String toString() {
+        return new Objects.ToStringHelper(this)
+                .add("name", name)
+                .add("count", count)
+                .add("bytes", bytes)
+                .add("maxBytes", maxBytes)
+                .add("meanParams", getMeanParams())
+                .add("oversized", oversized)
+                .add("paramCounts", Arrays.toString(paramCounts))
+                .toString();
+    }
+}
@@ -0,0 +1,170 @@
+/*
+ * Copyright (c) 2016 deltaDNA Ltd. All rights reserved.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.deltadna.android.sdk.metrics;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Keeps statistics about the events recorded under each event name, how
+ * many there were, how many bytes they took up in storage, and how many
+ * parameters they had, for finding the events which use up the most of
+ * the upload budget.
+ * <p>
+ * Statistics are kept for up to {@link #MAX_NAMES} event names, after
+ * which any other names are counted under {@link #OTHER}. Recording an
+ * event does not allocate once its name has been seen.
+ * <p>
+ * Internal to the SDK, only public for access from its packages.
+ */
+public final class EventProfiler {
+    
+    public static final int MAX_NAMES = 256;
+    /**
+     * Name which events get counted under once {@link #MAX_NAMES} has been
+     * reached.
+     */
+    public static final String OTHER = "(other)";
+    
+    private static final ConcurrentMap<String, Stats> STATS =
+            new ConcurrentHashMap<>();
+    private static final Stats OTHER_STATS = new Stats();
+    
+    private static volatile boolean enabled;
+    
+    private EventProfiler() {}
+    
+    public static boolean isEnabled() {
+        return enabled;
+    }
+    
+    public static void setEnabled(boolean enabled) {
+        EventProfiler.enabled = enabled;
+    }
+    
+    /**
+     * @param bytes     the size of the event in storage
+     * @param params    the number of parameters of the event
+     * @param oversized whether the event is too big to be uploaded
+     */
+    public static void record(
+            String name,
+            int bytes,
+            int params,
+            boolean oversized) {
+        
+        if (!enabled) return;
+        
+        Stats stats = STATS.get(name);
+        if (stats == null) {
+            if (STATS.size() >= MAX_NAMES) {
+                stats = OTHER_STATS;
+            } else {
+                final Stats created = new Stats();
+                final Stats existing = STATS.putIfAbsent(name, created);
+                stats = (existing != null) ? existing : created;
+            }
+        }
+        
+        stats.record(bytes, params, oversized);
+    }
+    
+    /**
+     * @param count how many of the profiles to return
+     *
+     * @return the profiles of the event names which took up the most
+     *         bytes, in descending order
+     */
+    public static List<EventProfile> top(int count) {
+        final List<EventProfile> profiles = new ArrayList<>(STATS.size() + 1);
+        for (final ConcurrentMap.Entry<String, Stats> entry : STATS.entrySet()) {
+            profiles.add(entry.getValue().profile(entry.getKey()));
+        }
+        if (OTHER_STATS.count.get() > 0) {
+            profiles.add(OTHER_STATS.profile(OTHER));
+        }
+        
+        Collections.sort(profiles, (a, b) -> Long.compare(b.getBytes(), a.getBytes()));
+        return Collections.unmodifiableList(new ArrayList<>(
+                profiles.subList(0, Math.min(Math.max(0, count), profiles.size()))));
+    }
+    
+    /**
+     * Forgets about all of the event names.
+     */
+    public static void reset() {
+        STATS.clear();
+        OTHER_STATS.reset();
+    }
+    
+    private static final class Stats {
+        
+        final AtomicLong count = new AtomicLong();
+        final AtomicLong bytes = new AtomicLong();
+        final AtomicLong maxBytes = new AtomicLong();
+        final AtomicLong params = new AtomicLong();
+        final AtomicLong oversized = new AtomicLong();
+        final AtomicLongArray paramCounts =
+                new AtomicLongArray(EventProfile.PARAM_BUCKETS);
+        
+        void record(int bytes, int params, boolean oversized) {
+            count.incrementAndGet();
+            this.bytes.addAndGet(bytes);
+            this.params.addAndGet(params);
+            if (oversized) this.oversized.incrementAndGet();
+            paramCounts.incrementAndGet(
+                    Math.min(Math.max(0, params), EventProfile.PARAM_BUCKETS - 1));
+            
+            long current;
+            while (bytes > (current = maxBytes.get())) {
+                if (maxBytes.compareAndSet(current, bytes)) break;
+            }
+        }
+        
+        EventProfile profile(String name) {
+            final long[] counts = new long[EventProfile.PARAM_BUCKETS];
+            for (int i = 0; i < counts.length; i++) {
+                counts[i] = paramCounts.get(i);
+            }
+            
+            return new EventProfile(
+                    name,
+                    count.get(),
+                    bytes.get(),
+                    maxBytes.get(),
+                    params.get(),
+                    oversized.get(),
+                    counts);
+        }
+        
+        void reset() {
+            count.set(0);
+            bytes.set(0);
+            maxBytes.set(0);
+            params.set(0);
+            oversized.set(0);
+            for (int i = 0; i < paramCounts.length(); i++) {
+                paramCounts.set(i, 0);
+            }
+        }
+    }
+}
@@ -0,0 +1,38 @@
+/*
+ * Copyright (c) 2016 deltaDNA Ltd. All rights reserved.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.deltadna.android.sdk.metrics;
+
+/**
+ * Value which is sampled as it changes, such as the size of a queue.
+ * <p>
+ * Gauges are only ever set to the current value, so that they do not drift
+ * when updates are skipped while metrics are disabled.
+ */
+public final class Gauge {
+    
+    private volatile long value;
+    
+    Gauge() {}
+    
+    public void set(long value) {
+        if (Metrics.enabled) this.value = value;
+    }
+    
+    long get() {
+        return value;
+    }
+}
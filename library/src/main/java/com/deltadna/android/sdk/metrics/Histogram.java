@@ -0,0 +1,88 @@
+/*
+ * Copyright (c) 2016 deltaDNA Ltd. All rights reserved.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.deltadna.android.sdk.metrics;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Distribution of values, such as latencies, kept in buckets of powers of
+ * two so bucket {@code i} counts values of at least {@code 2^(i-1)} and
+ * less than {@code 2^i}, with the last bucket counting everything above.
+ */
+public final class Histogram {
+    
+    static final int BUCKETS = 32;
+    
+    private final AtomicLongArray buckets = new AtomicLongArray(BUCKETS);
+    private final AtomicLong count = new AtomicLong();
+    private final AtomicLong sum = new AtomicLong();
+    private final AtomicLong max = new AtomicLong();
+    
+    Histogram() {}
+    
+    public void record(long value) {
+        if (!Metrics.enabled) return;
+        
+        buckets.incrementAndGet(bucket(value));
+        count.incrementAndGet();
+        sum.addAndGet(value);
+        
+        long current;
+        while (value > (current = max.get())) {
+            if (max.compareAndSet(current, value)) break;
+        }
+    }
+    
+    /**
+     * Records the time since {@code start}, as returned by
+     * {@link Metrics#start()}, in {@code unit}.
+     */
+    public void recordSince(long start, TimeUnit unit) {
+        if (start != 0) {
+            record(unit.convert(System.nanoTime() - start, TimeUnit.NANOSECONDS));
+        }
+    }
+    
+    MetricsSnapshot.Distribution snapshot() {
+        final long[] snapshot = new long[BUCKETS];
+        for (int i = 0; i < BUCKETS; i++) {
+            snapshot[i] = buckets.get(i);
+        }
+        
+        return new MetricsSnapshot.Distribution(
+                count.get(),
+                sum.get(),
+                max.get(),
+                snapshot);
+    }
+    
+    void reset() {
+        for (int i = 0; i < BUCKETS; i++) {
+            buckets.set(i, 0);
+        }
+        count.set(0);
+        sum.set(0);
+        max.set(0);
+    }
+    
+    static int bucket(long value) {
+        if (value <= 0) return 0;
+        return Math.min(BUCKETS - 1, 64 - Long.numberOfLeadingZeros(value));
+    }
+}
@@ -0,0 +1,137 @@
+/*
+ * Copyright (c) 2016 deltaDNA Ltd. All rights reserved.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.deltadna.android.sdk.metrics;
+
+import com.deltadna.android.sdk.listeners.MetricsListener;
+
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.CopyOnWriteArraySet;
+
+/**
+ * Registry of the counters, gauges, and histograms which the SDK keeps
+ * about itself, and which are reported to the registered
+ * {@link MetricsListener}s.
+ * <p>
+ * Metrics are created once into static fields next to the code which
+ * updates them, and only record anything while a listener is registered,
+ * so that otherwise updating one costs no more than reading a volatile
+ * field.
+ * <p>
+ * Internal to the SDK, only public for access from its packages.
+ */
+public final class Metrics {
+    
+    private static final ConcurrentMap<String, Counter> COUNTERS =
+            new ConcurrentHashMap<>();
+    private static final ConcurrentMap<String, Gauge> GAUGES =
+            new ConcurrentHashMap<>();
+    private static final ConcurrentMap<String, Histogram> HISTOGRAMS =
+            new ConcurrentHashMap<>();
+    
+    private static final Set<MetricsListener> LISTENERS =
+            new CopyOnWriteArraySet<>();
+    
+    static volatile boolean enabled;
+    
+    private Metrics() {}
+    
+    public static Counter counter(String name) {
+        final Counter created = new Counter();
+        final Counter existing = COUNTERS.putIfAbsent(name, created);
+        return (existing != null) ? existing : created;
+    }
+    
+    public static Gauge gauge(String name) {
+        final Gauge created = new Gauge();
+        final Gauge existing = GAUGES.putIfAbsent(name, created);
+        return (existing != null) ? existing : created;
+    }
+    
+    public static Histogram histogram(String name) {
+        final Histogram created = new Histogram();
+        final Histogram existing = HISTOGRAMS.putIfAbsent(name, created);
+        return (existing != null) ? existing : created;
+    }
+    
+    public static boolean isEnabled() {
+        return enabled;
+    }
+    
+    /**
+     * Enables recording regardless of whether any listeners are registered,
+     * for looking at the metrics through {@link #snapshot()}.
+     */
+    public static void setEnabled(boolean enabled) {
+        Metrics.enabled = enabled;
+    }
+    
+    /**
+     * @return the start of a timing for {@link Histogram#recordSince(long,
+     *         java.util.concurrent.TimeUnit)}, or 0 if metrics are disabled
+     */
+    public static long start() {
+        return enabled ? System.nanoTime() : 0;
+    }
+    
+    public static void register(MetricsListener listener) {
+        LISTENERS.add(listener);
+        enabled = true;
+    }
+    
+    public static void unregister(MetricsListener listener) {
+        LISTENERS.remove(listener);
+        if (LISTENERS.isEmpty()) enabled = false;
+    }
+    
+    public static Set<MetricsListener> listeners() {
+        return Collections.unmodifiableSet(LISTENERS);
+    }
+    
+    public static MetricsSnapshot snapshot() {
+        final Map<String, Long> counters = new LinkedHashMap<>(COUNTERS.size());
+        for (final Map.Entry<String, Counter> entry : COUNTERS.entrySet()) {
+            counters.put(entry.getKey(), entry.getValue().get());
+        }
+        
+        final Map<String, Long> gauges = new LinkedHashMap<>(GAUGES.size());
+        for (final Map.Entry<String, Gauge> entry : GAUGES.entrySet()) {
+            gauges.put(entry.getKey(), entry.getValue().get());
+        }
+        
+        final Map<String, MetricsSnapshot.Distribution> histograms =
+                new LinkedHashMap<>(HISTOGRAMS.size());
+        for (final Map.Entry<String, Histogram> entry : HISTOGRAMS.entrySet()) {
+            histograms.put(entry.getKey(), entry.getValue().snapshot());
+        }
+        
+        return new MetricsSnapshot(counters, gauges, histograms);
+    }
+    
+    /**
+     * Zeroes all of the metrics, without forgetting about them.
+     */
+    public static void reset() {
+        for (final Counter counter : COUNTERS.values()) counter.reset();
+        for (final Gauge gauge : GAUGES.values()) gauge.set(0);
+        for (final Histogram histogram : HISTOGRAMS.values()) histogram.reset();
+    }
+}
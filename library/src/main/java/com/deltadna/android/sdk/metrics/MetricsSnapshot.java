@@ -0,0 +1,241 @@
+/*
+ * Copyright (c) 2016 deltaDNA Ltd. All rights reserved.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.deltadna.android.sdk.metrics;
+
+import com.deltadna.android.sdk.helpers.Objects;
+import com.deltadna.android.sdk.helpers.Preconditions;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Map;
+
+/**
+ * Values of the metrics kept by the SDK at one point in time.
+ * <p>
+ * Counters and histograms accumulate from when the first
+ * {@link com.deltadna.android.sdk.listeners.MetricsListener} was
+ * registered, while gauges hold their latest value. Histograms of
+ * durations have the unit at the end of their name.
+ * <p>
+ * The metrics which are kept are
+ * <ul>
+ *     <li>{@code events.stored}, {@code events.dropped},
+ *     {@code events.skipped}, {@code events.quarantined} counters,
+ *     {@code events.storeBytes} gauge, and {@code events.writeMillis}
+ *     histogram for the event store</li>
+ *     <li>{@code events.orphanedFiles}, {@code events.missingFiles},
+ *     {@code events.verified}, {@code events.sweepsIncomplete} counters and
+ *     {@code events.sweepMillis} histogram for reconciling the event
+ *     store</li>
+ *     <li>{@code uploads}, {@code uploads.failed}, {@code uploads.events}
+ *     counters and {@code uploads.millis} histogram for event uploads</li>
+ *     <li>{@code network.retries}, {@code network.cancelled} counters,
+ *     {@code network.queued}, {@code network.inFlight} gauges, and
+ *     {@code network.millis} histogram for HTTP requests</li>
+ *     <li>{@code network.<endpoint>.requests}, {@code .failures},
+ *     {@code .retries}, {@code .rejected} counters and
+ *     {@code network.<endpoint>.millis} histogram for requests to each
+ *     of the {@code collect}, {@code engage}, and {@code get} endpoints</li>
+ *     <li>{@code network.connections.pooled},
+ *     {@code network.connections.discarded} counters for the connections
+ *     of the default transport</li>
+ *     <li>{@code engage.requests}, {@code engage.failed},
+ *     {@code engage.cacheHits}, {@code engage.cacheMisses} counters and
+ *     {@code engage.millis} histogram for Engage requests</li>
+ *     <li>{@code images.cacheHits}, {@code images.downloaded},
+ *     {@code images.failed} counters and {@code images.downloadMillis}
+ *     histogram for image messages</li>
+ *     <li>{@code triggers.evaluated}, {@code triggers.fired} counters and
+ *     {@code triggers.micros} histogram for event trigger evaluation</li>
+ *     <li>{@code events.latencyMillis} histogram for how long events took
+ *     from being recorded to being acknowledged by the Collect service</li>
+ * </ul>
+ */
+public final class MetricsSnapshot {
+    
+    private final Map<String, Long> counters;
+    private final Map<String, Long> gauges;
+    private final Map<String, Distribution> histograms;
+    
+    MetricsSnapshot(
+            Map<String, Long> counters,
+            Map<String, Long> gauges,
+            Map<String, Distribution> histograms) {
+        
+        this.counters = Collections.unmodifiableMap(counters);
+        this.gauges = Collections.unmodifiableMap(gauges);
+        this.histograms = Collections.unmodifiableMap(histograms);
+    }
+    
+    public Map<String, Long> getCounters() {
+        return counters;
+    }
+    
+    public Map<String, Long> getGauges() {
+        return gauges;
+    }
+    
+    public Map<String, Distribution> getHistograms() {
+        return histograms;
+    }
+    
+    /**
+     * @return the value of the counter, or 0 if it does not exist
+     */
+    public long getCounter(String name) {
+        final Long value = counters.get(name);
+        return (value != null) ? value : 0;
+    }
+    
+    /**
+     * @return the value of the gauge, or 0 if it does not exist
+     */
+    public long getGauge(String name) {
+        final Long value = gauges.get(name);
+        return (value != null) ? value : 0;
+    }
+    
+    /**
+     * @return the histogram, or an empty one if it does not exist
+     */
+    public Distribution getHistogram(String name) {
+        final Distribution value = histograms.get(name);
+        return (value != null)
+                ? value
+                : new Distribution(0, 0, 0, new long[Histogram.BUCKETS]);
+    }
+    
+    @Override
+    public String toString() {
+        return new Objects.ToStringHelper(this)
+                .add("counters", counters)
+                .add("gauges", gauges)
+                .add("histograms", histograms)
+                .toString();
+    }
+    
+    /**
+     * Values recorded by a histogram.
+     */
+    public static final class Distribution {
+        
+        private final long count;
+        private final long sum;
+        private final long max;
+        private final long[] buckets;
+        
+        Distribution(long count, long sum, long max, long[] buckets) {
+            this.count = count;
+            this.sum = sum;
+            this.max = max;
+            this.buckets = buckets;
+        }
+        
+        public long getCount() {
+            return count;
+        }
+        
+        public long getSum() {
+            return sum;
+        }
+        
+        public long getMax() {
+            return max;
+        }
+        
+        public double getMean() {
+            return (count > 0) ? sum / (double) count : 0;
+        }
+        
+        /**
+         * Gets an upper bound for a percentile, as the values are only kept
+         * in buckets of powers of two.
+         *
+         * @param percentile the percentile, between 0 and 1
+         *
+         * @return the upper bound, or 0 if nothing has been recorded
+         *
+         * @throws IllegalArgumentException if {@code percentile} is out of
+         *                                  range
+         */
+        public long getPercentile(double percentile) {
+            Preconditions.checkArg(
+                    percentile >= 0 && percentile <= 1,
+                    "percentile must be between 0 and 1");
+            
+            long total = 0;
+            for (final long bucket : buckets) total += bucket;
+            if (total == 0) return 0;
+            
+            final long rank = Math.max(1, (long) Math.ceil(percentile * total));
+            long seen = 0;
+            for (int i = 0; i < buckets.length; i++) {
+                seen += buckets[i];
+                if (seen >= rank) {
+                    return (i == 0) ? 0 : Math.min(max, (1L << i) - 1);
+                }
+            }
+            return max;
+        }
+        
+        /**
+         * Gets what has been recorded since an {@code earlier} snapshot of
+         * the same histogram. The max is only known to the bucket, so it
+         * is the upper bound of the highest bucket recorded into unless
+         * the max of this snapshot is lower.
+         *
+         * @param earlier the earlier snapshot
+         *
+         * @return the difference
+         */
+        public Distribution since(Distribution earlier) {
+            final long[] difference = new long[buckets.length];
+            long max = 0;
+            for (int i = 0; i < buckets.length; i++) {
+                difference[i] = Math.max(0, buckets[i] - earlier.buckets[i]);
+                if (difference[i] > 0 && i > 0) {
+                    max = Math.min(this.max, (1L << i) - 1);
+                }
+            }
+            
+            return new Distribution(
+                    Math.max(0, count - earlier.count),
+                    Math.max(0, sum - earlier.sum),
+                    max,
+                    difference);
+        }
+        
+        /**
+         * @return the counts of the buckets, where bucket {@code i} counts
+         *         values of at least {@code 2^(i-1)} and less than
+         *         {@code 2^i}
+         */
+        public long[] getBuckets() {
+            return buckets.clone();
+        }
+        
+        @Override
+        public String toString() {
+            return new Objects.ToStringHelper(this)
+                    .add("count", count)
+                    .add("mean", getMean())
+                    .add("max", max)
+                    .add("buckets", Arrays.toString(buckets))
+                    .toString();
+        }
+    }
+}
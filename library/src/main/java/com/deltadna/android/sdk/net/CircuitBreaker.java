@@ -0,0 +1,86 @@
+/*
+ * Copyright (c) 2016 deltaDNA Ltd. All rights reserved.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.deltadna.android.sdk.net;
+
+/**
+ * Stops requests from being made to an endpoint after a number of
+ * consecutive failures, until a cool-down period has passed. A single
+ * trial request is then let through, which either closes the breaker again
+ * or re-opens it for another period. A trial which gets abandoned without
+ * an outcome lets another one through in its place.
+ */
+final class CircuitBreaker {
+    
+    private final int threshold;
+    private final long coolDown;
+    
+    private int failures;
+    private long openedAt = -1;
+    private boolean trial;
+    
+    /**
+     * @param threshold the number of consecutive failures after which the
+     *                  breaker opens
+     * @param coolDown  how long the breaker stays open in milliseconds
+     */
+    CircuitBreaker(int threshold, long coolDown) {
+        this.threshold = threshold;
+        this.coolDown = coolDown;
+    }
+    
+    /**
+     * @return whether a request may be made
+     */
+    synchronized boolean allow() {
+        if (openedAt == -1) return true;
+        
+        if (!trial && now() - openedAt >= coolDown) {
+            trial = true;
+            return true;
+        }
+        return false;
+    }
+    
+    synchronized boolean isOpen() {
+        return openedAt != -1;
+    }
+    
+    synchronized void onSuccess() {
+        failures = 0;
+        openedAt = -1;
+        trial = false;
+    }
+    
+    synchronized void onFailure() {
+        failures++;
+        if (trial || failures >= threshold) {
+            openedAt = now();
+            trial = false;
+        }
+    }
+    
+    /**
+     * Called when a request has been let through but its outcome will never
+     * be known, such as when it gets cancelled while in flight.
+     */
+    synchronized void onAbandoned() {
+        trial = false;
+    }
+    
+    long now() {
+        return System.currentTimeMillis();
+    }
+}
@@ -0,0 +1,29 @@
+/*
+ * Copyright (c) 2016 deltaDNA Ltd. All rights reserved.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.deltadna.android.sdk.net;
+
+import java.io.IOException;
+
+/**
+ * Thrown instead of making a request while the {@link CircuitBreaker} for
+ * its endpoint is open.
+ */
+public final class CircuitOpenException extends IOException {
+    
+    CircuitOpenException(String endpoint) {
+        super("Circuit open for " + endpoint + " requests");
+    }
+}
@@ -0,0 +1,92 @@
+/*
+ * Copyright (c) 2016 deltaDNA Ltd. All rights reserved.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.deltadna.android.sdk.net;
+
+import androidx.annotation.Nullable;
+
+import com.deltadna.android.sdk.helpers.Objects;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * HTTP request to be performed by an {@link HttpTransport}.
+ */
+public final class HttpRequest {
+    
+    /**
+     * Absolute URL of the request.
+     */
+    public final String url;
+    /**
+     * Method of the request, such as {@code GET} or {@code POST}.
+     */
+    public final String method;
+    /**
+     * Headers of the request, not including {@code Content-Type}.
+     */
+    public final Map<String, String> headers;
+    /**
+     * Body of the request, or {@code null} if the method does not have
+     * one.
+     */
+    @Nullable
+    public final byte[] body;
+    /**
+     * Media type of the body, or {@code null} if there is no body.
+     */
+    @Nullable
+    public final String contentType;
+    /**
+     * Timeout for establishing the connection, in milliseconds.
+     */
+    public final int connectionTimeout;
+    /**
+     * Timeout for reading from the connection, in milliseconds.
+     */
+    public final int readTimeout;
+    
+    HttpRequest(
+            String url,
+            String method,
+            Map<String, String> headers,
+            @Nullable byte[] body,
+            @Nullable String contentType,
+            int connectionTimeout,
+            int readTimeout) {
+        
+        this.url = url;
+        this.method = method;
+        this.headers = Collections.unmodifiableMap(new HashMap<>(headers));
+        this.body = body;
+        this.contentType = contentType;
+        this.connectionTimeout = connectionTimeout;
+        this.readTimeout = readTimeout;
+    }
+    
+    @Override
+    public String toString() {
+        return new Objects.ToStringHelper(this)
+                .add("url", url)
+                .add("method", method)
+                .add("headers", headers)
+                .add("contentType", contentType)
+                .toString();
+    }
+}
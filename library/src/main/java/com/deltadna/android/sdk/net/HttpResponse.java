@@ -0,0 +1,91 @@
+/*
+ * Copyright (c) 2016 deltaDNA Ltd. All rights reserved.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.deltadna.android.sdk.net;
+
+import androidx.annotation.Nullable;
+
+import com.deltadna.android.sdk.helpers.Objects;
+
+import java.util.Collections;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * HTTP response received by an {@link HttpTransport}, with its body read in
+ * full.
+ */
+public final class HttpResponse {
+    
+    /**
+     * HTTP status code of the response.
+     */
+    public final int code;
+    /**
+     * Body of the response, empty if there was none.
+     */
+    public final byte[] body;
+    
+    private final Map<String, String> headers;
+    
+    /**
+     * @param code      the status code
+     * @param headers   the headers, with the last value for any header
+     *                  which was repeated
+     * @param body      the body, or {@code null} if there was none
+     */
+    public HttpResponse(
+            int code,
+            Map<String, String> headers,
+            @Nullable byte[] body) {
+        
+        this.code = code;
+        this.body = (body != null) ? body : new byte[0];
+        
+        final Map<String, String> copy =
+                new TreeMap<>(String.CASE_INSENSITIVE_ORDER);
+        for (final Map.Entry<String, String> header : headers.entrySet()) {
+            // status line is keyed by null for HttpURLConnection
+            if (header.getKey() != null) {
+                copy.put(header.getKey(), header.getValue());
+            }
+        }
+        this.headers = Collections.unmodifiableMap(copy);
+    }
+    
+    /**
+     * @param name the name of the header, in any case
+     *
+     * @return the value of the header, or {@code null} if missing
+     */
+    @Nullable
+    public String header(String name) {
+        return headers.get(name);
+    }
+    
+    public Map<String, String> headers() {
+        return headers;
+    }
+    
+    @Override
+    public String toString() {
+        return new Objects.ToStringHelper(this)
+                .add("code", code)
+                .add("headers", headers)
+                .toString();
+    }
+}
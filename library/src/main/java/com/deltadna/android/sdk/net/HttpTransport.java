@@ -0,0 +1,75 @@
+/*
+ * Copyright (c) 2016 deltaDNA Ltd. All rights reserved.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.deltadna.android.sdk.net;
+
+import java.io.IOException;
+
+/**
+ * Performs the HTTP requests made by the SDK, for collect, Engage, and
+ * image fetches alike.
+ * <p>
+ * By default requests go through {@link java.net.HttpURLConnection} on a
+ * background thread, but an application can provide its own transport
+ * through {@link com.deltadna.android.sdk.helpers.Settings#setHttpTransport(HttpTransport)}
+ * in order to share an asynchronous client, and its connections, with the
+ * rest of the application.
+ * <p>
+ * Implementations must not block the calling thread, and may call back on
+ * any thread. Retries, timeouts between retries, and parsing of the
+ * responses are handled by the SDK.
+ */
+public interface HttpTransport {
+    
+    /**
+     * Starts performing a request.
+     *
+     * @param request   the request
+     * @param callback  the callback to notify exactly once with the
+     *                  outcome, unless the call is cancelled
+     *
+     * @return the call, which can be used for cancelling the request
+     */
+    Call execute(HttpRequest request, Callback callback);
+    
+    /**
+     * Request which has been started by a transport.
+     */
+    interface Call {
+        
+        /**
+         * Cancels the request if it has not completed yet, after which
+         * the callback does not need to be notified.
+         */
+        void cancel();
+    }
+    
+    interface Callback {
+        
+        /**
+         * Called with the response, whatever its status code, once its
+         * body has been read in full.
+         */
+        void onResponse(HttpResponse response);
+        
+        /**
+         * Called when the request could not be made or the response could
+         * not be read.
+         */
+        void onFailure(IOException e);
+    }
+}
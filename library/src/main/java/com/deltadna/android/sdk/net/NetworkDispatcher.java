@@ -14,54 +14,104 @@
  * limitations under the License.
  */
 
+
 package com.deltadna.android.sdk.net;
 
 import android.os.Handler;
 import android.os.Looper;
 import androidx.annotation.NonNull;
 import androidx.annotation.Nullable;
-import android.util.Log;
+import com.deltadna.android.sdk.util.Log;
 
 import com.deltadna.android.sdk.BuildConfig;
 import com.deltadna.android.sdk.listeners.RequestListener;
+import com.deltadna.android.sdk.metrics.Counter;
+import com.deltadna.android.sdk.metrics.Gauge;
+import com.deltadna.android.sdk.metrics.Histogram;
+import com.deltadna.android.sdk.metrics.Metrics;
 
-import java.util.Locale;
-import java.util.Map;
-import java.util.concurrent.Callable;
-import java.util.concurrent.CancellationException;
-import java.util.concurrent.ConcurrentHashMap;
-import java.util.concurrent.Delayed;
-import java.util.concurrent.ExecutionException;
-import java.util.concurrent.ExecutorService;
+import java.io.IOException;
+import java.util.Iterator;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.concurrent.CopyOnWriteArrayList;
 import java.util.concurrent.Executors;
 import java.util.concurrent.Future;
-import java.util.concurrent.RunnableScheduledFuture;
 import java.util.concurrent.ScheduledExecutorService;
-import java.util.concurrent.ScheduledThreadPoolExecutor;
 import java.util.concurrent.ThreadFactory;
 import java.util.concurrent.TimeUnit;
-import java.util.concurrent.TimeoutException;
 
 /**
- * Handles enqueuing of network requests on an {@link ExecutorService}
- * and calling back on the listeners (if supplied) either with the
- * success result or the failure cause.
+ * Hands network requests to an {@link HttpTransport}, retrying them
+ * according to their {@link RequestPolicy}, and calling back on the
+ * listeners (if supplied) either with the success result or the failure
+ * cause.
+ * <p>
+ * Only so many requests are in flight at a time, with the rest waiting in
+ * order of their {@link RequestPriority}, so that an Engage request does
+ * not have to wait behind uploads and downloads. Cancelled requests are
+ * taken out of the queue straight away, and requests replaced by a newer
+ * one with the same key never get sent.
+ * <p>
+ * No thread is held while a request is in flight, unless the transport
+ * does so itself, with retries waiting on a scheduler.
  */
 final class NetworkDispatcher {
     
     private static final String TAG = BuildConfig.LOG_TAG
             + ' '
             + NetworkDispatcher.class.getSimpleName();
-    private static final int MAX_REQUESTS = 10;
+    /**
+     * Requests in flight at a time for a transport provided by the
+     * application, which is expected to multiplex them.
+     */
+    private static final int MAX_IN_FLIGHT = 4;
     
-    private final Map<Request, Cancelable> requests =
-            new ConcurrentHashMap<>(MAX_REQUESTS);
+    private static final Counter RETRIES = Metrics.counter("network.retries");
+    private static final Counter CANCELLED = Metrics.counter("network.cancelled");
+    private static final Gauge QUEUED = Metrics.gauge("network.queued");
+    private static final Gauge IN_FLIGHT = Metrics.gauge("network.inFlight");
+    private static final Histogram MILLIS = Metrics.histogram("network.millis");
     
     private final Handler handler = new Handler(Looper.getMainLooper());
-    private final ScheduledExecutorService executor;
+    private final HttpTransport transport;
+    private final int maxInFlight;
+    private final ScheduledExecutorService scheduler;
+    
+    /**
+     * Guards the queue, the number of requests in flight, and the state of
+     * each dispatch.
+     */
+    private final Object lock = new Object();
+    private final PriorityQueue<Dispatch<?>> queue = new PriorityQueue<>();
+    private int inFlight;
+    private long sequence;
     
     NetworkDispatcher() {
-        this.executor = new NetworkExecutor(MAX_REQUESTS);
+        // sends one request at a time anyway
+        this(new UrlConnectionTransport(), 1);
+    }
+    
+    NetworkDispatcher(HttpTransport transport) {
+        this(transport, MAX_IN_FLIGHT);
+    }
+    
+    NetworkDispatcher(HttpTransport transport, int maxInFlight) {
+        this.transport = transport;
+        this.maxInFlight = maxInFlight;
+        this.scheduler = Executors.newSingleThreadScheduledExecutor(
+                new ThreadFactory() {
+                    private final ThreadFactory inner =
+                            Executors.defaultThreadFactory();
+                    
+                    @Override
+                    public Thread newThread(@NonNull Runnable r) {
+                        final Thread thread = inner.newThread(r);
+                        thread.setName(NetworkDispatcher.class.getSimpleName()
+                                + "-" + thread.getName());
+                        return thread;
+                    }
+                });
     }
     
     CancelableRequest enqueue(
@@ -76,211 +126,333 @@ final class NetworkDispatcher {
             @Nullable ResponseBodyConverter<T> converter,
             @Nullable RequestListener<T> listener) {
         
-        Log.d(TAG, "Enqueuing " + request);
-        
-        final Future<Response<T>> future = executor.submit(request
-                .setConverter(converter)
-                .setRequestListener(listener));
+        Log.d(TAG, "Enqueuing %s", request);
         
-        final Cancelable cancelable = new Cancelable(future);
-        requests.put(request, cancelable);
-        
-        return cancelable;
-    }
-    
-    private final class NetworkExecutor extends ScheduledThreadPoolExecutor {
-        
-        NetworkExecutor(int maxRequests) {
-            super(  1,
-                    new ThreadFactory() {
-                        private final ThreadFactory inner =
-                                Executors.defaultThreadFactory();
+        final Dispatch<T> dispatch;
+        synchronized (lock) {
+            dispatch = new Dispatch<>(
+                    request.setConverter(converter)
+                            .setRequestListener(listener),
+                    sequence++);
+            
+            if (request.key != null) {
+                final Iterator<Dispatch<?>> queued = queue.iterator();
+                while (queued.hasNext()) {
+                    final Dispatch<?> other = queued.next();
+                    if (request.key.equals(other.request.key)) {
+                        Log.d(TAG, "Replacing %s with %s", other.request, request);
                         
-                        @Override
-                        public Thread newThread(@NonNull Runnable r) {
-                            final Thread thread = inner.newThread(r);
-                            thread.setName(NetworkDispatcher.class.getSimpleName()
-                                    + "-" + thread.getName());
-                            return thread;
-                        }
-                    });
+                        queued.remove();
+                        dispatch.supersede(other);
+                    }
+                }
+            }
             
-            setMaximumPoolSize(maxRequests);
+            dispatch.state = State.QUEUED;
+            queue.offer(dispatch);
+            sample();
         }
+        drain();
         
-        @Override
-        protected <V> RunnableScheduledFuture<V> decorateTask(
-                Callable<V> callable,
-                RunnableScheduledFuture<V> task) {
-            
-            if (callable instanceof Request) {
-                final Request<V> request = (Request<V>) callable;
-                
-                return new RequestFuture<>(
-                        super.decorateTask(callable, task),
-                        request,
-                        request.listener);
-            } else {
-                throw new IllegalArgumentException(String.format(
-                        Locale.US,
-                        "Only %s tasks allowed",
-                        Request.class.getSimpleName()));
-            }
+        return dispatch;
+    }
+    
+    /**
+     * @return the number of requests waiting to be sent
+     */
+    int queued() {
+        synchronized (lock) {
+            return queue.size();
         }
-        
-        @Override
-        protected void afterExecute(Runnable r, Throwable t) {
-            super.afterExecute(r, t);
-            
-            if (t == null && r instanceof RequestFuture) {
-                final RequestFuture<Response> future = (RequestFuture) r;
+    }
+    
+    /**
+     * Starts as many of the waiting requests as there is room for.
+     */
+    private void drain() {
+        while (true) {
+            final Dispatch<?> next;
+            synchronized (lock) {
+                if (inFlight >= maxInFlight || queue.isEmpty()) return;
                 
-                try {
-                    final Response response = future.get();
-                    
-                    Log.d(TAG, String.format(
-                            Locale.US,
-                            "Successfully performed %s with %s",
-                            future.request,
-                            response));
-                    
-                    if (future.listener != null) {
-                        handler.post(new Runnable() {
-                            @Override
-                            public void run() {
-                                future.listener.onCompleted(response);
-                            }
-                        });
-                    }
-                    
-                    requests.remove(future.request);
-                } catch (InterruptedException e) {
-                    // TODO is this appropriate?
-                    Thread.currentThread().interrupt();
-                } catch (final ExecutionException e) {
-                    Log.w(TAG, "Failed performing " + future.request, e);
-                    
-                    if (future.request.shouldRetry()) {
-                        Log.w(TAG, "Retrying " + future.request);
-                        
-                        final Future newFuture = schedule(
-                                future.request,
-                                future.request.retryDelay,
-                                TimeUnit.MILLISECONDS);
-                        requests.get(future.request).setTask(newFuture);
-                    } else if (future.listener != null) {
-                        handler.post(new Runnable() {
-                            @Override
-                            public void run() {
-                                future.listener.onError(e.getCause());
-                            }
-                        });
-
-                        requests.remove(future.request);
-                    }
-                } catch (CancellationException e) {
-                    // TODO should the listener be notified of the cancellation?
-                    Log.d(TAG, "Cancelled " + future.request);
-                    
-                    requests.remove(future.request);
-                }
-            } else if (t != null) {
-                Log.e(TAG, "Failed executing task", t);
+                next = queue.poll();
+                next.state = State.IN_FLIGHT;
+                inFlight++;
+                sample();
             }
+            
+            next.start();
         }
     }
     
     /**
-     * Wrapper around a {@link RunnableScheduledFuture} which encapsulates
-     * some fields which we'll need for later use.
+     * Updates the gauges, while holding the lock.
      */
-    private final class RequestFuture<V> implements RunnableScheduledFuture<V> {
-
-        private final RunnableScheduledFuture<V> delegate;
-        private final Request<V> request;
+    private void sample() {
+        QUEUED.set(queue.size());
+        IN_FLIGHT.set(inFlight);
+    }
+    
+    private enum State {
+        NEW,
+        QUEUED,
+        IN_FLIGHT,
+        /**
+         * Waiting for the delay before a retry.
+         */
+        WAITING,
+        DONE
+    }
+    
+    /**
+     * Runs of a request through the transport, which can be cancelled
+     * whichever run it is on.
+     */
+    private final class Dispatch<T> implements
+            CancelableRequest,
+            Comparable<Dispatch<?>>,
+            HttpTransport.Callback {
+        
+        private final Request<T> request;
+        private final long order;
+        private final List<RequestListener<T>> listeners =
+                new CopyOnWriteArrayList<>();
+        
+        // guarded by lock
+        private State state = State.NEW;
+        private boolean cancelled;
         @Nullable
-        private final RequestListener<V> listener;
-
-        private RequestFuture(
-                RunnableScheduledFuture<V> delegate,
-                Request<V> request,
-                @Nullable RequestListener<V> listener) {
-
-            this.delegate = delegate;
+        private HttpTransport.Call call;
+        @Nullable
+        private Future<?> retry;
+        /**
+         * The request which replaced this one.
+         */
+        @Nullable
+        private Dispatch<T> replacement;
+        
+        Dispatch(Request<T> request, long order) {
             this.request = request;
-            this.listener = listener;
-        }
-
-        @Override
-        public boolean isPeriodic() {
-            return delegate.isPeriodic();
-        }
-
-        @Override
-        public void run() {
-            delegate.run();
-        }
-
-        @Override
-        public boolean cancel(boolean mayInterruptIfRunning) {
-            return delegate.cancel(mayInterruptIfRunning);
+            this.order = order;
+            
+            if (request.listener != null) listeners.add(request.listener);
         }
-
+        
         @Override
-        public boolean isCancelled() {
-            return delegate.isCancelled();
+        public int compareTo(@NonNull Dispatch<?> other) {
+            final int priority = request.priority.compareTo(other.request.priority);
+            return (priority != 0) ? priority : Long.compare(order, other.order);
         }
-
-        @Override
-        public boolean isDone() {
-            return delegate.isDone();
+        
+        /**
+         * Takes over the listeners of a request which has been replaced by
+         * this one before being sent.
+         */
+        @SuppressWarnings("unchecked")
+        void supersede(Dispatch<?> other) {
+            final Dispatch<T> replaced = (Dispatch<T>) other;
+            
+            listeners.addAll(replaced.listeners);
+            replaced.state = State.DONE;
+            replaced.replacement = this;
         }
-
-        @Override
-        public V get() throws InterruptedException, ExecutionException {
-            return delegate.get();
+        
+        void start() {
+            try {
+                request.begin();
+            } catch (CircuitOpenException e) {
+                if (finish()) failed(e);
+                return;
+            }
+            
+            final HttpTransport.Call call = transport.execute(request.http, this);
+            synchronized (lock) {
+                if (!cancelled) {
+                    // unless the transport has called back already
+                    if (state == State.IN_FLIGHT) this.call = call;
+                    return;
+                }
+            }
+            
+            // cancelled while being handed to the transport
+            call.cancel();
         }
-
+        
         @Override
-        public V get(long timeout, @NonNull TimeUnit unit) throws
-                InterruptedException,
-                ExecutionException,
-                TimeoutException {
+        public void onResponse(HttpResponse response) {
+            if (!finish()) {
+                Log.d(TAG, "Cancelled %s", request);
+                request.policy.onAbandoned();
+                return;
+            }
+            
+            final Response<T> converted;
+            try {
+                converted = request.complete(response);
+            } catch (Exception e) {
+                failed(e);
+                return;
+            }
+            request.policy.onResponse(converted.code, request.elapsed());
+            MILLIS.record(TimeUnit.NANOSECONDS.toMillis(request.elapsed()));
+            
+            if (request.shouldRetry(converted.code)) {
+                Log.w(TAG, "Retrying %s after %s", request, converted.code);
+                
+                retry();
+                return;
+            }
+            
+            if (Log.PAYLOADS) {
+                Log.d(TAG, "Successfully performed %s with %s", request, converted);
+            }
             
-            return delegate.get(timeout, unit);
+            for (final RequestListener<T> listener : listeners) {
+                handler.post(new Runnable() {
+                    @Override
+                    public void run() {
+                        listener.onCompleted(converted);
+                    }
+                });
+            }
         }
-
+        
         @Override
-        public long getDelay(@NonNull TimeUnit unit) {
-            return delegate.getDelay(unit);
+        public void onFailure(IOException e) {
+            if (!finish()) {
+                Log.d(TAG, "Cancelled %s", request);
+                request.policy.onAbandoned();
+                return;
+            }
+            
+            failed(e);
         }
-
+        
         @Override
-        public int compareTo(@NonNull Delayed another) {
-            return delegate.compareTo(another);
+        public void cancel() {
+            final HttpTransport.Call call;
+            final boolean wasInFlight;
+            synchronized (lock) {
+                if (cancelled) return;
+                cancelled = true;
+                
+                if (replacement != null) {
+                    // the replacement carries on for its own listeners
+                    Dispatch<T> current = replacement;
+                    while (current.replacement != null) {
+                        current = current.replacement;
+                    }
+                    current.listeners.remove(request.listener);
+                    return;
+                }
+                
+                switch (state) {
+                    case QUEUED:
+                        queue.remove(this);
+                        break;
+                    
+                    case WAITING:
+                        if (retry != null) retry.cancel(false);
+                        break;
+                    
+                    default:
+                        break;
+                }
+                
+                wasInFlight = (state == State.IN_FLIGHT);
+                call = this.call;
+                state = State.DONE;
+                if (wasInFlight) inFlight--;
+                sample();
+            }
+            
+            Log.d(TAG, "Cancelled %s", request);
+            CANCELLED.increment();
+            if (wasInFlight) request.policy.onAbandoned();
+            if (call != null) call.cancel();
+            if (wasInFlight) drain();
         }
-    }
-    
-    /**
-     * Wrapper around a {@link CancelableRequest} which allows us to
-     * change the {@link Future} task to be cancelled, as a new instance
-     * is created upon each re-submit.
-     */
-    private static final class Cancelable implements CancelableRequest {
         
-        private Future task;
+        /**
+         * Finishes the run which is in flight, making room for the next
+         * request.
+         *
+         * @return {@code false} if the request has been cancelled
+         */
+        private boolean finish() {
+            synchronized (lock) {
+                if (state != State.IN_FLIGHT) return false;
+                
+                state = State.DONE;
+                call = null;
+                inFlight--;
+                sample();
+            }
+            
+            drain();
+            return true;
+        }
         
-        Cancelable(Future task) {
-            this.task = task;
+        private void failed(final Exception e) {
+            Log.w(TAG, "Failed performing " + request, e);
+            
+            final boolean rejected = e instanceof CircuitOpenException;
+            if (!rejected) {
+                request.policy.onFailure(request.elapsed());
+                MILLIS.record(TimeUnit.NANOSECONDS.toMillis(request.elapsed()));
+            }
+            
+            if (!rejected && request.shouldRetry(-1)) {
+                Log.w(TAG, "Retrying %s", request);
+                
+                retry();
+            } else {
+                for (final RequestListener<T> listener : listeners) {
+                    handler.post(new Runnable() {
+                        @Override
+                        public void run() {
+                            listener.onError(e);
+                        }
+                    });
+                }
+            }
         }
         
-        @Override
-        public synchronized void cancel() {
-            task.cancel(false);
+        private void retry() {
+            request.policy.metrics.onRetry();
+            RETRIES.increment();
+            
+            synchronized (lock) {
+                if (cancelled) return;
+                
+                state = State.WAITING;
+                retry = scheduler.schedule(
+                        new Runnable() {
+                            @Override
+                            public void run() {
+                                requeue();
+                            }
+                        },
+                        request.retryDelay(),
+                        TimeUnit.MILLISECONDS);
+            }
         }
         
-        synchronized void setTask(Future task) {
-            this.task = task;
+        /**
+         * Puts the request back in the queue once its retry delay is over,
+         * keeping its place amongst requests of the same priority.
+         */
+        private void requeue() {
+            synchronized (lock) {
+                if (state != State.WAITING) return;
+                
+                state = State.QUEUED;
+                retry = null;
+                queue.offer(this);
+                sample();
+            }
+            
+            drain();
         }
     }
 }
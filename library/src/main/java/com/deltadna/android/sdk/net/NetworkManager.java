@@ -17,7 +17,7 @@
 package com.deltadna.android.sdk.net;
 
 import androidx.annotation.Nullable;
-import android.util.Log;
+import com.deltadna.android.sdk.util.Log;
 import com.deltadna.android.sdk.BuildConfig;
 import com.deltadna.android.sdk.DDNA;
 import com.deltadna.android.sdk.consent.ConsentStatus;
@@ -27,10 +27,13 @@ import org.json.JSONObject;
 
 import java.io.File;
 import java.io.FileOutputStream;
-import java.io.UnsupportedEncodingException;
+import java.net.MalformedURLException;
+import java.net.URL;
+import java.nio.charset.Charset;
 import java.security.MessageDigest;
 import java.security.NoSuchAlgorithmException;
 import java.util.Locale;
+import java.util.concurrent.TimeUnit;
 
 /**
  * TODO make package private after ads decoupling
@@ -41,6 +44,10 @@ public class NetworkManager {
     private static final String TAG = BuildConfig.LOG_TAG
             + ' '
             + NetworkManager.class.getSimpleName();
+    private static final Charset UTF8 = Charset.forName("UTF-8");
+    
+    private static final long MAX_RETRY_DELAY = TimeUnit.MINUTES.toMillis(5);
+    private static final int BREAKER_THRESHOLD = 5;
     
     private final String collectUrl;
     private final String engageUrl;
@@ -53,6 +60,28 @@ public class NetworkManager {
     
     private final NetworkDispatcher dispatcher;
     
+    /**
+     * Collect requests back off, and stop for a while when the service
+     * keeps failing, as the events stay stored until they get through.
+     */
+    private final RequestPolicy collectPolicy = new RequestPolicy.Builder("collect")
+            .backoff(MAX_RETRY_DELAY)
+            .retryServerErrors()
+            .circuitBreaker(BREAKER_THRESHOLD, TimeUnit.MINUTES.toMillis(1))
+            .build();
+    /**
+     * Engage requests are not retried as they have to come back quickly,
+     * with the cached response being used instead, which also happens
+     * straight away while the service keeps failing.
+     */
+    private final RequestPolicy engagePolicy = new RequestPolicy.Builder("engage")
+            .circuitBreaker(BREAKER_THRESHOLD, TimeUnit.SECONDS.toMillis(30))
+            .build();
+    private final RequestPolicy getPolicy = new RequestPolicy.Builder("get")
+            .backoff(MAX_RETRY_DELAY)
+            .retryServerErrors()
+            .build();
+    
     public NetworkManager(
             String envKey,
             String collectUrl,
@@ -75,7 +104,10 @@ public class NetworkManager {
         }
         md5 = md;
         
-        dispatcher = new NetworkDispatcher();
+        final HttpTransport transport = settings.getHttpTransport();
+        dispatcher = (transport != null)
+                ? new NetworkDispatcher(transport)
+                : new NetworkDispatcher();
     }
 
     public CancelableRequest get(String url, @Nullable RequestListener<JSONObject> listener) {
@@ -84,6 +116,8 @@ public class NetworkManager {
                 .url(url)
                 .maxRetries(settings.getHttpRequestMaxRetries())
                 .retryDelay(settings.getHttpRequestRetryDelay() * 1000)
+                .policy(getPolicy)
+                .priority(RequestPriority.CONFIG)
                 .build();
         return dispatcher.enqueue(request, ResponseBodyConverter.JSON, listener);
     }
@@ -100,6 +134,8 @@ public class NetworkManager {
                 .header("Accept", "application/json")
                 .maxRetries(settings.getHttpRequestMaxRetries())
                 .retryDelay(settings.getHttpRequestRetryDelay() * 1000)
+                .policy(collectPolicy)
+                .priority(RequestPriority.COLLECT)
                 .connectionTimeout(settings.getHttpRequestCollectTimeout() * 1000);
 
         addPIPLHeadersToRequest(builder);
@@ -107,6 +143,33 @@ public class NetworkManager {
         return dispatcher.enqueue(builder.build(), listener);
     }
     
+    /**
+     * Uploads a bulk payload which has already been serialised, so that
+     * events do not have to be parsed before being sent.
+     *
+     * @param payload   JSON text encoded as UTF-8, with an
+     *                  {@code eventList} array
+     * @param listener  the listener for the result
+     */
+    public CancelableRequest collect(
+            byte[] payload,
+            @Nullable RequestListener<Void> listener) {
+
+        Request.Builder<Void> builder = new Request.Builder<Void>()
+                .post(RequestBody.json(payload))
+                .url(buildHashedEndpoint(collectUrl + "/bulk", payload))
+                .header("Accept", "application/json")
+                .maxRetries(settings.getHttpRequestMaxRetries())
+                .retryDelay(settings.getHttpRequestRetryDelay() * 1000)
+                .policy(collectPolicy)
+                .priority(RequestPriority.COLLECT)
+                .connectionTimeout(settings.getHttpRequestCollectTimeout() * 1000);
+
+        addPIPLHeadersToRequest(builder);
+
+        return dispatcher.enqueue(builder.build(), listener);
+    }
+    
     public CancelableRequest engage(
             JSONObject payload,
             RequestListener<JSONObject> listener) {
@@ -124,7 +187,15 @@ public class NetworkManager {
                 .post(RequestBody.json(payload))
                 .url(buildHashedEndpoint(engageUrl, payload.toString()))
                 .header("Accept", "application/json")
+                .policy(engagePolicy)
+                .priority(isConfigurationRequest
+                        ? RequestPriority.CONFIG
+                        : RequestPriority.ENGAGE)
                 .connectionTimeout(timeoutInSeconds * 1000);
+        if (isConfigurationRequest) {
+            // only the latest session configuration is of interest
+            builder.supersedes("config");
+        }
 
         addPIPLHeadersToRequest(builder);
 
@@ -134,6 +205,54 @@ public class NetworkManager {
                 listener);
     }
     
+    /**
+     * Opens a connection to the Engage service ahead of the first request,
+     * so that it does not have to wait for the connection to be set up.
+     * <p>
+     * Goes to the root of the Engage host, as the Engage endpoint only
+     * accepts posts, and whatever the response is the connection gets
+     * kept alive.
+     *
+     * @return the request, or {@code null} if the Engage URL is malformed
+     */
+    @Nullable
+    public CancelableRequest prewarmEngage() {
+        final String root;
+        try {
+            final URL url = new URL(engageUrl);
+            root = new URL(url.getProtocol(), url.getHost(), url.getPort(), "/")
+                    .toString();
+        } catch (MalformedURLException e) {
+            Log.w(TAG, "Not prewarming Engage connection", e);
+            return null;
+        }
+        
+        return dispatcher.enqueue(
+                new Request.Builder<Void>()
+                        .head()
+                        .url(root)
+                        .priority(RequestPriority.ENGAGE)
+                        .supersedes("prewarm")
+                        .connectionTimeout(settings.getHttpRequestEngageTimeout() * 1000)
+                        .build(),
+                new RequestListener<Void>() {
+                    @Override
+                    public void onCompleted(Response<Void> response) {
+                        // only the connection is of interest, so any code will do
+                        if (response.isSuccessful()) {
+                            Log.v(TAG, "Prewarmed Engage connection");
+                        } else {
+                            Log.v(TAG, "Prewarmed Engage connection, ignoring %d", response.code);
+                        }
+                    }
+                    
+                    @Override
+                    public void onError(Throwable t) {
+                        Log.d(TAG, "Failed prewarming Engage connection", t);
+                    }
+                });
+    }
+    
     public CancelableRequest fetch(
             String url,
             final File dest,
@@ -142,6 +261,8 @@ public class NetworkManager {
         Request.Builder<File> builder = new Request.Builder<File>()
                 .get()
                 .url(url)
+                .priority(RequestPriority.PREFETCH)
+                .supersedes("fetch " + url + " to " + dest)
                 .connectionTimeout(settings.getHttpRequestEngageTimeout() * 1000);
 
         addPIPLHeadersToRequest(builder);
@@ -163,19 +284,20 @@ public class NetworkManager {
     }
     
     private String buildHashedEndpoint(String endpoint, String payload) {
+        return buildHashedEndpoint(endpoint, payload.getBytes(UTF8));
+    }
+    
+    private String buildHashedEndpoint(String endpoint, byte[] payload) {
         final StringBuilder builder = new StringBuilder(endpoint);
         
         if (hash != null && md5 != null) {
             builder.append("/hash/");
             
-            final byte[] messageBytes;
-            try {
-                messageBytes = (payload + hash).getBytes("UTF-8");
-            } catch (UnsupportedEncodingException e) {
-                throw new IllegalStateException(e);
+            final byte[] digest;
+            synchronized (md5) {
+                md5.update(payload);
+                digest = md5.digest(hash.getBytes(UTF8));
             }
-            
-            final byte[] digest = md5.digest(messageBytes);
             for (final byte b : digest) {
                 builder.append(String.format(Locale.US, "%02X", b));
             }
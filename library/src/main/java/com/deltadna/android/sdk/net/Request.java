@@ -19,15 +19,14 @@ package com.deltadna.android.sdk.net;
 import androidx.annotation.Nullable;
 
 import com.deltadna.android.sdk.helpers.Objects;
+import com.deltadna.android.sdk.util.Log;
 import com.deltadna.android.sdk.helpers.Preconditions;
 import com.deltadna.android.sdk.listeners.RequestListener;
 
-import java.net.HttpURLConnection;
 import java.net.MalformedURLException;
 import java.net.URL;
 import java.util.HashMap;
 import java.util.Map;
-import java.util.concurrent.Callable;
 
 /**
  * Encapsulates the required details and logic for performing an
@@ -35,7 +34,7 @@ import java.util.concurrent.Callable;
  * 
  * @param <T> type of the result
  */
-final class Request<T> implements Callable<Response<T>> {
+final class Request<T> {
     
     private static final int CONNECTION_TIMEOUT = 15 * 1000;
     private static final int READ_TIMEOUT = 10 * 1000;
@@ -49,15 +48,33 @@ final class Request<T> implements Callable<Response<T>> {
     private final int connectionTimeout;
     private final int readTimeout;
     private final int maxRetries;
+    private final int retryDelay;
+    
+    final RequestPolicy policy;
+    final RequestPriority priority;
+    /**
+     * Requests with the same key replace each other while waiting to be
+     * sent, or {@code null} if the request is never replaced.
+     */
+    @Nullable
+    final String key;
+    /**
+     * What gets handed to the {@link HttpTransport}.
+     */
+    final HttpRequest http;
     
     @Nullable
     private ResponseBodyConverter<T> converter;
     
     // TODO following members should perhaps be moved out
-    final int retryDelay;
     @Nullable
     RequestListener<T> listener;
     private int runs;
+    /**
+     * Delay asked for by the last response, or {@code -1} if none.
+     */
+    private volatile long retryAfter = -1;
+    private volatile long started;
     
     private Request(
             URL url,
@@ -67,7 +84,10 @@ final class Request<T> implements Callable<Response<T>> {
             int connectionTimeout,
             int readTimeout,
             int maxRetries,
-            int retryDelay) {
+            int retryDelay,
+            RequestPolicy policy,
+            RequestPriority priority,
+            @Nullable String key) {
         
         this.url = url;
         this.method = method;
@@ -78,6 +98,18 @@ final class Request<T> implements Callable<Response<T>> {
         this.readTimeout = readTimeout;
         this.maxRetries = maxRetries;
         this.retryDelay = retryDelay;
+        this.policy = policy;
+        this.priority = priority;
+        this.key = key;
+        
+        http = new HttpRequest(
+                url.toString(),
+                method.name(),
+                headers,
+                (body != null) ? body.content : null,
+                (body != null) ? body.type : null,
+                connectionTimeout,
+                readTimeout);
     }
     
     Request<T> setConverter(@Nullable ResponseBodyConverter<T> converter) {
@@ -90,39 +122,55 @@ final class Request<T> implements Callable<Response<T>> {
         return this;
     }
     
-    boolean shouldRetry() {
-        return (runs <= maxRetries);
+    /**
+     * @param code the code of the response, or {@code -1} if the request
+     *             failed without one
+     */
+    boolean shouldRetry(int code) {
+        return (runs <= maxRetries && (code == -1 || policy.isRetryable(code)));
     }
     
-    @Override
-    public Response<T> call() throws Exception {
+    /**
+     * @return the delay before retrying in milliseconds
+     */
+    long retryDelay() {
+        return policy.delay(runs, retryDelay, retryAfter);
+    }
+    
+    /**
+     * @return how long the last run took in nanoseconds
+     */
+    long elapsed() {
+        return System.nanoTime() - started;
+    }
+    
+    /**
+     * Starts a run of the request.
+     *
+     * @throws CircuitOpenException if requests to the endpoint are not
+     *                              being allowed
+     */
+    void begin() throws CircuitOpenException {
         runs++;
+        retryAfter = -1;
         
-        HttpURLConnection connection = null;
-        try {
-            connection = (HttpURLConnection) url.openConnection();
-            
-            connection.setConnectTimeout(connectionTimeout);
-            connection.setReadTimeout(readTimeout);
-            
-            method.set(connection);
-            
-            for (final String header : headers.keySet()) {
-                connection.setRequestProperty(header, headers.get(header));
-            }
-            
-            if (body != null) {
-                body.fill(connection);
-            }
-            
-            connection.connect();
-            
-            return Response.create(connection, converter);
-        } finally {
-            if (connection != null) {
-                connection.disconnect();
-            }
+        if (!policy.allow()) {
+            throw new CircuitOpenException(policy.name);
         }
+        started = System.nanoTime();
+    }
+    
+    /**
+     * Finishes a run of the request with the response from the transport.
+     *
+     * @throws Exception if the body could not be converted
+     */
+    Response<T> complete(HttpResponse response) throws Exception {
+        retryAfter = RequestPolicy.parseRetryAfter(
+                response.header("Retry-After"),
+                System.currentTimeMillis());
+        
+        return Response.create(response.code, response.body, converter);
     }
     
     @Override
@@ -130,8 +178,9 @@ final class Request<T> implements Callable<Response<T>> {
         return new Objects.ToStringHelper(this)
                 .add("url", url)
                 .add("method", method)
+                .add("priority", priority)
                 .add("headers", headers)
-                .add("body", body)
+                .add("body", Log.PAYLOADS ? body : null)
                 .toString();
     }
 
@@ -151,6 +200,10 @@ final class Request<T> implements Callable<Response<T>> {
         private int readTimeout = READ_TIMEOUT;
         private int maxRetries;
         private int retryDelay;
+        private RequestPolicy policy = RequestPolicy.DEFAULT;
+        private RequestPriority priority = RequestPriority.COLLECT;
+        @Nullable
+        private String key;
         
         Builder() {
             method = RequestMethod.GET;
@@ -161,6 +214,10 @@ final class Request<T> implements Callable<Response<T>> {
             return method(RequestMethod.GET, null);
         }
         
+        Builder<T> head() {
+            return method(RequestMethod.HEAD, null);
+        }
+        
         Builder<T> post(RequestBody body) {
             Preconditions.checkArg(body != null, "body cannot be empty");
             return method(RequestMethod.POST, body);
@@ -204,6 +261,29 @@ final class Request<T> implements Callable<Response<T>> {
             return this;
         }
         
+        Builder<T> policy(RequestPolicy policy) {
+            Preconditions.checkArg(policy != null, "policy cannot be null");
+            this.policy = policy;
+            return this;
+        }
+        
+        Builder<T> priority(RequestPriority priority) {
+            Preconditions.checkArg(priority != null, "priority cannot be null");
+            this.priority = priority;
+            return this;
+        }
+        
+        /**
+         * Sets the key which makes the request replace any request with the
+         * same key still waiting to be sent, with the listener of the
+         * replaced request being called back with the outcome of this one.
+         */
+        Builder<T> supersedes(String key) {
+            Preconditions.checkArg(key != null, "key cannot be null");
+            this.key = key;
+            return this;
+        }
+        
         Request<T> build() {
             Preconditions.checkArg(url != null, "url has not been specified");
             return new Request<>(
@@ -214,7 +294,10 @@ final class Request<T> implements Callable<Response<T>> {
                     connectionTimeout,
                     readTimeout,
                     maxRetries,
-                    retryDelay);
+                    retryDelay,
+                    policy,
+                    priority,
+                    key);
         }
         
         private Builder<T> method(
@@ -72,8 +72,13 @@ final class RequestBody {
     }
     
     static RequestBody json(JSONObject content) {
-        return new RequestBody(
-                "application/json; charset=utf-8",
-                content.toString().getBytes(UTF8));
+        return json(content.toString().getBytes(UTF8));
+    }
+    
+    /**
+     * @param content JSON text encoded as UTF-8
+     */
+    static RequestBody json(byte[] content) {
+        return new RequestBody("application/json; charset=utf-8", content);
     }
 }
@@ -0,0 +1,67 @@
+/*
+ * Copyright (c) 2016 deltaDNA Ltd. All rights reserved.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.deltadna.android.sdk.net;
+
+import com.deltadna.android.sdk.metrics.Counter;
+import com.deltadna.android.sdk.metrics.Histogram;
+import com.deltadna.android.sdk.metrics.Metrics;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Counts and latencies of the requests made to an endpoint, published as
+ * {@code network.<endpoint>.} metrics such as
+ * {@code network.collect.failures} and {@code network.engage.millis}.
+ */
+final class RequestMetrics {
+    
+    private final Counter requests;
+    private final Counter failures;
+    private final Counter retries;
+    private final Counter rejected;
+    private final Histogram millis;
+    
+    RequestMetrics(String endpoint) {
+        final String prefix = "network." + endpoint + '.';
+        
+        requests = Metrics.counter(prefix + "requests");
+        failures = Metrics.counter(prefix + "failures");
+        retries = Metrics.counter(prefix + "retries");
+        rejected = Metrics.counter(prefix + "rejected");
+        millis = Metrics.histogram(prefix + "millis");
+    }
+    
+    /**
+     * @param failure   whether the request failed with an exception or a
+     *                  server error
+     */
+    void onResponse(long nanos, boolean failure) {
+        requests.increment();
+        if (failure) failures.increment();
+        millis.record(TimeUnit.NANOSECONDS.toMillis(nanos));
+    }
+    
+    void onRetry() {
+        retries.increment();
+    }
+    
+    /**
+     * Called when a request is not made due to an open circuit.
+     */
+    void onRejected() {
+        rejected.increment();
+    }
+}
@@ -0,0 +1,227 @@
+/*
+ * Copyright (c) 2016 deltaDNA Ltd. All rights reserved.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.deltadna.android.sdk.net;
+
+import androidx.annotation.Nullable;
+
+import com.deltadna.android.sdk.helpers.Preconditions;
+
+import java.text.ParseException;
+import java.text.SimpleDateFormat;
+import java.util.Locale;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * How requests to a class of endpoint get retried, and whether they get
+ * stopped by a {@link CircuitBreaker} while the endpoint keeps failing.
+ * <p>
+ * The number of retries and the initial delay are left to each
+ * {@link Request}, as they come from the settings, while a policy is
+ * shared by all requests to its endpoint so that it can keep track of
+ * their failures.
+ */
+final class RequestPolicy {
+    
+    /**
+     * Policy for requests which have not been given one, retrying after
+     * failures to connect with a fixed delay.
+     */
+    static final RequestPolicy DEFAULT = new Builder("default").build();
+    
+    private static final long MAX_DELAY = TimeUnit.MINUTES.toMillis(5);
+    private static final int MAX_SHIFT = 20;
+    
+    final String name;
+    final RequestMetrics metrics;
+    @Nullable
+    final CircuitBreaker breaker;
+    
+    private final boolean backoff;
+    private final boolean retryServerErrors;
+    private final long maxDelay;
+    private final Random random = new Random();
+    
+    private RequestPolicy(
+            String name,
+            boolean backoff,
+            boolean retryServerErrors,
+            long maxDelay,
+            @Nullable CircuitBreaker breaker) {
+        
+        this.name = name;
+        this.metrics = new RequestMetrics(name);
+        this.backoff = backoff;
+        this.retryServerErrors = retryServerErrors;
+        this.maxDelay = maxDelay;
+        this.breaker = breaker;
+    }
+    
+    /**
+     * @return whether the request may be made, or should be rejected due
+     *         to the circuit being open
+     */
+    boolean allow() {
+        if (breaker == null || breaker.allow()) return true;
+        
+        metrics.onRejected();
+        return false;
+    }
+    
+    /**
+     * @return whether a response with {@code code} should be retried
+     */
+    boolean isRetryable(int code) {
+        return retryServerErrors && isServerFailure(code);
+    }
+    
+    void onResponse(int code, long nanos) {
+        final boolean failure = isServerFailure(code);
+        metrics.onResponse(nanos, failure);
+        
+        if (breaker != null) {
+            if (failure) breaker.onFailure(); else breaker.onSuccess();
+        }
+    }
+    
+    void onFailure(long nanos) {
+        metrics.onResponse(nanos, true);
+        if (breaker != null) breaker.onFailure();
+    }
+    
+    /**
+     * Called when a request which has been allowed will not report back,
+     * so that it does not hold up the circuit breaker.
+     */
+    void onAbandoned() {
+        if (breaker != null) breaker.onAbandoned();
+    }
+    
+    /**
+     * @param runs          how many times the request has been made
+     * @param initialDelay  the delay before the first retry in milliseconds
+     * @param retryAfter    the delay asked for by the server in
+     *                      milliseconds, or {@code -1} if none
+     *
+     * @return the delay before retrying in milliseconds
+     */
+    long delay(int runs, long initialDelay, long retryAfter) {
+        long delay = initialDelay;
+        if (backoff && initialDelay > 0) {
+            final long ceiling = Math.min(
+                    maxDelay,
+                    initialDelay << Math.min(Math.max(runs - 1, 0), MAX_SHIFT));
+            // half of the delay is random, spreading out clients failing together
+            final long half = ceiling / 2;
+            delay = ceiling - half + (long) (random.nextDouble() * (half + 1));
+        }
+        
+        if (retryAfter >= 0) {
+            delay = Math.max(delay, Math.min(retryAfter, maxDelay));
+        }
+        return delay;
+    }
+    
+    @Override
+    public String toString() {
+        return name;
+    }
+    
+    private static boolean isServerFailure(int code) {
+        return code >= 500 || code == 429;
+    }
+    
+    /**
+     * Parses the value of a {@code Retry-After} header, which is either a
+     * number of seconds or an HTTP date.
+     *
+     * @return the delay in milliseconds, or {@code -1} if there is none
+     */
+    static long parseRetryAfter(@Nullable String value, long now) {
+        if (value == null || value.trim().isEmpty()) return -1;
+        
+        final String trimmed = value.trim();
+        try {
+            return Math.max(0, TimeUnit.SECONDS.toMillis(Long.parseLong(trimmed)));
+        } catch (NumberFormatException ignored) {}
+        
+        final SimpleDateFormat format = new SimpleDateFormat(
+                "EEE, dd MMM yyyy HH:mm:ss zzz",
+                Locale.US);
+        try {
+            return Math.max(0, format.parse(trimmed).getTime() - now);
+        } catch (ParseException e) {
+            return -1;
+        }
+    }
+    
+    static final class Builder {
+        
+        private final String name;
+        
+        private boolean backoff;
+        private boolean retryServerErrors;
+        private long maxDelay = MAX_DELAY;
+        @Nullable
+        private CircuitBreaker breaker;
+        
+        Builder(String name) {
+            this.name = name;
+        }
+        
+        /**
+         * Doubles the delay after each retry, up to {@code maxDelay}
+         * milliseconds, with half of each delay being random.
+         */
+        Builder backoff(long maxDelay) {
+            Preconditions.checkArg(maxDelay >= 0, "maxDelay cannot be < 0");
+            this.backoff = true;
+            this.maxDelay = maxDelay;
+            return this;
+        }
+        
+        /**
+         * Retries responses with server errors, or asking for requests to
+         * be slowed down, as well as failures to connect.
+         */
+        Builder retryServerErrors() {
+            retryServerErrors = true;
+            return this;
+        }
+        
+        /**
+         * @param threshold the number of consecutive failures after which
+         *                  requests are stopped
+         * @param coolDown  how long requests are stopped for in
+         *                  milliseconds
+         */
+        Builder circuitBreaker(int threshold, long coolDown) {
+            Preconditions.checkArg(threshold > 0, "threshold must be positive");
+            Preconditions.checkArg(coolDown >= 0, "coolDown cannot be < 0");
+            breaker = new CircuitBreaker(threshold, coolDown);
+            return this;
+        }
+        
+        RequestPolicy build() {
+            return new RequestPolicy(
+                    name,
+                    backoff,
+                    retryServerErrors,
+                    maxDelay,
+                    breaker);
+        }
+    }
+}
@@ -0,0 +1,43 @@
+/*
+ * Copyright (c) 2016 deltaDNA Ltd. All rights reserved.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.deltadna.android.sdk.net;
+
+/**
+ * Class of a {@link Request}, which decides the order that waiting requests
+ * are sent in, from the highest priority to the lowest.
+ */
+enum RequestPriority {
+    
+    /**
+     * Engage requests which someone is likely waiting on.
+     */
+    ENGAGE,
+    /**
+     * Session configuration, and other requests needed for the SDK to get
+     * going.
+     */
+    CONFIG,
+    /**
+     * Event uploads, which can wait as the events stay stored.
+     */
+    COLLECT,
+    /**
+     * Downloads of assets ahead of them being needed.
+     */
+    PREFETCH
+}
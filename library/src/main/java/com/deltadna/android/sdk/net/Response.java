@@ -21,6 +21,7 @@ import androidx.annotation.Nullable;
 import com.deltadna.android.sdk.helpers.Objects;
 
 import java.io.ByteArrayOutputStream;
+import java.io.IOException;
 import java.io.InputStream;
 import java.net.HttpURLConnection;
 import java.util.Arrays;
@@ -35,6 +36,8 @@ import java.util.Arrays;
  */
 public final class Response<T> {
     
+    private static final int BUFFER_SIZE = 8 * 1024;
+    
     /**
      * HTTP status code of the response.
      */
@@ -111,36 +114,14 @@ public final class Response<T> {
             @Nullable ResponseBodyConverter<T> converter) throws Exception {
         
         final int code = connection.getResponseCode();
-        return create(
-                code,
-                connection.getContentLength(),
-                isSuccess(code)
-                        ? connection.getInputStream()
-                        : connection.getErrorStream(),
-                converter);
+        return create(code, read(connection), converter);
     }
     
-    private static <T> Response<T> create(
+    static <T> Response<T> create(
             int code,
-            int contentLength,
-            InputStream stream,
+            byte[] bytes,
             @Nullable ResponseBodyConverter<T> converter) throws Exception {
         
-        final ByteArrayOutputStream buffer;
-        //noinspection TryFinallyCanBeTryWithResources
-        try {
-            buffer = (contentLength != -1)
-                    ? new ByteArrayOutputStream(contentLength)
-                    : new ByteArrayOutputStream();
-            int read;
-            while ((read = stream.read()) != -1) {
-                buffer.write(read);
-            }
-        } finally {
-            stream.close();
-        }
-        
-        final byte[] bytes = buffer.toByteArray();
         return new Response<>(
                 code,
                 false,
@@ -153,6 +134,35 @@ public final class Response<T> {
                         : null);
     }
     
+    /**
+     * Reads the body of the response, or the error for a failure, to the
+     * end so that the connection can be reused.
+     */
+    static byte[] read(HttpURLConnection connection) throws IOException {
+        final int contentLength = connection.getContentLength();
+        final InputStream stream = isSuccess(connection.getResponseCode())
+                ? connection.getInputStream()
+                : connection.getErrorStream();
+        
+        final ByteArrayOutputStream buffer = (contentLength != -1)
+                ? new ByteArrayOutputStream(contentLength)
+                : new ByteArrayOutputStream();
+        if (stream != null) {
+            //noinspection TryFinallyCanBeTryWithResources
+            try {
+                final byte[] chunk = new byte[BUFFER_SIZE];
+                int read;
+                while ((read = stream.read(chunk)) != -1) {
+                    buffer.write(chunk, 0, read);
+                }
+            } finally {
+                stream.close();
+            }
+        }
+        
+        return buffer.toByteArray();
+    }
+    
     static boolean isSuccess(int code) {
         return (code >= 200 && code < 300);
     }
@@ -0,0 +1,150 @@
+/*
+ * Copyright (c) 2016 deltaDNA Ltd. All rights reserved.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.deltadna.android.sdk.net;
+
+import androidx.annotation.NonNull;
+
+import com.deltadna.android.sdk.metrics.Counter;
+import com.deltadna.android.sdk.metrics.Metrics;
+
+import java.io.IOException;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Default {@link HttpTransport}, which performs requests one at a time
+ * through {@link HttpURLConnection} on its own thread.
+ * <p>
+ * Connections whose response has been read in full are left to go back to
+ * the pool of {@link HttpURLConnection}, which does not tell whether a
+ * request then went over a pooled connection, so the metrics count the
+ * connections handed back to the pool and the ones which had to be closed.
+ */
+final class UrlConnectionTransport implements HttpTransport {
+    
+    private static final Counter POOLED = Metrics.counter("network.connections.pooled");
+    private static final Counter DISCARDED = Metrics.counter("network.connections.discarded");
+    
+    private final ExecutorService executor;
+    
+    UrlConnectionTransport() {
+        executor = new ThreadPoolExecutor(
+                1,
+                1,
+                0L,
+                TimeUnit.MILLISECONDS,
+                new LinkedBlockingQueue<Runnable>(),
+                new ThreadFactory() {
+                    private final ThreadFactory inner =
+                            Executors.defaultThreadFactory();
+                    
+                    @Override
+                    public Thread newThread(@NonNull Runnable r) {
+                        final Thread thread = inner.newThread(r);
+                        thread.setName(UrlConnectionTransport.class.getSimpleName()
+                                + "-" + thread.getName());
+                        return thread;
+                    }
+                });
+    }
+    
+    @Override
+    public Call execute(final HttpRequest request, final Callback callback) {
+        final Future<?> future = executor.submit(new Runnable() {
+            @Override
+            public void run() {
+                final HttpResponse response;
+                try {
+                    response = perform(request);
+                } catch (IOException e) {
+                    callback.onFailure(e);
+                    return;
+                }
+                
+                callback.onResponse(response);
+            }
+        });
+        
+        return new Call() {
+            @Override
+            public void cancel() {
+                future.cancel(false);
+            }
+        };
+    }
+    
+    /**
+     * Performs a request on the calling thread.
+     */
+    private static HttpResponse perform(HttpRequest request) throws IOException {
+        HttpURLConnection connection = null;
+        boolean drained = false;
+        try {
+            connection = (HttpURLConnection) new URL(request.url).openConnection();
+            
+            connection.setConnectTimeout(request.connectionTimeout);
+            connection.setReadTimeout(request.readTimeout);
+            
+            RequestMethod.valueOf(request.method).set(connection);
+            
+            for (final String header : request.headers.keySet()) {
+                connection.setRequestProperty(header, request.headers.get(header));
+            }
+            
+            if (request.body != null && request.contentType != null) {
+                new RequestBody(request.contentType, request.body).fill(connection);
+            }
+            
+            connection.connect();
+            
+            final int code = connection.getResponseCode();
+            final byte[] body = Response.read(connection);
+            
+            final Map<String, List<String>> fields = connection.getHeaderFields();
+            final Map<String, String> headers = new HashMap<>(fields.size());
+            for (final Map.Entry<String, List<String>> field : fields.entrySet()) {
+                final List<String> values = field.getValue();
+                if (values != null && !values.isEmpty()) {
+                    headers.put(field.getKey(), values.get(values.size() - 1));
+                }
+            }
+            
+            drained = true;
+            return new HttpResponse(code, headers, body);
+        } finally {
+            // a connection whose response has been read in full goes back
+            // to the pool, disconnecting would close the socket
+            if (drained) {
+                POOLED.increment();
+            } else if (connection != null) {
+                connection.disconnect();
+                DISCARDED.increment();
+            }
+        }
+    }
+}
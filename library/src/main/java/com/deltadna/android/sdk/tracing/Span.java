@@ -0,0 +1,185 @@
+/*
+ * Copyright (c) 2016 deltaDNA Ltd. All rights reserved.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.deltadna.android.sdk.tracing;
+
+import androidx.annotation.Nullable;
+
+import com.deltadna.android.sdk.listeners.TraceListener;
+
+import java.io.Closeable;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Section of work done by the SDK, from when it was begun through
+ * {@link Tracing} until it was closed.
+ * <p>
+ * Spans can carry correlation ids, which are the {@code eventUUID}s of the
+ * events they worked on, so that an event can be followed from being
+ * recorded through to being acknowledged by the Collect service.
+ * <p>
+ * When tracing is disabled spans are {@link #NONE}, which ignores
+ * everything done to it.
+ */
+public final class Span implements Closeable {
+    
+    /**
+     * Span handed out while tracing is disabled.
+     */
+    public static final Span NONE = new Span("none", false, null);
+    
+    private static final AtomicInteger IDS = new AtomicInteger();
+    
+    private final String name;
+    private final boolean async;
+    private final int id;
+    private final long threadId;
+    private final String threadName;
+    private final long startNanos;
+    
+    @Nullable
+    private final TraceListener[] listeners;
+    
+    private long endNanos = -1;
+    @Nullable
+    private List<String> correlationIds;
+    @Nullable
+    private Map<String, Object> args;
+    
+    Span(String name, boolean async, @Nullable TraceListener[] listeners) {
+        final Thread thread = Thread.currentThread();
+        
+        this.name = name;
+        this.async = async;
+        this.id = IDS.incrementAndGet();
+        this.threadId = thread.getId();
+        this.threadName = thread.getName();
+        this.startNanos = System.nanoTime();
+        this.listeners = listeners;
+    }
+    
+    public String getName() {
+        return name;
+    }
+    
+    /**
+     * @return whether the span may finish on a different thread to the
+     *         one it began on
+     */
+    public boolean isAsync() {
+        return async;
+    }
+    
+    /**
+     * @return an id unique to the span within the process
+     */
+    public int getId() {
+        return id;
+    }
+    
+    /**
+     * @return the id of the thread which began the span
+     */
+    public long getThreadId() {
+        return threadId;
+    }
+    
+    public String getThreadName() {
+        return threadName;
+    }
+    
+    /**
+     * @return when the span began, from {@link System#nanoTime()}
+     */
+    public long getStartNanos() {
+        return startNanos;
+    }
+    
+    /**
+     * @return when the span finished, from {@link System#nanoTime()}, or
+     *         -1 if it has not finished yet
+     */
+    public synchronized long getEndNanos() {
+        return endNanos;
+    }
+    
+    public synchronized List<String> getCorrelationIds() {
+        return (correlationIds == null)
+                ? Collections.emptyList()
+                : Collections.unmodifiableList(new ArrayList<>(correlationIds));
+    }
+    
+    public synchronized Map<String, Object> getArgs() {
+        return (args == null)
+                ? Collections.emptyMap()
+                : Collections.unmodifiableMap(new LinkedHashMap<>(args));
+    }
+    
+    /**
+     * Adds the id of something the span worked on, such as the
+     * {@code eventUUID} of an event.
+     *
+     * @return this {@link Span} instance
+     */
+    public Span correlate(@Nullable String id) {
+        if (this == NONE || id == null) return this;
+        
+        synchronized (this) {
+            if (correlationIds == null) correlationIds = new ArrayList<>(1);
+            correlationIds.add(id);
+        }
+        return this;
+    }
+    
+    /**
+     * Adds an argument describing the span.
+     *
+     * @return this {@link Span} instance
+     */
+    public Span arg(String key, @Nullable Object value) {
+        if (this == NONE) return this;
+        
+        synchronized (this) {
+            if (args == null) args = new LinkedHashMap<>();
+            args.put(key, value);
+        }
+        return this;
+    }
+    
+    /**
+     * Finishes the span, which only has an effect the first time.
+     */
+    @Override
+    public void close() {
+        if (this == NONE) return;
+        
+        synchronized (this) {
+            if (endNanos != -1) return;
+            endNanos = System.nanoTime();
+        }
+        Tracing.finished(listeners, this);
+    }
+    
+    @Override
+    public String toString() {
+        return name + '#' + id;
+    }
+}
@@ -0,0 +1,72 @@
+/*
+ * Copyright (c) 2016 deltaDNA Ltd. All rights reserved.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.deltadna.android.sdk.tracing;
+
+import android.os.Build;
+import android.os.Trace;
+
+import com.deltadna.android.sdk.listeners.TraceListener;
+
+/**
+ * Writes spans as {@link Trace} sections, so that they show up in
+ * Perfetto and systrace captures of the application.
+ * <p>
+ * Spans which finish on the thread they began on are written from API 18,
+ * and async spans from API 29.
+ *
+ * @see com.deltadna.android.sdk.helpers.Settings#setSystraceEnabled(boolean)
+ */
+public final class SystraceListener implements TraceListener {
+    
+    public static final SystraceListener INSTANCE = new SystraceListener();
+    
+    /**
+     * Longest section name accepted by {@link Trace}.
+     */
+    private static final int MAX_NAME_LENGTH = 127;
+    
+    private SystraceListener() {}
+    
+    @Override
+    public void onSpanStarted(Span span) {
+        if (span.isAsync()) {
+            if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.Q) {
+                Trace.beginAsyncSection(name(span), span.getId());
+            }
+        } else if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.JELLY_BEAN_MR2) {
+            Trace.beginSection(name(span));
+        }
+    }
+    
+    @Override
+    public void onSpanFinished(Span span) {
+        if (span.isAsync()) {
+            if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.Q) {
+                Trace.endAsyncSection(name(span), span.getId());
+            }
+        } else if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.JELLY_BEAN_MR2) {
+            Trace.endSection();
+        }
+    }
+    
+    private static String name(Span span) {
+        final String name = "ddna " + span.getName();
+        return (name.length() > MAX_NAME_LENGTH)
+                ? name.substring(0, MAX_NAME_LENGTH)
+                : name;
+    }
+}
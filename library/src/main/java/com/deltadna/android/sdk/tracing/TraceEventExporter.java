@@ -0,0 +1,302 @@
+/*
+ * Copyright (c) 2016 deltaDNA Ltd. All rights reserved.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.deltadna.android.sdk.tracing;
+
+import androidx.annotation.Nullable;
+
+import com.deltadna.android.sdk.helpers.Preconditions;
+import com.deltadna.android.sdk.listeners.TraceListener;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.StringWriter;
+import java.io.Writer;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Keeps the most recent finished spans in memory, and exports them in the
+ * Trace Event Format, which can be opened in Perfetto and
+ * {@code chrome://tracing}.
+ * <p>
+ * Spans which share a correlation id are joined up by flow events, so
+ * that an event can be followed from being recorded, through being
+ * stored, to the upload which got it acknowledged.
+ * <p>
+ * Does not touch any Android classes, so it can also be used from tests
+ * running on the JVM.
+ */
+public final class TraceEventExporter implements TraceListener {
+    
+    private static final int DEFAULT_CAPACITY = 10000;
+    
+    private final int capacity;
+    private final ArrayDeque<Span> spans;
+    
+    private long dropped;
+    
+    public TraceEventExporter() {
+        this(DEFAULT_CAPACITY);
+    }
+    
+    /**
+     * @param capacity how many of the most recent spans to keep
+     */
+    public TraceEventExporter(int capacity) {
+        Preconditions.checkArg(capacity > 0, "capacity must be positive");
+        
+        this.capacity = capacity;
+        this.spans = new ArrayDeque<>(Math.min(capacity, 1024));
+    }
+    
+    @Override
+    public void onSpanStarted(Span span) {}
+    
+    @Override
+    public synchronized void onSpanFinished(Span span) {
+        if (spans.size() == capacity) {
+            spans.removeFirst();
+            dropped++;
+        }
+        spans.addLast(span);
+    }
+    
+    /**
+     * @return the finished spans being kept, in the order they finished
+     */
+    public synchronized List<Span> getSpans() {
+        return Collections.unmodifiableList(new ArrayList<>(spans));
+    }
+    
+    /**
+     * @return how many spans have been dropped to stay within the capacity
+     */
+    public synchronized long getDropped() {
+        return dropped;
+    }
+    
+    public synchronized void clear() {
+        spans.clear();
+        dropped = 0;
+    }
+    
+    public String export() {
+        final StringWriter writer = new StringWriter();
+        try {
+            write(writer);
+        } catch (IOException e) {
+            // not thrown by a StringWriter
+            throw new IllegalStateException(e);
+        }
+        return writer.toString();
+    }
+    
+    public void write(File file) throws IOException {
+        try (Writer writer = new OutputStreamWriter(
+                new FileOutputStream(file),
+                "UTF-8")) {
+            write(writer);
+        }
+    }
+    
+    public void write(Writer out) throws IOException {
+        final List<Span> spans = getSpans();
+        final List<Span> ordered = new ArrayList<>(spans);
+        Collections.sort(ordered, (a, b) -> Long.compare(
+                a.getStartNanos(),
+                b.getStartNanos()));
+        
+        // flows need to know which spans are the first and last of an id
+        final Map<String, Integer> occurrences = new HashMap<>();
+        for (final Span span : ordered) {
+            for (final String id : span.getCorrelationIds()) {
+                final Integer count = occurrences.get(id);
+                occurrences.put(id, (count == null) ? 1 : count + 1);
+            }
+        }
+        
+        final Map<Long, String> threads = new LinkedHashMap<>();
+        final Map<String, Integer> seen = new HashMap<>();
+        
+        out.write("{\"displayTimeUnit\":\"ms\",\"traceEvents\":[");
+        boolean first = true;
+        for (final Span span : ordered) {
+            threads.put(span.getThreadId(), span.getThreadName());
+            
+            if (span.isAsync()) {
+                first = event(out, first, span, "b", span.getStartNanos());
+                first = event(out, first, span, "e", span.getEndNanos());
+            } else {
+                first = event(out, first, span, "X", span.getStartNanos());
+            }
+            
+            for (final String id : span.getCorrelationIds()) {
+                final int total = occurrences.get(id);
+                if (total < 2) continue;
+                
+                final Integer previous = seen.get(id);
+                final int index = (previous == null) ? 0 : previous + 1;
+                seen.put(id, index);
+                
+                first = separate(out, first);
+                out.write("{\"name\":\"event\",\"cat\":\"ddna\",\"ph\":\"");
+                out.write((index == 0) ? "s" : (index == total - 1) ? "f" : "t");
+                out.write("\",\"bp\":\"e\",\"id\":");
+                string(out, id);
+                common(out, span, span.getStartNanos());
+                out.write('}');
+            }
+        }
+        
+        for (final Map.Entry<Long, String> thread : threads.entrySet()) {
+            first = separate(out, first);
+            out.write("{\"name\":\"thread_name\",\"ph\":\"M\",\"pid\":1,\"tid\":");
+            out.write(Long.toString(thread.getKey()));
+            out.write(",\"args\":{\"name\":");
+            string(out, thread.getValue());
+            out.write("}}");
+        }
+        out.write("]}");
+        out.flush();
+    }
+    
+    private static boolean event(
+            Writer out,
+            boolean first,
+            Span span,
+            String phase,
+            long nanos) throws IOException {
+        
+        separate(out, first);
+        out.write("{\"name\":");
+        string(out, span.getName());
+        out.write(",\"cat\":\"ddna\",\"ph\":\"");
+        out.write(phase);
+        out.write('"');
+        if (span.isAsync()) {
+            out.write(",\"id\":");
+            out.write(Integer.toString(span.getId()));
+        }
+        common(out, span, nanos);
+        if ("X".equals(phase)) {
+            out.write(",\"dur\":");
+            out.write(micros(span.getEndNanos() - span.getStartNanos()));
+        }
+        if (!"e".equals(phase)) {
+            args(out, span);
+        }
+        out.write('}');
+        
+        return false;
+    }
+    
+    private static void common(Writer out, Span span, long nanos)
+            throws IOException {
+        
+        out.write(",\"ts\":");
+        out.write(micros(nanos));
+        out.write(",\"pid\":1,\"tid\":");
+        out.write(Long.toString(span.getThreadId()));
+    }
+    
+    private static void args(Writer out, Span span) throws IOException {
+        final Map<String, Object> args = span.getArgs();
+        final List<String> ids = span.getCorrelationIds();
+        if (args.isEmpty() && ids.isEmpty()) return;
+        
+        out.write(",\"args\":{");
+        boolean first = true;
+        for (final Map.Entry<String, Object> arg : args.entrySet()) {
+            first = separate(out, first);
+            string(out, arg.getKey());
+            out.write(':');
+            value(out, arg.getValue());
+        }
+        if (!ids.isEmpty()) {
+            separate(out, first);
+            out.write("\"correlationIds\":[");
+            for (int i = 0; i < ids.size(); i++) {
+                if (i > 0) out.write(',');
+                string(out, ids.get(i));
+            }
+            out.write(']');
+        }
+        out.write('}');
+    }
+    
+    private static void value(Writer out, @Nullable Object value)
+            throws IOException {
+        
+        if (value == null) {
+            out.write("null");
+        } else if (value instanceof Boolean || value instanceof Integer || value instanceof Long) {
+            out.write(value.toString());
+        } else {
+            string(out, value.toString());
+        }
+    }
+    
+    private static void string(Writer out, String value) throws IOException {
+        out.write('"');
+        for (int i = 0; i < value.length(); i++) {
+            final char c = value.charAt(i);
+            switch (c) {
+                case '"':
+                    out.write("\\\"");
+                    break;
+                case '\\':
+                    out.write("\\\\");
+                    break;
+                case '\n':
+                    out.write("\\n");
+                    break;
+                case '\r':
+                    out.write("\\r");
+                    break;
+                case '\t':
+                    out.write("\\t");
+                    break;
+                default:
+                    if (c < 0x20) {
+                        out.write(String.format(Locale.US, "\\u%04x", (int) c));
+                    } else {
+                        out.write(c);
+                    }
+            }
+        }
+        out.write('"');
+    }
+    
+    private static boolean separate(Writer out, boolean first)
+            throws IOException {
+        
+        if (!first) out.write(',');
+        return false;
+    }
+    
+    private static String micros(long nanos) {
+        return String.format(Locale.US, "%.3f", nanos / 1000.0);
+    }
+}
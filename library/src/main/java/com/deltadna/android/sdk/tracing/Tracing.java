@@ -0,0 +1,103 @@
+/*
+ * Copyright (c) 2016 deltaDNA Ltd. All rights reserved.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.deltadna.android.sdk.tracing;
+
+import androidx.annotation.Nullable;
+
+import com.deltadna.android.sdk.listeners.TraceListener;
+
+import java.util.Set;
+import java.util.concurrent.CopyOnWriteArraySet;
+
+/**
+ * Registry of the {@link TraceListener}s which spans around the work of
+ * the SDK are reported to, such as recording an event, writing events to
+ * storage, evaluating event triggers, uploading events, and Engage
+ * requests.
+ * <p>
+ * Spans are only created while a listener is registered, so that
+ * otherwise beginning one costs no more than reading a volatile field.
+ * <p>
+ * Internal to the SDK, only public for access from its packages.
+ */
+public final class Tracing {
+    
+    private static final TraceListener[] NONE = new TraceListener[0];
+    
+    private static final Set<TraceListener> LISTENERS =
+            new CopyOnWriteArraySet<>();
+    
+    /**
+     * Snapshot of {@link #LISTENERS}, which a span holds on to so that the
+     * listeners which saw it begin also see it finish.
+     */
+    private static volatile TraceListener[] listeners = NONE;
+    
+    private Tracing() {}
+    
+    public static boolean isEnabled() {
+        return listeners.length > 0;
+    }
+    
+    /**
+     * Begins a span which will be finished on the same thread.
+     *
+     * @return the span, or {@link Span#NONE} if tracing is disabled
+     */
+    public static Span begin(String name) {
+        return begin(name, false);
+    }
+    
+    /**
+     * Begins a span which may be finished on a different thread, such as
+     * one around a network request.
+     *
+     * @return the span, or {@link Span#NONE} if tracing is disabled
+     */
+    public static Span beginAsync(String name) {
+        return begin(name, true);
+    }
+    
+    public static synchronized void register(TraceListener listener) {
+        LISTENERS.add(listener);
+        listeners = LISTENERS.toArray(NONE);
+    }
+    
+    public static synchronized void unregister(TraceListener listener) {
+        LISTENERS.remove(listener);
+        listeners = LISTENERS.toArray(NONE);
+    }
+    
+    private static Span begin(String name, boolean async) {
+        final TraceListener[] listeners = Tracing.listeners;
+        if (listeners.length == 0) return Span.NONE;
+        
+        final Span span = new Span(name, async, listeners);
+        for (final TraceListener listener : listeners) {
+            listener.onSpanStarted(span);
+        }
+        return span;
+    }
+    
+    static void finished(@Nullable TraceListener[] listeners, Span span) {
+        if (listeners == null) return;
+        
+        for (final TraceListener listener : listeners) {
+            listener.onSpanFinished(span);
+        }
+    }
+}
@@ -0,0 +1,153 @@
+/*
+ * Copyright (c) 2016 deltaDNA Ltd. All rights reserved.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.deltadna.android.sdk.util;
+
+import androidx.annotation.Nullable;
+
+import com.deltadna.android.sdk.BuildConfig;
+
+import java.util.Locale;
+
+/**
+ * Logging for the SDK, in place of {@link android.util.Log}, which drops
+ * messages below the current level before they get built.
+ * <p>
+ * Messages with arguments are only formatted, with
+ * {@link String#format(Locale, String, Object...)}, once they are known to
+ * be logged, so passing the arguments costs nothing otherwise. Dumps of
+ * events and request bodies are additionally wrapped in
+ * {@code if (Log.PAYLOADS)}, which is a constant so that they are compiled
+ * out of builds where it is {@code false}.
+ * <p>
+ * Only info and above gets logged by default, as set by
+ * {@link #systemLevel()}. Applications can also opt in to stripping
+ * verbose and debug messages out with ProGuard, as described in the
+ * README.
+ * <p>
+ * Internal to the SDK, only public for access from its packages.
+ */
+public final class Log {
+    
+    public static final int VERBOSE = android.util.Log.VERBOSE;
+    public static final int DEBUG = android.util.Log.DEBUG;
+    public static final int INFO = android.util.Log.INFO;
+    public static final int WARN = android.util.Log.WARN;
+    public static final int ERROR = android.util.Log.ERROR;
+    
+    /**
+     * Whether the contents of events and requests get logged.
+     */
+    public static final boolean PAYLOADS = BuildConfig.LOG_PAYLOADS;
+    
+    private static volatile int level = INFO;
+    
+    private Log() {}
+    
+    public static void setLevel(int level) {
+        Log.level = level;
+    }
+    
+    /**
+     * @return the lowest level enabled for {@link BuildConfig#LOG_TAG}
+     *         through {@code adb shell setprop log.tag.<tag>}, which is
+     *         {@link #INFO} unless set lower
+     */
+    public static int systemLevel() {
+        for (int level = VERBOSE; level < INFO; level++) {
+            if (android.util.Log.isLoggable(BuildConfig.LOG_TAG, level)) {
+                return level;
+            }
+        }
+        return INFO;
+    }
+    
+    public static boolean isLoggable(int level) {
+        return level >= Log.level;
+    }
+    
+    public static void v(String tag, String msg) {
+        if (isLoggable(VERBOSE)) android.util.Log.v(tag, msg);
+    }
+    
+    public static void v(String tag, String format, @Nullable Object arg) {
+        if (isLoggable(VERBOSE)) android.util.Log.v(tag, format(format, arg));
+    }
+    
+    public static void v(String tag, String format, Object... args) {
+        if (isLoggable(VERBOSE)) android.util.Log.v(tag, format(format, args));
+    }
+    
+    public static void v(String tag, String msg, Throwable tr) {
+        if (isLoggable(VERBOSE)) android.util.Log.v(tag, msg, tr);
+    }
+    
+    public static void d(String tag, String msg) {
+        if (isLoggable(DEBUG)) android.util.Log.d(tag, msg);
+    }
+    
+    public static void d(String tag, String format, @Nullable Object arg) {
+        if (isLoggable(DEBUG)) android.util.Log.d(tag, format(format, arg));
+    }
+    
+    public static void d(String tag, String format, Object... args) {
+        if (isLoggable(DEBUG)) android.util.Log.d(tag, format(format, args));
+    }
+    
+    public static void d(String tag, String msg, Throwable tr) {
+        if (isLoggable(DEBUG)) android.util.Log.d(tag, msg, tr);
+    }
+    
+    public static void i(String tag, String msg) {
+        if (isLoggable(INFO)) android.util.Log.i(tag, msg);
+    }
+    
+    public static void i(String tag, String msg, Throwable tr) {
+        if (isLoggable(INFO)) android.util.Log.i(tag, msg, tr);
+    }
+    
+    public static void w(String tag, String msg) {
+        if (isLoggable(WARN)) android.util.Log.w(tag, msg);
+    }
+    
+    public static void w(String tag, String format, @Nullable Object arg) {
+        if (isLoggable(WARN)) android.util.Log.w(tag, format(format, arg));
+    }
+    
+    public static void w(String tag, String format, Object... args) {
+        if (isLoggable(WARN)) android.util.Log.w(tag, format(format, args));
+    }
+    
+    public static void w(String tag, Throwable tr) {
+        if (isLoggable(WARN)) android.util.Log.w(tag, tr);
+    }
+    
+    public static void w(String tag, String msg, Throwable tr) {
+        if (isLoggable(WARN)) android.util.Log.w(tag, msg, tr);
+    }
+    
+    public static void e(String tag, String msg) {
+        if (isLoggable(ERROR)) android.util.Log.e(tag, msg);
+    }
+    
+    public static void e(String tag, String msg, Throwable tr) {
+        if (isLoggable(ERROR)) android.util.Log.e(tag, msg, tr);
+    }
+    
+    private static String format(String format, Object... args) {
+        return String.format(Locale.US, format, args);
+    }
+}
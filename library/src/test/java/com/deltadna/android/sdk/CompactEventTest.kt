@@ -0,0 +1,126 @@
+/*
+ * Copyright (c) 2018 deltaDNA Ltd. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.deltadna.android.sdk
+
+import com.google.common.truth.Truth.assertThat
+import com.google.gson.JsonParser
+import org.json.JSONArray
+import org.json.JSONObject
+import org.junit.Test
+import org.junit.runner.RunWith
+import org.robolectric.RobolectricTestRunner
+
+@RunWith(RobolectricTestRunner::class)
+class CompactEventTest {
+
+    @Test
+    fun `header is split off and expanded again`() {
+        val event = event(JSONObject().put("value", 1).put("nested", JSONObject()))
+
+        with(CompactEvent.from(event)) {
+            assertThat(header).isNotNull()
+            assertThat(json()).doesNotContain("userID")
+            assertThat(json()).doesNotContain("sdkVersion")
+
+            assertThat(JsonParser().parse(CompactEvent.Header.parse(header!!)!!.expand(json())))
+                    .isEqualTo(JsonParser().parse(event.toString()))
+        }
+    }
+
+    @Test
+    fun `empty params are expanded`() {
+        val event = event(JSONObject())
+
+        with(CompactEvent.from(event)) {
+            assertThat(JsonParser().parse(CompactEvent.Header.parse(header!!)!!.expand(json())))
+                    .isEqualTo(JsonParser().parse(event.toString()))
+        }
+    }
+
+    @Test
+    fun `encoded body is expanded`() {
+        val event = event(JSONObject().put("value", 1).put("list", JSONArray().put("a")))
+
+        with(CompactEvent.from(event, true)) {
+            assertThat(bytes()[0]).isEqualTo(EventEncoding.MAGIC)
+            assertThat(JsonParser().parse(CompactEvent.Header.parse(header!!)!!.expand(json())))
+                    .isEqualTo(JsonParser().parse(event.toString()))
+        }
+    }
+
+    @Test
+    fun `event without header fields is kept as is`() {
+        val event = JSONObject().put("eventName", "name").put("eventParams", JSONObject())
+
+        with(CompactEvent.from(event)) {
+            assertThat(header).isNull()
+            assertThat(json()).isEqualTo(event.toString())
+        }
+    }
+
+    @Test
+    fun `header size accounts for expansion`() {
+        val event = event(JSONObject().put("value", "é"))
+
+        with(CompactEvent.from(event)) {
+            val parsed = CompactEvent.Header.parse(header!!)!!
+
+            assertThat(parsed.expand(json()).toByteArray().size)
+                    .isEqualTo(json().toByteArray().size + parsed.size())
+        }
+    }
+
+    @Test
+    fun `uuid is kept for tracing`() {
+        assertThat(CompactEvent.from(event(JSONObject())).uuid).isEqualTo("uuid")
+        assertThat(CompactEvent.from(event(JSONObject()), true).uuid).isEqualTo("uuid")
+        assertThat(CompactEvent.from(JSONObject().put("eventUUID", "whole")).uuid)
+                .isEqualTo("whole")
+        assertThat(CompactEvent.of("{}").uuid).isNull()
+    }
+
+    @Test
+    fun `name is kept for logging`() {
+        assertThat(CompactEvent.from(event(JSONObject())).name).isEqualTo("name")
+        assertThat(CompactEvent.from(event(JSONObject()), true).name).isEqualTo("name")
+        assertThat(CompactEvent.from(JSONObject().put("eventName", "whole")).name)
+                .isEqualTo("whole")
+        assertThat(CompactEvent.of("{}").name).isNull()
+    }
+
+    @Test
+    fun `size matches stored bytes`() {
+        val params = JSONObject().put("text", "a\u00e9\u20ac\ud83d\ude00\ud83d")
+
+        with(CompactEvent.from(event(params))) {
+            assertThat(size()).isEqualTo(bytes().size)
+        }
+        with(CompactEvent.from(event(JSONObject()), true)) {
+            assertThat(size()).isEqualTo(bytes().size)
+        }
+    }
+
+    private fun event(params: JSONObject) = JSONObject()
+            .put("eventName", "name")
+            .put("eventTimestamp", "2018-01-01 00:00:00.000")
+            .put("eventUUID", "uuid")
+            .put("sessionID", "session")
+            .put("userID", "us\"er")
+            .put("eventParams", params
+                    .put("platform", "ANDROID")
+                    .put("sdkVersion", "Android SDK v1.0"))
+}
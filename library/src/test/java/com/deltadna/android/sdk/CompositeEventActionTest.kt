@@ -0,0 +1,116 @@
+/*
+ * Copyright (c) 2018 deltaDNA Ltd. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.deltadna.android.sdk
+
+import com.deltadna.android.sdk.helpers.Settings
+import com.google.common.truth.Truth.assertThat
+import com.nhaarman.mockito_kotlin.*
+import org.junit.Test
+import org.junit.runner.RunWith
+import org.robolectric.RobolectricTestRunner
+import java.util.*
+import java.util.concurrent.CountDownLatch
+import java.util.concurrent.TimeUnit
+
+@RunWith(RobolectricTestRunner::class)
+class CompositeEventActionTest {
+
+    private val store = mock<ActionStore>()
+    private val settings = mock<Settings>()
+
+    @Test
+    fun `handlers are evaluated against each event in order`() {
+        val a = KEvent("a")
+        val b = KEvent("b")
+        val c = KEvent("c")
+        val ta = mock<EventTrigger>()
+        val tc = mock<EventTrigger>()
+        whenever(ta.evaluate(same(a))).then { true }
+        whenever(tc.evaluate(same(c))).then { true }
+        val handler = mock<EventActionHandler<*>>()
+        val latch = CountDownLatch(3)
+
+        CompositeEventAction(
+                listOf(a, b, c),
+                listOf("1", null, "3"),
+                mapOf("a" to sortedSetOf(ta), "c" to sortedSetOf(tc)),
+                store,
+                settings)
+                .add(handler)
+                .addEvaluateCompleteHandler { latch.countDown() }
+                .run()
+
+        assertThat(latch.await(5, TimeUnit.SECONDS)).isTrue()
+        inOrder(handler) {
+            verify(handler).handle(same(ta), same(store))
+            verify(handler).handle(same(tc), same(store))
+        }
+        verifyNoMoreInteractions(handler)
+    }
+
+    @Test
+    fun `completion handler is called for each event`() {
+        val events = listOf(KEvent("a"), KEvent("b"))
+        val completed = Collections.synchronizedList(mutableListOf<Event<*>>())
+        val latch = CountDownLatch(2)
+
+        CompositeEventAction(
+                events,
+                listOf(null, null),
+                mapOf("a" to sortedSetOf(mock<EventTrigger>())),
+                store,
+                settings)
+                .addEvaluateCompleteHandler {
+                    completed.add(it)
+                    latch.countDown()
+                }
+                .run()
+
+        assertThat(latch.await(5, TimeUnit.SECONDS)).isTrue()
+        assertThat(completed).containsExactlyElementsIn(events).inOrder()
+    }
+
+    @Test
+    fun `events without triggers complete in the background`() {
+        val events = listOf(KEvent("a"), KEvent("b"))
+        val completed = Collections.synchronizedList(mutableListOf<Event<*>>())
+        val threads = Collections.synchronizedSet(mutableSetOf<Thread>())
+        val latch = CountDownLatch(2)
+
+        CompositeEventAction(
+                events,
+                null,
+                mapOf("c" to sortedSetOf(mock<EventTrigger>())),
+                store,
+                settings)
+                .addEvaluateCompleteHandler {
+                    completed.add(it)
+                    threads.add(Thread.currentThread())
+                    latch.countDown()
+                }
+                .run()
+
+        assertThat(latch.await(5, TimeUnit.SECONDS)).isTrue()
+        assertThat(completed).containsExactlyElementsIn(events).inOrder()
+        assertThat(threads).doesNotContain(Thread.currentThread())
+    }
+
+    @Test
+    fun `empty composite runs without issue`() {
+        CompositeEventAction(emptyList(), emptyList(), emptyMap(), store, settings).run()
+    }
+}
@@ -89,6 +89,14 @@ class DDNADelegateTest {
             verify(tracking).recordEvent(same(this))
         }
         
+        with(listOf(KEvent("event"))) {
+            uut.recordEvents(this)
+            verify(tracking).recordEvents(same(this))
+        }
+        
+        uut.aggregate("event")
+        verify(tracking).aggregate(eq("event"))
+        
         uut.recordNotificationOpened(true, Bundle.EMPTY)
         verify(tracking).recordNotificationOpened(eq(true), same(Bundle.EMPTY))
         
@@ -162,6 +170,14 @@ class DDNADelegateTest {
             verify(nonTracking).recordEvent(same(this))
         }
         
+        with(listOf(KEvent("event"))) {
+            uut.recordEvents(this)
+            verify(nonTracking).recordEvents(same(this))
+        }
+        
+        uut.aggregate("event")
+        verify(nonTracking).aggregate(eq("event"))
+        
         uut.recordNotificationOpened(true, Bundle.EMPTY)
         verify(nonTracking).recordNotificationOpened(eq(true), same(Bundle.EMPTY))
         
@@ -310,6 +326,11 @@ class DDNADelegateTest {
             verify(nonTracking).recordEvent(same(this))
         }
 
+        with(listOf(KEvent("event"))) {
+            uut.recordEvents(this)
+            verify(nonTracking).recordEvents(same(this))
+        }
+
         uut.recordNotificationOpened(true, Bundle.EMPTY)
         verify(nonTracking).recordNotificationOpened(eq(true), same(Bundle.EMPTY))
 
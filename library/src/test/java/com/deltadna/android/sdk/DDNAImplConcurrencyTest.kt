@@ -0,0 +1,149 @@
+/*
+ * Copyright (c) 2018 deltaDNA Ltd. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.deltadna.android.sdk
+
+import com.deltadna.android.sdk.helpers.Settings
+import com.github.salomonbrys.kotson.jsonArray
+import com.github.salomonbrys.kotson.jsonObject
+import com.google.common.truth.Truth.assertThat
+import org.junit.After
+import org.junit.Test
+import org.junit.runner.RunWith
+import org.robolectric.RobolectricTestRunner
+import org.robolectric.RuntimeEnvironment
+import java.util.*
+import java.util.concurrent.CountDownLatch
+import java.util.concurrent.Executors
+import java.util.concurrent.TimeUnit
+import java.util.concurrent.atomic.AtomicBoolean
+
+/**
+ * Records events from several threads while session configurations keep
+ * getting applied, checking that every recorded event saw the whitelist
+ * and triggers of the same configuration, and checks restoring a session
+ * configuration racing with a change of user.
+ */
+@RunWith(RobolectricTestRunner::class)
+class DDNAImplConcurrencyTest {
+
+    private val uut = DDNAImpl(
+            RuntimeEnvironment.application,
+            "environmentKey",
+            "collectUrl",
+            "engageUrl",
+            Settings(),
+            null,
+            null,
+            null,
+            null,
+            mutableSetOf(),
+            mutableSetOf())
+
+    private val executor = Executors.newFixedThreadPool(THREADS + 1)
+
+    @After
+    fun after() {
+        executor.shutdownNow()
+        uut.stopSdk()
+    }
+
+    @Test
+    fun `recorded events see consistent session configurations`() {
+        uut.awaitInitialisation()
+
+        // each configuration only whitelists the event which it has a trigger for
+        val configurations = listOf("a", "b").map {
+            SessionConfigurationStore.Snapshot.from(jsonObject(
+                    "parameters" to jsonObject(
+                            "eventsWhitelist" to jsonArray(it),
+                            "triggers" to jsonArray(jsonObject(
+                                    "eventName" to it,
+                                    "condition" to jsonArray(),
+                                    "response" to jsonObject()))))
+                    .convert())
+        }
+
+        val done = AtomicBoolean()
+        val inconsistent = Collections.synchronizedList(mutableListOf<String>())
+        val finished = CountDownLatch(THREADS)
+
+        executor.execute {
+            var i = 0
+            while (!done.get()) {
+                uut.applySessionConfiguration(configurations[i++ % 2], false)
+            }
+        }
+        repeat(THREADS) { thread ->
+            executor.execute {
+                try {
+                    for (i in 0 until EVENTS) {
+                        val name = if ((i + thread) % 2 == 0) "a" else "b"
+                        val action = uut.recordEvent(KEvent(name))
+
+                        // whitelisted, so it has to have had the trigger as well
+                        if (    action !== EventAction.EMPTY
+                                && action.read<SortedSet<EventTrigger>>("triggers").isEmpty()) {
+                            inconsistent.add(name)
+                        }
+                    }
+                } finally {
+                    finished.countDown()
+                }
+            }
+        }
+
+        assertThat(finished.await(30, TimeUnit.SECONDS)).isTrue()
+        done.set(true)
+        assertThat(inconsistent).isEmpty()
+    }
+
+    @Test
+    fun `restore of previous user is skipped after user change`() {
+        uut.awaitInitialisation()
+
+        val snapshot = SessionConfigurationStore.Snapshot.from(jsonObject(
+                "parameters" to jsonObject("eventsWhitelist" to jsonArray("a")))
+                .convert())
+
+        // the initialiser has read the previous user's snapshot...
+        val generation = uut.sessionConfigurationGeneration
+        // ...when the user changes before it gets restored
+        executor.submit { uut.startSdk("other") }.get(5, TimeUnit.SECONDS)
+        uut.restoreSessionConfiguration(snapshot, generation)
+
+        assertThat(uut.recordEvent(KEvent("b"))).isNotSameAs(EventAction.EMPTY)
+    }
+
+    @Test
+    fun `restore of same user is applied`() {
+        uut.awaitInitialisation()
+
+        val snapshot = SessionConfigurationStore.Snapshot.from(jsonObject(
+                "parameters" to jsonObject("eventsWhitelist" to jsonArray("a")))
+                .convert())
+
+        uut.restoreSessionConfiguration(snapshot, uut.sessionConfigurationGeneration)
+
+        assertThat(uut.recordEvent(KEvent("b"))).isSameAs(EventAction.EMPTY)
+    }
+
+    companion object {
+
+        private const val THREADS = 4
+        private const val EVENTS = 500
+    }
+}
@@ -0,0 +1,63 @@
+/*
+ * Copyright (c) 2018 deltaDNA Ltd. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.deltadna.android.sdk
+
+import com.deltadna.android.sdk.helpers.Settings
+import com.google.common.truth.Truth.assertThat
+import org.junit.Test
+import org.junit.runner.RunWith
+import org.robolectric.RobolectricTestRunner
+import org.robolectric.RuntimeEnvironment
+
+@RunWith(RobolectricTestRunner::class)
+class DDNAImplPoliciesTest {
+
+    private val uut = DDNAImpl(
+            RuntimeEnvironment.application,
+            "environmentKey",
+            "collectUrl",
+            "engageUrl",
+            Settings().setEventPolicy(
+                    "sampledOut",
+                    EventPolicy.DEFAULT.withSampleRate(0f)),
+            null,
+            null,
+            null,
+            null,
+            mutableSetOf(),
+            mutableSetOf())
+
+    @Test
+    fun `recordEvent returns empty action for event which is not admitted`() {
+        assertThat(uut.recordEvent(KEvent("sampledOut")))
+                .isSameAs(EventAction.EMPTY)
+        assertThat(uut.recordEvent(KEvent("kept")))
+                .isNotSameAs(EventAction.EMPTY)
+    }
+
+    @Test
+    fun `recordEvents leaves out events which are not admitted`() {
+        assertThat(uut.recordEvents(listOf(KEvent("sampledOut"))))
+                .isSameAs(EventAction.EMPTY)
+
+        val action = uut.recordEvents(listOf(
+                KEvent("sampledOut"),
+                KEvent("kept")))
+        assertThat(action.read<List<Event<*>>>("events").map { it.name })
+                .containsExactly("kept")
+    }
+}
@@ -288,6 +288,7 @@ class DDNANonTrackingTest {
     fun eventsNotRecorded() {
         uut.recordEvent("name")
         uut.recordEvent(KEvent("name"))
+        uut.recordEvents(listOf(KEvent("name")))
         uut.recordNotificationOpened(true, Bundle.EMPTY)
         uut.recordNotificationDismissed(Bundle.EMPTY)
         uut.upload()
@@ -193,6 +193,15 @@ class DDNATest {
             return EventAction.EMPTY
         }
         
+        override fun recordEvents(events: Iterable<Event<*>>): EventAction {
+            listener.recordEvents(events)
+            return EventAction.EMPTY
+        }
+        
+        override fun aggregate(name: String): EventAggregator {
+            return listener.aggregate(name)
+        }
+        
         override fun recordNotificationOpened(launch: Boolean, payload: Bundle?): EventAction {
             listener.recordNotificationOpened(launch, payload)
             return EventAction.EMPTY
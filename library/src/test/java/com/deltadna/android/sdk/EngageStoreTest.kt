@@ -64,7 +64,7 @@ class EngageStoreTest {
     @Test
     fun `old cache is cleaned up`() {
         val old = File(path, "ENGAGEMENTS").apply { createNewFile() }
-        uut = EngageStore(database, path, settings)
+        uut = EngageStore(database, path, settings).apply { prepare() }
         
         assertThat(old.exists()).isFalse()
     }
@@ -43,6 +43,28 @@ class EventActionTest {
     }
 
 
+    @Test
+    fun `empty event action does not keep completion handlers`() {
+        val handler = mock<EventActionEvaluateCompleteHandler>()
+
+        EventAction.EMPTY.addEvaluateCompleteHandler(handler).run()
+
+        verifyZeroInteractions(handler)
+    }
+
+    @Test
+    fun `actions without triggers complete in the background`() {
+        val e = mock<Event<*>>()
+        val handler = mock<EventActionEvaluateCompleteHandler>()
+
+        EventAction(e, EventAction.NO_TRIGGERS, store, mock())
+                .add(mock<EventActionHandler<*>>())
+                .addEvaluateCompleteHandler(handler)
+                .run()
+
+        verify(handler, timeout(5000)).onComplete(same(e))
+    }
+
     @Test
     fun `triggers are evaluated in order`() {
         val e = mock<Event<*>>()
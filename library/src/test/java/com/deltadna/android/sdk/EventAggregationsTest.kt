@@ -0,0 +1,133 @@
+/*
+ * Copyright (c) 2018 deltaDNA Ltd. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.deltadna.android.sdk
+
+import com.deltadna.android.sdk.helpers.Settings
+import com.google.common.truth.Truth.assertThat
+import org.junit.Before
+import org.junit.Test
+import org.junit.runner.RunWith
+import org.robolectric.RobolectricTestRunner
+import java.util.concurrent.Executors
+import java.util.concurrent.TimeUnit
+
+@RunWith(RobolectricTestRunner::class)
+class EventAggregationsTest {
+
+    private val settings = Settings()
+    private val recorded = mutableListOf<Event<*>>()
+
+    private lateinit var uut: EventAggregations
+
+    @Before
+    fun before() {
+        uut = EventAggregations(settings, EventAggregations.Recorder {
+            synchronized(recorded) { recorded.add(it) }
+        })
+    }
+
+    @Test
+    fun `counts are summarised per dimensions`() {
+        with(uut.get("enemyKilled")) {
+            increment(Params().put("enemy", "orc").put("level", 1))
+            increment(Params().put("level", 1).put("enemy", "orc"))
+            increment(2, Params().put("enemy", "elf").put("level", 1))
+            increment()
+        }
+
+        uut.flush()
+
+        assertThat(recorded.map { it.name }).containsExactly(
+                "enemyKilled", "enemyKilled", "enemyKilled")
+        assertThat(recorded.map { it.params.json.optString("enemy") })
+                .containsExactly("orc", "elf", "")
+        assertThat(recorded.map { it.params.json.getLong("aggregateCount") })
+                .containsExactly(2L, 2L, 1L)
+    }
+
+    @Test
+    fun `values are summarised`() {
+        with(uut.get("frameDrop")) {
+            record(16.0)
+            record(48.0)
+            record(32.0)
+        }
+
+        uut.flush()
+
+        with(recorded.single().params.json) {
+            assertThat(getLong("aggregateCount")).isEqualTo(3)
+            assertThat(getDouble("aggregateSum")).isEqualTo(96.0)
+            assertThat(getDouble("aggregateMin")).isEqualTo(16.0)
+            assertThat(getDouble("aggregateMax")).isEqualTo(48.0)
+        }
+    }
+
+    @Test
+    fun `counts do not carry over between windows`() {
+        uut.get("coinCollected").increment()
+        uut.flush()
+        uut.get("coinCollected").increment()
+        uut.flush()
+        uut.flush()
+
+        assertThat(recorded.map { it.params.json.getLong("aggregateCount") })
+                .containsExactly(1L, 1L)
+    }
+
+    @Test
+    fun `reaching flush size records early`() {
+        settings.setAggregationFlushSize(2)
+
+        uut.get("a").increment()
+        assertThat(recorded).isEmpty()
+
+        uut.get("b").increment()
+        assertThat(recorded.map { it.name }).containsExactly("a", "b")
+    }
+
+    @Test
+    fun `stop records remaining aggregates`() {
+        val executor = Executors.newSingleThreadScheduledExecutor()
+        try {
+            uut.start(executor)
+            uut.get("a").increment()
+
+            uut.stop()
+
+            assertThat(recorded.map { it.name }).containsExactly("a")
+        } finally {
+            executor.shutdownNow()
+        }
+    }
+
+    @Test
+    fun `concurrent increments are not lost`() {
+        settings.setAggregationFlushSize(1)
+        val executor = Executors.newFixedThreadPool(4)
+
+        repeat(4) {
+            executor.execute { repeat(1000) { uut.get("a").increment() } }
+        }
+        executor.shutdown()
+        assertThat(executor.awaitTermination(10, TimeUnit.SECONDS)).isTrue()
+        uut.flush()
+
+        assertThat(recorded.sumOf { it.params.json.getLong("aggregateCount") })
+                .isEqualTo(4000L)
+    }
+}
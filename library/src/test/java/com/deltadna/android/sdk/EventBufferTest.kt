@@ -0,0 +1,144 @@
+/*
+ * Copyright (c) 2016 deltaDNA Ltd. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.deltadna.android.sdk
+
+import com.deltadna.android.sdk.helpers.Settings.EventOverflowPolicy.*
+import com.google.common.truth.Truth.assertThat
+import org.junit.Test
+import org.junit.runner.RunWith
+import org.junit.runners.JUnit4
+import java.util.concurrent.CountDownLatch
+import java.util.concurrent.Executors
+import java.util.concurrent.TimeUnit
+
+@RunWith(JUnit4::class)
+class EventBufferTest {
+    
+    @Test
+    fun `capacity is rounded up to power of two`() {
+        assertThat(EventBuffer<String>(1, DROP_NEWEST).capacity()).isEqualTo(2)
+        assertThat(EventBuffer<String>(3, DROP_NEWEST).capacity()).isEqualTo(4)
+        assertThat(EventBuffer<String>(1024, DROP_NEWEST).capacity()).isEqualTo(1024)
+    }
+    
+    @Test
+    fun `events are polled in order`() {
+        with(EventBuffer<String>(4, DROP_NEWEST)) {
+            listOf("1", "2", "3").forEach { offer(it) }
+            
+            assertThat(size()).isEqualTo(3)
+            assertThat(poll()).isEqualTo("1")
+            assertThat(poll()).isEqualTo("2")
+            assertThat(poll()).isEqualTo("3")
+            assertThat(poll()).isNull()
+            assertThat(isEmpty()).isTrue()
+        }
+    }
+    
+    @Test
+    fun `newest event is dropped when full`() {
+        with(EventBuffer<String>(2, DROP_NEWEST)) {
+            assertThat(offer("1")).isEqualTo(EventBuffer.Result.BUFFERED)
+            assertThat(offer("2")).isEqualTo(EventBuffer.Result.BUFFERED)
+            assertThat(offer("3")).isEqualTo(EventBuffer.Result.DROPPED)
+            
+            assertThat(dropped).isEqualTo(1)
+            assertThat(mutableListOf<String>().apply { drainTo(this, 10) })
+                    .containsExactly("1", "2").inOrder()
+        }
+    }
+    
+    @Test
+    fun `oldest event is dropped when full`() {
+        with(EventBuffer<String>(2, DROP_OLDEST)) {
+            listOf("1", "2", "3").forEach {
+                assertThat(offer(it)).isEqualTo(EventBuffer.Result.BUFFERED)
+            }
+            
+            assertThat(dropped).isEqualTo(1)
+            assertThat(mutableListOf<String>().apply { drainTo(this, 10) })
+                    .containsExactly("2", "3").inOrder()
+        }
+    }
+    
+    @Test
+    fun `event is spilled when full`() {
+        with(EventBuffer<String>(2, SPILL_TO_DISK)) {
+            offer("1")
+            offer("2")
+            
+            assertThat(offer("3")).isEqualTo(EventBuffer.Result.SPILL)
+            assertThat(spilled).isEqualTo(1)
+            assertThat(dropped).isEqualTo(0)
+            assertThat(size()).isEqualTo(2)
+        }
+    }
+    
+    @Test
+    fun `clear empties buffer without counting drops`() {
+        with(EventBuffer<String>(4, DROP_NEWEST)) {
+            offer("1")
+            offer("2")
+            
+            clear()
+            
+            assertThat(isEmpty()).isTrue()
+            assertThat(dropped).isEqualTo(0)
+        }
+    }
+    
+    @Test
+    fun `concurrent producers lose no events`() {
+        val producers = 4
+        val events = 10_000
+        val uut = EventBuffer<String>(64, SPILL_TO_DISK)
+        val executor = Executors.newFixedThreadPool(producers)
+        val done = CountDownLatch(producers)
+        val spilled = java.util.Collections.synchronizedList(mutableListOf<String>())
+        
+        repeat(producers) { producer ->
+            executor.execute {
+                repeat(events) {
+                    val event = "$producer-$it"
+                    if (uut.offer(event) == EventBuffer.Result.SPILL) {
+                        spilled.add(event)
+                    }
+                }
+                done.countDown()
+            }
+        }
+        
+        val received = mutableListOf<String>()
+        while (done.count > 0 || !uut.isEmpty()) {
+            uut.drainTo(received, 16)
+        }
+        assertThat(done.await(10, TimeUnit.SECONDS)).isTrue()
+        uut.drainTo(received, Int.MAX_VALUE)
+        executor.shutdown()
+        
+        assertThat(received.size + spilled.size).isEqualTo(producers * events)
+        assertThat((received + spilled).toSet()).hasSize(producers * events)
+        assertThat(uut.spilled).isEqualTo(spilled.size.toLong())
+        // each producer's events keep their relative order
+        repeat(producers) { producer ->
+            val sequence = received
+                    .filter { it.startsWith("$producer-") }
+                    .map { it.substringAfter('-').toInt() }
+            assertThat(sequence).isOrdered()
+        }
+    }
+}
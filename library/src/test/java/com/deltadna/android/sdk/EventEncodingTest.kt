@@ -0,0 +1,138 @@
+/*
+ * Copyright (c) 2018 deltaDNA Ltd. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.deltadna.android.sdk
+
+import com.google.common.truth.Truth.assertThat
+import org.json.JSONArray
+import org.json.JSONObject
+import org.junit.Test
+import org.junit.runner.RunWith
+import org.robolectric.RobolectricTestRunner
+import java.io.IOException
+import java.math.BigDecimal
+
+@RunWith(RobolectricTestRunner::class)
+class EventEncodingTest {
+
+    @Test
+    fun `strings round trip`() {
+        listOf("", "plain", "quote \" and \\ backslash", "line\nbreak\ttab", "\u0000\u001f",
+                "unicode é 日本 😀", "slash /")
+                .forEach { roundTrip(JSONObject().put("value", it)) }
+    }
+
+    @Test
+    fun `numbers round trip`() {
+        listOf<Any>(0, 1, -1, Int.MAX_VALUE, Int.MIN_VALUE, Long.MAX_VALUE, Long.MIN_VALUE,
+                0.5, -1.25, 1e-10, 1e300, 2.0, 1.1f, 3.0f, BigDecimal("12345678901234567890.5"))
+                .forEach { roundTrip(JSONObject().put("value", it)) }
+    }
+
+    @Test
+    fun `literals round trip`() {
+        roundTrip(JSONObject()
+                .put("true", true)
+                .put("false", false)
+                .put("null", JSONObject.NULL))
+    }
+
+    @Test
+    fun `nested structures round trip`() {
+        roundTrip(JSONObject()
+                .put("eventName", "transaction")
+                .put("custom key", "value")
+                .put("eventParams", JSONObject()
+                        .put("productsReceived", JSONObject()
+                                .put("items", JSONArray()
+                                        .put(JSONObject().put("item", JSONObject()
+                                                .put("itemName", "sword")
+                                                .put("itemAmount", 1)))))
+                        .put("emptyObject", JSONObject())
+                        .put("emptyArray", JSONArray())
+                        .put("mixed", JSONArray().put(1).put("a").put(JSONObject.NULL).put(false))))
+    }
+
+    @Test
+    fun `last field is appended`() {
+        val encoded = EventEncoding.encode(
+                JSONObject().put("eventName", "name"),
+                "eventParams",
+                JSONObject().put("a", 1))
+
+        assertThat(EventEncoding.decode(encoded))
+                .isEqualTo("{\"eventName\":\"name\",\"eventParams\":{\"a\":1}}")
+    }
+
+    @Test
+    fun `interned keys are smaller`() {
+        val interned = EventEncoding.encode(JSONObject().put("eventName", "a"))
+        val literal = EventEncoding.encode(JSONObject().put("eventNamf", "a"))
+
+        assertThat(interned.size).isLessThan(literal.size)
+    }
+
+    @Test
+    fun `encoded events start with magic byte`() {
+        with(EventEncoding.encode(JSONObject())) {
+            assertThat(EventEncoding.isEncoded(this, 0, size)).isTrue()
+        }
+        with("{}".toByteArray()) {
+            assertThat(EventEncoding.isEncoded(this, 0, size)).isFalse()
+        }
+    }
+
+    @Test
+    fun `decodes into payload after existing content`() {
+        val json = JSONObject().put("eventName", "name").put("value", "é \" /")
+        val payload = BulkPayload(4).put("[".toByteArray())
+
+        with(EventEncoding.encode(json)) {
+            EventEncoding.decode(this, 0, size, payload)
+        }
+
+        assertThat(String(payload.toByteArray())).isEqualTo("[$json")
+    }
+
+    @Test
+    fun `decodes from within payload while it grows`() {
+        val json = JSONObject().put("eventName", "name").put("value", "string")
+        val encoded = EventEncoding.encode(json)
+        val payload = BulkPayload(encoded.size + 1).put("[".toByteArray()).put(encoded)
+
+        EventEncoding.decode(payload.array(), 1, encoded.size, payload)
+        payload.remove(1, encoded.size)
+
+        assertThat(String(payload.toByteArray())).isEqualTo("[$json")
+    }
+
+    @Test(expected = IOException::class)
+    fun `truncated event fails to decode`() {
+        with(EventEncoding.encode(JSONObject().put("value", "string"))) {
+            EventEncoding.decode(copyOf(size - 1))
+        }
+    }
+
+    @Test(expected = IOException::class)
+    fun `unknown tag fails to decode`() {
+        EventEncoding.decode(byteArrayOf(EventEncoding.MAGIC, 0x7f))
+    }
+
+    private fun roundTrip(json: JSONObject) {
+        assertThat(EventEncoding.decode(EventEncoding.encode(json)))
+                .isEqualTo(json.toString())
+    }
+}
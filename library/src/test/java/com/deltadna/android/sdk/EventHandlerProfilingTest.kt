@@ -0,0 +1,74 @@
+/*
+ * Copyright (c) 2018 deltaDNA Ltd. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.deltadna.android.sdk
+
+import com.deltadna.android.sdk.metrics.EventProfiler
+import com.google.common.truth.Truth.assertThat
+import com.nhaarman.mockito_kotlin.any
+import com.nhaarman.mockito_kotlin.mock
+import com.nhaarman.mockito_kotlin.whenever
+import org.json.JSONObject
+import org.junit.After
+import org.junit.Before
+import org.junit.Test
+import org.junit.runner.RunWith
+import org.robolectric.RobolectricTestRunner
+
+@RunWith(RobolectricTestRunner::class)
+class EventHandlerProfilingTest {
+
+    private val events = mock<EventStore>()
+    private val uut = EventHandler(events, mock(), mock())
+
+    @Before
+    fun before() {
+        whenever(events.add(any<JSONObject>(), any())).thenAnswer {
+            CompactEvent.from(it.arguments[0] as JSONObject)
+        }
+
+        EventProfiler.reset()
+        EventProfiler.setEnabled(true)
+    }
+
+    @After
+    fun after() {
+        EventProfiler.setEnabled(false)
+        EventProfiler.reset()
+        uut.stop(false)
+    }
+
+    @Test
+    fun `profiled size includes header`() {
+        val event = JSONObject()
+                .put("eventName", "name")
+                .put("eventUUID", "uuid")
+                .put("sessionID", "session")
+                .put("userID", "user")
+                .put("eventParams", JSONObject()
+                        .put("value", 1)
+                        .put("platform", "ANDROID")
+                        .put("sdkVersion", "Android SDK v1.0"))
+
+        uut.handleEvent(event, false)
+        uut.handleEvent(event, false)
+
+        with(EventProfiler.top(1).single()) {
+            assertThat(count).isEqualTo(2L)
+            assertThat(maxBytes).isEqualTo(event.toString().toByteArray().size.toLong())
+        }
+    }
+}
@@ -67,12 +67,12 @@ class EventHandlerTest {
         verify(events, times(3)).items()
         var run = 0
         verify(network, times(2)).collect(
-                argThat {
-                    assertThat(toString()).isEqualTo(
+                argThat<ByteArray> {
+                    assertThat(String(this)).isEqualTo(
                             when (run) {
                                 0 -> "{\"eventList\":[{\"value\":0},{\"value\":1}]}"
                                 1 -> "{\"eventList\":[{\"value\":0}]}"
-                                else -> toString()
+                                else -> String(this)
                             })
                     run++
                     true
@@ -87,7 +87,7 @@ class EventHandlerTest {
         Thread.sleep(2200)
         
         verify(events, never()).items()
-        verify(network, never()).collect(any(), any())
+        verify(network, never()).collect(any<ByteArray>(), any())
     }
     
     @Test
@@ -101,7 +101,7 @@ class EventHandlerTest {
             
             verify(events).items()
             verify(network).collect(
-                    any<JSONObject>(),
+                    any<ByteArray>(),
                     any<RequestListener<Void>>())
         }
     }
@@ -111,7 +111,7 @@ class EventHandlerTest {
         with(JSONObject()) {
             uut.handleEvent(this)
             
-            verify(events).add(eq(toString()))
+            verify(events).add(same(this), eq(false))
         }
     }
     
@@ -303,7 +303,7 @@ class EventHandlerTest {
             Thread.sleep(500)
             
             verify(network).collect(
-                    argThat { toString() == "{\"eventList\":[0,2]}" },
+                    argThat<ByteArray> { String(this) == "{\"eventList\":[0,2]}" },
                     any())
             verify(this, times(3)).next()
             verify(this).close(same(CloseableIterator.Mode.ALL))
@@ -332,7 +332,7 @@ class EventHandlerTest {
     }
     
     private fun withListeners(action: RequestListener<Any>.() -> Unit) {
-        whenever(network.collect(any(), any())).thenAnswer {
+        whenever(network.collect(any<ByteArray>(), any())).thenAnswer {
             action.invoke(it.arguments[1] as RequestListener<Any>)
             null
         }
@@ -360,6 +360,9 @@ class EventHandlerTest {
             private val value: String?,
             private val availability: Boolean) : EventStoreItem {
         override fun available() = availability
+        override fun time() = 0L
         override fun get() = value
+        override fun writeTo(payload: BulkPayload) =
+                value?.let { payload.put(it.toByteArray()); true } ?: false
     }
 }
@@ -0,0 +1,120 @@
+/*
+ * Copyright (c) 2016 deltaDNA Ltd. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.deltadna.android.sdk
+
+import com.deltadna.android.sdk.EventPolicy.Priority.*
+import com.deltadna.android.sdk.helpers.Settings
+import com.github.salomonbrys.kotson.jsonObject
+import com.google.common.collect.Range
+import com.google.common.truth.Truth.assertThat
+import org.junit.Before
+import org.junit.Test
+import org.junit.runner.RunWith
+import org.robolectric.RobolectricTestRunner
+import java.util.*
+import java.util.concurrent.TimeUnit
+
+@RunWith(RobolectricTestRunner::class)
+class EventPoliciesTest {
+    
+    private lateinit var settings: Settings
+    private lateinit var uut: EventPolicies
+    
+    @Before
+    fun before() {
+        settings = Settings()
+        uut = EventPolicies(settings, Random(1))
+    }
+    
+    @Test
+    fun `transaction is critical and uiClick is low by default`() {
+        assertThat(uut["transaction"].priority).isEqualTo(CRITICAL)
+        assertThat(uut["uiClick"].priority).isEqualTo(LOW)
+        assertThat(uut["other"]).isEqualTo(EventPolicy.DEFAULT)
+    }
+    
+    @Test
+    fun `critical events are always admitted`() {
+        val policy = EventPolicy.of(CRITICAL)
+        
+        repeat(100) { assertThat(uut.admit("transaction", policy, 1f)).isTrue() }
+    }
+    
+    @Test
+    fun `low priority events are shed under pressure`() {
+        val policy = EventPolicy.of(LOW)
+        
+        repeat(100) { assertThat(uut.admit("uiClick", policy, 0.5f)).isTrue() }
+        repeat(100) { assertThat(uut.admit("uiClick", policy, 1f)).isFalse() }
+        assertThat((1..1000).count { uut.admit("uiClick", policy, 0.75f) })
+                .isIn(Range.closed(400, 600))
+    }
+    
+    @Test
+    fun `normal priority events are not shed under pressure`() {
+        repeat(100) { assertThat(uut.admit("event", EventPolicy.DEFAULT, 1f)).isTrue() }
+    }
+    
+    @Test
+    fun `events are sampled`() {
+        val policy = EventPolicy.of(NORMAL).withSampleRate(0.1f)
+        
+        assertThat((1..1000).count { uut.admit("event", policy, 0f) })
+                .isIn(Range.closed(50, 150))
+        assertThat(uut.admit("event", policy.withSampleRate(0f), 0f)).isFalse()
+    }
+    
+    @Test
+    fun `events are rate limited`() {
+        val policy = EventPolicy.of(NORMAL).withRateLimit(2, 1, TimeUnit.HOURS)
+        
+        assertThat(uut.admit("event", policy, 0f)).isTrue()
+        assertThat(uut.admit("event", policy, 0f)).isTrue()
+        assertThat(uut.admit("event", policy, 0f)).isFalse()
+        assertThat(uut.admit("other", policy, 0f)).isTrue()
+    }
+    
+    @Test
+    fun `remote policies take precedence`() {
+        settings.setEventPolicy("uiClick", EventPolicy.of(NORMAL))
+        
+        uut.setRemote(jsonObject(
+                "uiClick" to jsonObject(
+                        "priority" to "low",
+                        "sampleRate" to 0.5,
+                        "rateLimit" to jsonObject("events" to 10, "seconds" to 2)),
+                "invalid" to jsonObject("priority" to "unknown")).convert())
+        
+        assertThat(uut["uiClick"]).isEqualTo(EventPolicy.of(LOW)
+                .withSampleRate(0.5f)
+                .withRateLimit(10, 2, TimeUnit.SECONDS))
+        assertThat(uut["invalid"]).isEqualTo(EventPolicy.DEFAULT)
+        
+        uut.setRemote(null)
+        
+        assertThat(uut["uiClick"]).isEqualTo(EventPolicy.of(NORMAL))
+    }
+    
+    @Test
+    fun `remote policies cannot lower transaction priority`() {
+        uut.setRemote(jsonObject(
+                "transaction" to jsonObject("priority" to "low", "sampleRate" to 0)).convert())
+        
+        assertThat(uut["transaction"].priority).isEqualTo(CRITICAL)
+        assertThat(uut.admit("transaction", uut["transaction"], 1f)).isTrue()
+    }
+}
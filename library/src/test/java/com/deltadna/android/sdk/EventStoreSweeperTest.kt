@@ -0,0 +1,159 @@
+/*
+ * Copyright (c) 2018 deltaDNA Ltd. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.deltadna.android.sdk
+
+import com.deltadna.android.sdk.metrics.Metrics
+import com.google.common.truth.Truth.assertThat
+import org.junit.After
+import org.junit.Before
+import org.junit.Test
+import org.junit.runner.RunWith
+import org.robolectric.RobolectricTestRunner
+import org.robolectric.RuntimeEnvironment
+import java.io.File
+import java.util.zip.CRC32
+
+@RunWith(RobolectricTestRunner::class)
+class EventStoreSweeperTest {
+    
+    private val application by lazy { RuntimeEnvironment.application }
+    private val directory by lazy {
+        Location.INTERNAL.storage(application, DIRECTORY).apply { mkdirs() }
+    }
+    
+    private lateinit var database: DatabaseHelper
+    
+    private lateinit var uut: EventStoreSweeper
+    
+    @Before
+    fun before() {
+        database = DatabaseHelper(application)
+        uut = EventStoreSweeper(database, application, DIRECTORY, 1000)
+        
+        Metrics.reset()
+        Metrics.setEnabled(true)
+    }
+    
+    @After
+    fun after() {
+        Metrics.setEnabled(false)
+    }
+    
+    @Test
+    fun `intact events are kept`() {
+        store("a", "{\"value\":1}")
+        
+        uut.run()
+        
+        assertThat(counter("events.verified")).isEqualTo(1L)
+        assertThat(counter("events.quarantined")).isEqualTo(0L)
+        assertThat(counter("events.sweepsIncomplete")).isEqualTo(0L)
+        assertThat(rows()).containsExactly("a")
+        assertThat(File(directory, "a").exists()).isTrue()
+    }
+    
+    @Test
+    fun `old files without rows are deleted`() {
+        val old = File(directory, "old").apply {
+            writeText("{}")
+            setLastModified(System.currentTimeMillis() - 120_000)
+        }
+        val recent = File(directory, "recent").apply { writeText("{}") }
+        
+        uut.run()
+        
+        assertThat(counter("events.orphanedFiles")).isEqualTo(1L)
+        assertThat(old.exists()).isFalse()
+        assertThat(recent.exists()).isTrue()
+    }
+    
+    @Test
+    fun `rows without files are removed`() {
+        store("a", "{\"value\":1}")
+        File(directory, "a").delete()
+        
+        uut.run()
+        
+        assertThat(counter("events.missingFiles")).isEqualTo(1L)
+        assertThat(rows()).isEmpty()
+    }
+    
+    @Test
+    fun `corrupted events are quarantined`() {
+        store("a", "{\"value\":1}")
+        store("b", "{\"value\":2}")
+        File(directory, "b").writeText("{\"value\":3}")
+        
+        uut.run()
+        
+        assertThat(counter("events.quarantined")).isEqualTo(1L)
+        assertThat(rows()).containsExactly("a")
+        assertThat(File(directory, "b").exists()).isFalse()
+        assertThat(File(Location.INTERNAL.storage(application, "events-quarantine/"), "b")
+                .exists()).isTrue()
+    }
+    
+    @Test
+    fun `malformed events are quarantined`() {
+        store("a", "not json")
+        
+        uut.run()
+        
+        assertThat(counter("events.quarantined")).isEqualTo(1L)
+        assertThat(rows()).isEmpty()
+    }
+    
+    @Test
+    fun `verification stops once budget runs out`() {
+        store("a", "{\"value\":1}")
+        File(directory, "a").writeText("{\"value\":0}")
+        uut = EventStoreSweeper(database, application, DIRECTORY, 0)
+        
+        uut.run()
+        
+        assertThat(counter("events.sweepsIncomplete")).isEqualTo(1L)
+        assertThat(counter("events.quarantined")).isEqualTo(0L)
+        assertThat(rows()).containsExactly("a")
+    }
+    
+    private fun store(name: String, content: String) {
+        val bytes = content.toByteArray()
+        File(directory, name).writeBytes(bytes)
+        database.insertEventRows(listOf(DatabaseHelper.eventRow(
+                System.currentTimeMillis(),
+                Location.INTERNAL,
+                name,
+                "%08x".format(CRC32().apply { update(bytes) }.value),
+                bytes.size.toLong())))
+    }
+    
+    private fun counter(name: String) = Metrics.snapshot().getCounter(name)
+    
+    private fun rows() = database.getAllEventRows(0).use {
+        val names = mutableListOf<String>()
+        while (it.moveToNext()) {
+            names.add(it.getString(it.getColumnIndex(
+                    DatabaseHelper.Events.Column.NAME.toString())))
+        }
+        names
+    }
+    
+    private companion object {
+        
+        const val DIRECTORY = "events/"
+    }
+}
@@ -20,6 +20,8 @@ import android.os.Environment
 import com.deltadna.android.sdk.helpers.Settings
 import com.deltadna.android.sdk.util.CloseableIterator
 import com.google.common.truth.Truth.assertThat
+import com.google.gson.JsonParser
+import org.json.JSONObject
 import org.junit.Before
 import org.junit.Ignore
 import org.junit.Test
@@ -50,7 +52,7 @@ class EventStoreTest {
         settings = Settings()
         prefs = Preferences(application)
         
-        uut = EventStore(application, database, settings, prefs)
+        uut = EventStore(application, database, settings, prefs).apply { prepare() }
     }
     
     @Test
@@ -65,7 +67,7 @@ class EventStoreTest {
         legacy.swap()
         legacy.push("1")
         
-        uut = EventStore(application, database, settings, prefs)
+        uut = EventStore(application, database, settings, prefs).apply { prepare() }
         waitAndRunTasks(1000)
         
         assertThat(legacy.read().size).isEqualTo(0)
@@ -95,6 +97,51 @@ class EventStoreTest {
         }
     }
     
+    @Test
+    fun itemsAddedBeforePrepareAreKept() {
+        uut = EventStore(application, database, settings, prefs)
+        
+        with(uut) {
+            add("1")
+            waitAndRunTasks(1000)
+            assertThat(items().hasNext()).isFalse()
+            
+            prepare()
+            waitAndRunTasks(1000)
+            
+            with(items()) {
+                assertThat(next().get()).isEqualTo("1")
+                assertThat(hasNext()).isFalse()
+            }
+        }
+    }
+    
+    @Test
+    fun itemsAddedBeforeClearingPrepareAreKept() {
+        uut.add("1")
+        waitAndRunTasks(1000)
+        
+        // spills past the buffer, before the previous items get cleared
+        settings.setEventBufferCapacity(1)
+                .setEventOverflowPolicy(Settings.EventOverflowPolicy.SPILL_TO_DISK)
+        uut = EventStore(application, database, settings, prefs)
+        
+        with(uut) {
+            add("2")
+            add("3")
+            waitAndRunTasks(1000)
+            
+            prepare(true)
+            waitAndRunTasks(1000)
+            
+            with(items()) {
+                assertThat(next().get()).isEqualTo("2")
+                assertThat(next().get()).isEqualTo("3")
+                assertThat(hasNext()).isFalse()
+            }
+        }
+    }
+    
     @Test
     fun itemAddedOnInternal() {
         settings.isUseInternalStorageForEvents = true
@@ -254,6 +301,22 @@ class EventStoreTest {
         }
     }
     
+    @Test
+    fun pressureDropsOnceItemsAreRemoved() {
+        settings.setEventBufferCapacity(1)
+        uut = EventStore(application, database, settings, prefs).apply { prepare() }
+        
+        with(uut) {
+            add("x".repeat(EventStore.EVENTS_LIMIT - 1))
+            waitAndRunTasks(1000)
+            assertThat(getPressure()).isGreaterThan(0f)
+            
+            items().close(CloseableIterator.Mode.ALL)
+            
+            assertThat(getPressure()).isEqualTo(0f)
+        }
+    }
+    
     @Test
     fun itemsRemovedOnCloseWithClearUpToCurrent() {
         with(uut) {
@@ -285,5 +348,160 @@ class EventStoreTest {
         }
     }
     
+    @Test
+    fun compactItemsAreExpanded() {
+        val events = (0..2).map {
+            JSONObject()
+                    .put("eventName", "event$it")
+                    .put("userID", "user")
+                    .put("sessionID", "session")
+                    .put("eventParams", JSONObject()
+                            .put("platform", "ANDROID")
+                            .put("sdkVersion", "1.0")
+                            .put("value", it))
+        }
+        
+        with(uut) {
+            events.forEach { add(CompactEvent.from(it), false) }
+            waitAndRunTasks(1000)
+            
+            with(items()) {
+                events.forEach {
+                    assertThat(JsonParser().parse(next().get()))
+                            .isEqualTo(JsonParser().parse(it.toString()))
+                }
+                assertThat(hasNext()).isFalse()
+            }
+        }
+    }
+    
+    @Test
+    fun encodedItemsAreDecoded() {
+        settings.setEventStorageFormat(Settings.EventStorageFormat.BINARY)
+        val events = listOf(
+                JSONObject()
+                        .put("eventName", "compact")
+                        .put("userID", "user")
+                        .put("sessionID", "session")
+                        .put("eventParams", JSONObject()
+                                .put("platform", "ANDROID")
+                                .put("sdkVersion", "1.0")
+                                .put("text", "line\nbreak")),
+                JSONObject().put("eventName", "whole"))
+        
+        with(uut) {
+            events.forEach { add(it, false) }
+            waitAndRunTasks(1000)
+            
+            with(items()) {
+                events.forEach {
+                    assertThat(JsonParser().parse(next().get()))
+                            .isEqualTo(JsonParser().parse(it.toString()))
+                }
+                assertThat(hasNext()).isFalse()
+            }
+        }
+    }
+    
+    @Test
+    fun lineBreaksArePreserved() {
+        with(uut) {
+            add("1\n2")
+            waitAndRunTasks(1000)
+            
+            assertThat(items().next().get()).isEqualTo("1\n2")
+        }
+    }
+    
+    @Test
+    fun itemsAreWrittenToPayload() {
+        val compact = JSONObject()
+                .put("eventName", "compact")
+                .put("userID", "user")
+                .put("sessionID", "session")
+                .put("eventParams", JSONObject()
+                        .put("platform", "ANDROID")
+                        .put("sdkVersion", "1.0"))
+        val whole = JSONObject().put("eventName", "whole")
+        
+        with(uut) {
+            add(CompactEvent.from(compact, false), false)
+            add(CompactEvent.from(compact, true), false)
+            add(CompactEvent.from(whole, true), false)
+            add("not json")
+            waitAndRunTasks(1000)
+            
+            val payload = BulkPayload(4)
+            with(items()) {
+                repeat(3) {
+                    if (it > 0) payload.put(','.code.toByte())
+                    assertThat(next().writeTo(payload)).isTrue()
+                }
+                assertThat(next().writeTo(BulkPayload(4))).isFalse()
+            }
+            
+            assertThat(JsonParser().parse("[" + String(payload.toByteArray()) + "]"))
+                    .isEqualTo(JsonParser().parse("[$compact,$compact,$whole]"))
+        }
+    }
+    
+    @Test
+    fun corruptedItemsAreSkipped() {
+        settings.isUseInternalStorageForEvents = true
+        
+        with(uut) {
+            listOf("{\"a\":1}", "{\"a\":2}", "{\"a\":3}").forEach { add(it) }
+            waitAndRunTasks(1000)
+            
+            Location.INTERNAL.storage(application, "events/").listFiles()!!
+                    .first { it.readText() == "{\"a\":2}" }
+                    .writeText("{\"a\":0}")
+            
+            with(items()) {
+                assertThat(next().get()).isEqualTo("{\"a\":1}")
+                with(next()) {
+                    assertThat(get()).isNull()
+                    assertThat(writeTo(BulkPayload(4))).isFalse()
+                }
+                assertThat(next().get()).isEqualTo("{\"a\":3}")
+            }
+        }
+    }
+    
+    @Test
+    fun truncatedItemsAreSkipped() {
+        settings.isUseInternalStorageForEvents = true
+        
+        with(uut) {
+            add("{\"a\":1}")
+            waitAndRunTasks(1000)
+            
+            Location.INTERNAL.storage(application, "events/").listFiles()!!
+                    .single()
+                    .writeText("{\"a\"")
+            
+            assertThat(items().next().get()).isNull()
+        }
+    }
+    
+    @Test
+    fun itemsAreWrittenWithEachDurability() {
+        Settings.EventDurability.values().forEach { durability ->
+            settings.setEventDurability(durability)
+            
+            with(uut) {
+                clear()
+                listOf("1", "2").forEach { add(it) }
+                waitAndRunTasks(1000)
+                
+                with(items()) {
+                    assertThat(next().get()).isEqualTo("1")
+                    assertThat(next().get()).isEqualTo("2")
+                    assertThat(hasNext()).isFalse()
+                }
+            }
+        }
+    }
+    
    // private fun waitAndRunTasks(1000) = Thread.sleep(1000)
 }
@@ -72,7 +72,7 @@ class ImageMessageStoreTest {
 
         ShadowEnvironment.setExternalStorageState(Environment.MEDIA_MOUNTED)
 
-        uut = ImageMessageStore(application, database, network, settings)
+        uut = ImageMessageStore(application, database, network, settings).apply { prepare() }
     }
 
     @After
@@ -0,0 +1,55 @@
+/*
+ * Copyright (c) 2016 deltaDNA Ltd. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.deltadna.android.sdk
+
+import com.google.common.truth.Truth.assertThat
+import org.junit.Test
+import org.junit.runner.RunWith
+import org.junit.runners.JUnit4
+
+@RunWith(JUnit4::class)
+class Iso4217MapTest {
+    
+    private val uut = Iso4217Map.INSTANCE
+    
+    @Test
+    fun `minor units are looked up`() {
+        assertThat(uut["USD"]).isEqualTo(2)
+        assertThat(uut["JPY"]).isEqualTo(0)
+        assertThat(uut["KWD"]).isEqualTo(3)
+        assertThat(uut["CLF"]).isEqualTo(4)
+    }
+    
+    @Test
+    fun `unknown codes are not contained`() {
+        assertThat(uut.containsKey("XYZ")).isFalse()
+        assertThat(uut.containsKey("usd")).isFalse()
+        assertThat(uut.containsKey("US")).isFalse()
+        assertThat(uut.containsKey("USDĀ")).isFalse()
+        assertThat(uut.containsKey("USń")).isFalse()
+        assertThat(uut["XYZ"]).isNull()
+    }
+    
+    @Test
+    fun `entries are sorted and consistent with lookups`() {
+        val codes = uut.keys.toList()
+        
+        assertThat(codes).hasSize(uut.size)
+        assertThat(codes).isOrdered()
+        uut.forEach { (code, units) -> assertThat(uut[code]).isEqualTo(units) }
+    }
+}
@@ -0,0 +1,65 @@
+/*
+ * Copyright (c) 2018 deltaDNA Ltd. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.deltadna.android.sdk
+
+import com.deltadna.android.sdk.helpers.Settings
+import com.deltadna.android.sdk.listeners.MetricsListener
+import com.deltadna.android.sdk.metrics.Metrics
+import com.nhaarman.mockito_kotlin.any
+import com.nhaarman.mockito_kotlin.argThat
+import com.nhaarman.mockito_kotlin.mock
+import com.nhaarman.mockito_kotlin.never
+import com.nhaarman.mockito_kotlin.verify
+import org.junit.After
+import org.junit.Test
+import org.junit.runner.RunWith
+import org.robolectric.RobolectricTestRunner
+
+@RunWith(RobolectricTestRunner::class)
+class MetricsReporterTest {
+
+    private val listener = mock<MetricsListener>()
+    private val uut = MetricsReporter(Settings())
+
+    @After
+    fun after() {
+        Metrics.unregister(listener)
+        Metrics.reset()
+    }
+
+    @Test
+    fun `listeners are notified on the main thread`() {
+        Metrics.register(listener)
+        Metrics.counter("test.reported").increment()
+
+        uut.report()
+        verify(listener, never()).onMetrics(any())
+
+        runTasks()
+        verify(listener).onMetrics(argThat { getCounter("test.reported") == 1L })
+    }
+
+    @Test
+    fun `nothing is reported without listeners`() {
+        Metrics.counter("test.reported").increment()
+
+        uut.report()
+        runTasks()
+
+        verify(listener, never()).onMetrics(any())
+    }
+}
@@ -0,0 +1,118 @@
+/*
+ * Copyright (c) 2018 deltaDNA Ltd. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.deltadna.android.sdk
+
+import com.deltadna.android.sdk.metrics.Metrics
+import com.google.common.truth.Truth.assertThat
+import com.nhaarman.mockito_kotlin.any
+import com.nhaarman.mockito_kotlin.argumentCaptor
+import com.nhaarman.mockito_kotlin.mock
+import com.nhaarman.mockito_kotlin.times
+import com.nhaarman.mockito_kotlin.verify
+import com.nhaarman.mockito_kotlin.verifyZeroInteractions
+import org.junit.After
+import org.junit.Before
+import org.junit.Test
+import org.junit.runner.RunWith
+import org.robolectric.RobolectricTestRunner
+
+@RunWith(RobolectricTestRunner::class)
+class SdkHealthEventsTest {
+    
+    private val recorder = mock<EventAggregations.Recorder>()
+    private val uut = SdkHealthEvents(recorder)
+    
+    @Before
+    fun before() {
+        Metrics.reset()
+        Metrics.setEnabled(true)
+    }
+    
+    @After
+    fun after() {
+        Metrics.setEnabled(false)
+        Metrics.reset()
+    }
+    
+    @Test
+    fun `nothing is recorded without uploads`() {
+        uut.onMetrics(Metrics.snapshot())
+        
+        verifyZeroInteractions(recorder)
+    }
+    
+    @Test
+    fun `records what happened since the previous metrics`() {
+        val latency = Metrics.histogram("events.latencyMillis")
+        val uploads = Metrics.counter("uploads")
+        val events = Metrics.counter("uploads.events")
+        
+        latency.record(5000)
+        uploads.increment()
+        events.increment()
+        uut.onMetrics(Metrics.snapshot())
+        
+        (1L..100L).forEach { latency.record(it) }
+        uploads.add(2)
+        events.add(100)
+        Metrics.counter("uploads.failed").increment()
+        uut.onMetrics(Metrics.snapshot())
+        
+        argumentCaptor<Event<*>>().apply {
+            verify(recorder, times(2)).record(capture())
+            
+            assertThat(firstValue.name).isEqualTo(SdkHealthEvents.EVENT_NAME)
+            with(secondValue.params.toJson()) {
+                assertThat(getLong("ddnaLatencyEvents")).isEqualTo(100L)
+                assertThat(getLong("ddnaLatencyP50Millis")).isEqualTo(63L)
+                assertThat(getLong("ddnaLatencyMaxMillis")).isEqualTo(127L)
+                assertThat(getLong("ddnaUploads")).isEqualTo(2L)
+                assertThat(getLong("ddnaUploadsFailed")).isEqualTo(1L)
+                assertThat(getLong("ddnaEventsDropped")).isEqualTo(0L)
+            }
+        }
+    }
+    
+    @Test
+    fun `uploading only the health event does not record another`() {
+        Metrics.counter("uploads").increment()
+        Metrics.counter("uploads.events").increment()
+        uut.onMetrics(Metrics.snapshot())
+        
+        Metrics.histogram("events.latencyMillis").record(10)
+        Metrics.counter("uploads").increment()
+        Metrics.counter("uploads.events").increment()
+        uut.onMetrics(Metrics.snapshot())
+        
+        verify(recorder, times(1)).record(any())
+    }
+    
+    @Test
+    fun `failing to upload the health event does not record another`() {
+        Metrics.counter("uploads.failed").increment()
+        uut.onMetrics(Metrics.snapshot())
+        
+        Metrics.counter("uploads.failed").increment()
+        uut.onMetrics(Metrics.snapshot())
+        
+        Metrics.counter("uploads").increment()
+        Metrics.counter("uploads.events").increment()
+        uut.onMetrics(Metrics.snapshot())
+        
+        verify(recorder, times(1)).record(any())
+    }
+}
@@ -0,0 +1,170 @@
+/*
+ * Copyright (c) 2018 deltaDNA Ltd. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.deltadna.android.sdk
+
+import com.deltadna.android.sdk.helpers.Settings
+import com.github.salomonbrys.kotson.jsonArray
+import com.github.salomonbrys.kotson.jsonObject
+import com.google.common.truth.Truth.assertThat
+import org.json.JSONObject
+import org.junit.After
+import org.junit.Before
+import org.junit.Test
+import org.junit.runner.RunWith
+import org.robolectric.RobolectricTestRunner
+import java.io.File
+
+@RunWith(RobolectricTestRunner::class)
+class SessionConfigurationStoreTest {
+
+    private val settings = Settings()
+
+    private lateinit var path: File
+
+    private lateinit var uut: SessionConfigurationStore
+
+    @Before
+    fun before() {
+        path = createTempDir()
+
+        uut = SessionConfigurationStore(path, settings)
+    }
+
+    @After
+    fun after() {
+        path.deleteRecursively()
+    }
+
+    @Test
+    fun `snapshot is compiled from configuration`() {
+        with(SessionConfigurationStore.Snapshot.from(CONFIG.convert())) {
+            assertThat(dpWhitelist).containsExactly("dp1", "dp2")
+            assertThat(eventsWhitelist).isNull()
+            assertThat(imageCache).containsExactly("url")
+            assertThat(JSONObject(eventPolicies).has("uiClick")).isTrue()
+            assertThat(triggers!!.keys).containsExactly("a", "b").inOrder()
+            assertThat(triggers!!["a"]!!.map { it.index }).containsExactly(0, 2).inOrder()
+            assertThat(triggers!!["b"]!!.map { it.index }).containsExactly(1)
+        }
+    }
+
+    @Test
+    fun `snapshot survives round trip`() {
+        val snapshot = SessionConfigurationStore.Snapshot.from(CONFIG.convert())
+
+        uut.put(snapshot)
+
+        with(SessionConfigurationStore(path, settings).get()!!) {
+            assertThat(created).isEqualTo(snapshot.created)
+            assertThat(dpWhitelist).isEqualTo(snapshot.dpWhitelist)
+            assertThat(eventsWhitelist).isNull()
+            assertThat(imageCache).isEqualTo(snapshot.imageCache)
+            assertThat(eventPolicies).isEqualTo(snapshot.eventPolicies)
+            assertThat(triggers!!.keys).containsExactly("a", "b").inOrder()
+            triggers!!["a"]!!.zip(snapshot.triggers!!["a"]!!).forEach { (actual, expected) ->
+                assertThat(actual.index).isEqualTo(expected.index)
+                assertThat(actual.priority).isEqualTo(expected.priority)
+                assertThat(actual.limit).isEqualTo(expected.limit)
+                assertThat(actual.condition.asList())
+                        .containsExactlyElementsIn(expected.condition.asList())
+                        .inOrder()
+                assertThat(actual.campaignId).isEqualTo(expected.campaignId)
+                assertThat(actual.variantId).isEqualTo(expected.variantId)
+                assertThat(actual.campaignName).isEqualTo(expected.campaignName)
+                assertThat(actual.action).isEqualTo(expected.action)
+                assertThat(actual.showConditions).isEqualTo(expected.showConditions)
+                assertThat(actual.response().toString())
+                        .isEqualTo(expected.response().toString())
+            }
+        }
+    }
+
+    @Test
+    fun `get returns null without snapshot`() {
+        assertThat(uut.get()).isNull()
+    }
+
+    @Test
+    fun `expired snapshot is ignored`() {
+        uut.put(SessionConfigurationStore.Snapshot(
+                System.currentTimeMillis() - 2000,
+                setOf("dp"),
+                null,
+                null,
+                null,
+                null))
+        settings.setEngageCacheExpiry(1)
+
+        assertThat(uut.get()).isNull()
+    }
+
+    @Test
+    fun `corrupted snapshot is discarded`() {
+        uut.put(SessionConfigurationStore.Snapshot.from(CONFIG.convert()))
+        val file = path.listFiles()!!.single()
+        file.writeBytes(file.readBytes().apply { this[size / 2] = (this[size / 2] + 1).toByte() })
+
+        assertThat(uut.get()).isNull()
+        assertThat(file.exists()).isFalse()
+    }
+
+    @Test
+    fun `clear removes snapshot`() {
+        uut.put(SessionConfigurationStore.Snapshot.from(CONFIG.convert()))
+
+        uut.clear()
+
+        assertThat(path.listFiles()).isEmpty()
+        assertThat(uut.get()).isNull()
+    }
+
+    private companion object {
+
+        val CONFIG = jsonObject("parameters" to jsonObject(
+                "dpWhitelist" to jsonArray("dp1", "dp2"),
+                "imageCache" to jsonArray("url"),
+                "eventPolicies" to jsonObject("uiClick" to jsonObject("priority" to "LOW")),
+                "triggers" to jsonArray(
+                        jsonObject(
+                                "eventName" to "a",
+                                "priority" to 1,
+                                "limit" to 3,
+                                "condition" to jsonArray(
+                                        jsonObject("p" to "level"),
+                                        jsonObject("i" to 5),
+                                        jsonObject("o" to "greater than"),
+                                        jsonObject("p" to "name"),
+                                        jsonObject("s" to "x"),
+                                        jsonObject("o" to "equal to"),
+                                        jsonObject("o" to "and")),
+                                "campaignID" to 4,
+                                "variantID" to 5,
+                                "campaignExecutionConfig" to jsonObject(
+                                        "showConditions" to jsonArray(
+                                                jsonObject("executionsRequiredCount" to 2),
+                                                jsonObject(
+                                                        "executionsRepeat" to 3,
+                                                        "executionsRepeatLimit" to 4))),
+                                "response" to jsonObject(
+                                        "eventParams" to jsonObject(
+                                                "responseEngagementName" to "campaign"),
+                                        "image" to jsonObject("url" to "image"),
+                                        "parameters" to jsonObject("a" to 1))),
+                        jsonObject("eventName" to "b"),
+                        jsonObject("eventName" to "a", "priority" to 2))))
+    }
+}
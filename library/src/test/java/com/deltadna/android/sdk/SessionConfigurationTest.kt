@@ -0,0 +1,75 @@
+/*
+ * Copyright (c) 2018 deltaDNA Ltd. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.deltadna.android.sdk
+
+import com.google.common.truth.Truth.assertThat
+import com.nhaarman.mockito_kotlin.mock
+import org.junit.Test
+
+class SessionConfigurationTest {
+
+    private val trigger = mock<EventTrigger>()
+
+    @Test
+    fun `empty configuration whitelists everything`() {
+        with(SessionConfiguration.EMPTY) {
+            assertThat(retrieved).isFalse()
+            assertThat(isWhitelisted(KEvent("a"))).isTrue()
+            assertThat(isWhitelisted(KEngagement("point", "engagement"))).isTrue()
+            assertThat(triggers("a")).isSameAs(EventAction.NO_TRIGGERS)
+        }
+    }
+
+    @Test
+    fun `parts are replaced`() {
+        val triggers = sortedSetOf(trigger)
+
+        with(SessionConfiguration.EMPTY.with(
+                true,
+                setOf("point@engagement"),
+                setOf("a"),
+                setOf("image"),
+                mapOf("a" to triggers))) {
+            assertThat(retrieved).isTrue()
+            assertThat(isWhitelisted(KEvent("a"))).isTrue()
+            assertThat(isWhitelisted(KEvent("b"))).isFalse()
+            assertThat(isWhitelisted(KEngagement("point", "engagement"))).isTrue()
+            assertThat(isWhitelisted(KEngagement("other", "engagement"))).isFalse()
+            assertThat(imageCache).containsExactly("image")
+            assertThat(triggers("a")).isSameAs(triggers)
+            assertThat(triggers("b")).isSameAs(EventAction.NO_TRIGGERS)
+        }
+    }
+
+    @Test
+    fun `missing parts carry over`() {
+        val previous = SessionConfiguration.EMPTY.with(
+                false,
+                setOf("point@engagement"),
+                setOf("a"),
+                setOf("image"),
+                mapOf("a" to sortedSetOf(trigger)))
+
+        with(previous.with(true, null, setOf("b"), null, null)) {
+            assertThat(retrieved).isTrue()
+            assertThat(dpWhitelist).isSameAs(previous.dpWhitelist)
+            assertThat(eventsWhitelist).containsExactly("b")
+            assertThat(imageCache).isSameAs(previous.imageCache)
+            assertThat(eventTriggers).isSameAs(previous.eventTriggers)
+        }
+    }
+}
@@ -0,0 +1,94 @@
+/*
+ * Copyright (c) 2018 deltaDNA Ltd. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.deltadna.android.sdk.metrics
+
+import com.google.common.truth.Truth.assertThat
+import org.junit.After
+import org.junit.Before
+import org.junit.Test
+
+class EventProfilerTest {
+
+    @Before
+    fun before() {
+        EventProfiler.reset()
+        EventProfiler.setEnabled(true)
+    }
+
+    @After
+    fun after() {
+        EventProfiler.setEnabled(false)
+        EventProfiler.reset()
+    }
+
+    @Test
+    fun `events are profiled by name`() {
+        EventProfiler.record("small", 10, 1, false)
+        EventProfiler.record("small", 30, 3, false)
+        EventProfiler.record("large", 100, 40, true)
+
+        with(EventProfiler.top(10)) {
+            assertThat(map { it.name }).containsExactly("large", "small").inOrder()
+
+            with(get(1)) {
+                assertThat(count).isEqualTo(2)
+                assertThat(bytes).isEqualTo(40)
+                assertThat(maxBytes).isEqualTo(30)
+                assertThat(meanBytes).isEqualTo(20.0)
+                assertThat(meanParams).isEqualTo(2.0)
+                assertThat(oversized).isEqualTo(0)
+                assertThat(paramCounts[1]).isEqualTo(1)
+                assertThat(paramCounts[3]).isEqualTo(1)
+            }
+            with(get(0)) {
+                assertThat(oversized).isEqualTo(1)
+                assertThat(paramCounts.last()).isEqualTo(1)
+            }
+        }
+    }
+
+    @Test
+    fun `top is limited`() {
+        EventProfiler.record("a", 1, 0, false)
+        EventProfiler.record("b", 2, 0, false)
+        EventProfiler.record("c", 3, 0, false)
+
+        assertThat(EventProfiler.top(2).map { it.name }).containsExactly("c", "b").inOrder()
+        assertThat(EventProfiler.top(0)).isEmpty()
+    }
+
+    @Test
+    fun `names past the limit are counted as other`() {
+        for (i in 0 until EventProfiler.MAX_NAMES + 2) {
+            EventProfiler.record("name$i", 1, 0, false)
+        }
+
+        with(EventProfiler.top(Int.MAX_VALUE)) {
+            assertThat(size).isEqualTo(EventProfiler.MAX_NAMES + 1)
+            assertThat(single { it.name == EventProfiler.OTHER }.count).isEqualTo(2)
+        }
+    }
+
+    @Test
+    fun `nothing is recorded when disabled`() {
+        EventProfiler.setEnabled(false)
+
+        EventProfiler.record("name", 1, 0, false)
+
+        assertThat(EventProfiler.top(10)).isEmpty()
+    }
+}
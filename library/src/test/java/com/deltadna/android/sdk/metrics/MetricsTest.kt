@@ -0,0 +1,142 @@
+/*
+ * Copyright (c) 2018 deltaDNA Ltd. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.deltadna.android.sdk.metrics
+
+import com.deltadna.android.sdk.listeners.MetricsListener
+import com.google.common.truth.Truth.assertThat
+import com.nhaarman.mockito_kotlin.mock
+import org.junit.After
+import org.junit.Before
+import org.junit.Test
+import java.util.concurrent.TimeUnit
+
+class MetricsTest {
+
+    private val counter = Metrics.counter("test.counter")
+    private val gauge = Metrics.gauge("test.gauge")
+    private val histogram = Metrics.histogram("test.histogram")
+
+    @Before
+    fun before() {
+        Metrics.reset()
+        Metrics.setEnabled(true)
+    }
+
+    @After
+    fun after() {
+        Metrics.setEnabled(false)
+        Metrics.reset()
+    }
+
+    @Test
+    fun `metrics are shared by name`() {
+        assertThat(Metrics.counter("test.counter")).isSameAs(counter)
+        assertThat(Metrics.gauge("test.gauge")).isSameAs(gauge)
+        assertThat(Metrics.histogram("test.histogram")).isSameAs(histogram)
+    }
+
+    @Test
+    fun `values are recorded`() {
+        counter.increment()
+        counter.add(2)
+        gauge.set(5)
+        gauge.set(4)
+        histogram.record(3)
+
+        with(Metrics.snapshot()) {
+            assertThat(getCounter("test.counter")).isEqualTo(3L)
+            assertThat(getGauge("test.gauge")).isEqualTo(4L)
+            assertThat(getHistogram("test.histogram").count).isEqualTo(1L)
+        }
+    }
+
+    @Test
+    fun `nothing is recorded while disabled`() {
+        Metrics.setEnabled(false)
+
+        counter.increment()
+        gauge.set(5)
+        histogram.record(3)
+        histogram.recordSince(Metrics.start(), TimeUnit.MILLISECONDS)
+
+        with(Metrics.snapshot()) {
+            assertThat(getCounter("test.counter")).isEqualTo(0L)
+            assertThat(getGauge("test.gauge")).isEqualTo(0L)
+            assertThat(getHistogram("test.histogram").count).isEqualTo(0L)
+        }
+    }
+
+    @Test
+    fun `histograms summarise their values`() {
+        (1L..100L).forEach { histogram.record(it) }
+
+        with(Metrics.snapshot().getHistogram("test.histogram")) {
+            assertThat(count).isEqualTo(100L)
+            assertThat(sum).isEqualTo(5050L)
+            assertThat(max).isEqualTo(100L)
+            assertThat(mean).isEqualTo(50.5)
+            assertThat(getPercentile(0.5)).isEqualTo(63L)
+            assertThat(getPercentile(0.99)).isEqualTo(100L)
+            assertThat(buckets[1]).isEqualTo(1L)
+            assertThat(buckets[7]).isEqualTo(37L)
+        }
+    }
+
+    @Test
+    fun `histograms are compared with earlier snapshots`() {
+        histogram.record(1000)
+        val earlier = Metrics.snapshot().getHistogram("test.histogram")
+        (1L..10L).forEach { histogram.record(it) }
+
+        with(Metrics.snapshot().getHistogram("test.histogram").since(earlier)) {
+            assertThat(count).isEqualTo(10L)
+            assertThat(sum).isEqualTo(55L)
+            assertThat(max).isEqualTo(15L)
+            assertThat(getPercentile(1.0)).isEqualTo(15L)
+        }
+    }
+
+    @Test
+    fun `empty histograms have no percentiles`() {
+        assertThat(Metrics.snapshot().getHistogram("missing").getPercentile(0.5))
+                .isEqualTo(0L)
+    }
+
+    @Test(expected = IllegalArgumentException::class)
+    fun `percentiles are between 0 and 1`() {
+        Metrics.snapshot().getHistogram("test.histogram").getPercentile(2.0)
+    }
+
+    @Test
+    fun `registering listeners enables metrics`() {
+        Metrics.setEnabled(false)
+        val first = mock<MetricsListener>()
+        val second = mock<MetricsListener>()
+
+        Metrics.register(first)
+        Metrics.register(second)
+        assertThat(Metrics.isEnabled()).isTrue()
+        assertThat(Metrics.listeners()).containsExactly(first, second)
+
+        Metrics.unregister(first)
+        assertThat(Metrics.isEnabled()).isTrue()
+
+        Metrics.unregister(second)
+        assertThat(Metrics.isEnabled()).isFalse()
+        assertThat(Metrics.listeners()).isEmpty()
+    }
+}
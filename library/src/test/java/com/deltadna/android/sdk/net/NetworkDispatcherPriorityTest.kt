@@ -0,0 +1,198 @@
+/*
+ * Copyright (c) 2016 deltaDNA Ltd. All rights reserved.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.deltadna.android.sdk.net
+
+import com.deltadna.android.sdk.listeners.RequestListener
+import com.deltadna.android.sdk.metrics.Metrics
+import com.deltadna.android.sdk.runTasks
+import com.google.common.truth.Truth.assertThat
+import com.nhaarman.mockito_kotlin.any
+import com.nhaarman.mockito_kotlin.mock
+import com.nhaarman.mockito_kotlin.never
+import com.nhaarman.mockito_kotlin.verify
+import org.junit.Before
+import org.junit.Test
+import org.junit.runner.RunWith
+import org.robolectric.RobolectricTestRunner
+
+@RunWith(RobolectricTestRunner::class)
+class NetworkDispatcherPriorityTest {
+    
+    private lateinit var transport: FakeTransport
+    private lateinit var uut: NetworkDispatcher
+    
+    @Before
+    fun before() {
+        transport = FakeTransport()
+        uut = NetworkDispatcher(transport, 1)
+    }
+    
+    @Test
+    fun higherPrioritiesOvertake() {
+        uut.enqueue(request("/first", RequestPriority.PREFETCH), null)
+        uut.enqueue(request("/prefetch", RequestPriority.PREFETCH), null)
+        uut.enqueue(request("/collect", RequestPriority.COLLECT), null)
+        uut.enqueue(request("/config", RequestPriority.CONFIG), null)
+        uut.enqueue(request("/engage", RequestPriority.ENGAGE), null)
+        
+        assertThat(uut.queued()).isEqualTo(4)
+        repeat(4) { transport.complete(200) }
+        
+        assertThat(transport.paths()).containsExactly(
+                "/first",
+                "/engage",
+                "/config",
+                "/collect",
+                "/prefetch").inOrder()
+        assertThat(uut.queued()).isEqualTo(0)
+    }
+    
+    @Test
+    fun samePrioritiesKeepTheirOrder() {
+        uut.enqueue(request("/first", RequestPriority.COLLECT), null)
+        uut.enqueue(request("/second", RequestPriority.COLLECT), null)
+        uut.enqueue(request("/third", RequestPriority.COLLECT), null)
+        
+        repeat(2) { transport.complete(200) }
+        
+        assertThat(transport.paths())
+                .containsExactly("/first", "/second", "/third").inOrder()
+    }
+    
+    @Test
+    fun cancelledRequestsAreNotSent() {
+        val listener = mock<RequestListener<Void>>()
+        
+        uut.enqueue(request("/first", RequestPriority.COLLECT), null)
+        uut.enqueue(request("/cancelled", RequestPriority.COLLECT), listener).cancel()
+        
+        assertThat(uut.queued()).isEqualTo(0)
+        transport.complete(200)
+        runTasks()
+        
+        assertThat(transport.paths()).containsExactly("/first")
+        verify(listener, never()).onCompleted(any())
+        verify(listener, never()).onError(any())
+    }
+    
+    @Test
+    fun cancellingInFlightRequestMakesRoom() {
+        val call = uut.enqueue(request("/first", RequestPriority.COLLECT), null)
+        uut.enqueue(request("/second", RequestPriority.COLLECT), null)
+        
+        call.cancel()
+        
+        assertThat(transport.cancelled).containsExactly("/first")
+        assertThat(transport.paths()).containsExactly("/first", "/second").inOrder()
+    }
+    
+    @Test
+    fun supersededRequestsAreNotSent() {
+        val replaced = mock<RequestListener<Void>>()
+        val replacing = mock<RequestListener<Void>>()
+        
+        uut.enqueue(request("/first", RequestPriority.COLLECT), null)
+        uut.enqueue(request("/old", RequestPriority.CONFIG, "config"), replaced)
+        uut.enqueue(request("/new", RequestPriority.CONFIG, "config"), replacing)
+        
+        assertThat(uut.queued()).isEqualTo(1)
+        repeat(2) { transport.complete(200) }
+        runTasks()
+        
+        assertThat(transport.paths()).containsExactly("/first", "/new").inOrder()
+        verify(replaced).onCompleted(any())
+        verify(replacing).onCompleted(any())
+    }
+    
+    @Test
+    fun cancelledSupersededListenerIsNotCalled() {
+        val replaced = mock<RequestListener<Void>>()
+        val replacing = mock<RequestListener<Void>>()
+        
+        uut.enqueue(request("/first", RequestPriority.COLLECT), null)
+        val call = uut.enqueue(request("/old", RequestPriority.CONFIG, "config"), replaced)
+        uut.enqueue(request("/new", RequestPriority.CONFIG, "config"), replacing)
+        call.cancel()
+        
+        repeat(2) { transport.complete(200) }
+        runTasks()
+        
+        assertThat(transport.paths()).containsExactly("/first", "/new").inOrder()
+        verify(replaced, never()).onCompleted(any())
+        verify(replacing).onCompleted(any())
+    }
+    
+    @Test
+    fun cancelledTrialDoesNotKeepCircuitOpen() {
+        val policy = RequestPolicy.Builder("trial").circuitBreaker(1, 0).build()
+        Metrics.reset()
+        Metrics.setEnabled(true)
+        
+        uut.enqueue(request("/failing", RequestPriority.COLLECT, policy = policy), null)
+        transport.complete(503)
+        uut.enqueue(request("/trial", RequestPriority.COLLECT, policy = policy), null).cancel()
+        uut.enqueue(request("/next", RequestPriority.COLLECT, policy = policy), null)
+        
+        assertThat(transport.cancelled).containsExactly("/trial")
+        assertThat(transport.paths())
+                .containsExactly("/failing", "/trial", "/next").inOrder()
+        assertThat(Metrics.snapshot().getCounter("network.trial.rejected")).isEqualTo(0L)
+        Metrics.setEnabled(false)
+    }
+    
+    private fun request(
+            path: String,
+            priority: RequestPriority,
+            key: String? = null,
+            policy: RequestPolicy = RequestPolicy.DEFAULT) = Request.Builder<Void>()
+            .get()
+            .url("http://localhost$path")
+            .priority(priority)
+            .policy(policy)
+            .apply { if (key != null) supersedes(key) }
+            .build()
+    
+    /**
+     * Transport which only completes requests when told to, in the order
+     * they were started.
+     */
+    private class FakeTransport : HttpTransport {
+        
+        val started = mutableListOf<Pair<HttpRequest, HttpTransport.Callback>>()
+        val cancelled = mutableListOf<String>()
+        private var completed = 0
+        
+        override fun execute(
+                request: HttpRequest,
+                callback: HttpTransport.Callback): HttpTransport.Call {
+            
+            started.add(request to callback)
+            return object : HttpTransport.Call {
+                override fun cancel() {
+                    cancelled.add(request.url.removePrefix("http://localhost"))
+                }
+            }
+        }
+        
+        fun complete(code: Int) {
+            started[completed++].second.onResponse(HttpResponse(code, emptyMap(), null))
+        }
+        
+        fun paths() = started.map { it.first.url.removePrefix("http://localhost") }
+    }
+}
@@ -20,8 +20,10 @@ import android.app.Application
 import com.deltadna.android.sdk.DDNA
 import com.deltadna.android.sdk.consent.ConsentStatus
 import com.deltadna.android.sdk.helpers.Settings
+import com.deltadna.android.sdk.metrics.Metrics
 import com.google.common.truth.Truth.assertThat
 import com.nhaarman.mockito_kotlin.mock
+import com.nhaarman.mockito_kotlin.verify
 import com.nhaarman.mockito_kotlin.whenever
 import com.squareup.okhttp.mockwebserver.MockResponse
 import com.squareup.okhttp.mockwebserver.MockWebServer
@@ -39,6 +41,8 @@ import org.robolectric.RobolectricTestRunner
 import org.robolectric.RuntimeEnvironment
 import java.io.File
 import java.nio.charset.Charset
+import java.security.MessageDigest
+import java.util.concurrent.TimeUnit
 
 @RunWith(RobolectricTestRunner::class)
 class NetworkManagerTest {
@@ -82,6 +86,9 @@ class NetworkManagerTest {
         
         server = MockWebServer()
         server!!.start()
+        
+        Metrics.reset()
+        Metrics.setEnabled(true)
 
         DDNA.initialise(DDNA.Configuration(
             RuntimeEnvironment.application,
@@ -100,6 +107,7 @@ class NetworkManagerTest {
     @After
     fun after() {
         server.shutdown()
+        Metrics.setEnabled(false)
     }
     
     @Test
@@ -173,6 +181,71 @@ class NetworkManagerTest {
         }
     }
     
+    @Test
+    fun collectBulkPayload() {
+        server!!.enqueue(MockResponse().setResponseCode(200))
+        
+        uut = NetworkManager(
+                ENV_KEY,
+                server!!.url(COLLECT).toString(),
+                server!!.url(ENGAGE).toString(),
+                mock(),
+                "hash")
+        uut!!.collect("{\"eventList\":[{\"value\":\"é\"}]}".toByteArray(), null)
+        
+        with(server!!.takeRequest()) {
+            val digest = MessageDigest.getInstance("MD5")
+                    .digest("{\"eventList\":[{\"value\":\"é\"}]}hash".toByteArray())
+                    .joinToString("") { String.format("%02X", it) }
+            
+            assertThat(path).isEqualTo("$COLLECT/$ENV_KEY/bulk/hash/$digest")
+            assertThat(body.readUtf8()).isEqualTo("{\"eventList\":[{\"value\":\"é\"}]}")
+        }
+    }
+    
+    @Test
+    fun collectRetriesServerErrors() {
+        server.enqueue(MockResponse()
+                .setResponseCode(503)
+                .setHeader("Retry-After", "0"))
+        server.enqueue(MockResponse().setResponseCode(200))
+        
+        uut.collect("{\"eventList\":[]}".toByteArray(), null)
+        
+        server.takeRequest(1, TimeUnit.SECONDS)
+        server.takeRequest(1, TimeUnit.SECONDS)
+        Thread.sleep(100)
+        
+        assertThat(server.requestCount).isEqualTo(2)
+        with(Metrics.snapshot()) {
+            assertThat(getCounter("network.collect.requests")).isEqualTo(2L)
+            assertThat(getCounter("network.collect.failures")).isEqualTo(1L)
+            assertThat(getCounter("network.collect.retries")).isEqualTo(1L)
+            assertThat(getHistogram("network.collect.millis").count).isEqualTo(2L)
+        }
+    }
+    
+    @Test
+    fun collectStopsWhileCircuitOpen() {
+        repeat(5) { server.enqueue(MockResponse().setResponseCode(503)) }
+        
+        // each request is retried once, with the fifth failure opening the circuit
+        repeat(3) {
+            uut.collect("{\"eventList\":[]}".toByteArray(), null)
+            server.takeRequest(500, TimeUnit.MILLISECONDS)
+            server.takeRequest(500, TimeUnit.MILLISECONDS)
+            Thread.sleep(100)
+        }
+        uut.collect("{\"eventList\":[]}".toByteArray(), null)
+        
+        assertThat(server.takeRequest(500, TimeUnit.MILLISECONDS)).isNull()
+        assertThat(server.requestCount).isEqualTo(5)
+        with(Metrics.snapshot()) {
+            assertThat(getCounter("network.collect.failures")).isEqualTo(5L)
+            assertThat(getCounter("network.collect.rejected")).isEqualTo(2L)
+        }
+    }
+    
     @Test
     fun collectWithHash() {
         server!!.enqueue(MockResponse().setResponseCode(200))
@@ -254,6 +327,18 @@ class NetworkManagerTest {
         }
     }
     
+    @Test
+    fun prewarmEngage() {
+        server!!.enqueue(MockResponse().setResponseCode(404))
+        
+        uut!!.prewarmEngage()
+        
+        with(server!!.takeRequest()) {
+            assertThat(path).isEqualTo("/")
+            assertThat(method).isEqualTo("HEAD")
+        }
+    }
+    
     @Test
     fun fetch() {
         val dst = File.createTempFile("ddnasdk-test-", ".tmp")
@@ -276,6 +361,40 @@ class NetworkManagerTest {
         assertThat(dst.delete()).isTrue()
     }
     
+    @Test
+    fun requestsGoThroughProvidedTransport() {
+        val requests = mutableListOf<HttpRequest>()
+        val calls = mutableListOf<HttpTransport.Call>()
+        val transport = object : HttpTransport {
+            override fun execute(
+                    request: HttpRequest,
+                    callback: HttpTransport.Callback): HttpTransport.Call {
+                
+                requests.add(request)
+                return mock<HttpTransport.Call>().apply { calls.add(this) }
+            }
+        }
+        val settings = mock<Settings>()
+        whenever(settings.httpTransport).thenReturn(transport)
+        uut = NetworkManager(
+                ENV_KEY,
+                server.url(COLLECT).toString(),
+                server.url(ENGAGE).toString(),
+                settings,
+                null)
+        
+        uut.collect("{\"eventList\":[]}".toByteArray(), null).cancel()
+        
+        assertThat(server.requestCount).isEqualTo(0)
+        with(requests.single()) {
+            assertThat(url).isEqualTo(server.url("$COLLECT/$ENV_KEY/bulk").toString())
+            assertThat(method).isEqualTo("POST")
+            assertThat(String(body!!)).isEqualTo("{\"eventList\":[]}")
+            assertThat(contentType).startsWith("application/json")
+        }
+        verify(calls.single()).cancel()
+    }
+    
     companion object {
         
         private val ENV_KEY = "env_key"
@@ -0,0 +1,133 @@
+/*
+ * Copyright (c) 2016 deltaDNA Ltd. All rights reserved.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.deltadna.android.sdk.net
+
+import com.deltadna.android.sdk.metrics.Metrics
+import com.google.common.collect.Range
+import com.google.common.truth.Truth.assertThat
+import org.junit.Test
+import org.junit.runner.RunWith
+import org.junit.runners.JUnit4
+import java.text.SimpleDateFormat
+import java.util.Date
+import java.util.Locale
+import java.util.TimeZone
+
+@RunWith(JUnit4::class)
+class RequestPolicyTest {
+    
+    @Test
+    fun fixedDelay() {
+        with(RequestPolicy.Builder("test").build()) {
+            assertThat(delay(1, 1000, -1)).isEqualTo(1000L)
+            assertThat(delay(5, 1000, -1)).isEqualTo(1000L)
+        }
+    }
+    
+    @Test
+    fun backoffDoublesWithJitter() {
+        with(RequestPolicy.Builder("test").backoff(10_000).build()) {
+            repeat(100) {
+                assertThat(delay(1, 1000, -1)).isIn(Range.closed(500L, 1000L))
+                assertThat(delay(3, 1000, -1)).isIn(Range.closed(2000L, 4000L))
+                assertThat(delay(10, 1000, -1)).isIn(Range.closed(5000L, 10_000L))
+            }
+        }
+    }
+    
+    @Test
+    fun retryAfterExtendsDelay() {
+        with(RequestPolicy.Builder("test").backoff(10_000).build()) {
+            assertThat(delay(1, 100, 5000)).isEqualTo(5000L)
+            assertThat(delay(1, 100, 60_000)).isEqualTo(10_000L)
+        }
+    }
+    
+    @Test
+    fun serverErrorsRetryable() {
+        with(RequestPolicy.Builder("test").retryServerErrors().build()) {
+            assertThat(isRetryable(503)).isTrue()
+            assertThat(isRetryable(429)).isTrue()
+            assertThat(isRetryable(400)).isFalse()
+            assertThat(isRetryable(200)).isFalse()
+        }
+        
+        assertThat(RequestPolicy.Builder("test").build().isRetryable(503)).isFalse()
+    }
+    
+    @Test
+    fun parseRetryAfter() {
+        val now = 1_500_000_000_000L
+        val date = SimpleDateFormat("EEE, dd MMM yyyy HH:mm:ss zzz", Locale.US)
+                .apply { timeZone = TimeZone.getTimeZone("GMT") }
+                .format(Date(now + 120_000))
+        
+        assertThat(RequestPolicy.parseRetryAfter("30", now)).isEqualTo(30_000L)
+        assertThat(RequestPolicy.parseRetryAfter(date, now)).isEqualTo(120_000L)
+        assertThat(RequestPolicy.parseRetryAfter(null, now)).isEqualTo(-1L)
+        assertThat(RequestPolicy.parseRetryAfter("soon", now)).isEqualTo(-1L)
+    }
+    
+    @Test
+    fun circuitBreakerRejects() {
+        Metrics.reset()
+        Metrics.setEnabled(true)
+        
+        with(RequestPolicy.Builder("test").circuitBreaker(2, 50).build()) {
+            onFailure(0)
+            assertThat(allow()).isTrue()
+            onResponse(503, 0)
+            assertThat(allow()).isFalse()
+            assertThat(Metrics.snapshot().getCounter("network.test.rejected"))
+                    .isEqualTo(1L)
+            
+            Thread.sleep(60)
+            assertThat(allow()).isTrue()
+            assertThat(allow()).isFalse()
+            
+            onResponse(200, 0)
+            assertThat(allow()).isTrue()
+        }
+        
+        Metrics.setEnabled(false)
+    }
+    
+    @Test
+    fun circuitBreakerReopensAfterFailedTrial() {
+        with(CircuitBreaker(1, 50)) {
+            onFailure()
+            assertThat(allow()).isFalse()
+            
+            Thread.sleep(60)
+            assertThat(allow()).isTrue()
+            onFailure()
+            assertThat(allow()).isFalse()
+        }
+    }
+    
+    @Test
+    fun circuitBreakerLetsTrialThroughAfterAbandonedTrial() {
+        with(CircuitBreaker(1, 50)) {
+            onFailure()
+            
+            Thread.sleep(60)
+            assertThat(allow()).isTrue()
+            assertThat(allow()).isFalse()
+            onAbandoned()
+            assertThat(allow()).isTrue()
+        }
+    }
+}
@@ -16,6 +16,7 @@
 
 package com.deltadna.android.sdk.net
 
+import com.deltadna.android.sdk.metrics.Metrics
 import com.google.common.truth.Truth.assertThat
 import com.squareup.okhttp.mockwebserver.MockResponse
 import com.squareup.okhttp.mockwebserver.MockWebServer
@@ -24,7 +25,10 @@ import org.junit.Before
 import org.junit.Test
 import org.junit.runner.RunWith
 import org.junit.runners.JUnit4
+import java.io.IOException
 import java.net.ConnectException
+import java.util.concurrent.ArrayBlockingQueue
+import java.util.concurrent.TimeUnit
 
 @RunWith(JUnit4::class)
 class RequestTest {
@@ -35,12 +39,17 @@ class RequestTest {
     fun before() {
         server = MockWebServer()
         server!!.start()
+        
+        Metrics.reset()
+        Metrics.setEnabled(true)
     }
     
     @After
     fun after() {
         server!!.shutdown()
         server = null
+        
+        Metrics.setEnabled(false)
     }
     
     @Test(expected = IllegalArgumentException::class)
@@ -56,7 +65,7 @@ class RequestTest {
                 .get()
                 .url(server!!.url("/get").toString())
                 .build()
-                .call()
+                .perform()
         
         with(server!!.takeRequest()) {
             assertThat(method).isEqualTo("GET")
@@ -86,7 +95,7 @@ class RequestTest {
                 .url(server!!.url("/post").toString())
                 .build()
                 .setConverter(ResponseBodyConverter.STRING)
-                .call()
+                .perform()
         
         with(server!!.takeRequest()) {
             assertThat(method).isEqualTo("POST")
@@ -115,7 +124,7 @@ class RequestTest {
                 .get()
                 .url(server!!.url("/fail").toString())
                 .build()
-                .call()
+                .perform()
             
         server!!.takeRequest()
         
@@ -127,6 +136,45 @@ class RequestTest {
                 responseBody))
     }
     
+    @Test
+    fun head() {
+        server!!.enqueue(MockResponse().setResponseCode(404))
+        
+        val response = Request.Builder<Void>()
+                .head()
+                .url(server!!.url("/head").toString())
+                .build()
+                .perform()
+        
+        assertThat(server!!.takeRequest().method).isEqualTo("HEAD")
+        assertThat(response.code).isEqualTo(404)
+    }
+    
+    @Test
+    fun connectionIsReused() {
+        val policy = RequestPolicy.Builder("test").build()
+        repeat(3) {
+            server!!.enqueue(MockResponse().setResponseCode(200).setBody("body $it"))
+        }
+        
+        repeat(3) {
+            Request.Builder<Void>()
+                    .get()
+                    .url(server!!.url("/reuse").toString())
+                    .policy(policy)
+                    .build()
+                    .perform()
+        }
+        
+        // each request on the same connection gets the next sequence number
+        assertThat((0 until 3).map { server!!.takeRequest().sequenceNumber })
+                .containsExactly(0, 1, 2).inOrder()
+        with(Metrics.snapshot()) {
+            assertThat(getCounter("network.connections.pooled")).isEqualTo(3L)
+            assertThat(getCounter("network.connections.discarded")).isEqualTo(0L)
+        }
+    }
+    
     @Test(expected = ConnectException::class)
     fun failure() {
         server!!.shutdown()
@@ -135,6 +183,39 @@ class RequestTest {
                 .get()
                 .url(server!!.url("/fail").toString())
                 .build()
-                .call()
+                .perform()
+    }
+    
+    /**
+     * Performs the request through the default transport, the way the
+     * dispatcher does.
+     */
+    private fun <T> Request<T>.perform(): Response<T> {
+        val outcome = ArrayBlockingQueue<Any>(1)
+        
+        begin()
+        transport.execute(http, object : HttpTransport.Callback {
+            override fun onResponse(response: HttpResponse) {
+                outcome.put(response)
+            }
+            
+            override fun onFailure(e: IOException) {
+                outcome.put(e)
+            }
+        })
+        
+        return when (val result = outcome.poll(10, TimeUnit.SECONDS)) {
+            is HttpResponse -> complete(result)
+            is IOException -> {
+                fail()
+                throw result
+            }
+            else -> throw AssertionError("Request timed out")
+        }
+    }
+    
+    companion object {
+        
+        private val transport = UrlConnectionTransport()
     }
 }
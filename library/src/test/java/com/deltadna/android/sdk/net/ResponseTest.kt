@@ -87,7 +87,7 @@ class ResponseTest {
                 assertThat(body).isEqualTo(String(bytes))
                 assertThat(error).isNull()
             }
-            verify(stream, times(input.size + 1)).read()
+            verify(stream, times(2)).read(any<ByteArray>())
             verify(stream).close()
         }
     }
@@ -107,7 +107,7 @@ class ResponseTest {
                 assertThat(body).isNull()
                 assertThat(error).isEqualTo(String(bytes))
             }
-            verify(stream, times(input.size + 1)).read()
+            verify(stream, times(2)).read(any<ByteArray>())
             verify(stream).close()
         }
     }
@@ -0,0 +1,123 @@
+/*
+ * Copyright (c) 2016 deltaDNA Ltd. All rights reserved.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.deltadna.android.sdk.net
+
+import com.google.common.truth.Truth.assertThat
+import com.squareup.okhttp.mockwebserver.MockResponse
+import com.squareup.okhttp.mockwebserver.MockWebServer
+import org.junit.After
+import org.junit.Before
+import org.junit.Test
+import org.junit.runner.RunWith
+import org.junit.runners.JUnit4
+import java.io.IOException
+import java.net.ConnectException
+import java.util.concurrent.CountDownLatch
+import java.util.concurrent.TimeUnit
+
+@RunWith(JUnit4::class)
+class UrlConnectionTransportTest {
+    
+    private lateinit var server: MockWebServer
+    private lateinit var uut: UrlConnectionTransport
+    
+    @Before
+    fun before() {
+        server = MockWebServer()
+        server.start()
+        
+        uut = UrlConnectionTransport()
+    }
+    
+    @After
+    fun after() {
+        server.shutdown()
+    }
+    
+    @Test
+    fun execute() {
+        server.enqueue(MockResponse()
+                .setResponseCode(503)
+                .setHeader("Retry-After", "5")
+                .setBody("unavailable"))
+        
+        val callback = Callback()
+        uut.execute(
+                HttpRequest(
+                        server.url("/post").toString(),
+                        "POST",
+                        mapOf("Accept" to "application/json"),
+                        "{}".toByteArray(),
+                        "application/json",
+                        1000,
+                        1000),
+                callback)
+        
+        with(server.takeRequest()) {
+            assertThat(method).isEqualTo("POST")
+            assertThat(getHeader("Accept")).isEqualTo("application/json")
+            assertThat(getHeader("Content-Type")).isEqualTo("application/json")
+            assertThat(body.readUtf8()).isEqualTo("{}")
+        }
+        assertThat(callback.done.await(1, TimeUnit.SECONDS)).isTrue()
+        with(callback.response!!) {
+            assertThat(code).isEqualTo(503)
+            assertThat(header("retry-after")).isEqualTo("5")
+            assertThat(String(body)).isEqualTo("unavailable")
+        }
+        assertThat(callback.failure).isNull()
+    }
+    
+    @Test
+    fun executeFailure() {
+        server.shutdown()
+        
+        val callback = Callback()
+        uut.execute(
+                HttpRequest(
+                        server.url("/fail").toString(),
+                        "GET",
+                        emptyMap(),
+                        null,
+                        null,
+                        1000,
+                        1000),
+                callback)
+        
+        assertThat(callback.done.await(1, TimeUnit.SECONDS)).isTrue()
+        assertThat(callback.response).isNull()
+        assertThat(callback.failure).isInstanceOf(ConnectException::class.java)
+    }
+    
+    private class Callback : HttpTransport.Callback {
+        
+        val done = CountDownLatch(1)
+        @Volatile var response: HttpResponse? = null
+        @Volatile var failure: IOException? = null
+        
+        override fun onResponse(response: HttpResponse) {
+            this.response = response
+            done.countDown()
+        }
+        
+        override fun onFailure(e: IOException) {
+            failure = e
+            done.countDown()
+        }
+    }
+}
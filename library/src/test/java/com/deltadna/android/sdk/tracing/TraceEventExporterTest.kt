@@ -0,0 +1,101 @@
+/*
+ * Copyright (c) 2018 deltaDNA Ltd. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.deltadna.android.sdk.tracing
+
+import com.google.common.truth.Truth.assertThat
+import org.json.JSONObject
+import org.junit.After
+import org.junit.Before
+import org.junit.Test
+import org.junit.runner.RunWith
+import org.robolectric.RobolectricTestRunner
+
+@RunWith(RobolectricTestRunner::class)
+class TraceEventExporterTest {
+
+    private val exporter = TraceEventExporter()
+
+    @Before
+    fun before() {
+        Tracing.register(exporter)
+    }
+
+    @After
+    fun after() {
+        Tracing.unregister(exporter)
+    }
+
+    @Test
+    fun `spans are exported as trace events`() {
+        Tracing.begin("recordEvent")
+                .arg("eventName", "levelUp \"1\"")
+                .correlate("uuid")
+                .close()
+        Tracing.beginAsync("engage").arg("code", 200).close()
+
+        val events = JSONObject(exporter.export()).getJSONArray("traceEvents")
+        val phases = (0 until events.length()).map { events.getJSONObject(it) }
+
+        with(phases.single { it.getString("ph") == "X" }) {
+            assertThat(getString("name")).isEqualTo("recordEvent")
+            assertThat(getDouble("dur")).isAtLeast(0.0)
+            assertThat(getJSONObject("args").getString("eventName"))
+                    .isEqualTo("levelUp \"1\"")
+            assertThat(getJSONObject("args").getJSONArray("correlationIds").getString(0))
+                    .isEqualTo("uuid")
+        }
+        assertThat(phases.filter { it.getString("name") == "engage" }.map { it.getString("ph") })
+                .containsExactly("b", "e")
+                .inOrder()
+        assertThat(phases.filter { it.getString("ph") == "M" }).hasSize(1)
+    }
+
+    @Test
+    fun `spans sharing a correlation id are joined by flows`() {
+        Tracing.begin("recordEvent").correlate("a").close()
+        Tracing.begin("EventStore.write").correlate("a").correlate("b").close()
+        Tracing.begin("upload").correlate("a").correlate("b").close()
+
+        val events = JSONObject(exporter.export()).getJSONArray("traceEvents")
+        val flows = (0 until events.length())
+                .map { events.getJSONObject(it) }
+                .filter { it.getString("name") == "event" }
+
+        assertThat(flows.filter { it.getString("id") == "a" }.map { it.getString("ph") })
+                .containsExactly("s", "t", "f")
+                .inOrder()
+        assertThat(flows.filter { it.getString("id") == "b" }.map { it.getString("ph") })
+                .containsExactly("s", "f")
+                .inOrder()
+    }
+
+    @Test
+    fun `oldest spans are dropped beyond capacity`() {
+        val exporter = TraceEventExporter(2)
+        Tracing.register(exporter)
+        try {
+            Tracing.begin("1").close()
+            Tracing.begin("2").close()
+            Tracing.begin("3").close()
+        } finally {
+            Tracing.unregister(exporter)
+        }
+
+        assertThat(exporter.spans.map { it.name }).containsExactly("2", "3").inOrder()
+        assertThat(exporter.dropped).isEqualTo(1L)
+    }
+}
@@ -0,0 +1,93 @@
+/*
+ * Copyright (c) 2018 deltaDNA Ltd. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.deltadna.android.sdk.tracing
+
+import com.deltadna.android.sdk.listeners.TraceListener
+import com.google.common.truth.Truth.assertThat
+import com.nhaarman.mockito_kotlin.inOrder
+import com.nhaarman.mockito_kotlin.mock
+import com.nhaarman.mockito_kotlin.never
+import com.nhaarman.mockito_kotlin.verify
+import com.nhaarman.mockito_kotlin.verifyZeroInteractions
+import org.junit.After
+import org.junit.Test
+
+class TracingTest {
+
+    private val listener = mock<TraceListener>()
+
+    @After
+    fun after() {
+        Tracing.unregister(listener)
+    }
+
+    @Test
+    fun `spans are not created while disabled`() {
+        assertThat(Tracing.isEnabled()).isFalse()
+
+        val span = Tracing.begin("span").arg("key", "value").correlate("id")
+        span.close()
+
+        assertThat(span).isSameAs(Span.NONE)
+        assertThat(span.args).isEmpty()
+        assertThat(span.correlationIds).isEmpty()
+        verifyZeroInteractions(listener)
+    }
+
+    @Test
+    fun `listeners see spans begin and finish`() {
+        Tracing.register(listener)
+        assertThat(Tracing.isEnabled()).isTrue()
+
+        val span = Tracing.begin("span")
+        verify(listener).onSpanStarted(span)
+        verify(listener, never()).onSpanFinished(span)
+
+        span.close()
+        span.close()
+        inOrder(listener) {
+            verify(listener).onSpanStarted(span)
+            verify(listener).onSpanFinished(span)
+        }
+        assertThat(span.endNanos).isAtLeast(span.startNanos)
+    }
+
+    @Test
+    fun `listeners registered after a span began do not see it finish`() {
+        val span = Tracing.begin("span")
+        Tracing.register(listener)
+
+        span.close()
+
+        verifyZeroInteractions(listener)
+    }
+
+    @Test
+    fun `spans carry arguments and correlation ids`() {
+        Tracing.register(listener)
+
+        val span = Tracing.beginAsync("span")
+                .arg("key", 1)
+                .correlate("a")
+                .correlate(null)
+                .correlate("b")
+
+        assertThat(span.isAsync).isTrue()
+        assertThat(span.args).containsExactly("key", 1)
+        assertThat(span.correlationIds).containsExactly("a", "b").inOrder()
+    }
+}
@@ -0,0 +1,101 @@
+/*
+ * Copyright (c) 2018 deltaDNA Ltd. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.deltadna.android.sdk.util
+
+import com.deltadna.android.sdk.BuildConfig
+import com.google.common.truth.Truth.assertThat
+import org.junit.After
+import org.junit.Before
+import org.junit.Test
+import org.junit.runner.RunWith
+import org.robolectric.RobolectricTestRunner
+import org.robolectric.shadows.ShadowLog
+
+@RunWith(RobolectricTestRunner::class)
+class LogTest {
+    
+    @Before
+    fun before() {
+        ShadowLog.reset()
+        Log.setLevel(Log.VERBOSE)
+    }
+    
+    @After
+    fun after() {
+        Log.setLevel(Log.VERBOSE)
+    }
+    
+    @Test
+    fun formats() {
+        Log.d(TAG, "one %s", "argument")
+        Log.d(TAG, "%d %s", 2, "arguments")
+        Log.w(TAG, "message")
+        
+        assertThat(ShadowLog.getLogsForTag(TAG).map { it.msg })
+                .containsExactly("one argument", "2 arguments", "message")
+                .inOrder()
+    }
+    
+    @Test
+    fun dropsBelowLevel() {
+        Log.setLevel(Log.INFO)
+        
+        assertThat(Log.isLoggable(Log.DEBUG)).isFalse()
+        assertThat(Log.isLoggable(Log.INFO)).isTrue()
+        
+        Log.v(TAG, "verbose")
+        Log.d(TAG, "debug")
+        Log.i(TAG, "info")
+        Log.w(TAG, "warning")
+        
+        assertThat(ShadowLog.getLogsForTag(TAG).map { it.msg })
+                .containsExactly("info", "warning")
+                .inOrder()
+    }
+    
+    @Test
+    fun defersFormatting() {
+        var formatted = 0
+        val argument = object : Any() {
+            override fun toString() = "argument".also { formatted++ }
+        }
+        
+        Log.setLevel(Log.INFO)
+        Log.v(TAG, "dropped %s", argument)
+        Log.d(TAG, "dropped %s %s", argument, argument)
+        assertThat(formatted).isEqualTo(0)
+        
+        Log.setLevel(Log.VERBOSE)
+        Log.v(TAG, "logged %s", argument)
+        assertThat(formatted).isEqualTo(1)
+    }
+    
+    @Test
+    fun systemLevelFollowsTag() {
+        // everything is loggable while streaming
+        ShadowLog.stream = null
+        assertThat(Log.systemLevel()).isEqualTo(Log.INFO)
+        
+        ShadowLog.setLoggable(BuildConfig.LOG_TAG, Log.DEBUG)
+        assertThat(Log.systemLevel()).isEqualTo(Log.DEBUG)
+    }
+    
+    private companion object {
+        
+        const val TAG = "LogTest"
+    }
+}
@@ -0,0 +1,116 @@
+/*
+ * Copyright (c) 2018 deltaDNA Ltd. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.deltadna.android.sdk
+
+import com.deltadna.android.sdk.benchmark.Suite
+import com.deltadna.android.sdk.helpers.Settings
+import com.nhaarman.mockito_kotlin.mock
+import org.json.JSONArray
+import org.json.JSONObject
+import org.junit.AfterClass
+import org.junit.Test
+import org.junit.runner.RunWith
+import org.robolectric.RobolectricTestRunner
+
+/**
+ * Measures what recording an event costs the calling thread, and the parts
+ * which go into it.
+ */
+@RunWith(RobolectricTestRunner::class)
+class EventBenchmark {
+    
+    @Test
+    fun recordEvent() {
+        val ddna = startSdk()
+        try {
+            suite.measure("recordEvent", 1000) {
+                ddna.recordEvent(BenchmarkEvent("levelUp")
+                        .putParam("userLevel", it % 50)
+                        .putParam("levelUpName", "level"))
+            }
+        } finally {
+            stopSdk()
+        }
+    }
+    
+    @Test
+    fun eventActionWithoutTriggers() {
+        val event = BenchmarkEvent("levelUp")
+        val settings = Settings()
+        
+        // what most recorded events go through, as few have triggers
+        suite.measure("EventAction.run/noTriggers", 10_000) {
+            EventAction(event, EventAction.NO_TRIGGERS, null, settings).run()
+        }
+        suite.measure("EventAction.run/noTriggers/completion", 10_000) {
+            EventAction(event, EventAction.NO_TRIGGERS, null, settings)
+                    .addEvaluateCompleteHandler(COMPLETION)
+                    .run()
+        }
+    }
+    
+    @Test
+    fun paramsPut() {
+        suite.measure("Params.put", 10_000) {
+            Params()
+                    .put("userLevel", it % 50)
+                    .put("userScore", it * 100L)
+                    .put("levelUpName", "level")
+                    .put("tutorial", false)
+        }
+    }
+    
+    @Test
+    fun eventTriggerEvaluate() {
+        // userLevel > 5 and userScore >= 1000, false for every event
+        val trigger = EventTrigger(
+                mock(),
+                0,
+                JSONObject()
+                        .put("eventName", "levelUp")
+                        .put("condition", JSONArray()
+                                .put(JSONObject().put("p", "userLevel"))
+                                .put(JSONObject().put("i", 5))
+                                .put(JSONObject().put("o", "greater than"))
+                                .put(JSONObject().put("p", "userScore"))
+                                .put(JSONObject().put("i", 1000))
+                                .put(JSONObject().put("o", "greater than eq"))
+                                .put(JSONObject().put("o", "and"))),
+                mock())
+        val events = (0 until 100).map {
+            BenchmarkEvent("levelUp")
+                    .putParam("userLevel", it % 50)
+                    .putParam("userScore", 500)
+        }
+        
+        suite.measure("EventTrigger.evaluate", 10_000) {
+            trigger.evaluate(events[it % events.size])
+        }
+    }
+    
+    companion object {
+        
+        private val COMPLETION = EventActionEvaluateCompleteHandler {}
+        
+        private val suite = Suite("events")
+        
+        @AfterClass
+        @JvmStatic
+        fun write() = suite.write()
+    }
+}
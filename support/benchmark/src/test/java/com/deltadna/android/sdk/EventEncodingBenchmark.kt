@@ -0,0 +1,104 @@
+/*
+ * Copyright (c) 2018 deltaDNA Ltd. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.deltadna.android.sdk
+
+import com.deltadna.android.sdk.benchmark.Suite
+import org.json.JSONArray
+import org.json.JSONObject
+import org.junit.AfterClass
+import org.junit.Test
+import org.junit.runner.RunWith
+import org.robolectric.RobolectricTestRunner
+import java.util.UUID
+
+/**
+ * Compares the stored size of events, and the time taken to store and to
+ * read them back for uploading, between the JSON and binary formats.
+ */
+@RunWith(RobolectricTestRunner::class)
+class EventEncodingBenchmark {
+
+    private val events = (0 until EVENTS).map {
+        JSONObject()
+                .put("eventName", if (it % 10 == 0) "transaction" else "levelUp")
+                .put("eventTimestamp", "2018-01-01 00:00:00.000")
+                .put("eventUUID", UUID(0, it.toLong()).toString())
+                .put("sessionID", "6f4b8bd6-2e8f-4b8a-9a0e-3c3b3b4a2f51")
+                .put("userID", "c3e3f3d5-1a4c-4d4b-8f0e-2f1f6c1a7b23")
+                .put("eventParams", params(it)
+                        .put("platform", "ANDROID")
+                        .put("sdkVersion", "Android SDK v5.0.2"))
+    }
+
+    @Test
+    fun `storage size`() {
+        val json = events.sumOf { it.toString().toByteArray().size.toLong() }
+        val compactJson = events.sumOf { CompactEvent.from(it, false).bytes().size.toLong() }
+        val binary = events.sumOf { CompactEvent.from(it, true).bytes().size.toLong() }
+
+        println(String.format("%-14s %8d bytes", "json", json))
+        println(String.format("%-14s %8d bytes (%.0f%%)", "compact json", compactJson, 100.0 * compactJson / json))
+        println(String.format("%-14s %8d bytes (%.0f%%)", "compact binary", binary, 100.0 * binary / json))
+    }
+
+    @Test
+    fun `encode and decode`() {
+        for (encode in listOf(false, true)) {
+            val format = if (encode) "binary" else "json"
+
+            suite.measure("CompactEvent.from/$format", EVENTS) {
+                CompactEvent.from(events[it], encode)
+            }
+
+            val stored = events.map { CompactEvent.from(it, encode) }
+            suite.measure("CompactEvent.json/$format", EVENTS) {
+                stored[it].json()
+            }
+        }
+    }
+
+    private fun params(index: Int) = if (index % 10 == 0) {
+        JSONObject()
+                .put("transactionName", "purchase")
+                .put("transactionType", "PURCHASE")
+                .put("productsReceived", JSONObject().put("items", JSONArray().put(
+                        JSONObject().put("item", JSONObject()
+                                .put("itemName", "sword")
+                                .put("itemType", "weapon")
+                                .put("itemAmount", 1)))))
+                .put("productsSpent", JSONObject()
+                        .put("realCurrency", JSONObject()
+                                .put("realCurrencyType", "USD")
+                                .put("realCurrencyAmount", 99)))
+    } else {
+        JSONObject()
+                .put("userLevel", index % 50)
+                .put("userScore", index * 100L)
+                .put("levelUpName", "level ${index % 50}")
+    }
+
+    companion object {
+
+        private const val EVENTS = 2000
+
+        private val suite = Suite("encoding")
+
+        @AfterClass
+        @JvmStatic
+        fun write() = suite.write()
+    }
+}
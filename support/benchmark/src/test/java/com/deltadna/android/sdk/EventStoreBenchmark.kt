@@ -0,0 +1,79 @@
+/*
+ * Copyright (c) 2018 deltaDNA Ltd. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.deltadna.android.sdk
+
+import com.deltadna.android.sdk.benchmark.Suite
+import com.deltadna.android.sdk.helpers.Settings
+import org.junit.AfterClass
+import org.junit.Test
+import org.junit.runner.RunWith
+import org.robolectric.RobolectricTestRunner
+import org.robolectric.RuntimeEnvironment
+
+/**
+ * Measures how long events take to get written to storage with each of the
+ * durability modes, which depends on the storage of the machine running
+ * it.
+ */
+@RunWith(RobolectricTestRunner::class)
+class EventStoreBenchmark {
+    
+    private val application by lazy { RuntimeEnvironment.application }
+    
+    private val event = "{\"eventName\":\"levelUp\",\"eventParams\":{\"userLevel\":1}}"
+    
+    @Test
+    fun `write throughput`() {
+        Settings.EventDurability.values().forEach { durability ->
+            val settings = Settings()
+                    .setEventDurability(durability)
+                    .setEventBufferCapacity(4096)
+            settings.isUseInternalStorageForEvents = true
+            
+            val database = DatabaseHelper(application)
+            val store = EventStore(application, database, settings, Preferences(application))
+                    .apply { prepare() }
+            
+            // per event, including waiting for all of them to be written
+            val expected = EVENTS.toLong() * event.toByteArray().size
+            suite.measure(
+                    "EventStore.add/$durability",
+                    EVENTS,
+                    iterations = 10,
+                    setUp = { store.clear() }) {
+                store.add(event)
+                if (it == EVENTS - 1) {
+                    while (database.eventsSize < expected) Thread.sleep(1)
+                }
+            }
+            
+            store.clear()
+            database.close()
+        }
+    }
+    
+    companion object {
+        
+        private const val EVENTS = 2000
+        
+        private val suite = Suite("store")
+        
+        @AfterClass
+        @JvmStatic
+        fun write() = suite.write()
+    }
+}
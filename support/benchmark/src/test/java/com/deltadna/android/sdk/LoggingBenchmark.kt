@@ -0,0 +1,83 @@
+/*
+ * Copyright (c) 2018 deltaDNA Ltd. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.deltadna.android.sdk
+
+import com.deltadna.android.sdk.benchmark.Suite
+import com.deltadna.android.sdk.util.Log
+import org.json.JSONObject
+import org.junit.After
+import org.junit.AfterClass
+import org.junit.Test
+import org.junit.runner.RunWith
+import org.robolectric.RobolectricTestRunner
+import org.robolectric.shadows.ShadowLog
+
+/**
+ * Compares the time and allocations of logging an event the way the SDK
+ * used to, by concatenating the message up front, against the deferred
+ * formatting of [Log] when the message is below the level being logged.
+ */
+@RunWith(RobolectricTestRunner::class)
+class LoggingBenchmark {
+    
+    private val event = JSONObject()
+            .put("eventName", "levelUp")
+            .put("eventTimestamp", "2018-01-01 00:00:00.000")
+            .put("eventUUID", "00000000-0000-0000-0000-000000000000")
+            .put("eventParams", JSONObject()
+                    .put("userLevel", 10)
+                    .put("levelUpName", "level 10"))
+    
+    @After
+    fun after() {
+        Log.setLevel(Log.VERBOSE)
+    }
+    
+    @Test
+    fun concatenated() {
+        suite.measure("log/concatenated", OPERATIONS, setUp = { ShadowLog.reset() }) {
+            android.util.Log.v(TAG, "Adding $event")
+        }
+    }
+    
+    @Test
+    fun deferred() {
+        Log.setLevel(Log.INFO)
+        suite.measure("log/deferred", OPERATIONS) {
+            Log.v(TAG, "Adding %s", event)
+        }
+    }
+    
+    @Test
+    fun payloads() {
+        suite.measure("log/payloads", OPERATIONS, setUp = { ShadowLog.reset() }) {
+            if (Log.PAYLOADS) Log.v(TAG, "Adding %s", event)
+        }
+    }
+    
+    companion object {
+        
+        private const val TAG = "deltaDNA LoggingBenchmark"
+        private const val OPERATIONS = 10_000
+        
+        private val suite = Suite("logging")
+        
+        @AfterClass
+        @JvmStatic
+        fun write() = suite.write()
+    }
+}
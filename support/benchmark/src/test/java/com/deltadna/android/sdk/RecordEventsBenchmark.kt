@@ -0,0 +1,98 @@
+/*
+ * Copyright (c) 2018 deltaDNA Ltd. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.deltadna.android.sdk
+
+import com.deltadna.android.sdk.benchmark.Suite
+import org.junit.AfterClass
+import org.junit.Test
+import org.junit.runner.RunWith
+import org.robolectric.RobolectricTestRunner
+import org.robolectric.RuntimeEnvironment
+
+/**
+ * Compares recording the events at the end of a level one at a time with
+ * [DDNA.recordEvent] against recording them together with
+ * [DDNA.recordEvents], both for what it costs the calling thread and
+ * including waiting for the events to be written to storage.
+ */
+@RunWith(RobolectricTestRunner::class)
+class RecordEventsBenchmark {
+    
+    private val application by lazy { RuntimeEnvironment.application }
+    
+    private val levels = (0 until LEVELS).map { level ->
+        (0 until EVENTS).map {
+            BenchmarkEvent("levelTelemetry")
+                    .putParam("level", level)
+                    .putParam("sample", it)
+                    .putParam("position", "12.5,40.25")
+                    .putParam("health", 100 - it % 100)
+        }
+    }
+    
+    @Test
+    fun loop() {
+        measure("recordEvents/loop") { ddna, events ->
+            events.forEach { ddna.recordEvent(it) }
+        }
+    }
+    
+    @Test
+    fun batch() {
+        measure("recordEvents/batch") { ddna, events ->
+            ddna.recordEvents(events)
+        }
+    }
+    
+    private fun measure(name: String, record: (DDNA, List<BenchmarkEvent>) -> Any?) {
+        val ddna = startSdk()
+        val store = tracking().read<EventStore>("eventStore")
+        val database = DatabaseHelper(application)
+        try {
+            // per level of events
+            suite.measure("$name/record", LEVELS, setUp = { store.clear() }) {
+                record(ddna, levels[it])
+            }
+            
+            suite.measure("$name/stored", LEVELS, setUp = { store.clear() }) {
+                record(ddna, levels[it])
+                if (it == LEVELS - 1) {
+                    while (database.getAllEventRows(-1).use { rows -> rows.count }
+                            < LEVELS * EVENTS) {
+                        Thread.sleep(1)
+                    }
+                }
+            }
+        } finally {
+            store.clear()
+            database.close()
+            stopSdk()
+        }
+    }
+    
+    companion object {
+        
+        private const val LEVELS = 10
+        private const val EVENTS = 200
+        
+        private val suite = Suite("recordEvents")
+        
+        @AfterClass
+        @JvmStatic
+        fun write() = suite.write()
+    }
+}
@@ -0,0 +1,382 @@
+/*
+ * Copyright (c) 2018 deltaDNA Ltd. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.deltadna.android.sdk
+
+import com.deltadna.android.sdk.consent.ConsentStatus
+import com.deltadna.android.sdk.net.PlainHttpTransport
+import com.squareup.okhttp.mockwebserver.Dispatcher
+import com.squareup.okhttp.mockwebserver.MockResponse
+import com.squareup.okhttp.mockwebserver.MockWebServer
+import com.squareup.okhttp.mockwebserver.RecordedRequest
+import com.squareup.okhttp.mockwebserver.SocketPolicy
+import org.json.JSONArray
+import org.json.JSONObject
+import org.junit.After
+import org.junit.Before
+import org.junit.Test
+import org.junit.runner.RunWith
+import org.robolectric.RobolectricTestRunner
+import org.robolectric.RuntimeEnvironment
+import org.robolectric.shadows.ShadowLooper
+import java.io.File
+import java.lang.management.ManagementFactory
+import java.util.Random
+import java.util.concurrent.ConcurrentHashMap
+import java.util.concurrent.TimeUnit
+import java.util.concurrent.atomic.AtomicLong
+
+/**
+ * Drives the SDK for a while at a steady rate of events, against a local
+ * server standing in for collect and Engage which adds latency and fails
+ * some of the requests, and samples how it keeps up over time.
+ *
+ *     ./gradlew :benchmark:soak -Psoak.durationSeconds=600 -Psoak.failureRate=0.2
+ *
+ * Each recorded event carries a sequence number, which the server uses for
+ * working out the upload lag and which events never arrived. The main
+ * looper is idled by the test thread, in step with the real clock, so that
+ * callbacks get delivered like they would be on a device.
+ */
+@RunWith(RobolectricTestRunner::class)
+class SoakBenchmark {
+
+    private val config = Config()
+
+    private val server = MockWebServer()
+    private val random = Random(config.seed)
+
+    /**
+     * When each event which has not arrived yet was recorded, by its
+     * sequence number.
+     */
+    private val pending = ConcurrentHashMap<Long, Long>()
+    private val lags = mutableListOf<Long>()
+    private val received = AtomicLong()
+    private val duplicates = AtomicLong()
+    private val collectRequests = AtomicLong()
+    private val engageRequests = AtomicLong()
+    private val injectedFailures = AtomicLong()
+
+    @Before
+    fun before() {
+        server.setDispatcher(SoakDispatcher())
+        server.start()
+    }
+
+    @After
+    fun after() {
+        stopSdk()
+        server.shutdown()
+    }
+
+    @Test
+    fun soak() {
+        DDNA.initialise(DDNA.Configuration(
+                RuntimeEnvironment.application,
+                "environmentKey",
+                server.url("/collect").toString(),
+                server.url("/engage").toString())
+                .withSettings {
+                    it.setHttpTransport(PlainHttpTransport())
+                    it.setBackgroundEventUploadStartDelaySeconds(config.uploadSeconds)
+                    it.setBackgroundEventUploadRepeatRateSeconds(config.uploadSeconds)
+                })
+        DDNA.instance().consentTracker.exportConsentStatus = ConsentStatus.consentGiven
+        DDNA.instance().consentTracker.useConsentStatus = ConsentStatus.consentGiven
+        DDNA.instance().startSdk()
+        tracking().awaitInitialisation()
+
+        println("soak: $config")
+        val samples = JSONArray()
+        val sampler = Sampler()
+
+        // recording at a steady rate
+        val start = System.nanoTime()
+        var recorded = 0L
+        var nextSample = config.sampleSeconds.toDouble()
+        while (true) {
+            val elapsed = seconds(start)
+            if (elapsed >= config.durationSeconds) break
+
+            val due = (elapsed * config.eventsPerSecond).toLong()
+            while (recorded < due) record(recorded++)
+
+            tick()
+            if (elapsed >= nextSample) {
+                samples.put(sampler.sample(elapsed, recorded))
+                nextSample += config.sampleSeconds
+            }
+        }
+
+        // draining what is left
+        DDNA.instance().upload()
+        val recordingEnded = System.nanoTime()
+        while (     received.get() < recorded
+                    && seconds(recordingEnded) < config.drainSeconds) {
+            tick()
+
+            val elapsed = seconds(start)
+            if (elapsed >= nextSample) {
+                samples.put(sampler.sample(elapsed, recorded))
+                nextSample += config.sampleSeconds
+            }
+        }
+        samples.put(sampler.sample(seconds(start), recorded))
+
+        val summary = JSONObject()
+                .put("recorded", recorded)
+                .put("received", received.get())
+                .put("dropped", recorded - received.get())
+                .put("duplicates", duplicates.get())
+                .put("drainSeconds", seconds(recordingEnded))
+                .put("collectRequests", collectRequests.get())
+                .put("engageRequests", engageRequests.get())
+                .put("injectedFailures", injectedFailures.get())
+        println("soak: $summary")
+
+        write(JSONObject()
+                .put("suite", "soak")
+                .put("commit", System.getProperty("benchmark.commit", ""))
+                .put("config", config.toJson())
+                .put("samples", samples)
+                .put("summary", summary))
+    }
+
+    private fun record(sequence: Long) {
+        pending[sequence] = System.nanoTime()
+
+        DDNA.instance()
+                .recordEvent(BenchmarkEvent(EVENT)
+                        .putParam("soakSequence", sequence)
+                        .putParam("userLevel", (sequence % LEVELS).toInt()))
+                .add(EventActionHandler.GameParametersHandler {})
+                .run()
+    }
+
+    private fun tick() {
+        Thread.sleep(TICK_MILLIS)
+        ShadowLooper.idleMainLooper(TICK_MILLIS, TimeUnit.MILLISECONDS)
+    }
+
+    private fun triggers() = JSONArray().apply {
+        for (i in 0 until config.triggers) {
+            put(JSONObject()
+                    .put("eventName", EVENT)
+                    .put("priority", i)
+                    .put("campaignID", i)
+                    .put("variantID", i)
+                    .put("condition", JSONArray()
+                            .put(JSONObject().put("p", "userLevel"))
+                            .put(JSONObject().put("i", (i * 7) % LEVELS))
+                            .put(JSONObject().put("o", "equal to")))
+                    .put("response", JSONObject()
+                            .put("parameters", JSONObject().put("reward", i))))
+        }
+    }
+
+    private fun write(results: JSONObject) {
+        val dir = File(System.getProperty("benchmark.output", "build/benchmarks"), "soak")
+        dir.mkdirs()
+
+        val file = File(dir, "soak-${System.currentTimeMillis()}.json")
+        file.writeText(results.toString(2))
+        println("soak: wrote $file")
+    }
+
+    private inner class SoakDispatcher : Dispatcher() {
+
+        override fun dispatch(request: RecordedRequest): MockResponse {
+            val path = request.path
+            val body = request.body.readUtf8()
+
+            return when {
+                path.startsWith("/collect") -> collect(body)
+                path.startsWith("/engage") -> engage(body)
+                else -> MockResponse().setResponseCode(404)
+            }
+        }
+
+        private fun collect(body: String): MockResponse {
+            collectRequests.incrementAndGet()
+
+            val roll = synchronized(random) { random.nextDouble() }
+            if (roll < config.failureRate / 2) {
+                injectedFailures.incrementAndGet()
+                return MockResponse().setSocketPolicy(SocketPolicy.DISCONNECT_AT_START)
+            } else if (roll < config.failureRate) {
+                injectedFailures.incrementAndGet()
+                return delayed(MockResponse().setResponseCode(503))
+            }
+
+            val now = System.nanoTime()
+            val events = JSONObject(body).getJSONArray("eventList")
+            for (i in 0 until events.length()) {
+                val sequence = events
+                        .getJSONObject(i)
+                        .optJSONObject("eventParams")
+                        ?.optLong("soakSequence", -1)
+                        ?: -1
+                if (sequence < 0) continue
+
+                val recordedAt = pending.remove(sequence)
+                if (recordedAt != null) {
+                    received.incrementAndGet()
+                    synchronized(lags) {
+                        lags.add(TimeUnit.NANOSECONDS.toMillis(now - recordedAt))
+                    }
+                } else {
+                    duplicates.incrementAndGet()
+                }
+            }
+
+            return delayed(MockResponse().setResponseCode(204))
+        }
+
+        private fun engage(body: String): MockResponse {
+            engageRequests.incrementAndGet()
+
+            val parameters = JSONObject()
+            if (JSONObject(body).optString("decisionPoint") == "config") {
+                parameters.put("triggers", triggers())
+            }
+
+            return delayed(MockResponse()
+                    .setResponseCode(200)
+                    .setBody(JSONObject().put("parameters", parameters).toString()))
+        }
+
+        private fun delayed(response: MockResponse): MockResponse {
+            if (config.latencyMillis <= 0) return response
+
+            // jitter of up to half the latency either way
+            val jitter = synchronized(random) {
+                random.nextInt(config.latencyMillis + 1) - config.latencyMillis / 2
+            }
+            return response.setBodyDelay(
+                    (config.latencyMillis + jitter).toLong(),
+                    TimeUnit.MILLISECONDS)
+        }
+    }
+
+    private inner class Sampler {
+
+        private var lastSeconds = 0.0
+        private var lastReceived = 0L
+        private var lastAllocated = allocatedBytes()
+
+        fun sample(seconds: Double, recorded: Long): JSONObject {
+            val lags = synchronized(this@SoakBenchmark.lags) {
+                val copy = this@SoakBenchmark.lags.toLongArray()
+                this@SoakBenchmark.lags.clear()
+                copy
+            }.apply { sort() }
+
+            val received = received.get()
+            val allocated = allocatedBytes()
+            val runtime = Runtime.getRuntime()
+
+            val sample = JSONObject()
+                    .put("seconds", seconds)
+                    .put("recorded", recorded)
+                    .put("received", received)
+                    .put("pending", pending.size)
+                    .put("throughput", (received - lastReceived) / (seconds - lastSeconds))
+                    .put("lagP50Millis", percentile(lags, 0.5))
+                    .put("lagP99Millis", percentile(lags, 0.99))
+                    .put("lagMaxMillis", if (lags.isEmpty()) 0L else lags.last())
+                    .put("storeBytes", storeBytes())
+                    .put("heapBytes", runtime.totalMemory() - runtime.freeMemory())
+                    // threads which have finished drop out of the total
+                    .put("allocatedBytes", Math.max(0L, allocated - lastAllocated))
+                    .put("collectRequests", collectRequests.get())
+                    .put("injectedFailures", injectedFailures.get())
+            println("soak: $sample")
+
+            lastSeconds = seconds
+            lastReceived = received
+            lastAllocated = allocated
+
+            return sample
+        }
+
+        private fun percentile(sorted: LongArray, percentile: Double) =
+                if (sorted.isEmpty()) 0L
+                else sorted[Math.min(sorted.size - 1, (sorted.size * percentile).toInt())]
+
+        private fun storeBytes(): Long {
+            val store = tracking().read<EventStore>("eventStore")
+            return store.read<DatabaseHelper>("db").eventsSize
+        }
+
+        /**
+         * @return bytes allocated by the threads which are alive, or -1 if
+         * the JVM does not keep track of them
+         */
+        private fun allocatedBytes(): Long {
+            val threads = ManagementFactory.getThreadMXBean()
+                    as? com.sun.management.ThreadMXBean
+                    ?: return -1
+
+            return threads
+                    .getThreadAllocatedBytes(threads.allThreadIds)
+                    .filter { it > 0 }
+                    .sum()
+        }
+    }
+
+    /**
+     * Read from the `soak.*` system properties.
+     */
+    private class Config {
+
+        val durationSeconds = property("durationSeconds", 60)
+        val eventsPerSecond = property("eventsPerSecond", 50)
+        val triggers = property("triggers", 10)
+        val latencyMillis = property("latencyMillis", 100)
+        val failureRate = System.getProperty("soak.failureRate", "0.05").toDouble()
+        val uploadSeconds = property("uploadSeconds", 5)
+        val sampleSeconds = property("sampleSeconds", 5)
+        val drainSeconds = property("drainSeconds", 60)
+        val seed = property("seed", 0).toLong()
+
+        fun toJson(): JSONObject = JSONObject()
+                .put("durationSeconds", durationSeconds)
+                .put("eventsPerSecond", eventsPerSecond)
+                .put("triggers", triggers)
+                .put("latencyMillis", latencyMillis)
+                .put("failureRate", failureRate)
+                .put("uploadSeconds", uploadSeconds)
+                .put("sampleSeconds", sampleSeconds)
+                .put("drainSeconds", drainSeconds)
+                .put("seed", seed)
+
+        override fun toString() = toJson().toString()
+
+        private fun property(name: String, default: Int) =
+                System.getProperty("soak.$name", default.toString()).toInt()
+    }
+
+    companion object {
+
+        private const val EVENT = "soakEvent"
+        private const val LEVELS = 50
+        private const val TICK_MILLIS = 10L
+
+        private fun seconds(since: Long) =
+                (System.nanoTime() - since) / TimeUnit.SECONDS.toNanos(1).toDouble()
+    }
+}
@@ -0,0 +1,73 @@
+/*
+ * Copyright (c) 2018 deltaDNA Ltd. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.deltadna.android.sdk
+
+import com.deltadna.android.sdk.benchmark.Suite
+import org.junit.AfterClass
+import org.junit.Test
+import org.junit.runner.RunWith
+import org.robolectric.RobolectricTestRunner
+
+/**
+ * Measures the time taken by [DDNA.initialise] followed by [DDNA.startSdk],
+ * which is what an application pays for on its main thread during startup,
+ * along with the time until the storage has been prepared in the background.
+ */
+@RunWith(RobolectricTestRunner::class)
+class StartupBenchmark {
+    
+    @Test
+    fun `initialise and start`() {
+        // includes stopping, which does not take long in comparison
+        suite.measure("initialise+startSdk/prepared", 1, iterations = ITERATIONS) {
+            startSdk().also { stopSdk() }
+        }
+    }
+    
+    @Test
+    fun `initialise and start, main thread`() {
+        var started = false
+        suite.measure(
+                "initialise+startSdk/main thread",
+                1,
+                iterations = ITERATIONS,
+                setUp = {
+                    if (started) {
+                        tracking().awaitInitialisation()
+                        stopSdk()
+                    }
+                }) {
+            started = true
+            initialise().startSdk()
+        }
+        
+        tracking().awaitInitialisation()
+        stopSdk()
+    }
+    
+    companion object {
+        
+        private const val ITERATIONS = 50
+        
+        private val suite = Suite("startup")
+        
+        @AfterClass
+        @JvmStatic
+        fun write() = suite.write()
+    }
+}
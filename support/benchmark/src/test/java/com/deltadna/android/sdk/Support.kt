@@ -0,0 +1,67 @@
+/*
+ * Copyright (c) 2018 deltaDNA Ltd. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.deltadna.android.sdk
+
+import com.deltadna.android.sdk.consent.ConsentStatus
+import org.robolectric.RuntimeEnvironment
+
+class BenchmarkEvent(name: String) : Event<BenchmarkEvent>(name)
+
+fun initialise(): DDNA {
+    DDNA.initialise(DDNA.Configuration(
+            RuntimeEnvironment.application,
+            "environmentKey",
+            "http://localhost/collect",
+            "http://localhost/engage"))
+    DDNA.instance().consentTracker.exportConsentStatus = ConsentStatus.consentGiven
+    DDNA.instance().consentTracker.useConsentStatus = ConsentStatus.consentGiven
+    
+    return DDNA.instance()
+}
+
+/**
+ * Initialises and starts the SDK, waiting until its storage has been
+ * prepared.
+ */
+fun startSdk(): DDNA {
+    initialise().startSdk()
+    tracking().awaitInitialisation()
+    
+    return DDNA.instance()
+}
+
+fun stopSdk() {
+    DDNA.instance().stopSdk()
+    DDNA::class.java.getDeclaredField("instance").apply {
+        isAccessible = true
+        set(null, null)
+    }
+}
+
+fun tracking(): DDNAImpl = DDNA.instance().let { ddna ->
+    ddna.javaClass.getDeclaredField("tracking").let {
+        it.isAccessible = true
+        it.get(ddna) as DDNAImpl
+    }
+}
+
+@Suppress("UNCHECKED_CAST")
+fun <T> Any.read(field: String): T = javaClass.getDeclaredField(field).let {
+    it.isAccessible = true
+    it.get(this) as T
+}
@@ -0,0 +1,126 @@
+/*
+ * Copyright (c) 2018 deltaDNA Ltd. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.deltadna.android.sdk
+
+import com.deltadna.android.sdk.benchmark.Suite
+import com.deltadna.android.sdk.helpers.Settings
+import com.deltadna.android.sdk.util.CloseableIterator
+import org.json.JSONObject
+import org.junit.After
+import org.junit.AfterClass
+import org.junit.Test
+import org.junit.runner.RunWith
+import org.robolectric.RobolectricTestRunner
+import org.robolectric.RuntimeEnvironment
+import java.util.concurrent.atomic.AtomicReference
+
+/**
+ * Measures reading stored events back for an upload, from querying their
+ * rows to assembling the body of the request.
+ */
+@RunWith(RobolectricTestRunner::class)
+class UploadBenchmark {
+    
+    private val application by lazy { RuntimeEnvironment.application }
+    private val database by lazy { DatabaseHelper(application) }
+    
+    @After
+    fun after() {
+        database.close()
+    }
+    
+    @Test
+    fun getEventRows() {
+        val store = store(Settings.EventStorageFormat.JSON)
+        
+        suite.measure("DatabaseHelper.getEventRows", 100) {
+            database.eventRows.use { cursor ->
+                var rows = 0
+                while (cursor.moveToNext()) rows++
+                rows
+            }
+        }
+        
+        store.clear()
+    }
+    
+    @Test
+    fun writePayload() {
+        Settings.EventStorageFormat.values().forEach { format ->
+            val store = store(format)
+            
+            suite.measure("EventHandler.writePayload/$format", 10) {
+                val items = store.items()
+                try {
+                    val payload = BulkPayload(64 * 1024)
+                    EventHandler.writePayload(
+                            items,
+                            payload,
+                            AtomicReference(CloseableIterator.Mode.ALL))
+                    payload.position()
+                } finally {
+                    items.close(CloseableIterator.Mode.NONE)
+                }
+            }
+            
+            store.clear()
+        }
+    }
+    
+    /**
+     * @return a store with [EVENTS] events written to it
+     */
+    private fun store(format: Settings.EventStorageFormat): EventStore {
+        val settings = Settings()
+                .setEventStorageFormat(format)
+                .setEventBufferCapacity(EVENTS)
+        settings.isUseInternalStorageForEvents = true
+        
+        val store = EventStore(application, database, settings, Preferences(application))
+                .apply { prepare() }
+        store.clear()
+        
+        repeat(EVENTS) { store.add(event(it), false) }
+        while (database.eventRows.use { it.count } < EVENTS) Thread.sleep(1)
+        
+        return store
+    }
+    
+    private fun event(index: Int) = JSONObject()
+            .put("eventName", "levelUp")
+            .put("eventTimestamp", "2018-01-01 00:00:00.000")
+            .put("eventUUID", "00000000-0000-0000-0000-%012d".format(index))
+            .put("sessionID", "6f4b8bd6-2e8f-4b8a-9a0e-3c3b3b4a2f51")
+            .put("userID", "c3e3f3d5-1a4c-4d4b-8f0e-2f1f6c1a7b23")
+            .put("eventParams", JSONObject()
+                    .put("userLevel", index % 50)
+                    .put("userScore", index * 100L)
+                    .put("platform", "ANDROID")
+                    .put("sdkVersion", "Android SDK v5.0.2"))
+    
+    companion object {
+        
+        private const val EVENTS = 500
+        
+        private val suite = Suite("upload")
+        
+        @AfterClass
+        @JvmStatic
+        fun write() = suite.write()
+    }
+}
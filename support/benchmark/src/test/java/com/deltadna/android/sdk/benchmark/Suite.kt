@@ -0,0 +1,178 @@
+/*
+ * Copyright (c) 2018 deltaDNA Ltd. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.deltadna.android.sdk.benchmark
+
+import org.json.JSONArray
+import org.json.JSONObject
+import java.io.File
+import java.lang.management.ManagementFactory
+import java.util.Locale
+
+/**
+ * Minimal harness along the lines of JMH, for benchmarks which have to run
+ * under Robolectric.
+ *
+ * Each benchmark is warmed up, and then measured over a number of
+ * iterations of a fixed number of operations, giving a sample of the time
+ * per operation for each iteration, along with the bytes allocated per
+ * operation where the JVM can tell. The results of a suite are written as
+ * JSON, along with the commit they were measured at, so that they can be
+ * compared with the `compareBenchmarks` task.
+ */
+class Suite(private val name: String) {
+    
+    private val results = mutableListOf<Result>()
+    
+    /**
+     * Consumes what the operations return so that the JIT cannot remove
+     * them.
+     */
+    @Volatile
+    private var sink = 0
+    
+    /**
+     * @param operations    operations per iteration
+     * @param setUp         run before each iteration, outside of the
+     *                      measurement
+     * @param operation     the operation, given its index in the iteration
+     */
+    fun measure(
+            name: String,
+            operations: Int,
+            warmup: Int = WARMUP,
+            iterations: Int = ITERATIONS,
+            setUp: () -> Unit = {},
+            operation: (Int) -> Any?): Result {
+        
+        val samples = DoubleArray(iterations)
+        var allocated = 0L
+        repeat(warmup + iterations) { iteration ->
+            setUp()
+            
+            var consumed = 0
+            val allocatedBefore = allocatedBytes()
+            val before = System.nanoTime()
+            for (i in 0 until operations) {
+                consumed += operation(i).hashCode()
+            }
+            val elapsed = System.nanoTime() - before
+            val allocatedAfter = allocatedBytes()
+            sink += consumed
+            
+            if (iteration >= warmup) {
+                samples[iteration - warmup] = elapsed.toDouble() / operations
+                allocated += allocatedAfter - allocatedBefore
+            }
+        }
+        
+        val allocatedPerOp = if (allocatedBytes() < 0) {
+            Double.NaN
+        } else {
+            allocated.toDouble() / (iterations.toLong() * operations)
+        }
+        
+        return Result(name, operations, samples, allocatedPerOp).also {
+            results.add(it)
+            println(it)
+        }
+    }
+    
+    /**
+     * Writes the results to the directory given by the
+     * `benchmark.output` property, if set.
+     */
+    fun write() {
+        val output = System.getProperty("benchmark.output") ?: return
+        val dir = File(output).apply { mkdirs() }
+        
+        File(dir, "$name.json").writeText(JSONObject()
+                .put("suite", name)
+                .put("commit", System.getProperty("benchmark.commit", ""))
+                .put("timestamp", System.currentTimeMillis())
+                .put("jvm", System.getProperty("java.vm.name")
+                        + ' '
+                        + System.getProperty("java.version"))
+                .put("results", JSONArray().apply {
+                    results.forEach { put(it.json()) }
+                })
+                .toString(2))
+    }
+    
+    class Result(
+            val name: String,
+            val operations: Int,
+            samples: DoubleArray,
+            /**
+             * Bytes allocated by the measuring thread per operation, or
+             * `NaN` if the JVM does not count them.
+             */
+            val allocatedPerOp: Double = Double.NaN) {
+        
+        private val sorted = samples.sortedArray()
+        
+        val median get() = sorted[sorted.size / 2]
+        val p90 get() = sorted[sorted.size * 9 / 10]
+        val min get() = sorted.first()
+        val max get() = sorted.last()
+        val mean get() = sorted.average()
+        val stdDev get() = Math.sqrt(sorted.map { (it - mean) * (it - mean) }.average())
+        
+        fun json(): JSONObject = JSONObject()
+                .put("name", name)
+                .put("unit", "ns/op")
+                .put("operations", operations)
+                .put("iterations", sorted.size)
+                .put("median", median)
+                .put("p90", p90)
+                .put("min", min)
+                .put("max", max)
+                .put("mean", mean)
+                .put("stdDev", stdDev)
+                .apply {
+                    if (!allocatedPerOp.isNaN()) put("allocatedBytesPerOp", allocatedPerOp)
+                }
+        
+        override fun toString() = String.format(
+                Locale.US,
+                "%-32s median %12.1f ns/op  p90 %12.1f  min %12.1f  ±%.1f%%  %8.1f B/op",
+                name,
+                median,
+                p90,
+                min,
+                100 * stdDev / mean,
+                allocatedPerOp)
+    }
+    
+    private companion object {
+        
+        const val WARMUP = 5
+        const val ITERATIONS = 20
+        
+        private val threads = ManagementFactory.getThreadMXBean()
+                as? com.sun.management.ThreadMXBean
+        
+        /**
+         * @return the bytes allocated by the current thread so far, or a
+         * negative value if not supported
+         */
+        fun allocatedBytes(): Long = threads
+                ?.takeIf { it.isThreadAllocatedMemorySupported }
+                ?.getThreadAllocatedBytes(Thread.currentThread().id)
+                ?: -1
+    }
+}
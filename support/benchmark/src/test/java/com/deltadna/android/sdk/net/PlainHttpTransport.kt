@@ -0,0 +1,40 @@
+/*
+ * Copyright (c) 2018 deltaDNA Ltd. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.deltadna.android.sdk.net
+
+/**
+ * Default transport with the requests sent over plain HTTP, as the SDK
+ * always asks for HTTPS and a local mock server does not speak it.
+ */
+class PlainHttpTransport : HttpTransport {
+    
+    private val delegate = UrlConnectionTransport()
+    
+    override fun execute(
+            request: HttpRequest,
+            callback: HttpTransport.Callback): HttpTransport.Call =
+            delegate.execute(
+                    HttpRequest(
+                            request.url.replaceFirst("https://", "http://"),
+                            request.method,
+                            request.headers,
+                            request.body,
+                            request.contentType,
+                            request.connectionTimeout,
+                            request.readTimeout),
+                    callback)
+}
@@ -0,0 +1,87 @@
+/*
+ * Copyright (c) 2018 deltaDNA Ltd. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.deltadna.android.sdk.net
+
+import com.deltadna.android.sdk.benchmark.Suite
+import org.json.JSONArray
+import org.json.JSONObject
+import org.junit.AfterClass
+import org.junit.Test
+import org.junit.runner.RunWith
+import org.junit.runners.JUnit4
+import java.io.ByteArrayInputStream
+import java.io.InputStream
+import java.net.HttpURLConnection
+import java.net.URL
+
+/**
+ * Measures turning an Engage response into a [Response], from reading the
+ * connection to parsing the JSON.
+ */
+@RunWith(JUnit4::class)
+class ResponseBenchmark {
+    
+    private val body = JSONObject()
+            .put("transactionID", 2184816393350012928L)
+            .put("parameters", JSONObject().apply {
+                (0 until 20).forEach { put("parameter$it", "value $it") }
+            })
+            .put("eventParams", JSONObject()
+                    .put("responseEngagementName", "shop")
+                    .put("responseVariantName", "variant"))
+            .put("trace", JSONArray().apply {
+                (0 until 20).forEach { put(it) }
+            })
+            .toString()
+            .toByteArray()
+    
+    @Test
+    fun create() {
+        suite.measure("Response.create", 10_000) {
+            Response.create(FakeConnection(body), ResponseBodyConverter.JSON)
+        }
+    }
+    
+    @Test
+    fun createFromBytes() {
+        suite.measure("Response.create/bytes", 10_000) {
+            Response.create(200, body, ResponseBodyConverter.JSON)
+        }
+    }
+    
+    private class FakeConnection(private val body: ByteArray) :
+            HttpURLConnection(URL("http://localhost/engage")) {
+        
+        override fun getResponseCode() = 200
+        override fun getContentLength() = body.size
+        override fun getInputStream(): InputStream = ByteArrayInputStream(body)
+        
+        override fun connect() {}
+        override fun disconnect() {}
+        override fun usingProxy() = false
+    }
+    
+    companion object {
+        
+        private val suite = Suite("response")
+        
+        @AfterClass
+        @JvmStatic
+        fun write() = suite.write()
+    }
+}